@@ -0,0 +1,114 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RuleSet;
+import net.sourceforge.pmd.RuleSetLoader;
+import net.sourceforge.pmd.RuleSets;
+import net.sourceforge.pmd.cache.FileAnalysisCache;
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.document.FileLocation;
+import net.sourceforge.pmd.lang.document.TextDocument;
+import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.lang.document.TextRange2d;
+import net.sourceforge.pmd.lang.java.JavaLanguageModule;
+import net.sourceforge.pmd.lang.rule.ParametricRuleViolation;
+import net.sourceforge.pmd.reporting.FileAnalysisListener;
+
+/**
+ * Writes and reads back an analysis cache with many files and violations.
+ * Loading includes the validity check, which fingerprints the execution
+ * classpath, as it does in a real analysis.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class FileAnalysisCacheBenchmark {
+
+    @Param("2000")
+    private int fileCount;
+
+    @Param("10")
+    private int violationsPerFile;
+
+    private File cacheFile;
+    private RuleSets ruleSets;
+    private List<TextFile> files;
+    private FileAnalysisCache populated;
+
+    @Setup
+    public void setUp() throws Exception {
+        cacheFile = Files.createTempFile("pmd-benchmark", ".cache").toFile();
+        Files.delete(cacheFile.toPath());
+
+        RuleSet ruleSet = new RuleSetLoader().loadFromResource("rulesets/java/quickstart.xml");
+        ruleSets = new RuleSets(ruleSet);
+        List<Rule> rules = new ArrayList<>(ruleSet.getRules());
+
+        LanguageVersion version = JavaLanguageModule.getInstance().getDefaultVersion();
+        String source = JavaCorpus.readSource(JavaCorpus.ITERATOR_UTIL);
+        files = new ArrayList<>(fileCount);
+        for (int i = 0; i < fileCount; i++) {
+            files.add(TextFile.forCharSeq(source, FileId.fromPathLikeString("src/File" + i + ".java"), version));
+        }
+
+        populated = new FileAnalysisCache(cacheFile);
+        populated.checkValidity(ruleSets, null, files);
+        for (TextFile file : files) {
+            try (TextDocument document = TextDocument.create(file)) {
+                populated.isUpToDate(document);
+                try (FileAnalysisListener listener = populated.startFileAnalysis(document)) {
+                    for (int v = 0; v < violationsPerFile; v++) {
+                        FileLocation location = FileLocation.range(document.getFileId(), TextRange2d.range2d(v + 1, 1, v + 1, 10));
+                        listener.onRuleViolation(new ParametricRuleViolation(rules.get(v % rules.size()), location, "violation " + v));
+                    }
+                }
+            }
+        }
+        populated.persist();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(cacheFile.toPath());
+    }
+
+    @Benchmark
+    public void persist() {
+        populated.persist();
+    }
+
+    @Benchmark
+    public FileAnalysisCache load() {
+        FileAnalysisCache cache = new FileAnalysisCache(cacheFile);
+        cache.checkValidity(ruleSets, null, files);
+        return cache;
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.sourceforge.pmd.lang.ast.SemanticErrorReporter;
+import net.sourceforge.pmd.lang.java.ast.ASTCompilationUnit;
+import net.sourceforge.pmd.lang.java.internal.JavaAstProcessor;
+
+/**
+ * Runs the semantic analysis of the {@link JavaAstProcessor} (symbol
+ * resolution, symbol tables, disambiguation, type resolution, ...)
+ * on freshly parsed ASTs. The time of each phase can be seen by running
+ * PMD with {@code --benchmark} on the corpus.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class JavaAstProcessorBenchmark {
+
+    private List<ASTCompilationUnit> roots;
+
+    @Setup(Level.Invocation)
+    public void parse(JavaCorpus corpus) {
+        roots = corpus.parseAll(false);
+    }
+
+    @Benchmark
+    public void process(JavaCorpus corpus) {
+        for (ASTCompilationUnit root : roots) {
+            JavaAstProcessor.process(corpus.getProcessor(), SemanticErrorReporter.noop(), root);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.benchmarks;
+
+import static net.sourceforge.pmd.util.CollectionUtil.listOf;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import net.sourceforge.pmd.internal.util.IOUtil;
+import net.sourceforge.pmd.lang.Language;
+import net.sourceforge.pmd.lang.LanguageProcessorRegistry;
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.ast.Parser.ParserTask;
+import net.sourceforge.pmd.lang.ast.SemanticErrorReporter;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.document.TextDocument;
+import net.sourceforge.pmd.lang.java.JavaLanguageModule;
+import net.sourceforge.pmd.lang.java.ast.ASTCompilationUnit;
+import net.sourceforge.pmd.lang.java.ast.JavaParser;
+import net.sourceforge.pmd.lang.java.internal.JavaLanguageProcessor;
+
+/**
+ * The Java files of the benchmark corpus, and a Java processor to
+ * parse them. The corpus is fixed, so that the results of different
+ * commits can be compared. The files are test resources of pmd-java.
+ */
+@State(Scope.Benchmark)
+public class JavaCorpus {
+
+    /** A file of the corpus that makes heavy use of generics. */
+    static final String ITERATOR_UTIL = "net/sourceforge/pmd/lang/java/types/IteratorUtilCopy.java";
+    /** Paths of the files in the test jar of pmd-java. */
+    static final List<String> FILES = listOf(
+        "net/sourceforge/pmd/lang/java/ast/GitHubBug650.java",
+        ITERATOR_UTIL,
+        "net/sourceforge/pmd/lang/java/ast/ParserCornerCases18.java"
+    );
+
+    private JavaLanguageProcessor processor;
+    private LanguageProcessorRegistry registry;
+    private List<TextDocument> documents;
+
+    @Setup
+    public void setUp() throws IOException {
+        Language java = JavaLanguageModule.getInstance();
+        processor = (JavaLanguageProcessor) java.createProcessor(java.newPropertyBundle());
+        registry = LanguageProcessorRegistry.singleton(processor);
+
+        LanguageVersion version = java.getDefaultVersion();
+        documents = new ArrayList<>();
+        for (String path : FILES) {
+            documents.add(TextDocument.readOnlyString(readSource(path), FileId.fromPathLikeString(path), version));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        registry.close();
+        Exception e = IOUtil.closeAll(documents);
+        if (e != null) {
+            throw e;
+        }
+    }
+
+    static String readSource(String path) throws IOException {
+        try (InputStream stream = JavaCorpus.class.getClassLoader().getResourceAsStream(path)) {
+            if (stream == null) {
+                throw new IOException("Missing corpus file " + path);
+            }
+            return IOUtil.readToString(stream, StandardCharsets.UTF_8);
+        }
+    }
+
+    public JavaLanguageProcessor getProcessor() {
+        return processor;
+    }
+
+    public LanguageProcessorRegistry getRegistry() {
+        return registry;
+    }
+
+    public List<TextDocument> getDocuments() {
+        return documents;
+    }
+
+    /**
+     * Parses all the documents of the corpus. If {@code process} is false,
+     * the ASTs have no symbols nor types.
+     */
+    @SuppressWarnings("PMD.CloseResource") // the documents are closed in tearDown
+    public List<ASTCompilationUnit> parseAll(boolean process) {
+        JavaParser parser = process ? (JavaParser) processor.getParser() : processor.getParserWithoutProcessing();
+        List<ASTCompilationUnit> roots = new ArrayList<>(documents.size());
+        for (TextDocument document : documents) {
+            roots.add(parser.parse(new ParserTask(document, SemanticErrorReporter.noop(), registry)));
+        }
+        return roots;
+    }
+}
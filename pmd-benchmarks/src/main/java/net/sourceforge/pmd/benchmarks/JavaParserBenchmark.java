@@ -0,0 +1,40 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.sourceforge.pmd.lang.java.ast.ASTCompilationUnit;
+
+/**
+ * Parses the Java corpus, with and without the semantic analysis of
+ * the {@link net.sourceforge.pmd.lang.java.internal.JavaAstProcessor}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JavaParserBenchmark {
+
+    @Benchmark
+    public List<ASTCompilationUnit> parse(JavaCorpus corpus) {
+        return corpus.parseAll(false);
+    }
+
+    @Benchmark
+    public List<ASTCompilationUnit> parseAndProcess(JavaCorpus corpus) {
+        return corpus.parseAll(true);
+    }
+}
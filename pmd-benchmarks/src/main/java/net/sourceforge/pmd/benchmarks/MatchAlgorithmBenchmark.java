@@ -0,0 +1,147 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.benchmarks;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.sourceforge.pmd.cpd.CPD;
+import net.sourceforge.pmd.cpd.CPDConfiguration;
+import net.sourceforge.pmd.cpd.CPDNullListener;
+import net.sourceforge.pmd.cpd.JavaTokenizer;
+import net.sourceforge.pmd.cpd.LanguageFactory;
+import net.sourceforge.pmd.cpd.MatchAlgorithm;
+import net.sourceforge.pmd.cpd.MatchEngine;
+import net.sourceforge.pmd.cpd.SourceCode;
+import net.sourceforge.pmd.cpd.TokenEntry;
+import net.sourceforge.pmd.cpd.Tokens;
+
+/**
+ * Finds the duplicates in several copies of the Java corpus. Each copy
+ * is a distinct file, so every file of the corpus is duplicated
+ * {@code copies} times. Run it with {@code -prof gc} to compare the
+ * memory allocated by the match engines.
+ *
+ * <p>{@link #findMatches(HeapCounters)} runs the match engine on tokens
+ * that are tokenized once, and reports the heap retained by their
+ * {@link Tokens} as {@code tokensMiB}. {@link #cpd()} runs CPD end to
+ * end, and {@link #cpdRetainedHeap(HeapCounters)} reports the heap
+ * retained by CPD once it found the duplicates as {@code cpdMiB}: this
+ * one forces garbage collections, so only its counter is meaningful.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MatchAlgorithmBenchmark {
+
+    @Param({"KARP_RABIN", "SUFFIX_ARRAY"})
+    private MatchEngine engine;
+
+    @Param("20")
+    private int copies;
+
+    @Param("100")
+    private int minimumTokens;
+
+    private Map<String, SourceCode> sources;
+    private Tokens tokens;
+    private double tokensMiB;
+
+    /** The heap retained by the tokens or by CPD, in MiB. */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class HeapCounters {
+        public double tokensMiB;
+        public double cpdMiB;
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        // the tokens are tokenized on the benchmark thread, which owns their dictionary
+        TokenEntry.clearImages();
+        sources = new HashMap<>();
+        for (int i = 0; i < copies; i++) {
+            for (String path : JavaCorpus.FILES) {
+                String fileName = "copy" + i + "/" + path;
+                String code = JavaCorpus.readSource(path);
+                sources.put(fileName, new SourceCode(new SourceCode.StringCodeLoader(code, fileName)));
+            }
+        }
+
+        long before = usedHeapAfterGc();
+        tokens = new Tokens();
+        JavaTokenizer tokenizer = new JavaTokenizer();
+        for (SourceCode sourceCode : sources.values()) {
+            tokenizer.tokenize(sourceCode, tokens);
+        }
+        tokensMiB = toMiB(usedHeapAfterGc() - before);
+    }
+
+    @Benchmark
+    public MatchAlgorithm findMatches(HeapCounters counters) {
+        counters.tokensMiB = tokensMiB;
+        MatchAlgorithm matchAlgorithm = new MatchAlgorithm(sources, tokens, minimumTokens, new CPDNullListener(), engine);
+        matchAlgorithm.findMatches();
+        return matchAlgorithm;
+    }
+
+    @Benchmark
+    public CPD cpd() throws IOException {
+        return runCpd();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    public CPD cpdRetainedHeap(HeapCounters counters) throws IOException {
+        // the tokens of the setup are retained before and after, so they are not counted
+        long before = usedHeapAfterGc();
+        CPD cpd = runCpd();
+        counters.cpdMiB = toMiB(usedHeapAfterGc() - before);
+        return cpd;
+    }
+
+    private CPD runCpd() throws IOException {
+        CPDConfiguration configuration = new CPDConfiguration();
+        configuration.setLanguage(LanguageFactory.createLanguage("java"));
+        configuration.setMinimumTileSize(minimumTokens);
+        configuration.setMatchEngine(engine);
+        CPD cpd = new CPD(configuration);
+        for (SourceCode sourceCode : sources.values()) {
+            cpd.add(sourceCode);
+        }
+        cpd.go();
+        return cpd;
+    }
+
+    private static long usedHeapAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static double toMiB(long bytes) {
+        return bytes / (1024.0 * 1024.0);
+    }
+}
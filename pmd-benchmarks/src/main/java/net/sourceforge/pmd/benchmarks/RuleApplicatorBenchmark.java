@@ -0,0 +1,86 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RuleSet;
+import net.sourceforge.pmd.RuleSetLoader;
+import net.sourceforge.pmd.RuleSets;
+import net.sourceforge.pmd.lang.java.ast.ASTCompilationUnit;
+import net.sourceforge.pmd.lang.rule.internal.RuleApplicator;
+import net.sourceforge.pmd.reporting.FileAnalysisListener;
+import net.sourceforge.pmd.util.log.MessageReporter;
+
+/**
+ * Indexes the ASTs of the Java corpus and applies a ruleset to them.
+ * The ASTs are parsed once, so type resolution is only done during
+ * the first application of the rules.
+ *
+ * <p>{@link #threadSafeUserMaps} compares the plain user data maps of
+ * files whose rules run sequentially, with the thread-safe ones of files
+ * whose rules run concurrently.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RuleApplicatorBenchmark {
+
+    @Param("rulesets/java/quickstart.xml")
+    private String ruleset;
+    @Param({"false", "true"})
+    private boolean threadSafeUserMaps;
+
+    private List<ASTCompilationUnit> roots;
+    private List<Rule> rules;
+    private RuleApplicator applicator;
+
+    @Setup
+    public void setUp(JavaCorpus corpus) {
+        RuleSet loaded = new RuleSetLoader().loadFromResource(ruleset);
+        new RuleSets(loaded).initializeRules(corpus.getRegistry(), MessageReporter.quiet());
+        rules = new ArrayList<>(loaded.getRules());
+        applicator = RuleApplicator.build(rules);
+        roots = corpus.parseAll(true);
+        if (threadSafeUserMaps) {
+            for (ASTCompilationUnit root : roots) {
+                root.descendantsOrSelf().crossFindBoundaries().forEach(node -> node.getUserMap().makeThreadSafe());
+            }
+        }
+    }
+
+    @Benchmark
+    public void index() {
+        for (ASTCompilationUnit root : roots) {
+            applicator.index(root);
+        }
+    }
+
+    @Benchmark
+    public void indexAndApply() {
+        for (ASTCompilationUnit root : roots) {
+            applicator.index(root);
+            applicator.apply(rules, FileAnalysisListener.noop());
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.sourceforge.pmd.lang.java.symbols.JClassSymbol;
+import net.sourceforge.pmd.lang.java.symbols.JMethodSymbol;
+import net.sourceforge.pmd.lang.java.symbols.internal.asm.Classpath;
+import net.sourceforge.pmd.lang.java.symbols.internal.asm.IndexedClasspath;
+import net.sourceforge.pmd.lang.java.types.TypeSystem;
+
+/**
+ * Resolves the classes of a large jar with a fresh {@link TypeSystem},
+ * like an analysis does when it starts. When the cache is cold, the jar
+ * is indexed and the classes are read from it. When it is warm, the
+ * index and the stub packs written by a previous run are read instead.
+ * The jar is the benchmarks jar itself, which contains PMD and its
+ * dependencies. With {@code runtimeClasses}, classes of the Java runtime
+ * image are resolved instead, they are cached in the stub pack of the
+ * runtime when the cache is warm.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class StubCacheBenchmark {
+
+    @Param({"false", "true"})
+    private boolean warmCache;
+
+    @Param({"false", "true"})
+    private boolean runtimeClasses;
+
+    @Param("500")
+    private int classCount;
+
+    private List<Path> jars;
+    private Classpath parent;
+    private Path cacheDir;
+    private final List<String> classNames = new ArrayList<>();
+
+    @Setup
+    public void setUp() throws Exception {
+        Path jar = Paths.get(IndexedClasspath.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        jars = Collections.singletonList(jar);
+        parent = Classpath.forClassLoader(StubCacheBenchmark.class.getClassLoader());
+        if (runtimeClasses) {
+            addRuntimeClassNames();
+        } else {
+            addClassNames(jar, "net/sourceforge/pmd/lang/java/");
+        }
+
+        cacheDir = Files.createTempDirectory("pmd-stub-cache");
+        if (warmCache) {
+            // the stub packs are written when the classpath is closed. The
+            // pack of a jar holds all its classes, the one of the runtime
+            // only the classes that were read.
+            try (IndexedClasspath cp = newClasspath()) {
+                for (String name : classNames) {
+                    cp.findResource(name.replace('.', '/') + ".class");
+                }
+            }
+        }
+    }
+
+    private void addRuntimeClassNames() throws IOException, URISyntaxException {
+        Path rtJar = Paths.get(System.getProperty("java.home"), "lib", "rt.jar");
+        if (Files.isRegularFile(rtJar)) {
+            // java 8
+            addClassNames(rtJar, "java/");
+            return;
+        }
+        Path javaBase = FileSystems.getFileSystem(new URI("jrt:/")).getPath("/modules/java.base");
+        try (Stream<Path> files = Files.walk(javaBase.resolve("java"))) {
+            files.map(file -> javaBase.relativize(file).toString())
+                 .filter(StubCacheBenchmark::isTopLevelClass)
+                 .limit(classCount)
+                 .forEach(this::addClassName);
+        }
+    }
+
+    private void addClassNames(Path jar, String packagePrefix) throws IOException {
+        try (ZipFile zip = new ZipFile(jar.toFile())) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements() && classNames.size() < classCount) {
+                String name = entries.nextElement().getName();
+                if (name.startsWith(packagePrefix) && isTopLevelClass(name)) {
+                    addClassName(name);
+                }
+            }
+        }
+    }
+
+    private static boolean isTopLevelClass(String resourcePath) {
+        return resourcePath.endsWith(".class") && !resourcePath.contains("$") && !resourcePath.contains("-");
+    }
+
+    private void addClassName(String resourcePath) {
+        classNames.add(resourcePath.substring(0, resourcePath.length() - ".class".length()).replace('/', '.'));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(cacheDir)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Benchmark
+    public void resolveClasses(Blackhole bh) throws IOException {
+        try (IndexedClasspath cp = newClasspath()) {
+            TypeSystem ts = TypeSystem.usingClasspath(cp);
+            for (String name : classNames) {
+                JClassSymbol symbol = ts.getClassSymbol(name);
+                if (symbol == null) {
+                    continue;
+                }
+                bh.consume(symbol.getSuperclass());
+                bh.consume(symbol.getSuperInterfaces());
+                for (JMethodSymbol method : symbol.getDeclaredMethods()) {
+                    bh.consume(method.getFormalParameters());
+                }
+            }
+        }
+    }
+
+    private IndexedClasspath newClasspath() {
+        if (warmCache) {
+            return IndexedClasspath.create(jars, parent, cacheDir.resolve("classpath.idx"), cacheDir.resolve("stubs"));
+        }
+        // nothing is cached, like the first run
+        return IndexedClasspath.create(jars, parent, null, null);
+    }
+}
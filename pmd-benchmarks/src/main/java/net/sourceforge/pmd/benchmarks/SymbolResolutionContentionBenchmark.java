@@ -0,0 +1,117 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.sourceforge.pmd.lang.java.symbols.JClassSymbol;
+import net.sourceforge.pmd.lang.java.symbols.JMethodSymbol;
+import net.sourceforge.pmd.lang.java.types.JTypeMirror;
+import net.sourceforge.pmd.lang.java.types.Substitution;
+import net.sourceforge.pmd.lang.java.types.TypeSystem;
+
+/**
+ * Resolves an overlapping set of JDK classes from several threads
+ * that share a fresh {@link TypeSystem}, like the analysis threads do
+ * when an analysis starts. Each thread starts at a different position
+ * in the list of classes, and resolves the supertypes and method
+ * signatures of each class, so that the threads race to parse the same
+ * hot classes ({@code Object}, {@code String}, {@code List}, ...).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SymbolResolutionContentionBenchmark {
+
+    private static final String[] CLASSES = {
+        "java.lang.Object", "java.lang.String", "java.lang.Integer", "java.lang.Long", "java.lang.Character",
+        "java.lang.StringBuilder", "java.lang.Math", "java.lang.System", "java.lang.Thread", "java.lang.Class",
+        "java.lang.Enum", "java.lang.Iterable", "java.lang.Comparable", "java.lang.Exception", "java.lang.RuntimeException",
+        "java.util.List", "java.util.ArrayList", "java.util.LinkedList", "java.util.Map", "java.util.HashMap",
+        "java.util.TreeMap", "java.util.Set", "java.util.HashSet", "java.util.Collections", "java.util.Arrays",
+        "java.util.Optional", "java.util.Objects", "java.util.Iterator", "java.util.Comparator", "java.util.Deque",
+        "java.util.function.Function", "java.util.function.Predicate", "java.util.function.Supplier",
+        "java.util.stream.Stream", "java.util.stream.Collectors", "java.util.stream.IntStream",
+        "java.util.concurrent.ConcurrentHashMap", "java.util.concurrent.ExecutorService", "java.util.concurrent.Future",
+        "java.io.InputStream", "java.io.OutputStream", "java.io.Reader", "java.io.Writer", "java.io.File",
+        "java.nio.file.Path", "java.nio.file.Files", "java.nio.charset.Charset", "java.math.BigDecimal",
+        "java.time.LocalDate", "java.time.Duration",
+    };
+
+    @Param({"1", "4", "16", "32"})
+    public int threads;
+
+    private ExecutorService executor;
+
+    @Setup(Level.Trial)
+    public void startThreads() {
+        executor = Executors.newFixedThreadPool(threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopThreads() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public void resolveOverlappingClasses(Blackhole bh) throws Exception {
+        TypeSystem ts = TypeSystem.usingClassLoaderClasspath(JClassSymbol.class.getClassLoader());
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int offset = t * CLASSES.length / threads;
+            futures.add(executor.submit(() -> {
+                start.await();
+                // each thread resolves three quarters of the classes
+                for (int i = 0; i < CLASSES.length * 3 / 4; i++) {
+                    resolve(ts, CLASSES[(offset + i) % CLASSES.length], bh);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+    }
+
+    private static void resolve(TypeSystem ts, String binaryName, Blackhole bh) {
+        JClassSymbol symbol = ts.getClassSymbol(binaryName);
+        if (symbol == null) {
+            return;
+        }
+        bh.consume(symbol.getSuperclass());
+        bh.consume(symbol.getSuperInterfaces());
+        for (JMethodSymbol method : symbol.getDeclaredMethods()) {
+            for (JTypeMirror formal : method.getFormalParameterTypes(Substitution.EMPTY)) {
+                bh.consume(formal.getSymbol());
+            }
+        }
+    }
+}
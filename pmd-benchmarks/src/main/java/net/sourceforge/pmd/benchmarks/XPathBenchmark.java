@@ -0,0 +1,80 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RuleSetLoader;
+import net.sourceforge.pmd.lang.java.ast.ASTCompilationUnit;
+import net.sourceforge.pmd.lang.rule.XPathRule;
+import net.sourceforge.pmd.lang.rule.xpath.impl.XPathHandler;
+import net.sourceforge.pmd.lang.rule.xpath.internal.DeprecatedAttrLogger;
+import net.sourceforge.pmd.lang.rule.xpath.internal.SaxonXPathRuleQuery;
+
+/**
+ * Evaluates the XPath query of some representative XPath rules on the
+ * whole ASTs of the Java corpus. The rules are given as
+ * {@code <category file>/<rule name>}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class XPathBenchmark {
+
+    @Param({
+        // a path with predicates
+        "category/java/errorprone.xml/EmptyCatchBlock",
+        // a descendant axis from the root
+        "category/java/errorprone.xml/UnconditionalIfStatement",
+        // a custom function that uses type resolution
+        "category/java/bestpractices.xml/AvoidStringBufferField"
+    })
+    private String rule;
+
+    private List<ASTCompilationUnit> roots;
+    private SaxonXPathRuleQuery query;
+
+    @Setup
+    public void setUp(JavaCorpus corpus) {
+        int sep = rule.lastIndexOf('/');
+        Rule loaded = new RuleSetLoader().loadFromResource(rule.substring(0, sep)).getRuleByName(rule.substring(sep + 1));
+        if (!(loaded instanceof XPathRule)) {
+            throw new IllegalArgumentException("Not an XPath rule: " + rule);
+        }
+        XPathRule xpathRule = (XPathRule) loaded;
+        XPathHandler handler = corpus.getProcessor().services().getXPathHandler();
+        query = new SaxonXPathRuleQuery(xpathRule.getXPathExpression(),
+                                        xpathRule.getVersion(),
+                                        xpathRule.getPropertiesByPropertyDescriptor(),
+                                        handler,
+                                        DeprecatedAttrLogger.noop());
+        roots = corpus.parseAll(true);
+    }
+
+    @Benchmark
+    public void evaluate(Blackhole blackhole) {
+        for (ASTCompilationUnit root : roots) {
+            blackhole.consume(query.evaluate(root));
+        }
+    }
+}
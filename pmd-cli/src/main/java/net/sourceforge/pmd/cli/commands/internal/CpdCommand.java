@@ -22,6 +22,7 @@ import net.sourceforge.pmd.cpd.CPD;
 import net.sourceforge.pmd.cpd.CPDConfiguration;
 import net.sourceforge.pmd.cpd.CPDReport;
 import net.sourceforge.pmd.cpd.Language;
+import net.sourceforge.pmd.cpd.MatchEngine;
 import net.sourceforge.pmd.cpd.Tokenizer;
 import net.sourceforge.pmd.internal.LogMessages;
 import net.sourceforge.pmd.internal.util.IOUtil;
@@ -91,6 +92,21 @@ public class CpdCommand extends AbstractAnalysisPmdSubcommand {
     @Option(names = "--non-recursive", description = "Don't scan subdirectiories.")
     private boolean nonRecursive;
 
+    @Option(names = "--match-engine",
+            description = "Algorithm used to find the duplicates. SUFFIX_ARRAY reports the same duplicates, "
+                          + "but needs much less memory on large code bases.%nValid values: ${COMPLETION-CANDIDATES}",
+            defaultValue = "KARP_RABIN")
+    private MatchEngine matchEngine;
+
+    @Option(names = { "--threads", "-t" },
+            description = "Sets the number of threads used to tokenize the files.", defaultValue = "1")
+    private int threads;
+
+    @Option(names = "--cache",
+            description = "Specify the location of the cache file for the tokens of each file. "
+                          + "Files that didn't change since the previous run are not tokenized again.")
+    private String tokenCacheLocation;
+
     /**
      * Converts these parameters into a configuration.
      *
@@ -110,6 +126,9 @@ public class CpdCommand extends AbstractAnalysisPmdSubcommand {
         configuration.setIgnoreLiteralSequences(ignoreLiteralSequences);
         configuration.setIgnoreUsings(ignoreUsings);
         configuration.setLanguage(language);
+        configuration.setMatchEngine(matchEngine);
+        configuration.setThreads(threads);
+        configuration.setTokenCacheLocation(tokenCacheLocation);
         configuration.setMinimumTileSize(minimumTokens);
         configuration.setNonRecursive(nonRecursive);
         configuration.setNoSkipBlocks(noSkipBlocks);
@@ -21,6 +21,8 @@ import org.slf4j.LoggerFactory;
 import net.sourceforge.pmd.PMDConfiguration;
 import net.sourceforge.pmd.PmdAnalysis;
 import net.sourceforge.pmd.RulePriority;
+import net.sourceforge.pmd.benchmark.AnalysisProfiler;
+import net.sourceforge.pmd.benchmark.TextProfileRenderer;
 import net.sourceforge.pmd.benchmark.TextTimingReportRenderer;
 import net.sourceforge.pmd.benchmark.TimeTracker;
 import net.sourceforge.pmd.benchmark.TimingReport;
@@ -33,6 +35,7 @@ import net.sourceforge.pmd.cli.internal.ProgressBarListener;
 import net.sourceforge.pmd.internal.LogMessages;
 import net.sourceforge.pmd.lang.Language;
 import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.impl.FileSchedulingMode;
 import net.sourceforge.pmd.properties.PropertyDescriptor;
 import net.sourceforge.pmd.renderers.Renderer;
 import net.sourceforge.pmd.renderers.RendererFactory;
@@ -84,8 +87,16 @@ public class PmdCommand extends AbstractAnalysisPmdSubcommand {
 
     private int threads;
 
+    private FileSchedulingMode fileScheduling;
+
+    private int concurrentRulesThreshold;
+
+    private long fileTimeout;
+
     private boolean benchmark;
 
+    private boolean profile;
+
     private List<Path> relativizeRootPaths;
 
     private boolean showSuppressed;
@@ -110,6 +121,8 @@ public class PmdCommand extends AbstractAnalysisPmdSubcommand {
 
     private boolean noCache;
 
+    private boolean cacheFileMetadata;
+
     private boolean showProgressBar;
 
     @Option(names = { "--rulesets", "-R" },
@@ -142,6 +155,13 @@ public class PmdCommand extends AbstractAnalysisPmdSubcommand {
         this.benchmark = benchmark;
     }
 
+    @Option(names = "--profile",
+            description = "Profile mode - output the distribution of the time taken by each rule and each file, "
+                          + "and the slowest files, upon completion; default to System.err.")
+    public void setProfile(final boolean profile) {
+        this.profile = profile;
+    }
+
     @Option(names = { "--relativize-paths-with", "-z"}, description = "Path relative to which directories are rendered in the report. "
             + "This option allows shortening directories in the report; "
             + "without it, paths are rendered as mentioned in the source directory (option \"--dir\"). "
@@ -242,7 +262,8 @@ public class PmdCommand extends AbstractAnalysisPmdSubcommand {
             description = "Specify the location of the cache file for incremental analysis. "
                     + "This should be the full path to the file, including the desired file name (not just the parent directory). "
                     + "If the file doesn't exist, it will be created on the first run. The file will be overwritten on each run "
-                    + "with the most up-to-date rule violations.")
+                    + "with the most up-to-date rule violations. If this is an existing directory, a cache shared by "
+                    + "the analyses that use the same directory is stored inside it, regardless of the location of the analyzed files.")
     public void setCacheLocation(final Path cacheLocation) {
         this.cacheLocation = cacheLocation;
     }
@@ -252,6 +273,14 @@ public class PmdCommand extends AbstractAnalysisPmdSubcommand {
         this.noCache = noCache;
     }
 
+    @Option(names = "--cache-file-metadata",
+            description = "Consider that files whose size, modification time and inode did not change since "
+                          + "they were cached are unchanged, without reading them. By default, the contents of "
+                          + "each file are read and compared to the cache.")
+    public void setCacheFileMetadata(final boolean cacheFileMetadata) {
+        this.cacheFileMetadata = cacheFileMetadata;
+    }
+
     @Option(names = { "--threads", "-t" }, description = "Sets the number of threads used by PMD.",
             defaultValue = "1")
     public void setThreads(final int threads) {
@@ -262,6 +291,42 @@ public class PmdCommand extends AbstractAnalysisPmdSubcommand {
         this.threads = threads;
     }
 
+    @Option(names = "--file-scheduling",
+            description = "Order in which files are handed to the threads. LARGEST_FIRST processes the files "
+                          + "that are expected to take longest first, based on their size and on the timings "
+                          + "recorded in the analysis cache.%nValid values: ${COMPLETION-CANDIDATES}",
+            defaultValue = "IN_ORDER")
+    public void setFileScheduling(final FileSchedulingMode fileScheduling) {
+        this.fileScheduling = fileScheduling;
+    }
+
+    @Option(names = "--concurrent-rules-threshold",
+            description = "Number of lines from which the rules are applied concurrently on a file. "
+                          + "This speeds up the analysis of very large files, like generated parsers. "
+                          + "0 disables the feature.",
+            defaultValue = "0")
+    public void setConcurrentRulesThreshold(final int concurrentRulesThreshold) {
+        if (concurrentRulesThreshold < 0) {
+            throw new ParameterException(spec.commandLine(), "Concurrent rules threshold should be a positive number or zero, found " + concurrentRulesThreshold + " instead.");
+        }
+
+        this.concurrentRulesThreshold = concurrentRulesThreshold;
+    }
+
+    @Option(names = "--file-timeout",
+            description = "Maximum time in milliseconds spent on a single file. When it is exceeded, the analysis "
+                          + "of the file is aborted and a processing error is reported. The timeout is checked between "
+                          + "the nodes given to the rules, rules that visit the whole tree themselves are not interrupted. "
+                          + "0 disables the timeout.",
+            defaultValue = "0")
+    public void setFileTimeout(final long fileTimeout) {
+        if (fileTimeout < 0) {
+            throw new ParameterException(spec.commandLine(), "File timeout should be a positive number or zero, found " + fileTimeout + " instead.");
+        }
+
+        this.fileTimeout = fileTimeout;
+    }
+
     @Option(names = "--no-progress", negatable = true, defaultValue = "true",
             description = "Enables / disables progress bar indicator of live analysis progress.")
     public void setShowProgressBar(final boolean showProgressBar) {
@@ -296,9 +361,13 @@ public class PmdCommand extends AbstractAnalysisPmdSubcommand {
         configuration.setShowSuppressedViolations(showSuppressed);
         configuration.setSuppressMarker(suppressMarker);
         configuration.setThreads(threads);
+        configuration.setFileSchedulingMode(fileScheduling);
+        configuration.setConcurrentRulesThreshold(concurrentRulesThreshold);
+        configuration.setFileTimeout(fileTimeout);
         configuration.setFailOnViolation(failOnViolation);
         configuration.setAnalysisCacheLocation(cacheLocation != null ? cacheLocation.toString() : null);
         configuration.setIgnoreIncrementalAnalysis(noCache);
+        configuration.setAnalysisCacheUsesFileMetadata(cacheFileMetadata);
 
         if (languageVersion != null) {
             configuration.setDefaultLanguageVersions(languageVersion);
@@ -352,7 +421,13 @@ public class PmdCommand extends AbstractAnalysisPmdSubcommand {
                     }
                 }
 
+                final AnalysisProfiler profiler = profile ? new AnalysisProfiler() : null;
+                pmd.setProfiler(profiler);
+
                 final ReportStats stats = pmd.runAndReturnStats();
+                if (profiler != null) {
+                    renderProfile(profiler);
+                }
                 if (pmdReporter.numErrors() > 0) {
                     // processing errors are ignored
                     return CliExitCode.ERROR;
@@ -383,6 +458,13 @@ public class PmdCommand extends AbstractAnalysisPmdSubcommand {
         reporter.info(StringUtil.quoteMessageFormat(msg));
     }
 
+    private void renderProfile(final AnalysisProfiler profiler) {
+        // No try-with-resources, do not want to close STDERR
+        @SuppressWarnings("PMD.CloseResource")
+        final Writer writer = new OutputStreamWriter(System.err);
+        new TextProfileRenderer().render(profiler.getProfile(), writer);
+    }
+
     private void finishBenchmarker(final MessageReporter pmdReporter) {
         if (benchmark) {
             final TimingReport timingReport = TimeTracker.stopGlobalTracking();
@@ -25,6 +25,7 @@ import org.slf4j.LoggerFactory;
 
 import net.sourceforge.pmd.annotation.DeprecatedUntil700;
 import net.sourceforge.pmd.cache.AnalysisCache;
+import net.sourceforge.pmd.cache.DirectoryAnalysisCache;
 import net.sourceforge.pmd.cache.FileAnalysisCache;
 import net.sourceforge.pmd.cache.NoopAnalysisCache;
 import net.sourceforge.pmd.internal.util.ClasspathClassLoader;
@@ -33,6 +34,9 @@ import net.sourceforge.pmd.lang.LanguagePropertyBundle;
 import net.sourceforge.pmd.lang.LanguageRegistry;
 import net.sourceforge.pmd.lang.LanguageVersion;
 import net.sourceforge.pmd.lang.LanguageVersionDiscoverer;
+import net.sourceforge.pmd.lang.LanguageVersionHandler;
+import net.sourceforge.pmd.lang.ast.RootNode;
+import net.sourceforge.pmd.lang.impl.FileSchedulingMode;
 import net.sourceforge.pmd.renderers.Renderer;
 import net.sourceforge.pmd.renderers.RendererFactory;
 import net.sourceforge.pmd.util.AssertionUtil;
@@ -96,6 +100,11 @@ import net.sourceforge.pmd.util.log.internal.SimpleMessageReporter;
  * <ul>
  * <li>Use {@link #setThreads(int)} to control the parallelism of the analysis. Defaults
  * one thread per available processor. {@link #getThreads()}</li>
+ * <li>Use {@link #setFileSchedulingMode(FileSchedulingMode)} to control in which order
+ * files are handed to the threads.</li>
+ * <li>Use {@link #setConcurrentRulesThreshold(int)} to apply the rules concurrently
+ * on very large files.</li>
+ * <li>Use {@link #setFileTimeout(long)} to bound the time spent on a single file.</li>
  * </ul>
  */
 public class PMDConfiguration extends AbstractConfiguration {
@@ -107,6 +116,9 @@ public class PMDConfiguration extends AbstractConfiguration {
     // General behavior options
     private String suppressMarker = DEFAULT_SUPPRESS_MARKER;
     private int threads = Runtime.getRuntime().availableProcessors();
+    private FileSchedulingMode fileSchedulingMode = FileSchedulingMode.IN_ORDER;
+    private int concurrentRulesThreshold;
+    private long fileTimeout;
     private ClassLoader classLoader = getClass().getClassLoader();
     private final LanguageVersionDiscoverer languageVersionDiscoverer;
     private LanguageVersion forceLanguageVersion;
@@ -130,6 +142,7 @@ public class PMDConfiguration extends AbstractConfiguration {
 
     private AnalysisCache analysisCache = new NoopAnalysisCache();
     private boolean ignoreIncrementalAnalysis;
+    private boolean analysisCacheUsesFileMetadata;
     private final LanguageRegistry langRegistry;
     private final List<Path> relativizeRoots = new ArrayList<>();
     private final Map<Language, LanguagePropertyBundle> langProperties = new HashMap<>();
@@ -183,6 +196,97 @@ public class PMDConfiguration extends AbstractConfiguration {
         this.threads = threads;
     }
 
+    /**
+     * Returns the order in which files are handed to the analysis threads.
+     * Defaults to {@link FileSchedulingMode#IN_ORDER}.
+     *
+     * @return The file scheduling mode
+     */
+    public @NonNull FileSchedulingMode getFileSchedulingMode() {
+        return fileSchedulingMode;
+    }
+
+    /**
+     * Set the order in which files are handed to the analysis threads.
+     * This has no effect if the analysis is not multi-threaded, see
+     * {@link #setThreads(int)}.
+     *
+     * @param fileSchedulingMode The file scheduling mode
+     *
+     * @throws NullPointerException If the parameter is null
+     */
+    public void setFileSchedulingMode(@NonNull FileSchedulingMode fileSchedulingMode) {
+        this.fileSchedulingMode = Objects.requireNonNull(fileSchedulingMode);
+    }
+
+    /**
+     * Returns the number of lines from which the rules are applied
+     * concurrently on a file. Zero, the default, means that the rules
+     * are always applied one after the other.
+     *
+     * @return The concurrent rules threshold
+     */
+    public int getConcurrentRulesThreshold() {
+        return concurrentRulesThreshold;
+    }
+
+    /**
+     * Set the number of lines from which the rules are applied concurrently
+     * on a file, once its AST is ready. This speeds up the analysis of very
+     * large files, like generated parsers, which otherwise keep a single
+     * thread busy. This only has an effect on languages whose ASTs can be
+     * {@linkplain LanguageVersionHandler#prepareForConcurrentRules(RootNode) accessed concurrently}.
+     * The rules are applied on a dedicated pool with as many threads as
+     * the analysis, so this has no effect if it uses fewer than two
+     * {@linkplain #setThreads(int) threads}. The violations are reported
+     * in the same order whatever the threshold. Zero disables the feature,
+     * which is the default.
+     *
+     * @param concurrentRulesThreshold The minimum number of lines
+     *
+     * @throws IllegalArgumentException If the parameter is negative
+     */
+    public void setConcurrentRulesThreshold(int concurrentRulesThreshold) {
+        if (concurrentRulesThreshold < 0) {
+            throw new IllegalArgumentException("Negative threshold: " + concurrentRulesThreshold);
+        }
+        this.concurrentRulesThreshold = concurrentRulesThreshold;
+    }
+
+    /**
+     * Returns the maximum time spent on the analysis of a single file,
+     * in milliseconds. Zero, the default, means that there is no limit.
+     *
+     * @return The file timeout
+     */
+    public long getFileTimeout() {
+        return fileTimeout;
+    }
+
+    /**
+     * Set the maximum time spent on the analysis of a single file, in
+     * milliseconds. When it is exceeded, the analysis of the file is
+     * aborted and a processing error is reported for it, the violations
+     * found until then are still reported. This bounds the latency of
+     * a file, e.g. when a pathological file would keep a thread busy for
+     * minutes. The timeout is checked between the steps of the analysis,
+     * so it may be exceeded by the duration of a single step, e.g. by
+     * the time a rule takes on a single node. Rules that don't use the
+     * rule chain are only given the root node, and visit the tree
+     * themselves: the timeout is not checked while such a rule runs, only
+     * before and after it. Zero disables the timeout, which is the default.
+     *
+     * @param fileTimeout The timeout in milliseconds
+     *
+     * @throws IllegalArgumentException If the parameter is negative
+     */
+    public void setFileTimeout(long fileTimeout) {
+        if (fileTimeout < 0) {
+            throw new IllegalArgumentException("Negative timeout: " + fileTimeout);
+        }
+        this.fileTimeout = fileTimeout;
+    }
+
     /**
      * Get the ClassLoader being used by PMD when processing Rules.
      *
@@ -808,14 +912,20 @@ public class PMDConfiguration extends AbstractConfiguration {
 
     /**
      * Sets the location of the analysis cache to be used. This will automatically configure
-     * and appropriate AnalysisCache implementation.
+     * and appropriate AnalysisCache implementation. If the location is an existing directory,
+     * a {@link DirectoryAnalysisCache} is used, which can be shared by several analyses,
+     * otherwise the cache is stored in a single file.
      *
      * @param cacheLocation The location of the analysis cache to be used.
      */
     public void setAnalysisCacheLocation(final String cacheLocation) {
-        setAnalysisCache(cacheLocation == null
-                         ? new NoopAnalysisCache()
-                         : new FileAnalysisCache(new File(cacheLocation)));
+        if (cacheLocation == null) {
+            setAnalysisCache(new NoopAnalysisCache());
+        } else if (new File(cacheLocation).isDirectory()) {
+            setAnalysisCache(new DirectoryAnalysisCache(new File(cacheLocation)));
+        } else {
+            setAnalysisCache(new FileAnalysisCache(new File(cacheLocation)));
+        }
     }
 
 
@@ -842,6 +952,33 @@ public class PMDConfiguration extends AbstractConfiguration {
         return ignoreIncrementalAnalysis;
     }
 
+    /**
+     * Returns whether the analysis cache trusts the metadata of the files
+     * to detect that they have not changed. Defaults to false.
+     *
+     * @return {@code true} if the analysis cache uses file metadata
+     *
+     * @see #setAnalysisCacheUsesFileMetadata(boolean)
+     */
+    public boolean isAnalysisCacheUsesFileMetadata() {
+        return analysisCacheUsesFileMetadata;
+    }
+
+    /**
+     * Sets whether the analysis cache trusts the metadata of the files
+     * to detect that they have not changed. If so, the cache records
+     * the size, modification time and file key (eg the inode) of each
+     * file, and files whose metadata did not change are not read at all.
+     * Otherwise, which is the default, the contents of each file are read
+     * and compared to their checksum in the cache. Files whose metadata
+     * changed but whose contents did not are still cache hits.
+     *
+     * @param analysisCacheUsesFileMetadata Whether to use file metadata
+     */
+    public void setAnalysisCacheUsesFileMetadata(boolean analysisCacheUsesFileMetadata) {
+        this.analysisCacheUsesFileMetadata = analysisCacheUsesFileMetadata;
+    }
+
     /**
      * Set the path used to shorten paths output in the report.
      * The path does not need to exist. If it exists, it must point
@@ -17,11 +17,14 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 
+import org.checkerframework.checker.nullness.qual.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.event.Level;
 
 import net.sourceforge.pmd.Report.GlobalReportBuilderListener;
+import net.sourceforge.pmd.annotation.Experimental;
+import net.sourceforge.pmd.benchmark.AnalysisProfiler;
 import net.sourceforge.pmd.benchmark.TimeTracker;
 import net.sourceforge.pmd.benchmark.TimedOperation;
 import net.sourceforge.pmd.benchmark.TimedOperationCategory;
@@ -43,6 +46,7 @@ import net.sourceforge.pmd.lang.LanguageVersionDiscoverer;
 import net.sourceforge.pmd.lang.document.FileCollector;
 import net.sourceforge.pmd.lang.document.TextFile;
 import net.sourceforge.pmd.renderers.Renderer;
+import net.sourceforge.pmd.renderers.internal.StreamingRendererListener;
 import net.sourceforge.pmd.reporting.ConfigurableFileNameRenderer;
 import net.sourceforge.pmd.reporting.FileAnalysisListener;
 import net.sourceforge.pmd.reporting.GlobalAnalysisListener;
@@ -141,6 +145,7 @@ public final class PmdAnalysis implements AutoCloseable {
     private final Map<Language, LanguagePropertyBundle> langProperties = new HashMap<>();
     private boolean closed;
     private final ConfigurableFileNameRenderer fileNameRenderer = new ConfigurableFileNameRenderer();
+    private AnalysisProfiler profiler;
 
     /**
      * Constructs a new instance. The files paths (input files, filelist,
@@ -292,6 +297,17 @@ public final class PmdAnalysis implements AutoCloseable {
         listeners.forEach(this::addListener);
     }
 
+    /**
+     * Sets the profiler that records how long each file and each rule
+     * of this analysis take. By default, the analysis is not profiled.
+     *
+     * @param profiler The profiler, or null to disable profiling
+     */
+    @Experimental
+    public void setProfiler(@Nullable AnalysisProfiler profiler) {
+        this.profiler = profiler;
+    }
+
     /**
      * Add a new ruleset.
      *
@@ -416,7 +432,7 @@ public final class PmdAnalysis implements AutoCloseable {
                 // Note the analysis task is shared: all processors see
                 // the same file list, which may contain files for other
                 // languages.
-                AnalysisTask analysisTask = new AnalysisTask(
+                AnalysisTask analysisTask = AnalysisTask.create(
                     rulesets,
                     textFiles,
                     listener,
@@ -424,7 +440,11 @@ public final class PmdAnalysis implements AutoCloseable {
                     configuration.getAnalysisCache(),
                     reporter,
                     lpRegistry
-                );
+                ).withFileSchedulingMode(configuration.getFileSchedulingMode())
+                 .withConcurrentRulesThreshold(configuration.getConcurrentRulesThreshold())
+                 .withCacheUsesFileMetadata(configuration.isAnalysisCacheUsesFileMetadata())
+                 .withProfiler(profiler)
+                 .withFileTimeout(configuration.getFileTimeout());
 
                 List<AutoCloseable> analyses = new ArrayList<>();
                 try {
@@ -458,8 +478,14 @@ public final class PmdAnalysis implements AutoCloseable {
             return GlobalAnalysisListener.noop();
         }
 
+        // renderers that only consume file reports share a single writer thread
+        List<Renderer> streamingRenderers = new ArrayList<>();
         List<GlobalAnalysisListener> rendererListeners = new ArrayList<>(renderers.size());
         for (Renderer renderer : renderers) {
+            if (renderer.rendersFileReports()) {
+                streamingRenderers.add(renderer);
+                continue;
+            }
             try {
                 @SuppressWarnings("PMD.CloseResource")
                 GlobalAnalysisListener listener =
@@ -471,6 +497,14 @@ public final class PmdAnalysis implements AutoCloseable {
                 throw AssertionUtil.shouldNotReachHere("ensureClosed should have thrown");
             }
         }
+        if (!streamingRenderers.isEmpty()) {
+            try {
+                rendererListeners.add(StreamingRendererListener.start(streamingRenderers, StreamingRendererListener.DEFAULT_CAPACITY));
+            } catch (Exception ioe) {
+                IOUtil.ensureClosed(rendererListeners, ioe);
+                throw AssertionUtil.shouldNotReachHere("ensureClosed should have thrown");
+            }
+        }
         return GlobalAnalysisListener.tee(rendererListeners);
     }
 
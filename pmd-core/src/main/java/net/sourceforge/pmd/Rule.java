@@ -265,6 +265,24 @@ public interface Rule extends PropertySource {
          // by default do nothing
     }
 
+    /**
+     * Returns true if this rule can be applied concurrently to several
+     * files by several threads, once it has been {@linkplain #initialize(LanguageProcessor) initialized}.
+     * This is the case if the rule does not keep any per-file state in
+     * its fields during {@link #start(RuleContext)}, {@link #apply(Node, RuleContext)}
+     * and {@link #end(RuleContext)}. A multithreaded analysis shares a
+     * single instance of a thread-safe rule between all threads, while
+     * other rules are {@linkplain #deepCopy() copied} and initialized
+     * once per thread.
+     *
+     * <p>By default, rules are assumed not to be thread-safe.
+     *
+     * @return True if this rule is thread-safe
+     */
+    default boolean isThreadSafe() {
+        return false;
+    }
+
     /**
      * Start processing. Called once per file, before apply() is first called.
      *
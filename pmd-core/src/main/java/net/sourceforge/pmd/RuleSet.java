@@ -14,6 +14,7 @@ import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 import java.util.regex.Pattern;
 
 import org.apache.commons.lang3.StringUtils;
@@ -79,6 +80,10 @@ public class RuleSet implements ChecksumAware {
     }
 
     public RuleSet(final RuleSet rs) {
+        this(rs, Rule::deepCopy);
+    }
+
+    private RuleSet(final RuleSet rs, UnaryOperator<Rule> copyRule) {
         checksum = rs.checksum;
         fileName = rs.fileName;
         name = rs.name;
@@ -86,7 +91,7 @@ public class RuleSet implements ChecksumAware {
 
         rules = new ArrayList<>(rs.rules.size());
         for (final Rule rule : rs.rules) {
-            rules.add(rule.deepCopy());
+            rules.add(copyRule.apply(rule));
         }
 
         excludePatterns = rs.excludePatterns; // we can share immutable lists of immutable elements
@@ -94,6 +99,15 @@ public class RuleSet implements ChecksumAware {
         filter = rs.filter; // filters are immutable, can be shared
     }
 
+    /**
+     * Returns a copy of this ruleset to be used by another thread.
+     * {@linkplain Rule#isThreadSafe() Thread-safe} rules are shared
+     * with this ruleset, the other rules are deep-copied.
+     */
+    RuleSet copyForThread() {
+        return new RuleSet(this, rule -> rule.isThreadSafe() ? rule : rule.deepCopy());
+    }
+
     /**
      * Creates a new ruleset containing a single rule. The ruleset will
      * have default description, name, and null file name.
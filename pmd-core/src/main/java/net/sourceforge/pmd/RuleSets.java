@@ -5,18 +5,27 @@
 package net.sourceforge.pmd;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 import net.sourceforge.pmd.annotation.InternalApi;
+import net.sourceforge.pmd.benchmark.AnalysisProfiler;
+import net.sourceforge.pmd.benchmark.AnalysisProfiler.FileRecorder;
 import net.sourceforge.pmd.benchmark.TimeTracker;
 import net.sourceforge.pmd.benchmark.TimedOperation;
 import net.sourceforge.pmd.benchmark.TimedOperationCategory;
 import net.sourceforge.pmd.lang.LanguageProcessorRegistry;
+import net.sourceforge.pmd.lang.LanguageVersionHandler;
 import net.sourceforge.pmd.lang.ast.RootNode;
 import net.sourceforge.pmd.lang.document.TextFile;
 import net.sourceforge.pmd.lang.rule.internal.RuleApplicator;
@@ -38,6 +47,11 @@ public class RuleSets {
 
     private RuleApplicator ruleApplicator;
 
+    /** The profiler for which {@link #profiledRuleIds} were resolved. */
+    private @Nullable AnalysisProfiler ruleIdsProfiler;
+    /** The profiler ids of the rules of each ruleset, in the order of the rules. */
+    private int[][] profiledRuleIds;
+
     /**
      * Copy constructor. Deep copies RuleSets.
      *
@@ -65,10 +79,17 @@ public class RuleSets {
     }
 
     public void initializeRules(LanguageProcessorRegistry lpReg, MessageReporter reporter) {
+        initializeRules(lpReg, reporter, rule -> true);
+    }
+
+    private void initializeRules(LanguageProcessorRegistry lpReg, MessageReporter reporter, Predicate<Rule> filter) {
         // this is abusing the mutability of RuleSet, will go away eventually.
         for (RuleSet rset : ruleSets) {
             for (Iterator<Rule> iterator = rset.getRules().iterator(); iterator.hasNext();) {
                 Rule rule = iterator.next();
+                if (!filter.test(rule)) {
+                    continue;
+                }
                 try {
                     rule.initialize(lpReg.getProcessor(rule.getLanguage()));
                 } catch (Exception e) {
@@ -80,6 +101,30 @@ public class RuleSets {
         }
     }
 
+    /**
+     * Returns a copy of these rulesets to be used by another thread of
+     * a multithreaded analysis. {@linkplain Rule#isThreadSafe() Thread-safe}
+     * rules are shared with this instance, so they must already have
+     * been {@linkplain #initializeRules(LanguageProcessorRegistry, MessageReporter) initialized}.
+     * The other rules are deep-copied and initialized again. The copy
+     * only has its own per-file state, eg the index of the AST being
+     * analysed.
+     *
+     * @param lpReg    Language processors used to initialize the copied rules
+     * @param reporter Reporter for rules whose initialization fails. Those are removed from the copy.
+     *
+     * @return A new RuleSets instance
+     */
+    public RuleSets copyForThread(LanguageProcessorRegistry lpReg, MessageReporter reporter) {
+        List<RuleSet> rsets = new ArrayList<>(ruleSets.size());
+        for (final RuleSet rs : ruleSets) {
+            rsets.add(rs.copyForThread());
+        }
+        RuleSets copy = new RuleSets(rsets);
+        copy.initializeRules(lpReg, reporter, rule -> !rule.isThreadSafe());
+        return copy;
+    }
+
     private RuleApplicator prepareApplicator() {
         return RuleApplicator.build(ruleSets.stream().flatMap(it -> it.getRules().stream())::iterator);
     }
@@ -142,6 +187,39 @@ public class RuleSets {
      * @param listener Listener that will handle events while analysing.
      */
     public void apply(RootNode root, FileAnalysisListener listener) {
+        doApply(root, listener, null, null);
+    }
+
+    /**
+     * Apply the applicable rules accepted by the given filter to the
+     * compilation unit. This is used eg to only run the rules that
+     * changed since the last analysis of an unchanged file.
+     *
+     * @param root       the compilation unit
+     * @param listener   Listener that will handle events while analysing.
+     * @param ruleFilter Filter for the rules to apply
+     */
+    public void apply(RootNode root, FileAnalysisListener listener, Predicate<? super Rule> ruleFilter) {
+        doApply(root, listener, Objects.requireNonNull(ruleFilter, "ruleFilter"), null);
+    }
+
+    /**
+     * Apply the applicable rules to the compilation unit concurrently,
+     * on the given pool. The AST must support concurrent access, see
+     * {@link LanguageVersionHandler#prepareForConcurrentRules(RootNode)}.
+     * The events are forwarded to the listener on the current thread,
+     * in the same order whatever the scheduling of the rules.
+     *
+     * @param root       the compilation unit
+     * @param listener   Listener that will handle events while analysing.
+     * @param ruleFilter Filter for the rules to apply, may be null to apply all rules
+     * @param pool       Pool on which the rules are applied
+     */
+    public void applyConcurrently(RootNode root, FileAnalysisListener listener, @Nullable Predicate<? super Rule> ruleFilter, ForkJoinPool pool) {
+        doApply(root, listener, ruleFilter, Objects.requireNonNull(pool, "pool"));
+    }
+
+    private void doApply(RootNode root, FileAnalysisListener listener, Predicate<? super Rule> ruleFilter, @Nullable ForkJoinPool pool) {
         if (ruleApplicator == null) {
             // initialize here instead of ctor, because some rules properties
             // are set after creating the ruleset, and jaxen xpath queries
@@ -153,11 +231,55 @@ public class RuleSets {
             ruleApplicator.index(root);
         }
 
-        for (RuleSet ruleSet : ruleSets) {
+        FileRecorder profile = AnalysisProfiler.currentFile();
+        int[][] rulesetIds = profile == null ? null : getProfiledRuleIds(profile.getProfiler());
+
+        // the rules of all rulesets are applied at once, so that
+        // they are split across all threads when applied concurrently
+        List<Rule> rules = new ArrayList<>();
+        int[] ruleIds = rulesetIds == null ? null : new int[ruleCount()];
+        for (int i = 0; i < ruleSets.size(); i++) {
+            RuleSet ruleSet = ruleSets.get(i);
             if (ruleSet.applies(root.getTextDocument().getFileId())) {
-                ruleApplicator.apply(ruleSet.getRules(), listener);
+                int j = 0;
+                for (Rule rule : ruleSet.getRules()) {
+                    if (ruleFilter == null || ruleFilter.test(rule)) {
+                        if (ruleIds != null) {
+                            ruleIds[rules.size()] = rulesetIds[i][j];
+                        }
+                        rules.add(rule);
+                    }
+                    j++;
+                }
+            }
+        }
+        if (ruleIds != null && ruleIds.length != rules.size()) {
+            ruleIds = Arrays.copyOf(ruleIds, rules.size());
+        }
+        if (pool == null) {
+            ruleApplicator.apply(rules, ruleIds, listener);
+        } else {
+            ruleApplicator.applyConcurrently(rules, ruleIds, listener, pool);
+        }
+    }
+
+    /**
+     * Returns the ids of the rules of each ruleset for the given profiler.
+     * They are resolved once, and again if the profiler or the rules change.
+     */
+    private int[][] getProfiledRuleIds(AnalysisProfiler profiler) {
+        boolean upToDate = profiler == ruleIdsProfiler;
+        for (int i = 0; upToDate && i < ruleSets.size(); i++) {
+            upToDate = profiledRuleIds[i].length == ruleSets.get(i).getRules().size();
+        }
+        if (!upToDate) {
+            profiledRuleIds = new int[ruleSets.size()][];
+            for (int i = 0; i < ruleSets.size(); i++) {
+                profiledRuleIds[i] = ruleSets.get(i).getRules().stream().mapToInt(profiler::ruleId).toArray();
             }
+            ruleIdsProfiler = profiler;
         }
+        return profiledRuleIds;
     }
 
     /**
@@ -0,0 +1,173 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.benchmark;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import net.sourceforge.pmd.annotation.Experimental;
+import net.sourceforge.pmd.lang.document.FileId;
+
+/**
+ * The profile of an analysis, as recorded by an {@link AnalysisProfiler}.
+ * It describes the distribution of the time spent on each file and by
+ * each rule, to find the files and rules that make an analysis slow.
+ */
+@Experimental
+public final class AnalysisProfile {
+
+    private final TimeStats fileStats;
+    private final List<FileProfile> files;
+    private final List<RuleProfile> rules;
+    private final Map<String, Long> counters;
+
+    AnalysisProfile(TimeStats fileStats, List<FileProfile> files, List<RuleProfile> rules, Map<String, Long> counters) {
+        this.fileStats = fileStats;
+        this.files = Collections.unmodifiableList(files);
+        this.rules = Collections.unmodifiableList(rules);
+        this.counters = Collections.unmodifiableMap(counters);
+    }
+
+    /**
+     * Returns the distribution of the time spent on each file.
+     */
+    public TimeStats getFileStats() {
+        return fileStats;
+    }
+
+    /**
+     * Returns the profile of each file, the slowest first.
+     */
+    public List<FileProfile> getFiles() {
+        return files;
+    }
+
+    /**
+     * Returns the profile of each rule, the one that took the most
+     * time in total first.
+     */
+    public List<RuleProfile> getRules() {
+        return rules;
+    }
+
+    /**
+     * Returns the counters that were added to the profiler, by name,
+     * eg the hits and misses of the caches of a language.
+     *
+     * @see AnalysisProfiler#addCounters(java.util.function.Supplier)
+     */
+    public Map<String, Long> getCounters() {
+        return counters;
+    }
+
+    /**
+     * The distribution of a set of durations.
+     */
+    public static final class TimeStats {
+
+        private final long count;
+        private final long totalNanos;
+        private final long p50Nanos;
+        private final long p95Nanos;
+        private final long maxNanos;
+
+        TimeStats(Histogram histogram) {
+            this.count = histogram.getCount();
+            this.totalNanos = histogram.getTotalNanos();
+            this.p50Nanos = histogram.getPercentileNanos(0.5);
+            this.p95Nanos = histogram.getPercentileNanos(0.95);
+            this.maxNanos = histogram.getMaxNanos();
+        }
+
+        /** Returns the number of durations. */
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        /** Returns the median, which is approximated. */
+        public long getP50Nanos() {
+            return p50Nanos;
+        }
+
+        /** Returns the 95th percentile, which is approximated. */
+        public long getP95Nanos() {
+            return p95Nanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+    }
+
+    /**
+     * The time spent on one file.
+     */
+    public static final class FileProfile {
+
+        private final FileId fileId;
+        private final long totalNanos;
+        private final long parseNanos;
+        private final long rulesNanos;
+
+        FileProfile(FileId fileId, long totalNanos, long parseNanos, long rulesNanos) {
+            this.fileId = fileId;
+            this.totalNanos = totalNanos;
+            this.parseNanos = parseNanos;
+            this.rulesNanos = rulesNanos;
+        }
+
+        public FileId getFileId() {
+            return fileId;
+        }
+
+        /** Returns the time spent on the file, including reading it and checking the cache. */
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        /** Returns the time spent parsing the file, zero if it was not parsed. */
+        public long getParseNanos() {
+            return parseNanos;
+        }
+
+        /** Returns the time spent applying the rules on the file. */
+        public long getRulesNanos() {
+            return rulesNanos;
+        }
+    }
+
+    /**
+     * The time spent by one rule, over the files it was applied on.
+     */
+    public static final class RuleProfile {
+
+        private final String name;
+        private final TimeStats stats;
+
+        RuleProfile(String name, TimeStats stats) {
+            this.name = name;
+            this.stats = stats;
+        }
+
+        /**
+         * Returns the name of the rule.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the distribution of the time the rule took on each file.
+         */
+        public TimeStats getStats() {
+            return stats;
+        }
+    }
+}
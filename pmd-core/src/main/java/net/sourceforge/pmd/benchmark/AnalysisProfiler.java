@@ -0,0 +1,254 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import net.sourceforge.pmd.PmdAnalysis;
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RuleSets;
+import net.sourceforge.pmd.annotation.Experimental;
+import net.sourceforge.pmd.annotation.InternalApi;
+import net.sourceforge.pmd.benchmark.AnalysisProfile.FileProfile;
+import net.sourceforge.pmd.benchmark.AnalysisProfile.RuleProfile;
+import net.sourceforge.pmd.benchmark.AnalysisProfile.TimeStats;
+import net.sourceforge.pmd.lang.document.FileId;
+
+/**
+ * Records how long each file and each rule of an analysis take. Unlike
+ * the {@link TimeTracker}, a profiler belongs to a single {@link PmdAnalysis},
+ * see {@link PmdAnalysis#setProfiler(AnalysisProfiler)}.
+ *
+ * <p>Each analysis thread records into its own counters, which are
+ * indexed by rule and allocated once, so that profiling has a low
+ * overhead. The id of each rule is {@linkplain #ruleId(Rule) resolved}
+ * once per {@link RuleSets}, not for each file. The time each rule took on each file is kept in a histogram,
+ * from which the percentiles of the {@linkplain #getProfile() profile}
+ * are computed.
+ *
+ * <p>Language processors may also {@linkplain #addCounters(Supplier) add counters}
+ * to the profile, eg the hits and misses of their caches.
+ */
+@Experimental
+public final class AnalysisProfiler {
+
+    private static final ThreadLocal<FileRecorder> CURRENT = new ThreadLocal<>();
+
+    // guarded by this
+    private final Map<List<String>, Integer> ruleIds = new HashMap<>();
+    private final List<String> ruleNames = new ArrayList<>();
+    private final Set<String> usedRuleNames = new HashSet<>();
+
+    private final Queue<FileRecorder> recorders = new ConcurrentLinkedQueue<>();
+    private final List<Supplier<? extends Map<String, Long>>> counterSources = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<FileRecorder> threadRecorder = ThreadLocal.withInitial(() -> {
+        FileRecorder recorder = new FileRecorder(this);
+        recorders.add(recorder);
+        return recorder;
+    });
+
+    /**
+     * Starts recording the analysis of a file on the current thread.
+     * Until {@link FileRecorder#endFile()} is called, the recorder is
+     * returned by {@link #currentFile()} on this thread.
+     */
+    @InternalApi
+    public FileRecorder startFile(FileId fileId) {
+        FileRecorder recorder = threadRecorder.get();
+        recorder.start(fileId);
+        CURRENT.set(recorder);
+        return recorder;
+    }
+
+    /**
+     * Returns the recorder of the file being analysed on the current
+     * thread, or null if the analysis is not profiled.
+     */
+    @InternalApi
+    public static @Nullable FileRecorder currentFile() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Adds counters to the profile. The supplier is called when the
+     * profile is built, and returns the current value of each counter
+     * by name, in the order they should be reported. Counters that have
+     * the same name in several suppliers are summed.
+     */
+    @InternalApi
+    public void addCounters(Supplier<? extends Map<String, Long>> counters) {
+        counterSources.add(counters);
+    }
+
+    /**
+     * Returns the id under which the times of the given rule are recorded,
+     * see {@link FileRecorder#recordRule(int, long)}. Rules are identified
+     * by their language, ruleset and name, so that the copies of a rule
+     * used by different threads have the same id, but rules that have the
+     * same name in different rulesets don't. The profile names the rule by
+     * its name, qualified with its ruleset and language if another rule
+     * already has that name.
+     */
+    @InternalApi
+    public synchronized int ruleId(Rule rule) {
+        String language = rule.getLanguage() == null ? null : rule.getLanguage().getId();
+        List<String> key = Arrays.asList(language, rule.getRuleSetName(), rule.getName());
+        return ruleIds.computeIfAbsent(key, k -> {
+            String name = rule.getName();
+            if (!usedRuleNames.add(name)) {
+                name = name + " (" + rule.getRuleSetName() + ", " + language + ")";
+                usedRuleNames.add(name);
+            }
+            ruleNames.add(name);
+            return ruleNames.size() - 1;
+        });
+    }
+
+    /**
+     * Returns the profile of the files that were analysed so far. This
+     * must be called once the analysis is over, the files being analysed
+     * concurrently may or may not be included.
+     */
+    public AnalysisProfile getProfile() {
+        List<String> names;
+        synchronized (this) {
+            names = new ArrayList<>(ruleNames);
+        }
+
+        Histogram fileHistogram = new Histogram();
+        List<FileProfile> files = new ArrayList<>();
+        Histogram[] ruleHistograms = new Histogram[names.size()];
+        for (FileRecorder recorder : recorders) {
+            fileHistogram.merge(recorder.fileHistogram);
+            files.addAll(recorder.files);
+            for (int i = 0; i < recorder.ruleHistograms.length; i++) {
+                if (recorder.ruleHistograms[i] != null) {
+                    if (ruleHistograms[i] == null) {
+                        ruleHistograms[i] = new Histogram();
+                    }
+                    ruleHistograms[i].merge(recorder.ruleHistograms[i]);
+                }
+            }
+        }
+
+        List<RuleProfile> rules = new ArrayList<>();
+        for (int i = 0; i < ruleHistograms.length; i++) {
+            if (ruleHistograms[i] != null) {
+                rules.add(new RuleProfile(names.get(i), new TimeStats(ruleHistograms[i])));
+            }
+        }
+        files.sort(Comparator.comparingLong(FileProfile::getTotalNanos).reversed());
+        rules.sort(Comparator.comparingLong((RuleProfile r) -> r.getStats().getTotalNanos()).reversed());
+
+        Map<String, Long> counters = new LinkedHashMap<>();
+        for (Supplier<? extends Map<String, Long>> source : counterSources) {
+            source.get().forEach((name, value) -> counters.merge(name, value, Long::sum));
+        }
+        return new AnalysisProfile(new TimeStats(fileHistogram), files, rules, counters);
+    }
+
+    /**
+     * Records the analysis of the files of one thread. This class is not
+     * thread-safe, it must only be used by the thread that started the file.
+     */
+    @InternalApi
+    public static final class FileRecorder {
+
+        private final AnalysisProfiler profiler;
+
+        private Histogram[] ruleHistograms = new Histogram[0];
+        private final Histogram fileHistogram = new Histogram();
+        private final List<FileProfile> files = new ArrayList<>();
+
+        // state of the current file
+        private FileId fileId;
+        private long startNanos;
+        private long parseNanos;
+        private long rulesNanos;
+        private long[] fileRuleNanos = new long[0];
+        private int[] fileRules = new int[0];
+        private int numFileRules;
+
+        private FileRecorder(AnalysisProfiler profiler) {
+            this.profiler = profiler;
+        }
+
+        private void start(FileId fileId) {
+            this.fileId = fileId;
+            this.startNanos = System.nanoTime();
+            this.parseNanos = 0;
+            this.rulesNanos = 0;
+        }
+
+        /** Returns the profiler this recorder belongs to. */
+        public AnalysisProfiler getProfiler() {
+            return profiler;
+        }
+
+        /** Records the time it took to parse the current file. */
+        public void recordParse(long nanos) {
+            parseNanos += nanos;
+        }
+
+        /** Records the time it took to apply the rules on the current file. */
+        public void recordRules(long nanos) {
+            rulesNanos += nanos;
+        }
+
+        /**
+         * Records the time a rule took on the current file. The id is
+         * that returned by {@link AnalysisProfiler#ruleId(Rule)}.
+         */
+        public void recordRule(int id, long nanos) {
+            if (id >= fileRuleNanos.length) {
+                int size = Math.max(id + 1, 2 * fileRuleNanos.length);
+                fileRuleNanos = Arrays.copyOf(fileRuleNanos, size);
+                fileRules = Arrays.copyOf(fileRules, size);
+                ruleHistograms = Arrays.copyOf(ruleHistograms, size);
+            }
+            if (fileRuleNanos[id] == 0) {
+                fileRules[numFileRules++] = id;
+            }
+            // at least one nanosecond, to mark the rule as seen
+            fileRuleNanos[id] += Math.max(1, nanos);
+        }
+
+        /**
+         * Ends the recording of the current file, and unbinds this
+         * recorder from the current thread.
+         */
+        public void endFile() {
+            long totalNanos = System.nanoTime() - startNanos;
+            fileHistogram.record(totalNanos);
+            files.add(new FileProfile(fileId, totalNanos, parseNanos, rulesNanos));
+
+            for (int i = 0; i < numFileRules; i++) {
+                int id = fileRules[i];
+                if (ruleHistograms[id] == null) {
+                    ruleHistograms[id] = new Histogram();
+                }
+                ruleHistograms[id].record(fileRuleNanos[id]);
+                fileRuleNanos[id] = 0;
+            }
+            numFileRules = 0;
+            fileId = null;
+            CURRENT.remove();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.benchmark;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.text.MessageFormat;
+import java.util.List;
+import java.util.Map.Entry;
+
+import org.apache.commons.lang3.StringUtils;
+
+import net.sourceforge.pmd.annotation.Experimental;
+import net.sourceforge.pmd.benchmark.AnalysisProfile.FileProfile;
+import net.sourceforge.pmd.benchmark.AnalysisProfile.RuleProfile;
+import net.sourceforge.pmd.benchmark.AnalysisProfile.TimeStats;
+
+/**
+ * A text based renderer for {@link AnalysisProfile}. It renders the
+ * distribution of the time taken by each rule, the one of the time
+ * taken by each file, the slowest files, and the counters if there
+ * are any.
+ */
+@Experimental
+public class TextProfileRenderer {
+
+    /** Default number of slowest files that are rendered. */
+    public static final int DEFAULT_SLOWEST_FILES = 20;
+
+    private static final String MILLIS_FORMAT = "{0,number,0.000}";
+    private static final String COUNT_FORMAT = "{0,number,###,###,###}";
+
+    private static final int LABEL_COLUMN_WIDTH = 50;
+    private static final int COUNT_COLUMN_WIDTH = 9;
+    private static final int TIME_COLUMN_WIDTH = 13;
+
+    private static final int COLUMNS = LABEL_COLUMN_WIDTH + COUNT_COLUMN_WIDTH + 4 * TIME_COLUMN_WIDTH;
+
+    private final int slowestFiles;
+
+    public TextProfileRenderer() {
+        this(DEFAULT_SLOWEST_FILES);
+    }
+
+    /**
+     * @param slowestFiles Number of slowest files to render
+     */
+    public TextProfileRenderer(int slowestFiles) {
+        this.slowestFiles = slowestFiles;
+    }
+
+    /**
+     * Renders the given profile into the given writer. The writer is
+     * flushed, but not closed.
+     */
+    public void render(AnalysisProfile profile, Writer writer0) {
+        PrintWriter writer = new PrintWriter(writer0);
+
+        renderHeader("Rules", writer);
+        renderColumnTitles(writer, "Rule", "Files", "Total (ms)", "p50 (ms)", "p95 (ms)", "Max (ms)");
+        for (RuleProfile rule : profile.getRules()) {
+            renderStats(rule.getName(), rule.getStats(), writer);
+        }
+        writer.println();
+
+        renderHeader("Files", writer);
+        renderColumnTitles(writer, "", "Files", "Total (ms)", "p50 (ms)", "p95 (ms)", "Max (ms)");
+        renderStats("All files", profile.getFileStats(), writer);
+        writer.println();
+
+        renderHeader("Slowest files", writer);
+        renderColumnTitles(writer, "File", "", "Total (ms)", "Parse (ms)", "Rules (ms)", "");
+        List<FileProfile> files = profile.getFiles();
+        for (FileProfile file : files.subList(0, Math.min(slowestFiles, files.size()))) {
+            writer.write(StringUtils.rightPad(file.getFileId().getOriginalPath(), LABEL_COLUMN_WIDTH + COUNT_COLUMN_WIDTH));
+            writer.write(StringUtils.leftPad(millis(file.getTotalNanos()), TIME_COLUMN_WIDTH));
+            writer.write(StringUtils.leftPad(millis(file.getParseNanos()), TIME_COLUMN_WIDTH));
+            writer.write(StringUtils.leftPad(millis(file.getRulesNanos()), TIME_COLUMN_WIDTH));
+            writer.println();
+        }
+
+        if (!profile.getCounters().isEmpty()) {
+            writer.println();
+            renderHeader("Counters", writer);
+            renderColumnTitles(writer, "Counter", "", "Value");
+            for (Entry<String, Long> counter : profile.getCounters().entrySet()) {
+                writer.write(StringUtils.rightPad(counter.getKey(), LABEL_COLUMN_WIDTH + COUNT_COLUMN_WIDTH));
+                writer.write(StringUtils.leftPad(MessageFormat.format(COUNT_FORMAT, counter.getValue()), TIME_COLUMN_WIDTH));
+                writer.println();
+            }
+        }
+
+        writer.flush();
+    }
+
+    private void renderStats(String label, TimeStats stats, PrintWriter writer) {
+        writer.write(StringUtils.rightPad(label, LABEL_COLUMN_WIDTH));
+        writer.write(StringUtils.leftPad(MessageFormat.format(COUNT_FORMAT, stats.getCount()), COUNT_COLUMN_WIDTH));
+        writer.write(StringUtils.leftPad(millis(stats.getTotalNanos()), TIME_COLUMN_WIDTH));
+        writer.write(StringUtils.leftPad(millis(stats.getP50Nanos()), TIME_COLUMN_WIDTH));
+        writer.write(StringUtils.leftPad(millis(stats.getP95Nanos()), TIME_COLUMN_WIDTH));
+        writer.write(StringUtils.leftPad(millis(stats.getMaxNanos()), TIME_COLUMN_WIDTH));
+        writer.println();
+    }
+
+    private static String millis(long nanos) {
+        return MessageFormat.format(MILLIS_FORMAT, nanos / 1_000_000.0);
+    }
+
+    private void renderColumnTitles(PrintWriter writer, String label, String count, String... times) {
+        writer.write(StringUtils.rightPad(label, LABEL_COLUMN_WIDTH));
+        writer.write(StringUtils.leftPad(count, COUNT_COLUMN_WIDTH));
+        for (String time : times) {
+            writer.write(StringUtils.leftPad(time, TIME_COLUMN_WIDTH));
+        }
+        writer.println();
+        writer.println();
+    }
+
+    private void renderHeader(String displayName, PrintWriter writer) {
+        StringBuilder sb = new StringBuilder(COLUMNS).append(displayName);
+
+        // Make sure we have an even-length string
+        if (displayName.length() % 2 == 1) {
+            sb.append(' ');
+        }
+
+        // Surround with <<< and >>>
+        sb.insert(0, "<<< ").append(" >>>");
+
+        // Create the ruler
+        while (sb.length() < COLUMNS) {
+            sb.insert(0, '-').append('-');
+        }
+
+        writer.write(sb.toString());
+        writer.println();
+    }
+}
@@ -26,6 +26,8 @@ public enum TimedOperationCategory {
     RULE_AST_INDEXATION,
     REPORTING,
     FILE_PROCESSING,
+    /** Subdivided into one label for each worker thread, which measures the time it was busy. */
+    WORKER_THREAD,
     ANALYSIS_CACHE,
     UNACCOUNTED;
 
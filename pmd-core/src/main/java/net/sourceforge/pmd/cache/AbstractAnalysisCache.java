@@ -4,8 +4,11 @@
 
 package net.sourceforge.pmd.cache;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.nio.file.FileVisitOption;
@@ -15,18 +18,28 @@ import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.zip.Adler32;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import net.sourceforge.pmd.PMDVersion;
 import net.sourceforge.pmd.Report.ProcessingError;
+import net.sourceforge.pmd.Rule;
 import net.sourceforge.pmd.RuleSets;
 import net.sourceforge.pmd.RuleViolation;
 import net.sourceforge.pmd.annotation.InternalApi;
@@ -34,6 +47,8 @@ import net.sourceforge.pmd.benchmark.TimeTracker;
 import net.sourceforge.pmd.benchmark.TimedOperation;
 import net.sourceforge.pmd.benchmark.TimedOperationCategory;
 import net.sourceforge.pmd.cache.internal.ClasspathFingerprinter;
+import net.sourceforge.pmd.cache.internal.FileDependencyRecorder;
+import net.sourceforge.pmd.cache.internal.FileStamp;
 import net.sourceforge.pmd.internal.util.IOUtil;
 import net.sourceforge.pmd.lang.document.FileId;
 import net.sourceforge.pmd.lang.document.TextDocument;
@@ -58,6 +73,25 @@ public abstract class AbstractAnalysisCache implements AnalysisCache {
     protected long rulesetChecksum;
     protected long auxClassPathChecksum;
     protected long executionClassPathChecksum;
+    /** Checksum of each rule, by {@linkplain CachedRuleMapper#getRuleKey(Rule) rule key}. */
+    protected Map<String, Long> ruleChecksums = Collections.emptyMap();
+    /**
+     * Keys of the rules that changed since the cache was written, if only some of them did.
+     * Null if the cached results are valid for all rules.
+     */
+    private Set<String> staleRules;
+    /** Still valid violations of the files on which only the stale rules must be run. */
+    private final ConcurrentMap<FileId, List<RuleViolation>> partialResults = new ConcurrentHashMap<>();
+    /** Current fingerprints of the classpath resources files depend on. */
+    private final ConcurrentMap<String, Long> dependencyFingerprints = new ConcurrentHashMap<>();
+    /** Metadata of the files whose metadata check failed, recorded with the result of their content check. */
+    private final ConcurrentMap<FileId, FileStamp> currentStamps = new ConcurrentHashMap<>();
+    private ClassLoader auxclassPathClassLoader;
+    /**
+     * Whether the auxclasspath is known to be the same as when the cache was written.
+     * This cannot be known if it contains directories, whose contents are not fingerprinted.
+     */
+    private boolean auxClassPathUnchanged;
 
     /**
      * Creates a new empty cache
@@ -66,27 +100,77 @@ public abstract class AbstractAnalysisCache implements AnalysisCache {
         pmdVersion = PMDVersion.VERSION;
     }
 
+    @Override
+    public boolean isUpToDateByMetadata(final TextFile file) {
+        try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.ANALYSIS_CACHE, "metadata check")) {
+            final FileStamp stamp = FileStamp.of(file.getFileAttributes(), System.currentTimeMillis());
+            if (stamp == null) {
+                return false;
+            }
+            final FileId fileId = file.getFileId();
+            final AnalysisResult cachedResult = fileResultsCache.get(fileId);
+
+            // if some rules changed, the content check filters the cached violations
+            if (cachedResult != null
+                && staleRules == null
+                && stamp.equals(cachedResult.getFileStamp())
+                && areDependenciesUpToDate(cachedResult)) {
+                LOG.trace("Incremental Analysis cache HIT - file metadata unchanged");
+                updatedResultsCache.put(fileId, cachedResult);
+                return true;
+            }
+            currentStamps.put(fileId, stamp);
+            return false;
+        }
+    }
+
     @Override
     public boolean isUpToDate(final TextDocument document) {
         try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.ANALYSIS_CACHE, "up-to-date check")) {
             final AnalysisResult cachedResult = fileResultsCache.get(document.getFileId());
+            final FileStamp stamp = currentStamps.remove(document.getFileId());
             final AnalysisResult updatedResult;
 
-            // is this a known file? has it changed?
-            final boolean upToDate = cachedResult != null
-                && cachedResult.getFileChecksum() == document.getCheckSum();
-
-            if (upToDate) {
+            // is this a known file? has it or one of its dependencies changed?
+            boolean upToDate = cachedResult != null
+                && cachedResult.getFileChecksum() == document.getCheckSum()
+                && areDependenciesUpToDate(cachedResult);
+
+            if (upToDate && staleRules != null) {
+                // only keep the violations of the rules that are unchanged
+                final List<RuleViolation> validViolations =
+                    cachedResult.getViolations().stream().filter(this::isStillValid).collect(Collectors.toList());
+
+                if (staleRules.isEmpty()) {
+                    LOG.trace("Incremental Analysis cache HIT - some rules were removed");
+                    updatedResult = new AnalysisResult(cachedResult.getFileChecksum(), validViolations,
+                                                       cachedResult.getAnalysisTimeNanos());
+                    updatedResult.setDependencies(cachedResult.getDependencies());
+                    updatedResult.setFileStamp(stamp);
+                    fileResultsCache.put(document.getFileId(), updatedResult);
+                } else {
+                    LOG.trace("Incremental Analysis cache PARTIAL HIT - some rules changed");
+                    partialResults.put(document.getFileId(), validViolations);
+                    updatedResult = new AnalysisResult(document.getCheckSum(), new ArrayList<>());
+                    // the violations we keep depend on those
+                    updatedResult.setDependencies(cachedResult.getDependencies());
+                    updatedResult.setFileStamp(stamp);
+                    upToDate = false;
+                }
+            } else if (upToDate) {
                 LOG.trace("Incremental Analysis cache HIT");
                 
                 // copy results over
-                updatedResult = cachedResult;
+                updatedResult = stamp == null ? cachedResult : restamp(cachedResult, stamp);
             } else {
                 LOG.trace("Incremental Analysis cache MISS - {}",
-                          cachedResult != null ? "file changed" : "no previous result found");
+                          cachedResult == null ? "no previous result found"
+                                               : cachedResult.getFileChecksum() != document.getCheckSum()
+                                                 ? "file changed" : "dependencies changed");
                 
                 // New file being analyzed, create new empty entry
                 updatedResult = new AnalysisResult(document.getCheckSum(), new ArrayList<>());
+                updatedResult.setFileStamp(stamp);
             }
 
             updatedResultsCache.put(document.getFileId(), updatedResult);
@@ -95,9 +179,124 @@ public abstract class AbstractAnalysisCache implements AnalysisCache {
         }
     }
 
+    /**
+     * Returns a copy of the given result with the new metadata of the file,
+     * eg if it was touched without being changed.
+     */
+    private static AnalysisResult restamp(final AnalysisResult result, final FileStamp stamp) {
+        if (stamp.equals(result.getFileStamp())) {
+            return result;
+        }
+        final AnalysisResult restamped = new AnalysisResult(result.getFileChecksum(), result.getViolations(),
+                                                            result.getAnalysisTimeNanos());
+        restamped.setDependencies(result.getDependencies());
+        restamped.setFileStamp(stamp);
+        return restamped;
+    }
+
+    /**
+     * Returns true if the fingerprints of the dependencies recorded for
+     * the given result did not change. Results without recorded dependencies
+     * are considered up to date, and so are all results if the auxclasspath
+     * did not change at all.
+     */
+    protected boolean areDependenciesUpToDate(final AnalysisResult result) {
+        final Map<String, Long> dependencies = result.getDependencies();
+        if (dependencies == null || auxClassPathUnchanged) {
+            return true;
+        }
+        for (Map.Entry<String, Long> dependency : dependencies.entrySet()) {
+            if (fingerprintDependency(dependency.getKey()) != dependency.getValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the current fingerprint of the given classpath resource,
+     * or 0 if it is not found on the auxclasspath.
+     */
+    protected long fingerprintDependency(final String resourceName) {
+        final Long known = dependencyFingerprints.get(resourceName);
+        if (known != null) {
+            return known;
+        }
+        // computed outside of the map, so that the I/O doesn't block other updates
+        final long fingerprint = computeFingerprint(resourceName);
+        final Long previous = dependencyFingerprints.putIfAbsent(resourceName, fingerprint);
+        return previous == null ? fingerprint : previous;
+    }
+
+    private long computeFingerprint(final String resourceName) {
+        final URL url = auxclassPathClassLoader == null ? null : auxclassPathClassLoader.getResource(resourceName);
+        if (url == null) {
+            return 0L;
+        }
+        final Adler32 adler32 = new Adler32();
+        final byte[] buffer = new byte[8192];
+        try (InputStream inputStream = url.openStream()) {
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                adler32.update(buffer, 0, read);
+            }
+        } catch (final IOException e) {
+            LOG.debug("Could not fingerprint dependency {}: {}", resourceName, e.getMessage());
+            return -1L; // never matches a recorded fingerprint
+        }
+        return adler32.getValue();
+    }
+
+    /**
+     * Writes the dependencies of a result, as read by {@link #readDependencies(DataInputStream)}.
+     */
+    protected static void writeDependencies(final DataOutputStream outputStream, final Map<String, Long> dependencies) throws IOException {
+        if (dependencies == null) {
+            outputStream.writeInt(-1);
+            return;
+        }
+        outputStream.writeInt(dependencies.size());
+        for (final Map.Entry<String, Long> dependency : dependencies.entrySet()) {
+            outputStream.writeUTF(dependency.getKey());
+            outputStream.writeLong(dependency.getValue());
+        }
+    }
+
+    /**
+     * Reads the dependencies of a result, as written by {@link #writeDependencies(DataOutputStream, Map)}.
+     */
+    @SuppressWarnings("PMD.ReturnEmptyCollectionRatherThanNull") // null means not recorded
+    protected static Map<String, Long> readDependencies(final DataInputStream inputStream) throws IOException {
+        final int count = inputStream.readInt();
+        if (count < 0) {
+            return null;
+        }
+        final Map<String, Long> dependencies = new HashMap<>(count);
+        for (int i = 0; i < count; i++) {
+            dependencies.put(inputStream.readUTF(), inputStream.readLong());
+        }
+        return dependencies;
+    }
+
+    private boolean isStillValid(RuleViolation violation) {
+        // the rule is null if it has been removed
+        final Rule rule = violation.getRule();
+        return rule != null && !staleRules.contains(ruleMapper.getRuleKey(rule));
+    }
+
     @Override
     public List<RuleViolation> getCachedViolations(final TextDocument sourceFile) {
-        final AnalysisResult analysisResult = fileResultsCache.get(sourceFile.getFileId());
+        return getCachedViolations(sourceFile.getFileId());
+    }
+
+    @Override
+    public List<RuleViolation> getCachedViolations(final FileId fileId) {
+        final List<RuleViolation> partialResult = partialResults.get(fileId);
+        if (partialResult != null) {
+            return partialResult;
+        }
+
+        final AnalysisResult analysisResult = fileResultsCache.get(fileId);
 
         if (analysisResult == null) {
             // new file, avoid nulls
@@ -107,9 +306,25 @@ public abstract class AbstractAnalysisCache implements AnalysisCache {
         return analysisResult.getViolations();
     }
 
+    @Override
+    public Predicate<Rule> getRulesToRun(final TextDocument document) {
+        if (!partialResults.containsKey(document.getFileId())) {
+            return null;
+        }
+        final Set<String> rulesToRun = staleRules;
+        return rule -> rulesToRun.contains(ruleMapper.getRuleKey(rule));
+    }
+
+    @Override
+    public long getPreviousAnalysisTimeNanos(final FileId fileId) {
+        final AnalysisResult analysisResult = fileResultsCache.get(fileId);
+        return analysisResult == null ? -1 : analysisResult.getAnalysisTimeNanos();
+    }
+
     @Override
     public void analysisFailed(final TextDocument sourceFile) {
         updatedResultsCache.remove(sourceFile.getFileId());
+        currentStamps.remove(sourceFile.getFileId());
     }
 
 
@@ -124,25 +339,34 @@ public abstract class AbstractAnalysisCache implements AnalysisCache {
     public void checkValidity(RuleSets ruleSets, ClassLoader auxclassPathClassLoader, Collection<? extends TextFile> files) {
         try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.ANALYSIS_CACHE, "validity check")) {
             boolean cacheIsValid = cacheExists();
+            boolean rulesetsChanged = false;
 
             if (cacheIsValid && ruleSets.getChecksum() != rulesetChecksum) {
-                LOG.debug("Analysis cache invalidated, rulesets changed.");
-                cacheIsValid = false;
+                if (ruleChecksums.isEmpty()) {
+                    LOG.debug("Analysis cache invalidated, rulesets changed.");
+                    cacheIsValid = false;
+                } else {
+                    // we can determine which rules changed
+                    rulesetsChanged = true;
+                }
             }
 
+            this.auxclassPathClassLoader = auxclassPathClassLoader;
+            boolean auxClassPathChanged = false;
             final long currentAuxClassPathChecksum;
             if (auxclassPathClassLoader instanceof URLClassLoader) {
                 // we don't want to close our aux classpath loader - we still need it...
                 @SuppressWarnings("PMD.CloseResource") final URLClassLoader urlClassLoader = (URLClassLoader) auxclassPathClassLoader;
-                currentAuxClassPathChecksum = FINGERPRINTER.fingerprint(urlClassLoader.getURLs());
+                final URL[] auxClassPath = urlClassLoader.getURLs();
+                currentAuxClassPathChecksum = FINGERPRINTER.fingerprint(auxClassPath);
 
-                if (cacheIsValid && currentAuxClassPathChecksum != auxClassPathChecksum) {
-                    // TODO some rules don't need that (in fact, some languages)
-                    LOG.debug("Analysis cache invalidated, auxclasspath changed.");
-                    cacheIsValid = false;
-                }
+                // files with recorded dependencies are checked individually
+                auxClassPathChanged = cacheIsValid && currentAuxClassPathChecksum != auxClassPathChecksum;
+                auxClassPathUnchanged = cacheIsValid && !auxClassPathChanged
+                    && Arrays.stream(auxClassPath).noneMatch(url -> url.getPath().endsWith("/"));
             } else {
                 currentAuxClassPathChecksum = 0;
+                auxClassPathUnchanged = false;
             }
 
             final long currentExecutionClassPathChecksum = FINGERPRINTER.fingerprint(getClassPathEntries());
@@ -151,16 +375,32 @@ public abstract class AbstractAnalysisCache implements AnalysisCache {
                 cacheIsValid = false;
             }
 
+            ruleMapper.initialize(ruleSets);
+            final Map<String, Long> currentRuleChecksums = ruleMapper.getRuleChecksums();
+
             if (!cacheIsValid) {
                 // Clear the cache
                 fileResultsCache.clear();
+            } else if (auxClassPathChanged) {
+                LOG.debug("Analysis cache partially invalidated, auxclasspath changed.");
+                fileResultsCache.values().removeIf(result -> result.getDependencies() == null);
+            }
+
+            if (cacheIsValid && rulesetsChanged) {
+                staleRules = new HashSet<>();
+                for (Map.Entry<String, Long> rule : currentRuleChecksums.entrySet()) {
+                    if (!Objects.equals(ruleChecksums.get(rule.getKey()), rule.getValue())) {
+                        staleRules.add(rule.getKey());
+                    }
+                }
+                LOG.debug("Analysis cache partially invalidated, {} rules changed.", staleRules.size());
             }
 
             // Update the local checksums
             rulesetChecksum = ruleSets.getChecksum();
             auxClassPathChecksum = currentAuxClassPathChecksum;
             executionClassPathChecksum = currentExecutionClassPathChecksum;
-            ruleMapper.initialize(ruleSets);
+            ruleChecksums = currentRuleChecksums;
         }
     }
 
@@ -219,6 +459,8 @@ public abstract class AbstractAnalysisCache implements AnalysisCache {
     @Override
     public FileAnalysisListener startFileAnalysis(TextDocument file) {
         final FileId fileName = file.getFileId();
+        final long startNanos = System.nanoTime();
+        FileDependencyRecorder.startRecording();
 
         return new FileAnalysisListener() {
             @Override
@@ -230,6 +472,24 @@ public abstract class AbstractAnalysisCache implements AnalysisCache {
             public void onError(ProcessingError error) {
                 analysisFailed(file);
             }
+
+            @Override
+            public void close() {
+                final AnalysisResult result = updatedResultsCache.get(fileName);
+                // Cache hits keep the time measured when the file was actually analysed
+                if (result != null && result.getAnalysisTimeNanos() < 0) {
+                    result.setAnalysisTimeNanos(System.nanoTime() - startNanos);
+                }
+                final Set<String> dependencies = FileDependencyRecorder.stopRecording();
+                if (result != null && !dependencies.isEmpty()) {
+                    final Map<String, Long> fingerprints =
+                        result.getDependencies() == null ? new HashMap<>() : new HashMap<>(result.getDependencies());
+                    for (String dependency : dependencies) {
+                        fingerprints.put(dependency, fingerprintDependency(dependency));
+                    }
+                    result.setDependencies(fingerprints);
+                }
+            }
         };
     }
 }
@@ -6,11 +6,17 @@ package net.sourceforge.pmd.cache;
 
 import java.io.IOException;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.function.Predicate;
 
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import net.sourceforge.pmd.Rule;
 import net.sourceforge.pmd.RuleSets;
 import net.sourceforge.pmd.RuleViolation;
 import net.sourceforge.pmd.annotation.InternalApi;
+import net.sourceforge.pmd.lang.document.FileId;
 import net.sourceforge.pmd.lang.document.TextDocument;
 import net.sourceforge.pmd.lang.document.TextFile;
 import net.sourceforge.pmd.reporting.FileAnalysisListener;
@@ -43,6 +49,21 @@ public interface AnalysisCache {
      */
     boolean isUpToDate(TextDocument document);
 
+    /**
+     * Checks if a given file is up to date in the cache without reading it,
+     * by comparing its {@linkplain TextFile#getFileAttributes() metadata} with
+     * the one recorded when it was last analysed. If this returns true, the file
+     * can be skipped, and its violations are returned by {@link #getCachedViolations(FileId)}.
+     * Otherwise, its contents must be checked with {@link #isUpToDate(TextDocument)},
+     * which then records the metadata for the next analysis.
+     *
+     * @param file The file to check in the cache
+     * @return True if the metadata of the file matches, false if the contents must be checked
+     */
+    default boolean isUpToDateByMetadata(TextFile file) {
+        return false;
+    }
+
     /**
      * Retrieves cached violations for the given file. Make sure to call {@link #isUpToDate(TextDocument)} first.
      * @param sourceFile The file to check in the cache
@@ -50,6 +71,43 @@ public interface AnalysisCache {
      */
     List<RuleViolation> getCachedViolations(TextDocument sourceFile);
 
+    /**
+     * Retrieves cached violations for a file for which {@link #isUpToDateByMetadata(TextFile)}
+     * returned true.
+     *
+     * @param fileId The file to look up in the cache
+     * @return The list of cached violations.
+     */
+    default List<RuleViolation> getCachedViolations(FileId fileId) {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Returns the rules that must be run on a file for which {@link #isUpToDate(TextDocument)}
+     * returned false. If this returns null, all rules must be run. Otherwise, the file has not
+     * changed, but some rules did, and only those must be run. In that case, the violations of
+     * the other rules are still valid, and are returned by {@link #getCachedViolations(TextDocument)}.
+     *
+     * @param document The file to check in the cache
+     * @return A filter for the rules to run, or null to run all of them
+     */
+    default @Nullable Predicate<Rule> getRulesToRun(TextDocument document) {
+        return null;
+    }
+
+    /**
+     * Returns the time the analysis of the given file took in the run that
+     * produced this cache, in nanoseconds. This is used as a hint to schedule
+     * expensive files first. Make sure to call {@link #checkValidity(RuleSets, ClassLoader, Collection)}
+     * first.
+     *
+     * @param fileId The file to look up in the cache
+     * @return The previous analysis time, or a negative value if it is unknown.
+     */
+    default long getPreviousAnalysisTimeNanos(FileId fileId) {
+        return -1;
+    }
+
     /**
      * Notifies the cache that analysis of the given file has failed and should not be cached.
      * @param sourceFile The file whose analysis failed
@@ -6,9 +6,12 @@ package net.sourceforge.pmd.cache;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
 
 import net.sourceforge.pmd.RuleViolation;
 import net.sourceforge.pmd.annotation.InternalApi;
+import net.sourceforge.pmd.cache.internal.FileStamp;
 
 /**
  * The result of a single file analysis.
@@ -20,30 +23,89 @@ import net.sourceforge.pmd.annotation.InternalApi;
 public class AnalysisResult {
 
     private final long fileChecksum;
-    private final List<RuleViolation> violations;
+    private List<RuleViolation> violations;
+    private Supplier<List<RuleViolation>> violationLoader;
+    private long analysisTimeNanos;
+    private Map<String, Long> dependencies;
+    private FileStamp fileStamp;
 
     public AnalysisResult(final long fileChecksum, final List<RuleViolation> violations) {
+        this(fileChecksum, violations, -1);
+    }
+
+    public AnalysisResult(final long fileChecksum, final List<RuleViolation> violations, final long analysisTimeNanos) {
         this.fileChecksum = fileChecksum;
         this.violations = violations;
+        this.analysisTimeNanos = analysisTimeNanos;
     }
 
     public AnalysisResult(final long fileChecksum) {
         this(fileChecksum, new ArrayList<>());
     }
 
+    /**
+     * Creates a result whose violations are only loaded when they
+     * are first requested.
+     */
+    AnalysisResult(final long fileChecksum, final Supplier<List<RuleViolation>> violationLoader, final long analysisTimeNanos) {
+        this(fileChecksum, (List<RuleViolation>) null, analysisTimeNanos);
+        this.violationLoader = violationLoader;
+    }
+
     public long getFileChecksum() {
         return fileChecksum;
     }
 
-    public List<RuleViolation> getViolations() {
+    /**
+     * Returns the time the analysis of the file took, in nanoseconds,
+     * or a negative value if it is unknown.
+     */
+    public long getAnalysisTimeNanos() {
+        return analysisTimeNanos;
+    }
+
+    public void setAnalysisTimeNanos(final long analysisTimeNanos) {
+        this.analysisTimeNanos = analysisTimeNanos;
+    }
+
+    /**
+     * Returns the classpath resources the analysis of the file depended on,
+     * with their fingerprint at the time of the analysis. This is null if
+     * they were not recorded.
+     */
+    public Map<String, Long> getDependencies() {
+        return dependencies;
+    }
+
+    public void setDependencies(final Map<String, Long> dependencies) {
+        this.dependencies = dependencies;
+    }
+
+    /**
+     * Returns the metadata of the file at the time of the analysis,
+     * or null if it was not recorded.
+     */
+    public FileStamp getFileStamp() {
+        return fileStamp;
+    }
+
+    public void setFileStamp(final FileStamp fileStamp) {
+        this.fileStamp = fileStamp;
+    }
+
+    public synchronized List<RuleViolation> getViolations() {
+        if (violations == null) {
+            violations = violationLoader.get();
+            violationLoader = null;
+        }
         return violations;
     }
 
     public void addViolations(final List<RuleViolation> violations) {
-        this.violations.addAll(violations);
+        getViolations().addAll(violations);
     }
 
     public void addViolation(final RuleViolation ruleViolation) {
-        this.violations.add(ruleViolation);
+        getViolations().add(ruleViolation);
     }
 }
@@ -4,12 +4,19 @@
 
 package net.sourceforge.pmd.cache;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
 
 import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RuleSet;
 import net.sourceforge.pmd.RuleSets;
 import net.sourceforge.pmd.annotation.InternalApi;
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.properties.PropertyDescriptor;
 
 /**
  * A mapper from rule class names to rule instances for cached rules.
@@ -21,6 +28,7 @@ import net.sourceforge.pmd.annotation.InternalApi;
 public class CachedRuleMapper {
 
     private final Map<String, Rule> cachedRulesInstances = new HashMap<>();
+    private final Map<String, Long> ruleChecksums = new HashMap<>();
 
     /**
      * Finds a rule instance for the given rule class name, name and target language
@@ -34,16 +42,83 @@ public class CachedRuleMapper {
     }
 
     /**
-     * Initialize the mapper with the given rulesets.
+     * Initialize the mapper with the given rulesets. The rules of a
+     * previous initialization are forgotten.
      * @param rs The rulesets from which to retrieve rules.
      */
     public void initialize(final RuleSets rs) {
+        // the mapper may be initialized again, e.g. when the cache is reused by another analysis
+        cachedRulesInstances.clear();
+        ruleChecksums.clear();
         for (final Rule r : rs.getAllRules()) {
-            cachedRulesInstances.put(getRuleKey(r.getRuleClass(), r.getName(), r.getLanguage().getTerseName()), r);
+            cachedRulesInstances.put(getRuleKey(r), r);
         }
+        final RuleSet[] ruleSets = rs.getAllRuleSets();
+        if (ruleSets != null) {
+            for (final RuleSet ruleSet : ruleSets) {
+                final long fileFilterChecksum = computeFileFilterChecksum(ruleSet);
+                for (final Rule r : ruleSet.getRules()) {
+                    // a rule may be used in several rulesets
+                    ruleChecksums.merge(getRuleKey(r), computeRuleChecksum(r) * 31 + fileFilterChecksum,
+                        (a, b) -> a * 31 + b);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a checksum for each rule of the rulesets this mapper was
+     * initialized with, by {@linkplain #getRuleKey(Rule) rule key}.
+     * The checksum of a rule changes when its configuration, or the files
+     * it applies to, change.
+     */
+    public Map<String, Long> getRuleChecksums() {
+        return Collections.unmodifiableMap(ruleChecksums);
+    }
+
+    /**
+     * Returns the key identifying the given rule in the
+     * {@linkplain #getRuleChecksums() rule checksums}.
+     */
+    public String getRuleKey(final Rule rule) {
+        return getRuleKey(rule.getRuleClass(), rule.getName(), rule.getLanguage().getTerseName());
     }
 
     private String getRuleKey(final String className, final String ruleName, final String languageName) {
         return className + "$$" + ruleName + "$$" + languageName;
     }
+
+    private static long computeFileFilterChecksum(final RuleSet ruleSet) {
+        long checksum = 1;
+        for (Pattern pattern : ruleSet.getFileExclusions()) {
+            checksum = checksum * 31 + pattern.pattern().hashCode();
+        }
+        checksum = checksum * 31;
+        for (Pattern pattern : ruleSet.getFileInclusions()) {
+            checksum = checksum * 31 + pattern.pattern().hashCode();
+        }
+        return checksum;
+    }
+
+    private static long computeRuleChecksum(final Rule rule) {
+        long checksum = Objects.hashCode(rule.getMessage());
+        checksum = checksum * 31 + versionHash(rule.getMinimumLanguageVersion());
+        checksum = checksum * 31 + versionHash(rule.getMaximumLanguageVersion());
+
+        // sort the properties by name, so that the checksum is stable
+        final Map<String, String> properties = new TreeMap<>();
+        for (Map.Entry<PropertyDescriptor<?>, Object> entry : rule.getPropertiesByPropertyDescriptor().entrySet()) {
+            properties.put(entry.getKey().name(), asDelimitedString(entry.getKey(), entry.getValue()));
+        }
+        return checksum * 31 + properties.hashCode();
+    }
+
+    private static int versionHash(LanguageVersion version) {
+        return version == null ? 0 : version.getVersion().hashCode();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> String asDelimitedString(PropertyDescriptor<T> descriptor, Object value) {
+        return descriptor.asDelimitedString((T) value);
+    }
 }
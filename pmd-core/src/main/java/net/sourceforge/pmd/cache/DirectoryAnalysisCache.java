@@ -0,0 +1,373 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import net.sourceforge.pmd.RuleSet;
+import net.sourceforge.pmd.RuleSets;
+import net.sourceforge.pmd.RuleViolation;
+import net.sourceforge.pmd.annotation.InternalApi;
+import net.sourceforge.pmd.benchmark.TimeTracker;
+import net.sourceforge.pmd.benchmark.TimedOperation;
+import net.sourceforge.pmd.benchmark.TimedOperationCategory;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.document.TextDocument;
+import net.sourceforge.pmd.lang.document.TextFile;
+
+/**
+ * A content-addressed analysis cache backed by a directory, which may
+ * be shared by several concurrent analyses, eg CI jobs running on the
+ * same machine.
+ *
+ * <p>Each entry is stored in its own file. The name of the file is a hash
+ * of the contents of the analysed file, of its language version, and of
+ * the PMD version, ruleset and classpath checksums, and of which rulesets
+ * apply to the file according to their include and exclude patterns.
+ * Entries therefore do not depend otherwise on the location of the
+ * analysed file, and entries of different
+ * configurations can coexist in the same directory. The classpath
+ * checksum doesn't cover the contents of directories, eg {@code target/classes},
+ * so entries also store the fingerprints of the classpath resources the
+ * file depended on, which are checked on a hit. Entries are spread
+ * over 256 subdirectories named after the first two characters of their
+ * hash.
+ *
+ * <p>Entries are written to a temporary file which is then atomically
+ * renamed, so that concurrent readers never see a partially written entry.
+ * When the directory grows larger than the configured maximum size,
+ * the least recently used entries are deleted. Cache hits update the
+ * modification time of the entry to keep track of this.
+ *
+ * @deprecated This is internal API, will be hidden with 7.0.0
+ */
+@Deprecated
+@InternalApi
+public class DirectoryAnalysisCache extends AbstractAnalysisCache {
+
+    /** The default maximum size of the cache directory, 512 MiB. */
+    public static final long DEFAULT_MAX_SIZE = 512L * 1024 * 1024;
+
+    private static final int FORMAT_VERSION = 2;
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Path cacheDir;
+    private final long maxSizeBytes;
+
+    /** Keys of the entries that have to be written, by file id. */
+    private final ConcurrentMap<FileId, String> newEntries = new ConcurrentHashMap<>();
+    private byte[] configurationHash = new byte[0];
+    private RuleSet[] ruleSets = new RuleSet[0];
+
+    /**
+     * Creates a new cache backed by the given directory, with
+     * the {@linkplain #DEFAULT_MAX_SIZE default maximum size}.
+     *
+     * @param cacheDir The directory in which to store analysis cache entries
+     */
+    public DirectoryAnalysisCache(final File cacheDir) {
+        this(cacheDir, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Creates a new cache backed by the given directory.
+     *
+     * @param cacheDir     The directory in which to store analysis cache entries
+     * @param maxSizeBytes Size of the directory over which the least recently used entries are evicted
+     */
+    public DirectoryAnalysisCache(final File cacheDir, final long maxSizeBytes) {
+        super();
+        this.cacheDir = cacheDir.toPath();
+        this.maxSizeBytes = maxSizeBytes;
+    }
+
+    @Override
+    public void checkValidity(RuleSets ruleSets, ClassLoader auxclassPathClassLoader, Collection<? extends TextFile> files) {
+        super.checkValidity(ruleSets, auxclassPathClassLoader, files);
+
+        // the checksums are part of the keys, the cache itself is never invalidated
+        ByteBuffer config = ByteBuffer.allocate(Integer.BYTES + 3 * Long.BYTES);
+        config.putInt(FORMAT_VERSION)
+              .putLong(rulesetChecksum)
+              .putLong(auxClassPathChecksum)
+              .putLong(executionClassPathChecksum);
+        MessageDigest digest = newDigest();
+        digest.update(pmdVersion.getBytes(StandardCharsets.UTF_8));
+        digest.update(config.array());
+        configurationHash = digest.digest();
+        this.ruleSets = ruleSets.getAllRuleSets();
+    }
+
+    @Override
+    public boolean isUpToDateByMetadata(final TextFile file) {
+        // entries are addressed by the contents of the files, which must be read
+        return false;
+    }
+
+    @Override
+    public boolean isUpToDate(final TextDocument document) {
+        try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.ANALYSIS_CACHE, "up-to-date check")) {
+            final String key = computeKey(document);
+            final Path entry = entryPath(key);
+
+            AnalysisResult cachedResult = null;
+            try {
+                // read it now, the entry may be evicted by a concurrent analysis
+                final byte[] bytes = Files.readAllBytes(entry);
+                cachedResult = decodeEntry(bytes, document);
+            } catch (NoSuchFileException expected) {
+                // cache miss
+            } catch (IOException e) {
+                LOG.debug("Could not read analysis cache entry {}: {}", entry, e.getMessage());
+            }
+
+            // the entry may have been written with other classes in a directory of the classpath
+            if (cachedResult != null && areDependenciesUpToDate(cachedResult)) {
+                LOG.trace("Incremental Analysis cache HIT");
+                touch(entry);
+                fileResultsCache.put(document.getFileId(), cachedResult);
+                updatedResultsCache.put(document.getFileId(), cachedResult);
+                return true;
+            }
+
+            LOG.trace("Incremental Analysis cache MISS - {}",
+                      cachedResult == null ? "no entry found" : "dependencies changed");
+            newEntries.put(document.getFileId(), key);
+            updatedResultsCache.put(document.getFileId(), new AnalysisResult(document.getCheckSum(), new ArrayList<>()));
+            return false;
+        }
+    }
+
+    /**
+     * Reads the header of an entry, the violations are only decoded
+     * when they are needed.
+     */
+    private AnalysisResult decodeEntry(byte[] bytes, TextDocument document) throws IOException {
+        final FileId fileId = document.getFileId();
+        try (DataInputStream inputStream = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            if (inputStream.readInt() != FORMAT_VERSION) {
+                throw new IOException("Unknown cache entry format");
+            }
+            final long analysisTimeNanos = inputStream.readLong();
+            final Map<String, Long> dependencies = readDependencies(inputStream);
+            final int violationsOffset = bytes.length - inputStream.available();
+            final AnalysisResult result = new AnalysisResult(document.getCheckSum(),
+                                                             () -> decodeViolations(bytes, violationsOffset, fileId),
+                                                             analysisTimeNanos);
+            result.setDependencies(dependencies);
+            return result;
+        }
+    }
+
+    private List<RuleViolation> decodeViolations(byte[] bytes, int offset, FileId fileId) {
+        try (DataInputStream inputStream = new DataInputStream(new ByteArrayInputStream(bytes, offset, bytes.length - offset))) {
+            final int countViolations = inputStream.readInt();
+            final List<RuleViolation> violations = new ArrayList<>(countViolations);
+            for (int i = 0; i < countViolations; i++) {
+                violations.add(CachedRuleViolation.loadFromStream(inputStream, fileId, ruleMapper));
+            }
+            return violations;
+        } catch (IOException e) {
+            LOG.warn("Malformed analysis cache entry for {}: {}", fileId.getOriginalPath(), e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    @Override
+    public void persist() {
+        try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.ANALYSIS_CACHE, "persist")) {
+            int written = 0;
+            int failed = 0;
+            for (Map.Entry<FileId, String> newEntry : newEntries.entrySet()) {
+                final AnalysisResult result = updatedResultsCache.get(newEntry.getKey());
+                if (result == null) {
+                    continue; // the analysis failed
+                }
+                try {
+                    writeEntry(entryPath(newEntry.getValue()), result);
+                    written++;
+                } catch (IOException e) {
+                    // the other entries may still be written, eg if this one was locked
+                    if (failed == 0) {
+                        LOG.error("Could not persist analysis cache entry: {}", e.getMessage());
+                    } else {
+                        LOG.debug("Could not persist analysis cache entry: {}", e.getMessage());
+                    }
+                    failed++;
+                }
+            }
+            newEntries.clear();
+            LOG.debug("Analysis cache updated, {} entries written, {} failed", written, failed);
+
+            evictIfNeeded();
+        }
+    }
+
+    private void writeEntry(Path target, AnalysisResult result) throws IOException {
+        final Path shard = target.getParent();
+        Files.createDirectories(shard);
+        final Path temp = Files.createTempFile(shard, target.getFileName().toString(), TEMP_SUFFIX);
+        try {
+            try (DataOutputStream outputStream = new DataOutputStream(Files.newOutputStream(temp))) {
+                outputStream.writeInt(FORMAT_VERSION);
+                outputStream.writeLong(result.getAnalysisTimeNanos());
+                writeDependencies(outputStream, result.getDependencies());
+                final List<RuleViolation> violations = result.getViolations();
+                outputStream.writeInt(violations.size());
+                for (final RuleViolation rv : violations) {
+                    CachedRuleViolation.storeToStream(outputStream, rv);
+                }
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Deletes the least recently used entries until the directory
+     * is below the maximum size.
+     */
+    private void evictIfNeeded() {
+        final List<EntryInfo> entries;
+        try (Stream<Path> files = Files.walk(cacheDir, 2)) {
+            entries = files.filter(it -> !it.getFileName().toString().endsWith(TEMP_SUFFIX))
+                           .map(EntryInfo::of)
+                           .filter(Objects::nonNull)
+                           .collect(Collectors.toList());
+        } catch (IOException | UncheckedIOException e) {
+            LOG.debug("Could not list analysis cache entries: {}", e.getMessage());
+            return;
+        }
+
+        long totalSize = 0;
+        for (EntryInfo entry : entries) {
+            totalSize += entry.size;
+        }
+        if (totalSize <= maxSizeBytes) {
+            return;
+        }
+
+        entries.sort(Comparator.comparingLong(it -> it.lastUsed));
+        int evicted = 0;
+        for (EntryInfo entry : entries) {
+            if (totalSize <= maxSizeBytes) {
+                break;
+            }
+            try {
+                // another analysis may have removed it already
+                Files.deleteIfExists(entry.path);
+                totalSize -= entry.size;
+                evicted++;
+            } catch (IOException e) {
+                LOG.debug("Could not evict analysis cache entry {}: {}", entry.path, e.getMessage());
+            }
+        }
+        LOG.debug("Evicted {} analysis cache entries", evicted);
+    }
+
+    private static void touch(Path entry) {
+        try {
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException ignored) {
+            // not important, the entry may just be evicted earlier
+        }
+    }
+
+    private Path entryPath(String key) {
+        return cacheDir.resolve(key.substring(0, 2)).resolve(key);
+    }
+
+    private String computeKey(TextDocument document) {
+        MessageDigest digest = newDigest();
+        digest.update(configurationHash);
+        // the patterns of the rulesets depend on the path of the file
+        for (RuleSet ruleSet : ruleSets) {
+            digest.update(ruleSet.applies(document.getFileId()) ? (byte) 1 : (byte) 0);
+        }
+        digest.update(document.getLanguageVersion().getTerseName().getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(StandardCharsets.UTF_8.encode(CharBuffer.wrap(document.getText())));
+
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16))
+                .append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every JVM is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    protected boolean cacheExists() {
+        // there is nothing to validate globally, entries of another
+        // configuration are simply never looked up
+        return false;
+    }
+
+    private static final class EntryInfo {
+
+        final Path path;
+        final long size;
+        final long lastUsed;
+
+        private EntryInfo(Path path, long size, long lastUsed) {
+            this.path = path;
+            this.size = size;
+            this.lastUsed = lastUsed;
+        }
+
+        static EntryInfo of(Path path) {
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+                if (!attrs.isRegularFile()) {
+                    return null;
+                }
+                return new EntryInfo(path, attrs.size(), attrs.lastModifiedTime().toMillis());
+            } catch (IOException e) {
+                return null; // deleted concurrently
+            }
+        }
+    }
+}
@@ -14,6 +14,8 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -25,6 +27,7 @@ import net.sourceforge.pmd.annotation.InternalApi;
 import net.sourceforge.pmd.benchmark.TimeTracker;
 import net.sourceforge.pmd.benchmark.TimedOperation;
 import net.sourceforge.pmd.benchmark.TimedOperationCategory;
+import net.sourceforge.pmd.cache.internal.FileStamp;
 import net.sourceforge.pmd.lang.document.FileId;
 import net.sourceforge.pmd.lang.document.TextFile;
 
@@ -37,6 +40,9 @@ import net.sourceforge.pmd.lang.document.TextFile;
 @InternalApi
 public class FileAnalysisCache extends AbstractAnalysisCache {
 
+    /** Version of the layout of the cache file, written after the PMD version. */
+    private static final int FORMAT_VERSION = 1;
+
     private final File cacheFile;
 
     /**
@@ -73,7 +79,7 @@ public class FileAnalysisCache extends AbstractAnalysisCache {
                 ) {
                     final String cacheVersion = inputStream.readUTF();
 
-                    if (PMDVersion.VERSION.equals(cacheVersion)) {
+                    if (PMDVersion.VERSION.equals(cacheVersion) && inputStream.readInt() == FORMAT_VERSION) {
                         // Cache seems valid, load the rest
 
                         // Get checksums
@@ -81,6 +87,14 @@ public class FileAnalysisCache extends AbstractAnalysisCache {
                         auxClassPathChecksum = inputStream.readLong();
                         executionClassPathChecksum = inputStream.readLong();
 
+                        // Per rule checksums, to only run changed rules if the rulesets change
+                        final int countRules = readCount(inputStream);
+                        final Map<String, Long> loadedRuleChecksums = new HashMap<>(countRules);
+                        for (int i = 0; i < countRules; i++) {
+                            loadedRuleChecksums.put(inputStream.readUTF(), inputStream.readLong());
+                        }
+                        ruleChecksums = loadedRuleChecksums;
+
                         // Cached results
                         while (inputStream.available() > 0) {
                             final String filePathId = inputStream.readUTF();
@@ -91,24 +105,32 @@ public class FileAnalysisCache extends AbstractAnalysisCache {
                                 fileId = FileId.fromURI(filePathId);
                             }
                             final long checksum = inputStream.readLong();
+                            final long analysisTimeNanos = inputStream.readLong();
+                            final Map<String, Long> dependencies = readDependencies(inputStream);
+                            final FileStamp fileStamp = FileStamp.read(inputStream);
 
-                            final int countViolations = inputStream.readInt();
+                            final int countViolations = readCount(inputStream);
                             final List<RuleViolation> violations = new ArrayList<>(countViolations);
                             for (int i = 0; i < countViolations; i++) {
                                 violations.add(CachedRuleViolation.loadFromStream(inputStream, fileId, ruleMapper));
                             }
 
-                            fileResultsCache.put(fileId, new AnalysisResult(checksum, violations));
+                            final AnalysisResult result = new AnalysisResult(checksum, violations, analysisTimeNanos);
+                            result.setDependencies(dependencies);
+                            result.setFileStamp(fileStamp);
+                            fileResultsCache.put(fileId, result);
                         }
 
                         LOG.debug("Analysis cache loaded from {}", cacheFile);
                     } else {
-                        LOG.debug("Analysis cache invalidated, PMD version changed.");
+                        LOG.debug("Analysis cache invalidated, PMD version or cache format changed.");
                     }
-                } catch (final EOFException e) {
+                } catch (final EOFException | RuntimeException e) {
                     LOG.warn("Cache file {} is malformed, will not be used for current analysis", cacheFile.getPath());
+                    discardLoadedData();
                 } catch (final IOException e) {
                     LOG.error("Could not load analysis cache from file: {}", e.getMessage());
+                    discardLoadedData();
                 }
             } else if (cacheFile.isDirectory()) {
                 LOG.error("The configured cache location must be the path to a file, but is a directory.");
@@ -116,6 +138,26 @@ public class FileAnalysisCache extends AbstractAnalysisCache {
         }
     }
 
+    private static int readCount(DataInputStream inputStream) throws IOException {
+        final int count = inputStream.readInt();
+        if (count < 0) {
+            throw new IOException("Malformed analysis cache, negative count " + count);
+        }
+        return count;
+    }
+
+    /**
+     * Forgets the data read from a cache file that turned out to be
+     * unreadable, so that the analysis starts from an empty cache.
+     */
+    private void discardLoadedData() {
+        rulesetChecksum = 0;
+        auxClassPathChecksum = 0;
+        executionClassPathChecksum = 0;
+        ruleChecksums = Collections.emptyMap();
+        fileResultsCache.clear();
+    }
+
     @Override
     public void persist() {
         try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.ANALYSIS_CACHE, "persist")) {
@@ -139,16 +181,26 @@ public class FileAnalysisCache extends AbstractAnalysisCache {
                     new BufferedOutputStream(Files.newOutputStream(cacheFile.toPath())))
             ) {
                 outputStream.writeUTF(pmdVersion);
+                outputStream.writeInt(FORMAT_VERSION);
 
                 outputStream.writeLong(rulesetChecksum);
                 outputStream.writeLong(auxClassPathChecksum);
                 outputStream.writeLong(executionClassPathChecksum);
 
+                outputStream.writeInt(ruleChecksums.size());
+                for (final Map.Entry<String, Long> ruleChecksum : ruleChecksums.entrySet()) {
+                    outputStream.writeUTF(ruleChecksum.getKey());
+                    outputStream.writeLong(ruleChecksum.getValue());
+                }
+
                 for (final Map.Entry<FileId, AnalysisResult> resultEntry : updatedResultsCache.entrySet()) {
                     final List<RuleViolation> violations = resultEntry.getValue().getViolations();
 
                     outputStream.writeUTF(resultEntry.getKey().getUriString()); // the path id
                     outputStream.writeLong(resultEntry.getValue().getFileChecksum());
+                    outputStream.writeLong(resultEntry.getValue().getAnalysisTimeNanos());
+                    writeDependencies(outputStream, resultEntry.getValue().getDependencies());
+                    FileStamp.write(outputStream, resultEntry.getValue().getFileStamp());
 
                     outputStream.writeInt(violations.size());
                     for (final RuleViolation rv : violations) {
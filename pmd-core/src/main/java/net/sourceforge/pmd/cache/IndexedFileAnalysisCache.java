@@ -0,0 +1,458 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.SystemUtils;
+
+import net.sourceforge.pmd.PMDVersion;
+import net.sourceforge.pmd.RuleSets;
+import net.sourceforge.pmd.RuleViolation;
+import net.sourceforge.pmd.annotation.InternalApi;
+import net.sourceforge.pmd.benchmark.TimeTracker;
+import net.sourceforge.pmd.benchmark.TimedOperation;
+import net.sourceforge.pmd.benchmark.TimedOperationCategory;
+import net.sourceforge.pmd.cache.internal.FileStamp;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.document.TextFile;
+
+/**
+ * An analysis cache backed by a memory-mapped, append-only file.
+ *
+ * <p>Unlike {@link FileAnalysisCache}, loading the cache only reads the
+ * key of each entry (the file id, its checksum and its analysis time).
+ * The violations of a file are decoded the first time they are requested.
+ * When the cache is persisted and the rulesets and classpaths did not
+ * change, only the entries of the files that were analysed again are
+ * appended to the file. Entries that are superseded or that belong
+ * to files that are not part of the analysis anymore are dropped when
+ * the file is compacted, which happens when they make up more than half
+ * of the file. Before the file is compacted, the violations of all the
+ * entries that were loaded from it are decoded, so that the mapping is
+ * not read anymore once the file is replaced.
+ *
+ * <p>The file starts with a header (magic number, PMD version, checksums),
+ * followed by a sequence of records. A record is made of its length (an int),
+ * the UTF-8 encoded uri of the file, the checksum and analysis time of the
+ * file, its dependencies and metadata, the number of violations and the violations themselves, encoded
+ * like in a {@link FileAnalysisCache}. A later record for the same
+ * file supersedes the earlier ones.
+ *
+ * @deprecated This is internal API, will be hidden with 7.0.0
+ */
+@Deprecated
+@InternalApi
+public class IndexedFileAnalysisCache extends AbstractAnalysisCache {
+
+    private static final int MAGIC = 0x504d4449; // "PMDI"
+    private static final int FORMAT_VERSION = 3;
+
+    private final File cacheFile;
+
+    /** Offsets of the records of the loaded entries, by file id. */
+    private final ConcurrentMap<FileId, Record> index = new ConcurrentHashMap<>();
+    private ByteBuffer mappedCache;
+    /** Length of the header of the mapped file. */
+    private long headerLength;
+    /** Length of the well-formed prefix of the file, ie where to append. */
+    private long validLength;
+    /** Whether the records of the file are still valid for the current analysis. */
+    private boolean appendable;
+
+    /**
+     * Creates a new cache backed by the given file.
+     *
+     * @param cache The file on which to store analysis cache
+     */
+    public IndexedFileAnalysisCache(final File cache) {
+        super();
+        this.cacheFile = cache;
+    }
+
+    @Override
+    public void checkValidity(RuleSets ruleSets, ClassLoader auxclassPathClassLoader, Collection<? extends TextFile> files) {
+        // load cached data before checking for validity
+        boolean loaded = loadFromFile(files);
+        final Map<String, Long> loadedRuleChecksums = ruleChecksums;
+        final long loadedRulesetChecksum = rulesetChecksum;
+        final long loadedAuxClassPathChecksum = auxClassPathChecksum;
+        final long loadedExecutionClassPathChecksum = executionClassPathChecksum;
+
+        super.checkValidity(ruleSets, auxclassPathClassLoader, files);
+
+        appendable = loaded
+            && loadedRulesetChecksum == rulesetChecksum
+            && loadedAuxClassPathChecksum == auxClassPathChecksum
+            && loadedExecutionClassPathChecksum == executionClassPathChecksum
+            && loadedRuleChecksums.equals(ruleChecksums);
+        if (!appendable) {
+            index.clear();
+        }
+    }
+
+    /**
+     * Maps the cache file and indexes its records. Returns true if
+     * the file could be used, in which case the checksums are
+     * set from its header.
+     */
+    private boolean loadFromFile(Collection<? extends TextFile> files) {
+        Map<String, FileId> idMap =
+            files.stream().map(TextFile::getFileId)
+                 .collect(Collectors.toMap(FileId::getUriString, id -> id));
+
+        try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.ANALYSIS_CACHE, "load")) {
+            if (!cacheExists()) {
+                if (cacheFile.isDirectory()) {
+                    LOG.error("The configured cache location must be the path to a file, but is a directory.");
+                }
+                return false;
+            }
+
+            try (FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ)) {
+                if (channel.size() > Integer.MAX_VALUE) {
+                    LOG.warn("Cache file {} is too large, will not be used for current analysis", cacheFile.getPath());
+                    return false;
+                }
+                ByteBuffer buffer = readCacheFile(channel);
+
+                if (buffer.remaining() < 8 || buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION
+                    || !PMDVersion.VERSION.equals(readString(buffer))) {
+                    LOG.debug("Analysis cache invalidated, PMD version or cache format changed.");
+                    return false;
+                }
+
+                // Get checksums
+                rulesetChecksum = buffer.getLong();
+                auxClassPathChecksum = buffer.getLong();
+                executionClassPathChecksum = buffer.getLong();
+
+                // Per rule checksums, to only run changed rules if the rulesets change
+                final int countRules = buffer.getInt();
+                final Map<String, Long> loadedRuleChecksums = new HashMap<>();
+                for (int i = 0; i < countRules; i++) {
+                    loadedRuleChecksums.put(readString(buffer), buffer.getLong());
+                }
+                ruleChecksums = loadedRuleChecksums;
+                headerLength = buffer.position();
+
+                validLength = buffer.position();
+                while (buffer.remaining() >= Integer.BYTES) {
+                    final int recordStart = buffer.position();
+                    final int recordLength = buffer.getInt();
+                    if (recordLength < 0 || recordLength > buffer.remaining()) {
+                        // partially written record, eg if PMD was killed while persisting
+                        LOG.debug("Ignoring truncated record at the end of the analysis cache");
+                        break;
+                    }
+                    final int recordEnd = buffer.position() + recordLength;
+
+                    final String filePathId = readString(buffer);
+                    FileId fileId = idMap.get(filePathId);
+                    if (fileId == null) {
+                        LOG.debug("File {} is in the cache but is not part of the analysis", filePathId);
+                        fileId = FileId.fromURI(filePathId);
+                    }
+                    final long checksum = buffer.getLong();
+                    final long analysisTimeNanos = buffer.getLong();
+                    final Map<String, Long> dependencies = readRecordDependencies(buffer);
+                    final FileStamp fileStamp = FileStamp.read(buffer);
+                    final Record record = new Record(recordStart, recordEnd - recordStart, buffer.position(), recordEnd);
+
+                    index.put(fileId, record);
+                    final AnalysisResult result = new AnalysisResult(checksum, lazyViolations(fileId, record), analysisTimeNanos);
+                    result.setDependencies(dependencies);
+                    result.setFileStamp(fileStamp);
+                    fileResultsCache.put(fileId, result);
+
+                    buffer.position(recordEnd);
+                    validLength = recordEnd;
+                }
+                mappedCache = buffer;
+
+                LOG.debug("Analysis cache loaded from {}", cacheFile);
+                return true;
+            } catch (final BufferUnderflowException | IllegalArgumentException e) {
+                LOG.warn("Cache file {} is malformed, will not be used for current analysis", cacheFile.getPath());
+            } catch (final IOException e) {
+                LOG.error("Could not load analysis cache from file: {}", e.getMessage());
+            }
+            index.clear();
+            fileResultsCache.clear();
+            return false;
+        }
+    }
+
+    /**
+     * Maps the cache file. Windows does not allow replacing a file that
+     * is mapped, and a mapping is only released when it is garbage collected,
+     * so there the file is read instead, which allows compacting it.
+     */
+    private static ByteBuffer readCacheFile(FileChannel channel) throws IOException {
+        if (!SystemUtils.IS_OS_WINDOWS) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException();
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private Supplier<List<RuleViolation>> lazyViolations(final FileId fileId, final Record record) {
+        return () -> {
+            final ByteBuffer buffer = mappedCache.duplicate();
+            buffer.position(record.violationsStart).limit(record.end);
+            final byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+
+            try (DataInputStream inputStream = new DataInputStream(new ByteArrayInputStream(bytes))) {
+                final int countViolations = inputStream.readInt();
+                final List<RuleViolation> violations = new ArrayList<>(countViolations);
+                for (int i = 0; i < countViolations; i++) {
+                    violations.add(CachedRuleViolation.loadFromStream(inputStream, fileId, ruleMapper));
+                }
+                return violations;
+            } catch (final IOException e) {
+                LOG.warn("Could not load cached violations of {}: {}", fileId.getOriginalPath(), e.getMessage());
+                return new ArrayList<>();
+            }
+        };
+    }
+
+    @Override
+    public void persist() {
+        try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.ANALYSIS_CACHE, "persist")) {
+            if (cacheFile.isDirectory()) {
+                LOG.error("Cannot persist the cache, the given path points to a directory.");
+                return;
+            }
+
+            final File parentFile = cacheFile.getAbsoluteFile().getParentFile();
+            if (parentFile != null && !parentFile.exists()) {
+                parentFile.mkdirs();
+            }
+
+            try {
+                // live bytes are the ones of the loaded records we keep
+                long liveBytes = 0;
+                final List<Map.Entry<FileId, AnalysisResult>> changed = new ArrayList<>();
+                for (Map.Entry<FileId, AnalysisResult> entry : updatedResultsCache.entrySet()) {
+                    Record record = loadedRecordFor(entry.getKey(), entry.getValue());
+                    if (record != null) {
+                        liveBytes += record.length;
+                    } else {
+                        changed.add(entry);
+                    }
+                }
+                final long deadBytes = validLength - headerLength - liveBytes;
+
+                if (appendable && deadBytes <= liveBytes) {
+                    append(changed);
+                    LOG.debug("Analysis cache updated, {} entries appended", changed.size());
+                } else {
+                    compact();
+                    LOG.debug("Analysis cache written");
+                }
+            } catch (final IOException e) {
+                LOG.error("Could not persist analysis cache to file: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Returns the record of the loaded file, if the result has not changed
+     * since it was loaded.
+     */
+    @SuppressWarnings("PMD.CompareObjectsWithEquals") // unchanged results are the loaded instances
+    private Record loadedRecordFor(FileId fileId, AnalysisResult result) {
+        if (mappedCache != null && fileResultsCache.get(fileId) == result) {
+            return index.get(fileId);
+        }
+        return null;
+    }
+
+    private void append(List<Map.Entry<FileId, AnalysisResult>> changed) throws IOException {
+        try (FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.WRITE)) {
+            // drop a possibly truncated record at the end
+            channel.truncate(validLength);
+            channel.position(validLength);
+            @SuppressWarnings("PMD.CloseResource") // closed with the channel
+            OutputStream out = Channels.newOutputStream(channel);
+            for (Map.Entry<FileId, AnalysisResult> entry : changed) {
+                writeRecord(out, entry.getKey(), entry.getValue());
+            }
+            out.flush();
+        }
+    }
+
+    private void compact() throws IOException {
+        // Decode the violations that are still lazy, so that nothing reads
+        // the mapped file once it is replaced.
+        for (AnalysisResult result : fileResultsCache.values()) {
+            result.getViolations();
+        }
+
+        final Path target = cacheFile.toPath();
+        final Path parent = target.toAbsolutePath().getParent();
+        final Path temp = Files.createTempFile(parent, cacheFile.getName(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(temp))) {
+                writeHeader(out);
+                for (Map.Entry<FileId, AnalysisResult> entry : updatedResultsCache.entrySet()) {
+                    Record record = loadedRecordFor(entry.getKey(), entry.getValue());
+                    if (record != null) {
+                        // copy the record without encoding it again
+                        ByteBuffer buffer = mappedCache.duplicate();
+                        buffer.position(record.start).limit(record.start + record.length);
+                        byte[] bytes = new byte[record.length];
+                        buffer.get(bytes);
+                        out.write(bytes);
+                    } else {
+                        writeRecord(out, entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+            // the records are not valid for the new file
+            mappedCache = null;
+            index.clear();
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private void writeHeader(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        writeString(out, pmdVersion);
+        out.writeLong(rulesetChecksum);
+        out.writeLong(auxClassPathChecksum);
+        out.writeLong(executionClassPathChecksum);
+        out.writeInt(ruleChecksums.size());
+        for (Map.Entry<String, Long> ruleChecksum : ruleChecksums.entrySet()) {
+            writeString(out, ruleChecksum.getKey());
+            out.writeLong(ruleChecksum.getValue());
+        }
+    }
+
+    private static void writeRecord(OutputStream out, FileId fileId, AnalysisResult result) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream recordOut = new DataOutputStream(bytes)) {
+            writeString(recordOut, fileId.getUriString());
+            recordOut.writeLong(result.getFileChecksum());
+            recordOut.writeLong(result.getAnalysisTimeNanos());
+            writeRecordDependencies(recordOut, result.getDependencies());
+            FileStamp.write(recordOut, result.getFileStamp());
+
+            final List<RuleViolation> violations = result.getViolations();
+            recordOut.writeInt(violations.size());
+            for (final RuleViolation rv : violations) {
+                CachedRuleViolation.storeToStream(recordOut, rv);
+            }
+        }
+        DataOutputStream dataOut = new DataOutputStream(out);
+        dataOut.writeInt(bytes.size());
+        bytes.writeTo(dataOut);
+        dataOut.flush();
+    }
+
+    private static void writeRecordDependencies(DataOutputStream out, Map<String, Long> dependencies) throws IOException {
+        if (dependencies == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(dependencies.size());
+        for (final Map.Entry<String, Long> dependency : dependencies.entrySet()) {
+            writeString(out, dependency.getKey());
+            out.writeLong(dependency.getValue());
+        }
+    }
+
+    @SuppressWarnings("PMD.ReturnEmptyCollectionRatherThanNull") // null means not recorded
+    private static Map<String, Long> readRecordDependencies(ByteBuffer buffer) {
+        final int count = buffer.getInt();
+        if (count < 0) {
+            return null;
+        }
+        final Map<String, Long> dependencies = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            dependencies.put(readString(buffer), buffer.getLong());
+        }
+        return dependencies;
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        final int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid string length " + length);
+        }
+        final byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    protected boolean cacheExists() {
+        return cacheFile.exists() && cacheFile.isFile() && cacheFile.length() > 0;
+    }
+
+    /**
+     * Location of a record in the mapped file.
+     */
+    private static final class Record {
+
+        final int start;
+        final int length;
+        final int violationsStart;
+        final int end;
+
+        Record(int start, int length, int violationsStart, int end) {
+            this.start = start;
+            this.length = length;
+            this.violationsStart = violationsStart;
+            this.end = end;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cache.internal;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Records the classpath resources that the analysis of a file depends
+ * on, eg the class files from which a language module loaded symbols.
+ * The analysis cache uses them to invalidate the results of a file
+ * when one of its dependencies changes.
+ *
+ * <p>The recording is bound to the thread analysing the file, so that
+ * language modules don't need to know which file is being analysed.
+ * If no file is being recorded on the current thread, calls to
+ * {@link #recordClasspathResource(String)} do nothing. Threads that
+ * help analysing a file, eg by applying some of its rules, can take
+ * part in its recording with {@link #joinRecording(Recording)}.
+ *
+ * <p>When no file is being recorded at all, eg if there is no analysis
+ * cache, the recording methods return without looking up the thread.
+ */
+public final class FileDependencyRecorder {
+
+    private static final ThreadLocal<Recording> RECORDING = new ThreadLocal<>();
+    private static final AtomicInteger ACTIVE_RECORDINGS = new AtomicInteger();
+    private static final AtomicInteger RECORDING_IDS = new AtomicInteger();
+
+    private FileDependencyRecorder() {
+        // utility class
+    }
+
+    /**
+     * Records that the file being analysed on the current thread depends
+     * on the given classpath resource.
+     *
+     * @param resourceName Name of the resource, as in {@link ClassLoader#getResource(String)},
+     *                     eg {@code java/lang/String.class}
+     */
+    public static void recordClasspathResource(String resourceName) {
+        Recording recording = currentRecording();
+        if (recording != null) {
+            recording.record(resourceName);
+        }
+    }
+
+    /**
+     * Starts recording the dependencies of a file on the current thread.
+     * This replaces any recording in progress.
+     */
+    public static void startRecording() {
+        if (RECORDING.get() == null) {
+            ACTIVE_RECORDINGS.incrementAndGet();
+        }
+        RECORDING.set(new Recording(RECORDING_IDS.incrementAndGet()));
+    }
+
+    /**
+     * Returns the recording in progress on the current thread, or null
+     * if there is none. This may be passed to {@link #joinRecording(Recording)}
+     * on another thread.
+     */
+    public static @Nullable Recording currentRecording() {
+        if (ACTIVE_RECORDINGS.get() == 0) {
+            return null;
+        }
+        return RECORDING.get();
+    }
+
+    /**
+     * Makes the current thread record into the given recording, which
+     * was returned by {@link #currentRecording()} on another thread.
+     * The thread must call {@link #leaveRecording()} when it is done.
+     * Does nothing if the recording is null.
+     */
+    public static void joinRecording(@Nullable Recording recording) {
+        if (recording != null) {
+            RECORDING.set(recording);
+        }
+    }
+
+    /**
+     * Stops recording on the current thread, without ending the
+     * recording it had joined.
+     */
+    public static void leaveRecording() {
+        RECORDING.remove();
+    }
+
+    /**
+     * Stops the recording on the current thread and returns
+     * the recorded resources, possibly empty.
+     */
+    public static Set<String> stopRecording() {
+        Recording recording = RECORDING.get();
+        if (recording == null) {
+            return new HashSet<>();
+        }
+        RECORDING.remove();
+        ACTIVE_RECORDINGS.decrementAndGet();
+        return recording.resources;
+    }
+
+    /**
+     * Starts a nested recording on the current thread, to find out which
+     * resources some computation depends on, eg before caching its result
+     * for other files. Resources that the file already depends on are
+     * recorded again, since the nested recording has another {@linkplain Recording#getId() id}.
+     * Returns the recording in progress, which must be passed to
+     * {@link #stopNestedRecording(Recording)}, or null if there is none,
+     * in which case nothing is recorded.
+     */
+    public static @Nullable Recording startNestedRecording() {
+        Recording outer = currentRecording();
+        if (outer != null) {
+            RECORDING.set(new Recording(RECORDING_IDS.incrementAndGet()));
+        }
+        return outer;
+    }
+
+    /**
+     * Stops the nested recording of the current thread and returns its
+     * resources. They are also recorded into the outer recording, which
+     * is resumed.
+     *
+     * @param outer Recording returned by {@link #startNestedRecording()}
+     */
+    @SuppressWarnings("PMD.CompareObjectsWithEquals")
+    public static Set<String> stopNestedRecording(Recording outer) {
+        Recording nested = RECORDING.get();
+        RECORDING.set(outer);
+        if (nested == null || nested == outer) {
+            return new HashSet<>();
+        }
+        outer.resources.addAll(nested.resources);
+        return nested.resources;
+    }
+
+    /**
+     * The dependencies recorded for a file. Several threads may record
+     * into it concurrently.
+     */
+    public static final class Recording {
+
+        private final int id;
+        private final Set<String> resources = ConcurrentHashMap.newKeySet();
+
+        private Recording(int id) {
+            this.id = id;
+        }
+
+        /**
+         * Returns a number identifying this recording. Callers may use
+         * it to record a resource only once per file. It is never zero.
+         */
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * Records that the file depends on the given classpath resource.
+         *
+         * @see #recordClasspathResource(String)
+         */
+        public void record(String resourceName) {
+            resources.add(resourceName);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cache.internal;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * The metadata of a file that the analysis cache compares to detect
+ * that the file has not changed without reading it: its size, its
+ * modification time and its file key (eg the device and inode number
+ * on Unix), if the file system has one.
+ */
+public final class FileStamp {
+
+    /**
+     * Files modified less than this before they are stamped may still be
+     * modified within the resolution of the modification time, which is
+     * two seconds on FAT file systems. They are not stamped.
+     */
+    private static final long RACY_MILLIS = 2000;
+
+    private final long size;
+    private final long lastModifiedNanos;
+    private final long fileKeyHash;
+
+    public FileStamp(long size, long lastModifiedNanos, long fileKeyHash) {
+        this.size = size;
+        this.lastModifiedNanos = lastModifiedNanos;
+        this.fileKeyHash = fileKeyHash;
+    }
+
+    /**
+     * Returns the stamp of a file with the given attributes, or null if
+     * the attributes are null or the file was modified too recently to
+     * be stamped reliably.
+     *
+     * @param attributes The attributes of the file, may be null
+     * @param nowMillis  The current time, in milliseconds since the epoch
+     */
+    public static @Nullable FileStamp of(@Nullable BasicFileAttributes attributes, long nowMillis) {
+        if (attributes == null || !attributes.isRegularFile()) {
+            return null;
+        }
+        long lastModifiedNanos = attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        if (TimeUnit.NANOSECONDS.toMillis(lastModifiedNanos) > nowMillis - RACY_MILLIS) {
+            // the file could change again without its stamp changing
+            return null;
+        }
+        Object fileKey = attributes.fileKey();
+        // the string form of the key is stable across runs, its identity is not
+        long fileKeyHash = fileKey == null ? 0 : fileKey.toString().hashCode();
+        return new FileStamp(attributes.size(), lastModifiedNanos, fileKeyHash);
+    }
+
+    /**
+     * Writes the given stamp, as read by {@link #read(DataInput)}.
+     */
+    public static void write(DataOutput out, @Nullable FileStamp stamp) throws IOException {
+        out.writeBoolean(stamp != null);
+        if (stamp != null) {
+            out.writeLong(stamp.size);
+            out.writeLong(stamp.lastModifiedNanos);
+            out.writeLong(stamp.fileKeyHash);
+        }
+    }
+
+    /**
+     * Reads a stamp, as written by {@link #write(DataOutput, FileStamp)}.
+     */
+    public static @Nullable FileStamp read(DataInput in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        return new FileStamp(in.readLong(), in.readLong(), in.readLong());
+    }
+
+    /**
+     * Reads a stamp from a buffer, as written by {@link #write(DataOutput, FileStamp)}.
+     */
+    public static @Nullable FileStamp read(ByteBuffer buffer) {
+        if (buffer.get() == 0) {
+            return null;
+        }
+        return new FileStamp(buffer.getLong(), buffer.getLong(), buffer.getLong());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        FileStamp that = (FileStamp) o;
+        return size == that.size
+            && lastModifiedNanos == that.lastModifiedNanos
+            && fileKeyHash == that.fileKeyHash;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(size) * 31 * 31 + Long.hashCode(lastModifiedNanos) * 31 + Long.hashCode(fileKeyHash);
+    }
+
+    @Override
+    public String toString() {
+        return "FileStamp[size=" + size + ", lastModifiedNanos=" + lastModifiedNanos + ", fileKeyHash=" + fileKeyHash + ']';
+    }
+}
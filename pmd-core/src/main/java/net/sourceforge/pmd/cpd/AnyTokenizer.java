@@ -93,6 +93,11 @@ public class AnyTokenizer implements Tokenizer {
         }
     }
 
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
     private boolean isComment(String tok) {
         return !commentStart.isEmpty() && tok.startsWith(commentStart);
     }
@@ -7,6 +7,7 @@ package net.sourceforge.pmd.cpd;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -18,6 +19,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,9 +50,12 @@ public class CPD {
 
     private Map<String, SourceCode> source = new TreeMap<>();
     private CPDListener listener = new CPDNullListener();
-    private Tokens tokens = new Tokens();
+    private final TokenSequence tokens = new TokenSequence();
     private MatchAlgorithm matchAlgorithm;
     private Set<String> current = new HashSet<>();
+    /** Sources that will be tokenized in parallel before matching. */
+    private final List<SourceCode> pendingSources = new ArrayList<>();
+    private final CPDTokenCache tokenCache;
     private final Map<String, Integer> numberOfTokensPerFile = new HashMap<>();
     private int lastTokenSize = 0;
 
@@ -55,6 +65,9 @@ public class CPD {
         // static TokenEntry status
         TokenEntry.clearImages();
 
+        tokenCache = configuration.getTokenCacheLocation() == null
+                     ? null : CPDTokenCache.load(new File(configuration.getTokenCacheLocation()), configuration);
+
         // Add all sources
         extractAllSources();
     }
@@ -128,8 +141,13 @@ public class CPD {
     }
 
     public void go() {
+        tokenizePendingSourcesUnchecked();
+        if (tokenCache != null) {
+            tokenCache.persist();
+        }
         log.debug("Running match algorithm on {} files...", source.size());
-        matchAlgorithm = new MatchAlgorithm(source, tokens, configuration.getMinimumTileSize(), listener);
+        matchAlgorithm = new MatchAlgorithm(source, tokens, configuration.getMinimumTileSize(), listener,
+                                            configuration.getMatchEngine());
         matchAlgorithm.findMatches();
         log.debug("Finished: {} duplicates found", matchAlgorithm.getMatches().size());
     }
@@ -216,9 +234,22 @@ public class CPD {
         }
     }
 
+    /**
+     * Tokenizes the given source. If several {@linkplain CPDConfiguration#getThreads() threads}
+     * are used, the source is only queued here, and its errors are thrown
+     * by {@link #tokenizePendingSources()}.
+     */
     @Experimental
     public void add(SourceCode sourceCode) throws IOException {
-        if (configuration.isSkipLexicalErrors()) {
+        if (configuration.getThreads() > 1 && configuration.tokenizer().isThreadSafe()) {
+            pendingSources.add(sourceCode);
+        } else if (tokenCache != null) {
+            try {
+                addTokenized(sourceCode, tokenCache.tokenize(configuration.tokenizer(), sourceCode));
+            } catch (TokenMgrError e) {
+                skipOrThrowLexicalError(sourceCode, e);
+            }
+        } else if (configuration.isSkipLexicalErrors()) {
             addAndSkipLexicalErrors(sourceCode);
         } else {
             addAndThrowLexicalError(sourceCode);
@@ -227,7 +258,13 @@ public class CPD {
 
     private void addAndThrowLexicalError(SourceCode sourceCode) throws IOException {
         log.debug("Tokenizing {}", sourceCode.getFileName());
-        configuration.tokenizer().tokenize(sourceCode, tokens);
+        final Tokens fileTokens = new Tokens();
+        configuration.tokenizer().tokenize(sourceCode, fileTokens);
+        tokens.addAll(fileTokens);
+        sourceAdded(sourceCode);
+    }
+
+    private void sourceAdded(SourceCode sourceCode) {
         listener.addedFile(1, new File(sourceCode.getFileName()));
         source.put(sourceCode.getFileName(), sourceCode);
         numberOfTokensPerFile.put(sourceCode.getFileName(), tokens.size() - lastTokenSize - 1 /*EOF*/);
@@ -235,12 +272,105 @@ public class CPD {
     }
 
     private void addAndSkipLexicalErrors(SourceCode sourceCode) throws IOException {
-        final TokenEntry.State savedState = new TokenEntry.State();
         try {
             addAndThrowLexicalError(sourceCode);
         } catch (TokenMgrError e) {
+            // the tokens of the file are only appended once it is tokenized
             System.err.println("Skipping " + sourceCode.getFileName() + ". Reason: " + e.getMessage());
-            savedState.restore(tokens);
+        }
+    }
+
+    /**
+     * Tokenizes the sources that were queued by {@link #add(SourceCode)}
+     * on a thread pool, then appends their tokens in the order in which
+     * the sources were added, so that the result is the same as with a
+     * sequential tokenization. Sources that are in the token cache are
+     * read from there instead. This is called by {@link #go()}, but may
+     * be called before to handle the errors of the tokenizer.
+     *
+     * @throws IOException If a source could not be tokenized
+     */
+    @Experimental
+    public void tokenizePendingSources() throws IOException {
+        if (pendingSources.isEmpty()) {
+            return;
+        }
+        final List<SourceCode> sources = new ArrayList<>(pendingSources);
+        pendingSources.clear();
+        final Tokenizer tokenizer = configuration.tokenizer();
+        final int threads = tokenizer.isThreadSafe() ? configuration.getThreads() : 1;
+        log.debug("Tokenizing {} files on {} threads", sources.size(), threads);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(threads, new TokenizerThreadFactory());
+        try {
+            final List<Future<TokenizedFile>> results = new ArrayList<>(sources.size());
+            for (SourceCode sourceCode : sources) {
+                results.add(executor.submit(() -> tokenCache == null ? TokenizedFile.tokenize(tokenizer, sourceCode)
+                                                                      : tokenCache.tokenize(tokenizer, sourceCode)));
+            }
+            for (int i = 0; i < sources.size(); i++) {
+                addTokenized(sources.get(i), results.get(i));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void addTokenized(SourceCode sourceCode, Future<TokenizedFile> result) throws IOException {
+        final TokenizedFile tokenizedFile;
+        try {
+            tokenizedFile = result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while tokenizing " + sourceCode.getFileName(), e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof TokenMgrError) {
+                skipOrThrowLexicalError(sourceCode, (TokenMgrError) cause);
+                return;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+        addTokenized(sourceCode, tokenizedFile);
+    }
+
+    private void addTokenized(SourceCode sourceCode, TokenizedFile tokenizedFile) {
+        log.debug("Tokenized {}", sourceCode.getFileName());
+        tokenizedFile.appendTo(tokens);
+        sourceAdded(sourceCode);
+    }
+
+    private void skipOrThrowLexicalError(SourceCode sourceCode, TokenMgrError error) {
+        if (!configuration.isSkipLexicalErrors()) {
+            throw error;
+        }
+        System.err.println("Skipping " + sourceCode.getFileName() + ". Reason: " + error.getMessage());
+    }
+
+    private void tokenizePendingSourcesUnchecked() {
+        try {
+            tokenizePendingSources();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Names the tokenizer threads, which don't prevent the JVM from exiting. */
+    private static final class TokenizerThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "CpdTokenizer " + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
         }
     }
 
@@ -250,6 +380,7 @@ public class CPD {
      * @return names of sources to be processed
      */
     public List<String> getSourcePaths() {
+        tokenizePendingSourcesUnchecked();
         return new ArrayList<>(source.keySet());
     }
 
@@ -259,6 +390,7 @@ public class CPD {
      * @return all Sources to be processed
      */
     public List<SourceCode> getSources() {
+        tokenizePendingSourcesUnchecked();
         return new ArrayList<>(source.values());
     }
 
@@ -17,6 +17,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Properties;
 import java.util.Set;
 
@@ -87,6 +88,12 @@ public class CPDConfiguration extends AbstractConfiguration {
 
     private boolean failOnViolation = true;
 
+    private MatchEngine matchEngine = MatchEngine.KARP_RABIN;
+
+    private int threads = 1;
+
+    private String tokenCacheLocation;
+
     public SourceCode sourceCodeFor(File file) {
         return new SourceCode(new SourceCode.FileCodeLoader(file, getSourceEncoding().name()));
     }
@@ -409,4 +416,63 @@ public class CPDConfiguration extends AbstractConfiguration {
         this.failOnViolation = failOnViolation;
     }
 
+    /**
+     * Returns the algorithm used to find the duplicates.
+     * Defaults to {@link MatchEngine#KARP_RABIN}.
+     */
+    public MatchEngine getMatchEngine() {
+        return matchEngine;
+    }
+
+    /**
+     * Sets the algorithm used to find the duplicates.
+     *
+     * @param matchEngine The match engine
+     *
+     * @throws NullPointerException If the parameter is null
+     */
+    public void setMatchEngine(MatchEngine matchEngine) {
+        this.matchEngine = Objects.requireNonNull(matchEngine);
+    }
+
+    /**
+     * Returns the number of threads used to tokenize the files.
+     * Defaults to 1.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Sets the number of threads used to tokenize the files. With more
+     * than one thread, the files are tokenized in parallel when the matches
+     * are searched, if the tokenizer of the language is {@linkplain Tokenizer#isThreadSafe() thread-safe}.
+     * The result does not depend on the number of threads.
+     *
+     * @param threads The number of threads
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Returns the location of the token cache file, or null if
+     * the files are tokenized again on each run (the default).
+     */
+    public String getTokenCacheLocation() {
+        return tokenCacheLocation;
+    }
+
+    /**
+     * Sets the location of the file in which the tokens of each file are
+     * cached between runs. Files whose contents didn't change since the
+     * previous run are not tokenized again. The cache is discarded if
+     * the language, the tokenizer options or the PMD version change.
+     *
+     * @param tokenCacheLocation The cache file, or null to disable the cache
+     */
+    public void setTokenCacheLocation(String tokenCacheLocation) {
+        this.tokenCacheLocation = tokenCacheLocation;
+    }
+
 }
@@ -0,0 +1,192 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cpd;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.pmd.PMDVersion;
+
+/**
+ * Persistent cache of the tokens of each file, so that files that did not
+ * change since the previous run are not tokenized again. The entries are
+ * keyed by file name and checked against a checksum of the file contents.
+ * The whole cache is invalidated if the PMD version or the tokenizer
+ * options change.
+ *
+ * <p>Lookups may be done concurrently from the tokenizing threads.
+ * Only the files that were looked up are written back by {@link #persist()}.
+ *
+ * @see CPDConfiguration#setTokenCacheLocation(String)
+ */
+final class CPDTokenCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CPDTokenCache.class);
+
+    private final File cacheFile;
+    private final long configurationChecksum;
+    private final Map<String, Entry> previousEntries = new HashMap<>();
+    private final ConcurrentMap<String, Entry> currentEntries = new ConcurrentHashMap<>();
+    private final AtomicInteger hits = new AtomicInteger();
+
+    private CPDTokenCache(File cacheFile, long configurationChecksum) {
+        this.cacheFile = cacheFile;
+        this.configurationChecksum = configurationChecksum;
+    }
+
+    /**
+     * Loads the cache from the given file. If the file doesn't exist or
+     * was written with another configuration, the cache starts out empty.
+     */
+    static CPDTokenCache load(File cacheFile, CPDConfiguration configuration) {
+        final CPDTokenCache cache = new CPDTokenCache(cacheFile, checksumOf(configuration));
+        if (!cacheFile.isFile()) {
+            return cache;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cacheFile.toPath())))) {
+            if (!PMDVersion.VERSION.equals(in.readUTF()) || in.readLong() != cache.configurationChecksum) {
+                LOG.debug("Token cache {} is outdated, ignoring it", cacheFile);
+                return cache;
+            }
+            final int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                final String fileName = in.readUTF();
+                final long checksum = in.readLong();
+                final byte[] data = new byte[in.readInt()];
+                in.readFully(data);
+                cache.previousEntries.put(fileName, new Entry(checksum, data));
+            }
+            LOG.debug("Loaded {} files from the token cache {}", size, cacheFile);
+        } catch (IOException e) {
+            LOG.warn("Could not load the token cache {}: {}", cacheFile, e.toString());
+            cache.previousEntries.clear();
+        }
+        return cache;
+    }
+
+    /**
+     * Returns the tokens of the given file, either from the cache if the
+     * file didn't change, or by tokenizing it on the current thread.
+     */
+    TokenizedFile tokenize(Tokenizer tokenizer, SourceCode sourceCode) throws IOException {
+        final String fileName = sourceCode.getFileName();
+        final long checksum = checksumOf(sourceCode);
+        final Entry previous = previousEntries.get(fileName);
+        if (previous != null && previous.checksum == checksum) {
+            currentEntries.put(fileName, previous);
+            hits.incrementAndGet();
+            return TokenizedFile.readFrom(new DataInputStream(new ByteArrayInputStream(previous.data)));
+        }
+
+        final TokenizedFile tokenizedFile = TokenizedFile.tokenize(tokenizer, sourceCode);
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            if (tokenizedFile.writeTo(out)) {
+                out.flush();
+                currentEntries.put(fileName, new Entry(checksum, bytes.toByteArray()));
+            }
+        }
+        return tokenizedFile;
+    }
+
+    /**
+     * Writes the entries of the files that were tokenized with this cache.
+     */
+    void persist() {
+        LOG.debug("Token cache hits: {} of {} files", hits.get(), currentEntries.size());
+        final Path target = cacheFile.toPath();
+        try {
+            // a concurrent or interrupted run must never see a partially written cache
+            final Path parent = target.toAbsolutePath().getParent();
+            final Path temp = Files.createTempFile(parent, cacheFile.getName(), ".tmp");
+            try {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                    out.writeUTF(PMDVersion.VERSION);
+                    out.writeLong(configurationChecksum);
+                    out.writeInt(currentEntries.size());
+                    for (Map.Entry<String, Entry> e : currentEntries.entrySet()) {
+                        out.writeUTF(e.getKey());
+                        out.writeLong(e.getValue().checksum);
+                        out.writeInt(e.getValue().data.length);
+                        out.write(e.getValue().data);
+                    }
+                }
+                try {
+                    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            LOG.warn("Could not write the token cache {}: {}", cacheFile, e.toString());
+        }
+    }
+
+    int getHits() {
+        return hits.get();
+    }
+
+    private static long checksumOf(SourceCode sourceCode) {
+        final CRC32 crc = new CRC32();
+        long length = 0;
+        for (String line : sourceCode.getCode()) {
+            final byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+            crc.update(bytes, 0, bytes.length);
+            crc.update('\n');
+            length += bytes.length + 1;
+        }
+        return length << 32 ^ crc.getValue();
+    }
+
+    /** Checksum of the options that change the tokens of a file. */
+    private static long checksumOf(CPDConfiguration configuration) {
+        final String options = configuration.getLanguage().getTerseName()
+            + ':' + configuration.isIgnoreLiterals()
+            + ':' + configuration.isIgnoreIdentifiers()
+            + ':' + configuration.isIgnoreAnnotations()
+            + ':' + configuration.isIgnoreUsings()
+            + ':' + configuration.isIgnoreLiteralSequences()
+            + ':' + configuration.isIgnoreIdentifierAndLiteralSequences()
+            + ':' + configuration.isNoSkipBlocks()
+            + ':' + configuration.getSkipBlocksPattern();
+        final CRC32 crc = new CRC32();
+        final byte[] bytes = options.getBytes(StandardCharsets.UTF_8);
+        crc.update(bytes, 0, bytes.length);
+        return crc.getValue();
+    }
+
+    private static final class Entry {
+
+        private final long checksum;
+        private final byte[] data;
+
+        Entry(long checksum, byte[] data) {
+            this.checksum = checksum;
+            this.data = data;
+        }
+    }
+}
@@ -4,9 +4,7 @@
 
 package net.sourceforge.pmd.cpd;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -18,19 +16,28 @@ public class MatchAlgorithm {
 
     private List<Match> matches;
     private Map<String, SourceCode> source;
-    private Tokens tokens;
-    private List<TokenEntry> code;
+    private final TokenSequence tokens;
     private CPDListener cpdListener;
     private int min;
+    private final MatchEngine engine;
 
     public MatchAlgorithm(Map<String, SourceCode> sourceCode, Tokens tokens, int min) {
         this(sourceCode, tokens, min, new CPDNullListener());
     }
 
     public MatchAlgorithm(Map<String, SourceCode> sourceCode, Tokens tokens, int min, CPDListener listener) {
+        this(sourceCode, tokens, min, listener, MatchEngine.KARP_RABIN);
+    }
+
+    public MatchAlgorithm(Map<String, SourceCode> sourceCode, Tokens tokens, int min, CPDListener listener, MatchEngine engine) {
+        this(sourceCode, TokenSequence.of(tokens), min, listener, engine);
+    }
+
+    MatchAlgorithm(Map<String, SourceCode> sourceCode, TokenSequence tokens, int min, CPDListener listener,
+                   MatchEngine engine) {
         this.source = sourceCode;
+        this.engine = engine;
         this.tokens = tokens;
-        this.code = tokens.getTokens();
         this.min = min;
         this.cpdListener = listener;
         for (int i = 0; i < min; i++) {
@@ -51,7 +58,11 @@ public class MatchAlgorithm {
     }
 
     public TokenEntry tokenAt(int offset, TokenEntry m) {
-        return code.get(offset + m.getIndex());
+        return tokens.tokenEntry(offset + m.getIndex());
+    }
+
+    TokenSequence getTokens() {
+        return tokens;
     }
 
     public int getMinimumTileSize() {
@@ -59,29 +70,21 @@ public class MatchAlgorithm {
     }
 
     public void findMatches() {
-        cpdListener.phaseUpdate(CPDListener.HASH);
-        Map<TokenEntry, Object> markGroups = hash();
-
-        cpdListener.phaseUpdate(CPDListener.MATCH);
         MatchCollector matchCollector = new MatchCollector(this);
-        for (Iterator<Object> i = markGroups.values().iterator(); i.hasNext();) {
-            Object o = i.next();
-            if (o instanceof List) {
-                @SuppressWarnings("unchecked")
-                List<TokenEntry> l = (List<TokenEntry>) o;
-                Collections.reverse(l);
-                matchCollector.collect(l);
-            }
-            i.remove();
+        if (engine == MatchEngine.SUFFIX_ARRAY) {
+            new SuffixArrayMatcher(tokens, min).collectMatches(matchCollector, cpdListener);
+        } else {
+            collectHashedMatches(matchCollector);
         }
+
         cpdListener.phaseUpdate(CPDListener.GROUPING);
         matches = matchCollector.getMatches();
 
         for (Match match : matches) {
             for (Mark mark : match) {
                 TokenEntry token = mark.getToken();
-                int lineCount = tokens.getLineCount(token, match);
-                TokenEntry endToken = tokens.getEndToken(token, match);
+                int lineCount = tokens.getLineCount(token.getIndex(), match.getTokenCount());
+                TokenEntry endToken = tokens.tokenEntry(token.getIndex() + match.getTokenCount() - 1);
 
                 mark.setLineCount(lineCount);
                 mark.setEndToken(endToken);
@@ -93,44 +96,61 @@ public class MatchAlgorithm {
         cpdListener.phaseUpdate(CPDListener.DONE);
     }
 
+    /**
+     * Groups the positions whose next {@code min} tokens have the same
+     * rolling hash, by sorting the positions by hash.
+     */
+    private void collectHashedMatches(MatchCollector matchCollector) {
+        cpdListener.phaseUpdate(CPDListener.HASH);
+        long[] hashedPositions = hash();
+
+        cpdListener.phaseUpdate(CPDListener.MATCH);
+        Arrays.sort(hashedPositions);
+        int start = 0;
+        for (int i = 1; i <= hashedPositions.length; i++) {
+            if (i == hashedPositions.length || hashOf(hashedPositions[i]) != hashOf(hashedPositions[start])) {
+                if (i - start > 1) {
+                    int[] group = new int[i - start];
+                    for (int j = start; j < i; j++) {
+                        group[j - start] = (int) hashedPositions[j];
+                    }
+                    matchCollector.collect(group);
+                }
+                start = i;
+            }
+        }
+    }
+
+    private static int hashOf(long hashedPosition) {
+        return (int) (hashedPosition >> 32);
+    }
+
+    /**
+     * Returns the positions of the tokens that start a window of {@code min}
+     * tokens, each combined with the hash of the window: the hash is in
+     * the high bits, so that sorting the array groups the positions by hash,
+     * and then sorts them by position.
+     */
     @SuppressWarnings("PMD.JumbledIncrementer")
-    private Map<TokenEntry, Object> hash() {
+    private long[] hash() {
         int lastHash = 0;
-        Map<TokenEntry, Object> markGroups = new HashMap<>(tokens.size());
-        for (int i = code.size() - 1; i >= 0; i--) {
-            TokenEntry token = code.get(i);
-            if (!TokenEntry.EOF.equals(token)) {
-                int last = tokenAt(min, token).getIdentifier();
-                lastHash = MOD * lastHash + token.getIdentifier() - lastMod * last;
-                token.setHashCode(lastHash);
-                Object o = markGroups.get(token);
-
-                // Note that this insertion method is worthwhile since the vast
-                // majority
-                // markGroup keys will have only one value.
-                if (o == null) {
-                    markGroups.put(token, token);
-                } else if (o instanceof TokenEntry) {
-                    List<TokenEntry> l = new ArrayList<>();
-                    l.add((TokenEntry) o);
-                    l.add(token);
-                    markGroups.put(token, l);
-                } else {
-                    @SuppressWarnings("unchecked")
-                    List<TokenEntry> l = (List<TokenEntry>) o;
-                    l.add(token);
-                }
+        long[] hashedPositions = new long[tokens.size()];
+        int count = 0;
+        for (int i = tokens.size() - 1; i >= 0; i--) {
+            if (!tokens.isEof(i)) {
+                int last = tokens.getImageId(i + min);
+                lastHash = MOD * lastHash + tokens.getImageId(i) - lastMod * last;
+                hashedPositions[count++] = (long) lastHash << 32 | i;
             } else {
                 lastHash = 0;
                 for (int end = Math.max(0, i - min + 1); i > end; i--) {
-                    token = code.get(i - 1);
-                    lastHash = MOD * lastHash + token.getIdentifier();
-                    if (TokenEntry.EOF.equals(token)) {
+                    lastHash = MOD * lastHash + tokens.getImageId(i - 1);
+                    if (tokens.isEof(i - 1)) {
                         break;
                     }
                 }
             }
         }
-        return markGroups;
+        return Arrays.copyOf(hashedPositions, count);
     }
 }
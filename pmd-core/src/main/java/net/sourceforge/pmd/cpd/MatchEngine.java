@@ -0,0 +1,27 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cpd;
+
+/**
+ * Algorithm used by CPD to find the duplicated token sequences.
+ * Both engines report the same matches.
+ *
+ * @see CPDConfiguration#setMatchEngine(MatchEngine)
+ * @since 7.0.0
+ */
+public enum MatchEngine {
+    /**
+     * Groups the token sequences by their Karp-Rabin rolling hash,
+     * using a hash map with one entry per token. This is the default.
+     */
+    KARP_RABIN,
+    /**
+     * Sorts the suffixes of the token sequence into a suffix array,
+     * in which the duplicated sequences are adjacent. This only uses
+     * a few int arrays of the size of the token sequence, and needs
+     * much less memory than {@link #KARP_RABIN} on large code bases.
+     */
+    SUFFIX_ARRAY
+}
@@ -0,0 +1,185 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cpd;
+
+import java.util.Arrays;
+
+/**
+ * Groups the positions of the token sequence that start with the same
+ * {@code min} tokens, using a suffix array and its LCP array. These
+ * groups are the same as the hash groups of the Karp-Rabin matcher
+ * of {@link MatchAlgorithm} (minus hash collisions), so that the
+ * {@link MatchCollector} reports the same matches.
+ *
+ * <p>The suffix array is built on a copy of the image identifiers of
+ * the {@link TokenSequence}, in which each EOF marker gets a unique
+ * identifier, so that no common prefix of two suffixes extends over
+ * the end of a file.
+ */
+final class SuffixArrayMatcher {
+
+    private final TokenSequence code;
+    private final int min;
+
+    SuffixArrayMatcher(TokenSequence code, int min) {
+        this.code = code;
+        this.min = min;
+    }
+
+    void collectMatches(MatchCollector collector, CPDListener listener) {
+        listener.phaseUpdate(CPDListener.HASH);
+        final int n = code.size();
+        final int[] ids = new int[n];
+        final int alphabetSize = toIdentifiers(ids);
+        final int[] sa = new int[n];
+        final int[] scratch1 = new int[n];
+        final int[] scratch2 = new int[n];
+        buildSuffixArray(ids, alphabetSize, sa, scratch1, scratch2);
+        final int[] lcp = scratch2;
+        buildLcpArray(ids, sa, scratch1, lcp);
+
+        listener.phaseUpdate(CPDListener.MATCH);
+        int start = 0;
+        for (int i = 1; i <= n; i++) {
+            if (i == n || lcp[i] < min) {
+                if (i - start > 1) {
+                    collector.collect(group(sa, start, i));
+                }
+                start = i;
+            }
+        }
+    }
+
+    /** Returns the given suffix array positions, in the order of the token sequence. */
+    private static int[] group(int[] sa, int from, int to) {
+        final int[] positions = Arrays.copyOfRange(sa, from, to);
+        Arrays.sort(positions);
+        return positions;
+    }
+
+    /**
+     * Fills the array with the identifiers of the tokens, and returns
+     * the number of distinct identifiers (plus 1, identifier 0 is unused).
+     */
+    private int toIdentifiers(int[] ids) {
+        int maxId = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (!code.isEof(i)) {
+                ids[i] = code.getImageId(i);
+                maxId = Math.max(maxId, ids[i]);
+            }
+        }
+        int nextId = maxId + 1;
+        for (int i = 0; i < ids.length; i++) {
+            if (code.isEof(i)) {
+                ids[i] = nextId++;
+            }
+        }
+        return nextId;
+    }
+
+    /**
+     * Builds the suffix array of the given string with prefix doubling
+     * and radix sort, in O(n log n). All arrays have the length of the
+     * string.
+     */
+    static void buildSuffixArray(int[] s, int alphabetSize, int[] sa, int[] rank, int[] tmp) {
+        final int n = s.length;
+        if (n == 0) {
+            return;
+        }
+        int[] curRank = rank;
+        int[] newRank = tmp;
+        final int[] count = new int[Math.max(alphabetSize, n)];
+
+        for (int c : s) {
+            count[c]++;
+        }
+        for (int c = 1; c < alphabetSize; c++) {
+            count[c] += count[c - 1];
+        }
+        for (int i = n - 1; i >= 0; i--) {
+            sa[--count[s[i]]] = i;
+        }
+        System.arraycopy(s, 0, curRank, 0, n);
+
+        int classes = alphabetSize;
+        for (int k = 1; k < n; k <<= 1) {
+            // order by the rank of the second half, suffixes without one first
+            int p = 0;
+            for (int i = n - k; i < n; i++) {
+                newRank[p++] = i;
+            }
+            for (int i = 0; i < n; i++) {
+                if (sa[i] >= k) {
+                    newRank[p++] = sa[i] - k;
+                }
+            }
+            // then stable sort by the rank of the first half
+            Arrays.fill(count, 0, classes, 0);
+            for (int i = 0; i < n; i++) {
+                count[curRank[i]]++;
+            }
+            for (int c = 1; c < classes; c++) {
+                count[c] += count[c - 1];
+            }
+            for (int i = n - 1; i >= 0; i--) {
+                final int suffix = newRank[i];
+                sa[--count[curRank[suffix]]] = suffix;
+            }
+
+            newRank[sa[0]] = 0;
+            int r = 0;
+            for (int i = 1; i < n; i++) {
+                final int a = sa[i - 1];
+                final int b = sa[i];
+                if (curRank[a] != curRank[b] || rankAt(curRank, a + k) != rankAt(curRank, b + k)) {
+                    r++;
+                }
+                newRank[b] = r;
+            }
+            final int[] swap = curRank;
+            curRank = newRank;
+            newRank = swap;
+            classes = r + 1;
+            if (classes == n) {
+                break;
+            }
+        }
+    }
+
+    private static int rankAt(int[] rank, int i) {
+        return i < rank.length ? rank[i] : -1;
+    }
+
+    /**
+     * Builds the LCP array with Kasai's algorithm: {@code lcp[i]} is the
+     * length of the common prefix of the suffixes {@code sa[i - 1]} and
+     * {@code sa[i]}, and {@code lcp[0]} is 0.
+     */
+    static void buildLcpArray(int[] s, int[] sa, int[] inverse, int[] lcp) {
+        final int n = s.length;
+        for (int i = 0; i < n; i++) {
+            inverse[sa[i]] = i;
+        }
+        int h = 0;
+        for (int i = 0; i < n; i++) {
+            final int r = inverse[i];
+            if (r == 0) {
+                lcp[0] = 0;
+                h = 0;
+                continue;
+            }
+            final int j = sa[r - 1];
+            while (i + h < n && j + h < n && s[i + h] == s[j + h]) {
+                h++;
+            }
+            lcp[r] = h;
+            if (h > 0) {
+                h--;
+            }
+        }
+    }
+}
@@ -77,6 +77,18 @@ public class TokenEntry implements Comparable<TokenEntry> {
         this.index = TOKEN_COUNT.get().getAndIncrement();
     }
 
+    /**
+     * Creates the token at the given index of a {@link TokenSequence}.
+     */
+    TokenEntry(int identifier, String tokenSrcID, int beginLine, int beginColumn, int endColumn, int index) {
+        this.identifier = identifier;
+        this.tokenSrcID = tokenSrcID;
+        this.beginLine = beginLine;
+        this.beginColumn = beginColumn;
+        this.endColumn = endColumn;
+        this.index = index;
+    }
+
     public TokenEntry(String image, FileLocation location) {
         this(image, location.getFileId().getOriginalPath(), location.getStartLine(), location.getStartColumn(), location.getEndColumn());
     }
@@ -206,11 +218,32 @@ public class TokenEntry implements Comparable<TokenEntry> {
     }
 
     final void setImage(String image) {
+        this.identifier = intern(image);
+    }
+
+    /**
+     * Returns the identifier of the given image in the dictionary
+     * of the current thread, adding it if needed.
+     */
+    static int intern(String image) {
         Integer i = TOKENS.get().get(image);
         if (i == null) {
             i = TOKENS.get().size() + 1;
             TOKENS.get().put(image, i);
         }
-        this.identifier = i.intValue();
+        return i;
+    }
+
+    /**
+     * Returns the images of the dictionary of the current thread,
+     * indexed by their identifier. Index 0 is unused.
+     */
+    static String[] imagesById() {
+        final Map<String, Integer> tokens = TOKENS.get();
+        final String[] images = new String[tokens.size() + 1];
+        for (Map.Entry<String, Integer> e : tokens.entrySet()) {
+            images[e.getValue()] = e.getKey();
+        }
+        return images;
     }
 }
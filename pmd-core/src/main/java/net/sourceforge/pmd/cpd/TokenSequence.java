@@ -0,0 +1,215 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cpd;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The token sequence on which the match engines run, stored as columns
+ * of ints instead of {@link TokenEntry} objects: the identifier of the
+ * image, the file and the coordinates of each token. Identifier 0 is the
+ * EOF marker that ends each file. The position of a token in the
+ * sequence is its {@linkplain TokenEntry#getIndex() index}.
+ *
+ * <p>The sequence is filled from the {@link Tokens} of each file, or
+ * from a {@link TokenizedFile}, after which the token entries can be
+ * collected. Token entries are only created again for the tokens that
+ * are reported in matches, with {@link #tokenEntry(int)}.
+ *
+ * <p>The tokenizers don't report the end line of tokens, so it is not
+ * stored.
+ */
+final class TokenSequence {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private int size;
+    private int[] imageIds;
+    private int[] fileIds;
+    private int[] beginLines;
+    private int[] beginColumns;
+    private int[] endColumns;
+
+    private final List<String> fileNames = new ArrayList<>();
+    private final Map<String, Integer> fileIdsByName = new HashMap<>();
+
+    TokenSequence() {
+        this(INITIAL_CAPACITY);
+    }
+
+    TokenSequence(int capacity) {
+        imageIds = new int[capacity];
+        fileIds = new int[capacity];
+        beginLines = new int[capacity];
+        beginColumns = new int[capacity];
+        endColumns = new int[capacity];
+    }
+
+    /**
+     * Returns a sequence with the given tokens, in the same order.
+     */
+    static TokenSequence of(Tokens tokens) {
+        TokenSequence sequence = new TokenSequence(tokens.size());
+        sequence.addAll(tokens);
+        return sequence;
+    }
+
+    /**
+     * Appends the given tokens. Their identifiers are those of the
+     * dictionary of the current thread, their indices are ignored.
+     */
+    void addAll(Tokens tokens) {
+        ensureCapacity(size + tokens.size());
+        String lastFileName = null;
+        int fileId = -1;
+        for (TokenEntry token : tokens.getTokens()) {
+            if (TokenEntry.EOF.equals(token)) {
+                addEof();
+                continue;
+            }
+            if (!token.getTokenSrcID().equals(lastFileName)) {
+                // the tokens of a file are usually all from the same file
+                lastFileName = token.getTokenSrcID();
+                fileId = fileId(lastFileName);
+            }
+            add(token.getIdentifier(), fileId, token.getBeginLine(), token.getBeginColumn(), token.getEndColumn());
+        }
+    }
+
+    /**
+     * Appends the tokens of another sequence, whose identifiers are
+     * translated with the given array.
+     */
+    void addAll(TokenSequence other, int[] identifiers) {
+        ensureCapacity(size + other.size);
+        final int[] otherFileIds = new int[other.fileNames.size()];
+        for (int i = 0; i < otherFileIds.length; i++) {
+            otherFileIds[i] = fileId(other.fileNames.get(i));
+        }
+        for (int i = 0; i < other.size; i++) {
+            if (other.isEof(i)) {
+                addEof();
+            } else {
+                add(identifiers[other.imageIds[i]], otherFileIds[other.fileIds[i]],
+                    other.beginLines[i], other.beginColumns[i], other.endColumns[i]);
+            }
+        }
+    }
+
+    /**
+     * Appends a token.
+     *
+     * @param imageId Identifier of the image, not 0
+     * @param fileId  Identifier of the file, as returned by {@link #fileId(String)}
+     */
+    void add(int imageId, int fileId, int beginLine, int beginColumn, int endColumn) {
+        assert imageId != 0 : "Identifier 0 is the EOF marker";
+        ensureCapacity(size + 1);
+        imageIds[size] = imageId;
+        fileIds[size] = fileId;
+        beginLines[size] = beginLine;
+        beginColumns[size] = beginColumn;
+        endColumns[size] = endColumn;
+        size++;
+    }
+
+    /** Appends the EOF marker that ends a file. */
+    void addEof() {
+        ensureCapacity(size + 1);
+        imageIds[size] = 0;
+        fileIds[size] = -1;
+        beginLines[size] = -1;
+        beginColumns[size] = -1;
+        endColumns[size] = -1;
+        size++;
+    }
+
+    /** Returns the identifier of the given file name, adding it if needed. */
+    int fileId(String fileName) {
+        Integer id = fileIdsByName.get(fileName);
+        if (id == null) {
+            id = fileNames.size();
+            fileNames.add(fileName);
+            fileIdsByName.put(fileName, id);
+        }
+        return id;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= imageIds.length) {
+            return;
+        }
+        final int grown = Math.max(INITIAL_CAPACITY, imageIds.length + (imageIds.length >> 1));
+        final int newCapacity = Math.max(capacity, grown);
+        imageIds = Arrays.copyOf(imageIds, newCapacity);
+        fileIds = Arrays.copyOf(fileIds, newCapacity);
+        beginLines = Arrays.copyOf(beginLines, newCapacity);
+        beginColumns = Arrays.copyOf(beginColumns, newCapacity);
+        endColumns = Arrays.copyOf(endColumns, newCapacity);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /** Returns the number of distinct file names of the tokens. */
+    int getFileCount() {
+        return fileNames.size();
+    }
+
+    boolean isEof(int position) {
+        return imageIds[position] == 0;
+    }
+
+    /** Returns the identifier of the image of the token, 0 for the EOF marker. */
+    int getImageId(int position) {
+        return imageIds[position];
+    }
+
+    /** Returns the file name of the token, null for the EOF marker. */
+    String getFileName(int position) {
+        return isEof(position) ? null : fileNames.get(fileIds[position]);
+    }
+
+    int getBeginLine(int position) {
+        return beginLines[position];
+    }
+
+    int getBeginColumn(int position) {
+        return beginColumns[position];
+    }
+
+    int getEndColumn(int position) {
+        return endColumns[position];
+    }
+
+    /**
+     * Returns the number of lines spanned by the given number of tokens,
+     * from the given position. A trailing EOF marker is not counted.
+     */
+    int getLineCount(int position, int tokenCount) {
+        int end = position + tokenCount - 1;
+        if (isEof(end)) {
+            end--;
+        }
+        return beginLines[end] - beginLines[position] + 1;
+    }
+
+    /**
+     * Returns a new token entry for the token at the given position,
+     * or {@link TokenEntry#EOF}.
+     */
+    TokenEntry tokenEntry(int position) {
+        if (isEof(position)) {
+            return TokenEntry.EOF;
+        }
+        return new TokenEntry(imageIds[position], fileNames.get(fileIds[position]),
+                              beginLines[position], beginColumns[position], endColumns[position], position);
+    }
+}
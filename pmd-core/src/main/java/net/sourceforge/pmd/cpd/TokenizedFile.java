@@ -0,0 +1,125 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cpd;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The tokens of a file that was tokenized on a worker thread, with
+ * the dictionary of their images. The tokens are copied into the token
+ * sequence of the CPD thread with {@link #appendTo(TokenSequence)}.
+ * They are stored in a {@link TokenSequence}, the token entries created
+ * by the tokenizer are not kept.
+ *
+ * <p>Each file is tokenized with a fresh dictionary, in which identifiers
+ * are assigned in order of first occurrence. Appending the files in
+ * order therefore assigns the same identifiers and indices as tokenizing
+ * them sequentially on the CPD thread.
+ *
+ * <p>A tokenized file can be {@linkplain #writeTo(DataOutputStream) written}
+ * to the {@link CPDTokenCache} before it is appended.
+ */
+final class TokenizedFile {
+
+    private final TokenSequence tokens;
+    private final String[] images;
+
+    private TokenizedFile(TokenSequence tokens, String[] images) {
+        this.tokens = tokens;
+        this.images = images;
+    }
+
+    /**
+     * Tokenizes the given file on the current thread.
+     */
+    static TokenizedFile tokenize(Tokenizer tokenizer, SourceCode sourceCode) throws IOException {
+        TokenEntry.clearImages();
+        try {
+            Tokens fileTokens = new Tokens();
+            tokenizer.tokenize(sourceCode, fileTokens);
+            return new TokenizedFile(TokenSequence.of(fileTokens), TokenEntry.imagesById());
+        } finally {
+            TokenEntry.clearImages();
+        }
+    }
+
+    /**
+     * Appends the tokens to the given sequence, translating their
+     * identifiers to the dictionary of the current thread.
+     */
+    void appendTo(TokenSequence target) {
+        final int[] identifiers = new int[images.length];
+        for (int i = 1; i < images.length; i++) {
+            identifiers[i] = TokenEntry.intern(images[i]);
+        }
+        target.addAll(tokens, identifiers);
+    }
+
+    /**
+     * Writes the tokens and their images. Returns false and writes nothing
+     * if the tokens don't all have the same source id, which is the only
+     * one that is stored.
+     */
+    boolean writeTo(DataOutputStream out) throws IOException {
+        if (tokens.getFileCount() > 1) {
+            return false;
+        }
+        String tokenSrcID = null;
+        for (int i = 0; i < tokens.size() && tokenSrcID == null; i++) {
+            tokenSrcID = tokens.getFileName(i);
+        }
+        out.writeUTF(tokenSrcID == null ? "" : tokenSrcID);
+        out.writeInt(images.length);
+        for (int i = 1; i < images.length; i++) {
+            // images may be longer than what writeUTF supports
+            final byte[] bytes = images[i].getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        out.writeInt(tokens.size());
+        for (int i = 0; i < tokens.size(); i++) {
+            // identifier 0 is the EOF marker
+            out.writeInt(tokens.getImageId(i));
+            out.writeInt(tokens.getBeginLine(i));
+            out.writeInt(tokens.getBeginColumn(i));
+            out.writeInt(tokens.getEndColumn(i));
+        }
+        return true;
+    }
+
+    /**
+     * Reads a file that was written with {@link #writeTo(DataOutputStream)}.
+     */
+    static TokenizedFile readFrom(DataInputStream in) throws IOException {
+        final String tokenSrcID = in.readUTF();
+        final String[] images = new String[in.readInt()];
+        for (int i = 1; i < images.length; i++) {
+            final byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            images[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        final int size = in.readInt();
+        final TokenSequence tokens = new TokenSequence(size);
+        int fileId = -1;
+        for (int i = 0; i < size; i++) {
+            final int identifier = in.readInt();
+            final int beginLine = in.readInt();
+            final int beginColumn = in.readInt();
+            final int endColumn = in.readInt();
+            if (identifier == 0) {
+                tokens.addEof();
+            } else {
+                if (fileId < 0) {
+                    fileId = tokens.fileId(tokenSrcID);
+                }
+                tokens.add(identifier, fileId, beginLine, beginColumn, endColumn);
+            }
+        }
+        return new TokenizedFile(tokens, images);
+    }
+}
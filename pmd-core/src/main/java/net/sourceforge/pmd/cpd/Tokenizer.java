@@ -48,4 +48,21 @@ public interface Tokenizer {
     String DEFAULT_SKIP_BLOCKS_PATTERN = "#if 0|#endif";
 
     void tokenize(SourceCode sourceCode, Tokens tokenEntries) throws IOException;
+
+    /**
+     * Returns true if this tokenizer may tokenize several files concurrently.
+     * This is the case if it does not keep any per-file state in its fields
+     * during {@link #tokenize(SourceCode, Tokens)}. CPD only tokenizes files
+     * in parallel if the tokenizer is thread-safe.
+     *
+     * <p>By default, tokenizers are assumed not to be thread-safe.
+     *
+     * @return True if this tokenizer is thread-safe
+     *
+     * @see CPDConfiguration#setThreads(int)
+     * @since 7.0.0
+     */
+    default boolean isThreadSafe() {
+        return false;
+    }
 }
@@ -50,6 +50,15 @@ public abstract class AntlrTokenizer implements Tokenizer {
         }
     }
 
+    /**
+     * Returns true: the lexer and token filter are created for each file.
+     * Subclasses that keep per-file state in their fields must override this.
+     */
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
     protected AntlrTokenFilter getTokenFilter(final AntlrTokenManager tokenManager) {
         return new AntlrTokenFilter(tokenManager);
     }
@@ -46,6 +46,15 @@ public abstract class JavaCCTokenizer implements Tokenizer {
         return token.getImage();
     }
 
+    /**
+     * Returns true: the lexer and token filter are created for each file.
+     * Subclasses that keep per-file state in their fields must override this.
+     */
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
     @Override
     public void tokenize(SourceCode sourceCode, Tokens tokenEntries) throws IOException {
         TextFile textFile = CpdCompat.cpdCompat(sourceCode);
@@ -0,0 +1,95 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.internal;
+
+import java.util.concurrent.TimeUnit;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import net.sourceforge.pmd.lang.ast.FileTimeoutException;
+
+/**
+ * The deadline of the analysis of a file. Threads cannot be stopped
+ * safely, so the deadline is cooperative: the analysis checks it between
+ * its steps, e.g. between the nodes visited by the rules, and aborts
+ * with a {@link FileTimeoutException} once it is passed.
+ */
+public final class FileDeadline {
+
+    private static final ThreadLocal<FileDeadline> CURRENT = new ThreadLocal<>();
+    /** Number of calls to {@link #check()} between two reads of the clock. */
+    private static final int CHECK_INTERVAL = 64;
+
+    private final long timeoutMillis;
+    private final long deadline;
+    // may be decremented concurrently by the threads that apply rules
+    // concurrently, losing some updates is harmless
+    private int countdown = CHECK_INTERVAL;
+
+    private FileDeadline(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+        this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    }
+
+    /**
+     * Starts the deadline of a file on the current thread. Until {@link #end()}
+     * is called, it is returned by {@link #current()} on this thread.
+     * Returns null and does nothing if the timeout is zero.
+     */
+    public static @Nullable FileDeadline start(long timeoutMillis) {
+        if (timeoutMillis <= 0) {
+            return null;
+        }
+        FileDeadline deadline = new FileDeadline(timeoutMillis);
+        CURRENT.set(deadline);
+        return deadline;
+    }
+
+    /**
+     * Returns the deadline of the file being analysed on the current
+     * thread, or null if there is none.
+     */
+    public static @Nullable FileDeadline current() {
+        return CURRENT.get();
+    }
+
+    /** Ends the deadline started on the current thread. */
+    public void end() {
+        CURRENT.remove();
+    }
+
+    /**
+     * Throws if the deadline is passed. This is cheap enough to be called
+     * for each node, the clock is only read every few calls.
+     *
+     * @throws FileTimeoutException If the deadline is passed
+     */
+    public void check() {
+        countdown--;
+        if (countdown <= 0) {
+            countdown = CHECK_INTERVAL;
+            checkNow();
+        }
+    }
+
+    /**
+     * Throws if the deadline is passed.
+     *
+     * @throws FileTimeoutException If the deadline is passed
+     */
+    public void checkNow() {
+        if (isPassed()) {
+            throw new FileTimeoutException(timeoutMillis);
+        }
+    }
+
+    /**
+     * Returns true if the deadline is passed. This is for analyses that
+     * stop on their own, instead of aborting the file, e.g. type inference.
+     */
+    public boolean isPassed() {
+        return System.nanoTime() - deadline > 0;
+    }
+}
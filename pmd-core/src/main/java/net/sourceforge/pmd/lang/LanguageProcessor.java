@@ -6,13 +6,17 @@ package net.sourceforge.pmd.lang;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 import net.sourceforge.pmd.RuleSets;
 import net.sourceforge.pmd.annotation.InternalApi;
+import net.sourceforge.pmd.benchmark.AnalysisProfiler;
 import net.sourceforge.pmd.cache.AnalysisCache;
 import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.lang.impl.FileSchedulingMode;
 import net.sourceforge.pmd.reporting.GlobalAnalysisListener;
 import net.sourceforge.pmd.util.log.MessageReporter;
 
@@ -67,12 +71,24 @@ public interface LanguageProcessor extends AutoCloseable {
         private final AnalysisCache analysisCache;
         private final MessageReporter messageReporter;
         private final LanguageProcessorRegistry lpRegistry;
+        // set by the with* methods on a fresh copy only
+        private FileSchedulingMode fileSchedulingMode = FileSchedulingMode.IN_ORDER;
+        private int concurrentRulesThreshold;
+        private boolean cacheUsesFileMetadata;
+        private @Nullable AnalysisProfiler profiler;
+        private long fileTimeout;
+        private @Nullable ForkJoinPool concurrentRulesPool;
 
 
         /**
          * Create a new task. This constructor is internal and will be
          * called by PMD.
+         *
+         * @deprecated Use {@link #create(RuleSets, List, GlobalAnalysisListener, int,
+         *     AnalysisCache, MessageReporter, LanguageProcessorRegistry) create}
+         *     and the {@code with*} methods
          */
+        @Deprecated
         @InternalApi
         public AnalysisTask(RuleSets rulesets,
                             List<TextFile> files,
@@ -90,6 +106,22 @@ public interface LanguageProcessor extends AutoCloseable {
             this.lpRegistry = lpRegistry;
         }
 
+        /**
+         * Create a new task. The other settings have their default value
+         * and may be changed with the {@code with*} methods. This method
+         * is internal and will be called by PMD.
+         */
+        @InternalApi
+        public static AnalysisTask create(RuleSets rulesets,
+                                          List<TextFile> files,
+                                          GlobalAnalysisListener listener,
+                                          int threadCount,
+                                          AnalysisCache analysisCache,
+                                          MessageReporter messageReporter,
+                                          LanguageProcessorRegistry lpRegistry) {
+            return new AnalysisTask(rulesets, files, listener, threadCount, analysisCache, messageReporter, lpRegistry);
+        }
+
         public RuleSets getRulesets() {
             return rulesets;
         }
@@ -118,19 +150,139 @@ public interface LanguageProcessor extends AutoCloseable {
             return lpRegistry;
         }
 
+        public FileSchedulingMode getFileSchedulingMode() {
+            return fileSchedulingMode;
+        }
+
+        /**
+         * Returns the number of lines from which the rules are applied
+         * concurrently on a file, or zero if they are never.
+         */
+        public int getConcurrentRulesThreshold() {
+            return concurrentRulesThreshold;
+        }
+
+        /**
+         * Returns whether files whose metadata did not change are
+         * skipped without being read, if the analysis cache supports it.
+         *
+         * @see AnalysisCache#isUpToDateByMetadata(TextFile)
+         */
+        public boolean isCacheUsesFileMetadata() {
+            return cacheUsesFileMetadata;
+        }
+
+        /**
+         * Returns the profiler of the analysis, or null if it is not profiled.
+         */
+        public @Nullable AnalysisProfiler getProfiler() {
+            return profiler;
+        }
+
+        /**
+         * Returns the maximum time spent on a single file in milliseconds,
+         * or zero if there is no limit.
+         */
+        public long getFileTimeout() {
+            return fileTimeout;
+        }
+
+        private AnalysisTask copy() {
+            return copy(files);
+        }
+
+        private AnalysisTask copy(List<TextFile> newFiles) {
+            AnalysisTask copy = new AnalysisTask(rulesets, newFiles, listener, threadCount,
+                                                 analysisCache, messageReporter, lpRegistry);
+            copy.fileSchedulingMode = fileSchedulingMode;
+            copy.concurrentRulesThreshold = concurrentRulesThreshold;
+            copy.cacheUsesFileMetadata = cacheUsesFileMetadata;
+            copy.profiler = profiler;
+            copy.fileTimeout = fileTimeout;
+            copy.concurrentRulesPool = concurrentRulesPool;
+            return copy;
+        }
+
+        /**
+         * Returns the pool on which the rules are applied concurrently on
+         * the files that reach the {@linkplain #getConcurrentRulesThreshold() threshold},
+         * or null if they are never. The pool is managed by the file processor.
+         */
+        public @Nullable ForkJoinPool getConcurrentRulesPool() {
+            return concurrentRulesPool;
+        }
+
         /**
          * Produce a new analysis task with just different files.
          */
         public AnalysisTask withFiles(List<TextFile> newFiles) {
-            return new AnalysisTask(
-                rulesets,
-                newFiles,
-                listener,
-                threadCount,
-                analysisCache,
-                messageReporter,
-                lpRegistry
-            );
+            return copy(newFiles);
+        }
+
+        /**
+         * Produce a new analysis task with a different file scheduling mode.
+         */
+        public AnalysisTask withFileSchedulingMode(FileSchedulingMode mode) {
+            AnalysisTask copy = copy();
+            copy.fileSchedulingMode = mode;
+            return copy;
+        }
+
+        /**
+         * Produce a new analysis task with a different threshold for
+         * concurrent rule application.
+         *
+         * @see #getConcurrentRulesThreshold()
+         */
+        public AnalysisTask withConcurrentRulesThreshold(int threshold) {
+            AnalysisTask copy = copy();
+            copy.concurrentRulesThreshold = threshold;
+            return copy;
+        }
+
+        /**
+         * Produce a new analysis task that does or does not check the
+         * analysis cache using the file metadata.
+         *
+         * @see #isCacheUsesFileMetadata()
+         */
+        public AnalysisTask withCacheUsesFileMetadata(boolean useMetadata) {
+            AnalysisTask copy = copy();
+            copy.cacheUsesFileMetadata = useMetadata;
+            return copy;
+        }
+
+        /**
+         * Produce a new analysis task with a different profiler.
+         */
+        public AnalysisTask withProfiler(@Nullable AnalysisProfiler newProfiler) {
+            AnalysisTask copy = copy();
+            copy.profiler = newProfiler;
+            return copy;
+        }
+
+        /**
+         * Produce a new analysis task with a different file timeout.
+         *
+         * @see #getFileTimeout()
+         */
+        public AnalysisTask withFileTimeout(long timeoutMillis) {
+            AnalysisTask copy = copy();
+            copy.fileTimeout = timeoutMillis;
+            return copy;
+        }
+
+        /**
+         * Produce a new analysis task with a different pool for concurrent
+         * rule application. This is internal and will be called by PMD.
+         *
+         * @see #getConcurrentRulesPool()
+         */
+        @InternalApi
+        public AnalysisTask withConcurrentRulesPool(@Nullable ForkJoinPool pool) {
+            AnalysisTask copy = copy();
+            copy.concurrentRulesPool = pool;
+            return copy;
         }
     }
 
@@ -7,9 +7,12 @@ package net.sourceforge.pmd.lang;
 import java.util.Collections;
 import java.util.List;
 
+import net.sourceforge.pmd.PMDConfiguration;
 import net.sourceforge.pmd.ViolationSuppressor;
 import net.sourceforge.pmd.annotation.Experimental;
+import net.sourceforge.pmd.lang.ast.Node;
 import net.sourceforge.pmd.lang.ast.Parser;
+import net.sourceforge.pmd.lang.ast.RootNode;
 import net.sourceforge.pmd.lang.metrics.LanguageMetricsProvider;
 import net.sourceforge.pmd.lang.rule.xpath.impl.XPathHandler;
 import net.sourceforge.pmd.reporting.ViolationDecorator;
@@ -82,4 +85,30 @@ public interface LanguageVersionHandler {
         return DefaultDesignerBindings.getInstance();
     }
 
+
+    /**
+     * Prepares the given AST to be accessed concurrently by several rules,
+     * by computing the state that is otherwise computed lazily when rules
+     * access it, such as type resolution. Returns false if the AST cannot
+     * be accessed concurrently, in which case the rules are applied one
+     * after the other. Note that the {@linkplain Node#getUserMap() user data maps}
+     * of an AST for which this returns true are made thread-safe, but not
+     * the values they hold. Values that have mutable state must be thread-safe
+     * or kept per thread, like the tree wrappers of XPath rules.
+     *
+     * <p>By default, ASTs are assumed not to support concurrent access.
+     *
+     * @param root The root of the AST, once parsed
+     *
+     * @return True if the rules may access the AST concurrently
+     *
+     * @see PMDConfiguration#setConcurrentRulesThreshold(int)
+     * @since 7.0.0
+     */
+    @Experimental
+    default boolean prepareForConcurrentRules(RootNode root) {
+        return false;
+    }
+
+
 }
@@ -20,6 +20,7 @@ import net.sourceforge.pmd.lang.document.FileLocation;
  * <li>{@link ParseException}: syntax errors
  * <li>{@link SemanticException}: exceptions occurring after the parsing
  * phase, because the source code is semantically invalid
+ * <li>{@link FileTimeoutException}: the analysis of the file took too long
  * </ul>
  */
 public class FileAnalysisException extends RuntimeException {
@@ -0,0 +1,35 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.ast;
+
+import net.sourceforge.pmd.PMDConfiguration;
+
+/**
+ * Thrown when the analysis of a file takes longer than the
+ * {@linkplain PMDConfiguration#setFileTimeout(long) configured timeout}.
+ * The analysis of the file is aborted, the violations that were found
+ * until then are still reported.
+ */
+public class FileTimeoutException extends FileAnalysisException {
+
+    private final long timeoutMillis;
+
+    public FileTimeoutException(long timeoutMillis) {
+        super("Analysis of the file took longer than " + timeoutMillis + " ms, it was aborted");
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Returns the timeout that was exceeded, in milliseconds.
+     */
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    @Override
+    protected String errorKind() {
+        return "Timeout";
+    }
+}
@@ -13,8 +13,10 @@ import java.io.InputStreamReader;
 import java.io.Reader;
 import java.nio.charset.Charset;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 
 import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 import net.sourceforge.pmd.PMDConfiguration;
 import net.sourceforge.pmd.annotation.DeprecatedUntil700;
@@ -104,6 +106,31 @@ public interface TextFile extends Closeable {
     TextFileContent readContents() throws IOException;
 
 
+    /**
+     * Returns an estimate of the size of the contents of this file, without
+     * reading them. This is used as a hint to schedule the analysis, and
+     * may be a number of bytes or of characters.
+     *
+     * @return An estimate of the size, or -1 if it cannot be computed cheaply
+     */
+    default long getSizeEstimate() {
+        return -1;
+    }
+
+
+    /**
+     * Returns the attributes of the underlying file, without reading its
+     * contents. The analysis cache uses their size, modification time
+     * and file key to detect that a file has not changed.
+     *
+     * @return The attributes, or null if there is no underlying file
+     *     or they cannot be read
+     */
+    default @Nullable BasicFileAttributes getFileAttributes() {
+        return null;
+    }
+
+
     /**
      * Release resources associated with this text file. Is a noop if
      * it is called several times.
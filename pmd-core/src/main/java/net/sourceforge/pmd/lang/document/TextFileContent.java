@@ -6,6 +6,7 @@ package net.sourceforge.pmd.lang.document;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -157,6 +158,92 @@ public final class TextFileContent {
         }
     }
 
+    /**
+     * Reads the contents of a file that was read fully into a byte array.
+     * If the charset is ASCII-compatible and the bytes are all ASCII, they
+     * are decoded directly, and the line terminators and line offsets are
+     * found in the same pass. Otherwise this decodes them like
+     * {@link #fromInputStream(InputStream, Charset)}. The checksum is the
+     * same in both cases.
+     */
+    static TextFileContent fromBytes(byte[] bytes, Charset sourceEncoding) throws IOException {
+        return fromBytes(bytes, sourceEncoding, FALLBACK_LINESEP);
+    }
+
+    // test only
+    static TextFileContent fromBytes(byte[] bytes, Charset sourceEncoding, String fallbackLineSep) throws IOException {
+        Checksum checksum = newChecksum();
+        checksum.update(bytes, 0, bytes.length);
+        if (isAsciiCompatible(sourceEncoding)) {
+            TextFileContent content = readAscii(bytes, checksum.getValue(), fallbackLineSep);
+            if (content != null) {
+                return content;
+            }
+        }
+        try (Reader reader = new InputStreamReader(new ByteArrayInputStream(bytes), sourceEncoding)) {
+            return normalizingRead(reader, DEFAULT_BUFSIZE, fallbackLineSep, checksum, false);
+        }
+    }
+
+    private static boolean isAsciiCompatible(Charset charset) {
+        return StandardCharsets.UTF_8.equals(charset)
+            || StandardCharsets.US_ASCII.equals(charset)
+            || StandardCharsets.ISO_8859_1.equals(charset);
+    }
+
+    /**
+     * Decodes the bytes if they are all ASCII, returns null otherwise.
+     * Text with \r line terminators is normalized with {@link #readAsciiWithCr}.
+     */
+    private static @Nullable TextFileContent readAscii(byte[] bytes, long checksum, String fallbackLineSep) {
+        SourceCodePositioner.Builder positionerBuilder = new SourceCodePositioner.Builder();
+        boolean hasLf = false;
+        for (int i = 0; i < bytes.length; i++) {
+            byte b = bytes[i];
+            if (b < 0) {
+                return null;
+            } else if (b == '\r') {
+                return readAsciiWithCr(bytes, checksum, fallbackLineSep);
+            } else if (b == NORMALIZED_LINE_TERM_CHAR) {
+                positionerBuilder.addLineEndAtOffset(i + 1);
+                hasLf = true;
+            }
+        }
+        // the text doesn't need to be normalized
+        String text = new String(bytes, StandardCharsets.ISO_8859_1);
+        String lineTerminator = hasLf ? LF : fallbackLineSep;
+        return new TextFileContent(Chars.wrap(text), lineTerminator, checksum, positionerBuilder.build(bytes.length));
+    }
+
+    private static @Nullable TextFileContent readAsciiWithCr(byte[] bytes, long checksum, String fallbackLineSep) {
+        SourceCodePositioner.Builder positionerBuilder = new SourceCodePositioner.Builder();
+        char[] chars = new char[bytes.length];
+        String detectedLineTerm = null;
+        int len = 0;
+        int i = 0;
+        while (i < bytes.length) {
+            byte b = bytes[i++];
+            if (b < 0) {
+                return null;
+            } else if (b == '\r' || b == NORMALIZED_LINE_TERM_CHAR) {
+                String newLineTerm = LF;
+                if (b == '\r') {
+                    boolean crlf = i < bytes.length && bytes[i] == NORMALIZED_LINE_TERM_CHAR;
+                    newLineTerm = crlf ? CRLF : CR;
+                    if (crlf) {
+                        i++;
+                    }
+                }
+                chars[len++] = NORMALIZED_LINE_TERM_CHAR;
+                positionerBuilder.addLineEndAtOffset(len);
+                detectedLineTerm = detectLineTerm(detectedLineTerm, newLineTerm, fallbackLineSep);
+            } else {
+                chars[len++] = (char) b;
+            }
+        }
+        return new TextFileContent(Chars.wrap(new String(chars, 0, len)), detectedLineTerm, checksum, positionerBuilder.build(len));
+    }
+
     // test only
     static @NonNull TextFileContent normalizeCharSeq(CharSequence text, String fallBackLineSep) {
         long checksum = getCheckSum(text); // the checksum is computed on the original file
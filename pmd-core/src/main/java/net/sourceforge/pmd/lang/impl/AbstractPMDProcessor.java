@@ -4,8 +4,17 @@
 
 package net.sourceforge.pmd.lang.impl;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinPool.ForkJoinWorkerThreadFactory;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import net.sourceforge.pmd.RuleSets;
 import net.sourceforge.pmd.lang.LanguageProcessor.AnalysisTask;
 import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.util.log.MessageReporter;
 
 /**
  * This is internal API!
@@ -15,9 +24,24 @@ import net.sourceforge.pmd.lang.document.TextFile;
 abstract class AbstractPMDProcessor implements AutoCloseable {
 
     protected final AnalysisTask task;
+    private final @Nullable ForkJoinPool concurrentRulesPool;
 
     AbstractPMDProcessor(AnalysisTask task) {
-        this.task = task;
+        this.concurrentRulesPool = newConcurrentRulesPool(task);
+        this.task = task.withConcurrentRulesPool(concurrentRulesPool);
+    }
+
+    /**
+     * Returns the pool on which the rules are applied concurrently on
+     * large files, or null if they are not. The pool has as many threads
+     * as the analysis, so rules are never applied concurrently if the
+     * analysis has only one thread.
+     */
+    private static @Nullable ForkJoinPool newConcurrentRulesPool(AnalysisTask task) {
+        if (task.getConcurrentRulesThreshold() <= 0 || task.getThreadCount() <= 1) {
+            return null;
+        }
+        return new ForkJoinPool(task.getThreadCount(), new RulesThreadFactory(), null, false);
     }
 
     /**
@@ -25,23 +49,74 @@ abstract class AbstractPMDProcessor implements AutoCloseable {
      */
     public abstract void processFiles();
 
+    /**
+     * Returns a thread-local holding the rulesets each thread should use.
+     * The thread-local is not static, but analysis-global. This means we
+     * don't have to reset it manually, every analysis is isolated.
+     * Each thread gets a copy of the rulesets of the task, which shares
+     * the thread-safe rules and contains its own copy of the other ones.
+     */
+    protected final ThreadLocal<RuleSets> newRuleSetsPerThread() {
+        // use a noop reporter because the copy should only contain rules that
+        // initialized properly
+        return ThreadLocal.withInitial(
+            () -> task.getRulesets().copyForThread(task.getLpRegistry(), MessageReporter.quiet())
+        );
+    }
+
     /**
      * Joins tasks and await completion of the analysis. After this, all
      * {@link TextFile}s must have been closed.
      */
+    protected abstract void awaitFiles();
+
+    /**
+     * Awaits the completion of the analysis, then shuts down the threads
+     * of the processor.
+     */
     @Override
-    public abstract void close();
+    public final void close() {
+        try {
+            awaitFiles();
+        } finally {
+            if (concurrentRulesPool != null) {
+                // no file is being processed anymore
+                concurrentRulesPool.shutdownNow();
+            }
+        }
+    }
 
     /**
      * Returns a new file processor. The strategy used for threading is
-     * determined by {@link AnalysisTask#getThreadCount()}.
+     * determined by {@link AnalysisTask#getThreadCount()} and
+     * {@link AnalysisTask#getFileSchedulingMode()}.
      * <p>Note: Only {@code 0} threads disables multi-thread processing. See the CLI documentation
      * for parameter {@code --threads}.</p>
      */
     public static AbstractPMDProcessor newFileProcessor(AnalysisTask analysisTask) {
-        return analysisTask.getThreadCount() > 0
-               ? new MultiThreadProcessor(analysisTask)
-               : new MonoThreadProcessor(analysisTask);
+        if (analysisTask.getThreadCount() <= 0) {
+            return new MonoThreadProcessor(analysisTask);
+        }
+        return analysisTask.getFileSchedulingMode() == FileSchedulingMode.LARGEST_FIRST
+               ? new WorkStealingProcessor(analysisTask)
+               : new MultiThreadProcessor(analysisTask);
+    }
+
+    /**
+     * Names the threads that apply the rules concurrently. They are daemon
+     * threads, like those of the common pool they replace.
+     */
+    private static final class RulesThreadFactory implements ForkJoinWorkerThreadFactory {
+
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+            ForkJoinWorkerThread thread = new ForkJoinWorkerThread(pool) { };
+            thread.setName("PmdRulesThread " + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
     }
 
 }
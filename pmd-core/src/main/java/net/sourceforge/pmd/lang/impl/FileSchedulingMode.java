@@ -0,0 +1,32 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.impl;
+
+import net.sourceforge.pmd.PMDConfiguration;
+
+/**
+ * Order in which files are handed to the worker threads during a
+ * multi-threaded analysis. This has no effect when the analysis runs
+ * on a single thread.
+ *
+ * @see PMDConfiguration#setFileSchedulingMode(FileSchedulingMode)
+ * @since 7.0.0
+ */
+public enum FileSchedulingMode {
+    /**
+     * Files are processed in the order in which they were collected,
+     * on a fixed thread pool. This is the default.
+     */
+    IN_ORDER,
+    /**
+     * Files are processed on a work-stealing pool, the most expensive
+     * files first. The cost of a file is estimated from the time its
+     * analysis took in the previous run (if an analysis cache is used),
+     * or else from its size. This avoids that a few large files which
+     * are picked up last keep a single thread busy while the others are
+     * idle.
+     */
+    LARGEST_FIRST
+}
@@ -26,7 +26,7 @@ final class MonoThreadProcessor extends AbstractPMDProcessor {
     }
 
     @Override
-    public void close() {
+    protected void awaitFiles() {
         // nothing to do
     }
 
@@ -6,16 +6,25 @@ package net.sourceforge.pmd.lang.impl;
 
 import static net.sourceforge.pmd.util.CollectionUtil.listOf;
 
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import net.sourceforge.pmd.Report;
+import net.sourceforge.pmd.Rule;
 import net.sourceforge.pmd.RuleSets;
 import net.sourceforge.pmd.RuleViolation;
+import net.sourceforge.pmd.benchmark.AnalysisProfiler;
+import net.sourceforge.pmd.benchmark.AnalysisProfiler.FileRecorder;
 import net.sourceforge.pmd.benchmark.TimeTracker;
 import net.sourceforge.pmd.benchmark.TimedOperation;
 import net.sourceforge.pmd.benchmark.TimedOperationCategory;
 import net.sourceforge.pmd.cache.AnalysisCache;
+import net.sourceforge.pmd.internal.FileDeadline;
 import net.sourceforge.pmd.internal.SystemProps;
 import net.sourceforge.pmd.lang.LanguageProcessor;
 import net.sourceforge.pmd.lang.LanguageProcessor.AnalysisTask;
@@ -38,6 +47,7 @@ abstract class PmdRunnable implements Runnable {
     private static final Logger LOG = LoggerFactory.getLogger(PmdRunnable.class);
     private final TextFile textFile;
     private final AnalysisTask task;
+    private @Nullable FileRecorder profile;
 
     PmdRunnable(TextFile textFile, AnalysisTask task) {
         this.textFile = textFile;
@@ -54,6 +64,8 @@ abstract class PmdRunnable implements Runnable {
     @Override
     public void run() throws FileAnalysisException {
         TimeTracker.initThread();
+        AnalysisProfiler profiler = task.getProfiler();
+        profile = profiler == null ? null : profiler.startFile(textFile.getFileId());
 
         try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.FILE_PROCESSING);
              FileAnalysisListener listener = task.getListener().startFileAnalysis(textFile)) {
@@ -63,31 +75,11 @@ abstract class PmdRunnable implements Runnable {
             // Coarse check to see if any RuleSet applies to file, will need to do a finer RuleSet specific check later
             if (ruleSets.applies(textFile)) {
                 AnalysisCache analysisCache = task.getAnalysisCache();
-                try (TextDocument textDocument = TextDocument.create(textFile);
-                     FileAnalysisListener cacheListener = analysisCache.startFileAnalysis(textDocument)) {
-
-                    @SuppressWarnings("PMD.CloseResource")
-                    FileAnalysisListener completeListener = FileAnalysisListener.tee(listOf(listener, cacheListener));
-
-                    if (analysisCache.isUpToDate(textDocument)) {
-                        LOG.trace("Skipping file (lang: {}) because it was found in the cache: {}", textFile.getLanguageVersion(), textFile.getFileId().getAbsolutePath());
-                        // note: no cache listener here
-                        //                         vvvvvvvv
-                        reportCachedRuleViolations(listener, textDocument);
-                    } else {
-                        LOG.trace("Processing file (lang: {}): {}", textFile.getLanguageVersion(), textFile.getFileId().getAbsolutePath());
-                        try {
-                            processSource(completeListener, textDocument, ruleSets);
-                        } catch (Exception | StackOverflowError | AssertionError e) {
-                            if (e instanceof Error && !SystemProps.isErrorRecoveryMode()) { // NOPMD:
-                                throw e;
-                            }
-
-                            // The listener handles logging if needed,
-                            // it may also rethrow the error, as a FileAnalysisException (which we let through below)
-                            completeListener.onError(new Report.ProcessingError(e, textFile.getFileId()));
-                        }
-                    }
+                if (task.isCacheUsesFileMetadata() && analysisCache.isUpToDateByMetadata(textFile)) {
+                    LOG.trace("Skipping file (lang: {}) because its metadata did not change since it was cached: {}", textFile.getLanguageVersion(), textFile.getFileId().getAbsolutePath());
+                    reportCachedRuleViolations(listener, analysisCache.getCachedViolations(textFile.getFileId()));
+                } else {
+                    readAndProcess(listener, ruleSets, analysisCache);
                 }
             } else {
                 LOG.trace("Skipping file (lang: {}) because no rule applies: {}", textFile.getLanguageVersion(), textFile.getFileId());
@@ -96,27 +88,71 @@ abstract class PmdRunnable implements Runnable {
             throw e; // bubble managed exceptions, they were already reported
         } catch (Exception e) {
             throw FileAnalysisException.wrap(textFile.getFileId(), "An unknown exception occurred", e);
+        } finally {
+            if (profile != null) {
+                profile.endFile();
+            }
         }
 
         TimeTracker.finishThread();
     }
 
-    private void reportCachedRuleViolations(final FileAnalysisListener ctx, TextDocument file) {
-        for (final RuleViolation rv : task.getAnalysisCache().getCachedViolations(file)) {
+    private void readAndProcess(FileAnalysisListener listener, RuleSets ruleSets, AnalysisCache analysisCache) throws Exception {
+        try (TextDocument textDocument = TextDocument.create(textFile);
+             FileAnalysisListener cacheListener = analysisCache.startFileAnalysis(textDocument)) {
+
+            @SuppressWarnings("PMD.CloseResource")
+            FileAnalysisListener completeListener = FileAnalysisListener.tee(listOf(listener, cacheListener));
+
+            if (analysisCache.isUpToDate(textDocument)) {
+                LOG.trace("Skipping file (lang: {}) because it was found in the cache: {}", textFile.getLanguageVersion(), textFile.getFileId().getAbsolutePath());
+                // note: no cache listener here
+                //                         vvvvvvvv
+                reportCachedRuleViolations(listener, analysisCache.getCachedViolations(textDocument));
+            } else {
+                LOG.trace("Processing file (lang: {}): {}", textFile.getLanguageVersion(), textFile.getFileId().getAbsolutePath());
+                Predicate<Rule> rulesToRun = analysisCache.getRulesToRun(textDocument);
+                if (rulesToRun != null) {
+                    // only some rules changed, the violations of the others are still valid
+                    reportCachedRuleViolations(completeListener, analysisCache.getCachedViolations(textDocument));
+                }
+                try {
+                    processSource(completeListener, textDocument, ruleSets, rulesToRun);
+                } catch (Exception | StackOverflowError | AssertionError e) {
+                    if (e instanceof Error && !SystemProps.isErrorRecoveryMode()) { // NOPMD:
+                        throw e;
+                    }
+
+                    // The listener handles logging if needed,
+                    // it may also rethrow the error, as a FileAnalysisException (which we let through below)
+                    completeListener.onError(new Report.ProcessingError(e, textFile.getFileId()));
+                }
+            }
+        }
+    }
+
+    private void reportCachedRuleViolations(final FileAnalysisListener ctx, List<RuleViolation> violations) {
+        for (final RuleViolation rv : violations) {
             ctx.onRuleViolation(rv);
         }
     }
 
     private RootNode parse(Parser parser, ParserTask task) {
+        long start = System.nanoTime();
         try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.PARSER)) {
             return parser.parse(task);
+        } finally {
+            if (profile != null) {
+                profile.recordParse(System.nanoTime() - start);
+            }
         }
     }
 
 
     private void processSource(FileAnalysisListener listener,
                                TextDocument textDocument,
-                               RuleSets ruleSets) throws FileAnalysisException {
+                               RuleSets ruleSets,
+                               @Nullable Predicate<Rule> rulesToRun) throws FileAnalysisException {
 
         SemanticErrorReporter reporter = SemanticErrorReporter.reportToLogger(task.getMessageReporter());
         @SuppressWarnings("PMD.CloseResource")
@@ -129,15 +165,69 @@ abstract class PmdRunnable implements Runnable {
 
         Parser parser = handler.getParser();
 
-        RootNode rootNode = parse(parser, parserTask);
+        FileDeadline deadline = FileDeadline.start(task.getFileTimeout());
+        try {
+            RootNode rootNode = parse(parser, parserTask);
 
-        SemanticException semanticError = reporter.getFirstError();
-        if (semanticError != null) {
-            // cause a processing error to be reported and rule analysis to be skipped
-            throw semanticError;
+            SemanticException semanticError = reporter.getFirstError();
+            if (semanticError != null) {
+                // cause a processing error to be reported and rule analysis to be skipped
+                throw semanticError;
+            }
+
+            if (deadline != null) {
+                // the rules check the deadline between nodes
+                deadline.checkNow();
+            }
+
+            long start = System.nanoTime();
+            try {
+                applyRules(listener, textDocument, ruleSets, rulesToRun, handler, rootNode);
+            } finally {
+                if (profile != null) {
+                    profile.recordRules(System.nanoTime() - start);
+                }
+            }
+        } finally {
+            if (deadline != null) {
+                deadline.end();
+            }
         }
+    }
 
-        ruleSets.apply(rootNode, listener);
+    private void applyRules(FileAnalysisListener listener,
+                            TextDocument textDocument,
+                            RuleSets ruleSets,
+                            @Nullable Predicate<Rule> rulesToRun,
+                            LanguageVersionHandler handler,
+                            RootNode rootNode) {
+        ForkJoinPool pool = task.getConcurrentRulesPool();
+        if (pool != null && shouldApplyRulesConcurrently(textDocument, handler, rootNode)) {
+            ruleSets.applyConcurrently(rootNode, listener, rulesToRun, pool);
+        } else if (rulesToRun == null) {
+            ruleSets.apply(rootNode, listener);
+        } else {
+            ruleSets.apply(rootNode, listener, rulesToRun);
+        }
+    }
+
+    /**
+     * Rules are applied concurrently on files that have more lines than the
+     * configured threshold, if the AST of the language supports it.
+     */
+    private boolean shouldApplyRulesConcurrently(TextDocument textDocument, LanguageVersionHandler handler, RootNode rootNode) {
+        int threshold = task.getConcurrentRulesThreshold();
+        if (threshold <= 0 || textDocument.lineColumnAtOffset(textDocument.getLength()).getLine() < threshold) {
+            return false;
+        }
+        try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.LANGUAGE_SPECIFIC_PROCESSING, "concurrent rules preparation")) {
+            if (!handler.prepareForConcurrentRules(rootNode)) {
+                return false;
+            }
+            // the user maps are created now, as creating them lazily is not thread-safe
+            rootNode.descendantsOrSelf().crossFindBoundaries().forEach(node -> node.getUserMap().makeThreadSafe());
+            return true;
+        }
     }
 
 }
@@ -0,0 +1,168 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.impl;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinPool.ForkJoinWorkerThreadFactory;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sourceforge.pmd.RuleSets;
+import net.sourceforge.pmd.benchmark.TimeTracker;
+import net.sourceforge.pmd.benchmark.TimedOperation;
+import net.sourceforge.pmd.benchmark.TimedOperationCategory;
+import net.sourceforge.pmd.cache.AnalysisCache;
+import net.sourceforge.pmd.lang.LanguageProcessor.AnalysisTask;
+import net.sourceforge.pmd.lang.document.TextFile;
+
+
+/**
+ * A multi-threaded processor that submits the most expensive files first
+ * to a work-stealing pool. See {@link FileSchedulingMode#LARGEST_FIRST}.
+ */
+final class WorkStealingProcessor extends AbstractPMDProcessor {
+
+    private final ForkJoinPool pool;
+
+    WorkStealingProcessor(final AnalysisTask task) {
+        super(task);
+
+        // async mode: tasks are taken in submission order
+        pool = new ForkJoinPool(task.getThreadCount(), new PmdWorkerThreadFactory(), null, true);
+    }
+
+    @Override
+    @SuppressWarnings("PMD.CloseResource") // closed by the PMDRunnable
+    public void processFiles() {
+        final ThreadLocal<RuleSets> ruleSetCopy = newRuleSetsPerThread();
+
+        for (final TextFile textFile : sortByDecreasingCost(task.getFiles(), task.getAnalysisCache())) {
+            PmdRunnable runnable = new PmdRunnable(textFile, task) {
+                @Override
+                protected RuleSets getRulesets() {
+                    return ruleSetCopy.get();
+                }
+            };
+            pool.submit(() -> runOnWorker(runnable));
+        }
+    }
+
+    /**
+     * Runs the given runnable, accounting the time spent to the current
+     * worker, so that the timing report shows how busy each worker was.
+     * The time tracking of the thread itself is set up once by the
+     * {@link PmdWorkerThread}.
+     */
+    private static void runOnWorker(PmdRunnable runnable) {
+        try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.WORKER_THREAD,
+                                                                 Thread.currentThread().getName())) {
+            runnable.run();
+        }
+    }
+
+    /**
+     * Returns the given files sorted by decreasing estimated cost. The cost
+     * of a file is the time its analysis took in the previous run, if the
+     * cache knows it. Otherwise, it is extrapolated from the size of the file,
+     * using the average time per unit of size of the files for which both are
+     * known. Files whose cost cannot be estimated come last, in their original
+     * order.
+     */
+    @SuppressWarnings("PMD.CloseResource") // the files are only inspected
+    static List<TextFile> sortByDecreasingCost(List<TextFile> files, AnalysisCache cache) {
+        final int n = files.size();
+        final long[] sizes = new long[n];
+        final long[] times = new long[n];
+        long totalSize = 0;
+        long totalTime = 0;
+        for (int i = 0; i < n; i++) {
+            TextFile file = files.get(i);
+            sizes[i] = file.getSizeEstimate();
+            times[i] = cache == null ? -1 : cache.getPreviousAnalysisTimeNanos(file.getFileId());
+            if (sizes[i] > 0 && times[i] >= 0) {
+                totalSize += sizes[i];
+                totalTime += times[i];
+            }
+        }
+
+        final double nanosPerSizeUnit = totalSize > 0 ? (double) totalTime / totalSize : 1;
+        final double[] costs = new double[n];
+        final List<Integer> indices = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            if (times[i] >= 0) {
+                costs[i] = times[i];
+            } else {
+                costs[i] = sizes[i] > 0 ? sizes[i] * nanosPerSizeUnit : 0;
+            }
+            indices.add(i);
+        }
+
+        // the sort is stable, so ties keep the collection order
+        indices.sort(Comparator.comparingDouble((Integer i) -> costs[i]).reversed());
+
+        List<TextFile> result = new ArrayList<>(n);
+        for (int i : indices) {
+            result.add(files.get(i));
+        }
+        return result;
+    }
+
+    @Override
+    protected void awaitFiles() {
+        try {
+            pool.shutdown();
+            while (!pool.awaitTermination(10, TimeUnit.HOURS)) {
+                // still waiting
+                Thread.yield();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Names the worker threads like the {@link PmdThreadFactory} does.
+     */
+    private static final class PmdWorkerThreadFactory implements ForkJoinWorkerThreadFactory {
+
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+            ForkJoinWorkerThread thread = new PmdWorkerThread(pool);
+            thread.setName("PmdThread " + counter.incrementAndGet());
+            return thread;
+        }
+    }
+
+    /**
+     * A worker thread, whose time is tracked from its start to its
+     * termination.
+     */
+    private static final class PmdWorkerThread extends ForkJoinWorkerThread {
+
+        PmdWorkerThread(ForkJoinPool pool) {
+            super(pool);
+        }
+
+        @Override
+        protected void onStart() {
+            super.onStart();
+            TimeTracker.initThread();
+        }
+
+        @Override
+        protected void onTermination(Throwable exception) {
+            TimeTracker.finishThread();
+            super.onTermination(exception);
+        }
+    }
+}
@@ -228,6 +228,11 @@ public abstract class AbstractDelegateRule implements Rule {
         return rule.getTargetSelector();
     }
 
+    @Override
+    public boolean isThreadSafe() {
+        return rule.isThreadSafe();
+    }
+
     @Override
     public void start(RuleContext ctx) {
         rule.start(ctx);
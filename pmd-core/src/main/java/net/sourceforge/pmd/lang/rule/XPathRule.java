@@ -23,6 +23,7 @@ import net.sourceforge.pmd.lang.LanguageProcessor;
 import net.sourceforge.pmd.lang.ast.Node;
 import net.sourceforge.pmd.lang.rule.xpath.PmdXPathException;
 import net.sourceforge.pmd.lang.rule.xpath.XPathVersion;
+import net.sourceforge.pmd.lang.rule.xpath.impl.XPathHandler;
 import net.sourceforge.pmd.lang.rule.xpath.internal.DeprecatedAttrLogger;
 import net.sourceforge.pmd.lang.rule.xpath.internal.SaxonXPathRuleQuery;
 import net.sourceforge.pmd.properties.PropertyDescriptor;
@@ -60,9 +61,13 @@ public final class XPathRule extends AbstractRule {
                        .build();
 
     /**
-     * This is initialized only once when calling {@link #apply(Node, RuleContext)} or {@link #getTargetSelector()}.
+     * This is initialized by {@link #initialize(LanguageProcessor)}. It
+     * is immutable once compiled, which makes this rule thread-safe. The
+     * field is volatile because a rule that is shared between the threads
+     * of an analysis may be initialized again by another language processor.
      */
-    private SaxonXPathRuleQuery xpathRuleQuery;
+    @SuppressWarnings("PMD.AvoidUsingVolatile")
+    private volatile SaxonXPathRuleQuery xpathRuleQuery;
 
 
     // this is shared with rules forked by deepCopy, used by the XPathRuleQuery
@@ -142,6 +147,11 @@ public final class XPathRule extends AbstractRule {
         return e.addRuleName(getName());
     }
 
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
     @Override
     public void initialize(LanguageProcessor languageProcessor) {
         String xpath = getXPathExpression();
@@ -151,11 +161,19 @@ public final class XPathRule extends AbstractRule {
             throw new IllegalStateException("Invalid XPath version, should have been caught by Rule::dysfunctionReason");
         }
 
+        Map<PropertyDescriptor<?>, Object> properties = getPropertiesByPropertyDescriptor();
+        XPathHandler xPathHandler = languageProcessor.services().getXPathHandler();
+        SaxonXPathRuleQuery query = xpathRuleQuery;
+        if (query != null && query.isCompiledFor(xpath, version, properties, xPathHandler)) {
+            // don't compile the same query again
+            return;
+        }
+
         try {
             xpathRuleQuery = new SaxonXPathRuleQuery(xpath,
                                                      version,
-                                                     getPropertiesByPropertyDescriptor(),
-                                                     languageProcessor.services().getXPathHandler(),
+                                                     properties,
+                                                     xPathHandler,
                                                      attrLogger);
         } catch (PmdXPathException e) {
             throw addExceptionContext(e);
@@ -208,6 +208,16 @@ class LatticeRelation<K, @NonNull V, C> {
         return n == null ? emptyValue : n.computeValue();
     }
 
+    /**
+     * Computes the values of all keys, so that {@link #get(Object)} can
+     * then be called concurrently, until the lattice is modified again.
+     */
+    public void computeValues() {
+        for (LNode n : nodes.values()) {
+            n.computeValue();
+        }
+    }
+
     public void clearValues() {
         for (LNode n : nodes.values()) {
             n.resetValue();
@@ -4,20 +4,33 @@
 
 package net.sourceforge.pmd.lang.rule.internal;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
 
 import org.apache.commons.lang3.exception.ExceptionContext;
+import org.checkerframework.checker.nullness.qual.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import net.sourceforge.pmd.Report.ProcessingError;
+import net.sourceforge.pmd.Report.SuppressedViolation;
 import net.sourceforge.pmd.Rule;
 import net.sourceforge.pmd.RuleContext;
 import net.sourceforge.pmd.RuleSet;
+import net.sourceforge.pmd.RuleViolation;
+import net.sourceforge.pmd.benchmark.AnalysisProfiler;
+import net.sourceforge.pmd.benchmark.AnalysisProfiler.FileRecorder;
 import net.sourceforge.pmd.benchmark.TimeTracker;
 import net.sourceforge.pmd.benchmark.TimedOperation;
 import net.sourceforge.pmd.benchmark.TimedOperationCategory;
+import net.sourceforge.pmd.cache.internal.FileDependencyRecorder;
+import net.sourceforge.pmd.internal.FileDeadline;
 import net.sourceforge.pmd.internal.SystemProps;
 import net.sourceforge.pmd.lang.LanguageVersion;
 import net.sourceforge.pmd.lang.ast.Node;
@@ -52,16 +65,110 @@ public class RuleApplicator {
     }
 
     public void apply(Collection<? extends Rule> rules, FileAnalysisListener listener) {
-        applyOnIndex(idx, rules, listener);
+        apply(rules instanceof List ? (List<? extends Rule>) rules : new ArrayList<>(rules), null, listener);
     }
 
-    private void applyOnIndex(TreeIndex idx, Collection<? extends Rule> rules, FileAnalysisListener listener) {
-        for (Rule rule : rules) {
+    /**
+     * Applies the rules on the indexed tree. If the file is profiled, the
+     * times of the rules are recorded under the given ids, which are those
+     * of {@link AnalysisProfiler#ruleId(Rule)}, in the order of the rules.
+     * If they are null, they are resolved here.
+     */
+    public void apply(List<? extends Rule> rules, int @Nullable [] ruleIds, FileAnalysisListener listener) {
+        FileRecorder profile = AnalysisProfiler.currentFile();
+        if (profile == null) {
+            applyOnIndex(idx, rules, listener, FileDeadline.current(), null, null);
+        } else {
+            int[] ids = ruleIds != null ? ruleIds : resolveRuleIds(profile, rules);
+            applyOnIndex(idx, rules, listener, FileDeadline.current(), ids, profile::recordRule);
+        }
+    }
+
+    private static int[] resolveRuleIds(FileRecorder profile, List<? extends Rule> rules) {
+        int[] ids = new int[rules.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = profile.getProfiler().ruleId(rules.get(i));
+        }
+        return ids;
+    }
+
+    /**
+     * Applies the rules concurrently on the given pool. The rules are
+     * split into contiguous groups, one per thread of the pool, which are
+     * applied by separate tasks. The events of each group are buffered and
+     * forwarded to the listener in the order of the groups, once all tasks
+     * are done, so that the output doesn't depend on the scheduling. So
+     * are the times of the rules, if the file is profiled. The indexed
+     * tree must support concurrent access. The rule ids are those of
+     * {@link #apply(List, int[], FileAnalysisListener)}.
+     */
+    public void applyConcurrently(List<? extends Rule> rules, int @Nullable [] ruleIds,
+                                  FileAnalysisListener listener, ForkJoinPool pool) {
+        // the index computes its values lazily
+        idx.computeValues();
+        // the pool threads don't see the deadline of this thread
+        FileDeadline deadline = FileDeadline.current();
+        // nor the classpath dependencies recorded for the file
+        FileDependencyRecorder.Recording dependencies = FileDependencyRecorder.currentRecording();
+        // nor its profile
+        FileRecorder profile = AnalysisProfiler.currentFile();
+        int[] ids = profile == null ? null : ruleIds != null ? ruleIds : resolveRuleIds(profile, rules);
+
+        int groups = Math.max(1, Math.min(pool.getParallelism(), rules.size()));
+        List<ForkJoinTask<BufferingListener>> tasks = new ArrayList<>(groups);
+        for (int i = 0; i < groups; i++) {
+            int from = i * rules.size() / groups;
+            int to = (i + 1) * rules.size() / groups;
+            List<? extends Rule> group = rules.subList(from, to);
+            int[] groupIds = ids == null ? null : Arrays.copyOfRange(ids, from, to);
+            tasks.add(pool.submit(() -> {
+                BufferingListener buffer = new BufferingListener(group.size());
+                FileDependencyRecorder.joinRecording(dependencies);
+                try {
+                    applyOnIndex(idx, group, buffer, deadline, groupIds, groupIds == null ? null : buffer::recordRule);
+                } finally {
+                    FileDependencyRecorder.leaveRecording();
+                }
+                return buffer;
+            }));
+        }
+
+        // wait for all tasks, the rules must not be running anymore when this returns
+        Throwable failure = null;
+        for (ForkJoinTask<BufferingListener> task : tasks) {
+            try {
+                @SuppressWarnings("PMD.CloseResource") // nothing to close
+                BufferingListener buffer = task.join();
+                if (failure == null) {
+                    buffer.replayTo(listener, profile);
+                }
+            } catch (RuntimeException | Error e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure != null) {
+            throw (Error) failure;
+        }
+    }
+
+    /**
+     * Applies the rules on the indexed tree. The time of each rule is
+     * given to {@code ruleTimes} with the id of the rule, if it is not null.
+     */
+    private void applyOnIndex(TreeIndex idx, List<? extends Rule> rules, FileAnalysisListener listener,
+                              @Nullable FileDeadline deadline, int @Nullable [] ruleIds, @Nullable RuleTimes ruleTimes) {
+        for (int i = 0; i < rules.size(); i++) {
+            Rule rule = rules.get(i);
             if (!RuleSet.applies(rule, currentLangVer)) {
                 continue; // No point in even trying to apply the rule
             }
             
             RuleContext ctx = RuleContext.create(listener, rule);
+            long start = System.nanoTime();
             rule.start(ctx);
             try (TimedOperation rcto = TimeTracker.startOperation(TimedOperationCategory.RULE, rule.getName())) {
 
@@ -69,6 +176,9 @@ public class RuleApplicator {
                 Iterator<? extends Node> targets = rule.getTargetSelector().getVisitedNodes(idx);
                 while (targets.hasNext()) {
                     Node node = targets.next();
+                    if (deadline != null) {
+                        deadline.check();
+                    }
 
                     try {
                         nodeCounter++;
@@ -85,6 +195,9 @@ public class RuleApplicator {
                 rcto.close(nodeCounter);
             } finally {
                 rule.end(ctx);
+                if (ruleTimes != null) {
+                    ruleTimes.record(ruleIds[i], System.nanoTime() - start);
+                }
             }
         }
     }
@@ -122,6 +235,60 @@ public class RuleApplicator {
         }
     }
 
+    /** Receives the time each rule took on the file. */
+    @FunctionalInterface
+    private interface RuleTimes {
+
+        void record(int ruleId, long nanos);
+    }
+
+    /** Records the events of a rule group and the times of its rules, to forward them later. */
+    private static final class BufferingListener implements FileAnalysisListener {
+
+        private final List<Consumer<FileAnalysisListener>> events = new ArrayList<>();
+        // each rule of the group is timed at most once
+        private final int[] ruleIds;
+        private final long[] ruleNanos;
+        private int numRules;
+
+        BufferingListener(int groupSize) {
+            this.ruleIds = new int[groupSize];
+            this.ruleNanos = new long[groupSize];
+        }
+
+        @Override
+        public void onRuleViolation(RuleViolation violation) {
+            events.add(l -> l.onRuleViolation(violation));
+        }
+
+        @Override
+        public void onSuppressedRuleViolation(SuppressedViolation violation) {
+            events.add(l -> l.onSuppressedRuleViolation(violation));
+        }
+
+        @Override
+        public void onError(ProcessingError error) {
+            events.add(l -> l.onError(error));
+        }
+
+        void recordRule(int ruleId, long nanos) {
+            ruleIds[numRules] = ruleId;
+            ruleNanos[numRules] = nanos;
+            numRules++;
+        }
+
+        void replayTo(FileAnalysisListener listener, @Nullable FileRecorder profile) {
+            for (Consumer<FileAnalysisListener> event : events) {
+                event.accept(listener);
+            }
+            if (profile != null) {
+                for (int i = 0; i < numRules; i++) {
+                    profile.recordRule(ruleIds[i], ruleNanos[i]);
+                }
+            }
+        }
+    }
+
     public static RuleApplicator build(Iterable<? extends Rule> rules) {
         TargetSelectorInternal.ApplicatorBuilder builder = new TargetSelectorInternal.ApplicatorBuilder();
         for (Rule it : rules) {
@@ -52,6 +52,14 @@ public class TreeIndex {
         byName.clear();
     }
 
+    /**
+     * Computes the values of the index, so that it can then be
+     * queried concurrently.
+     */
+    void computeValues() {
+        byClass.computeValues();
+    }
+
     Iterator<Node> getByName(String n) {
         return byName.getOrDefault(n, Collections.emptyList()).iterator();
     }
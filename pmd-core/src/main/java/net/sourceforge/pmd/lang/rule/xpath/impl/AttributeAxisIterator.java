@@ -10,14 +10,18 @@ import java.lang.invoke.MethodHandles.Lookup;
 import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.stream.Collectors;
 
+import org.checkerframework.checker.nullness.qual.Nullable;
+
 import net.sourceforge.pmd.lang.ast.Node;
 import net.sourceforge.pmd.lang.ast.impl.AbstractNode;
 import net.sourceforge.pmd.lang.rule.xpath.Attribute;
@@ -35,7 +39,10 @@ import net.sourceforge.pmd.util.AssertionUtil;
 public class AttributeAxisIterator implements Iterator<Attribute> {
 
     /** Caches the precomputed attribute accessors of a given class. */
-    private static final ConcurrentMap<Class<?>, List<MethodWrapper>> METHOD_CACHE = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<Class<?>, AccessorTable> METHOD_CACHE = new ConcurrentHashMap<>();
+
+    /** Caches whether a given node class uses this iterator for its attributes. */
+    private static final ConcurrentMap<Class<?>, Boolean> DEFAULT_ITERATOR_CACHE = new ConcurrentHashMap<>();
 
     /* Constants used to determine which methods are accessors */
     private static final Set<Class<?>> CONSIDERED_RETURN_TYPES
@@ -71,20 +78,57 @@ public class AttributeAxisIterator implements Iterator<Attribute> {
      */
     public AttributeAxisIterator(Node contextNode) {
         this.node = contextNode;
-        this.iterator = METHOD_CACHE.computeIfAbsent(contextNode.getClass(), this::getWrappersForClass).iterator();
+        this.iterator = METHOD_CACHE.computeIfAbsent(contextNode.getClass(), AttributeAxisIterator::getWrappersForClass)
+                                    .accessors.iterator();
+    }
+
+    private static AccessorTable getWrappersForClass(Class<?> nodeClass) {
+        return new AccessorTable(
+            Arrays.stream(nodeClass.getMethods())
+                  .filter(m -> isAccessor(nodeClass, m))
+                  .map(m -> {
+                      try {
+                          return new MethodWrapper(m);
+                      } catch (IllegalAccessException e) {
+                          throw AssertionUtil.shouldNotReachHere("Method should be accessible " + e);
+                      }
+                  })
+                  .collect(Collectors.toList()));
+    }
+
+    /**
+     * Returns the attribute of the given node that has the given name, as it
+     * would be returned by {@link Node#getXPathAttributesIterator()}, or null
+     * if there is none. If the node uses the default attribute iterator, the
+     * accessor is found by name, without creating the other attributes.
+     *
+     * @param node The node
+     * @param name The name of the attribute
+     */
+    public static @Nullable Attribute getAttribute(Node node, String name) {
+        if (!DEFAULT_ITERATOR_CACHE.computeIfAbsent(node.getClass(), AttributeAxisIterator::usesDefaultIterator)) {
+            // the node defines its own attributes
+            Attribute found = null;
+            Iterator<Attribute> it = node.getXPathAttributesIterator();
+            while (it.hasNext()) {
+                Attribute attribute = it.next();
+                if (attribute.getName().equals(name)) {
+                    found = attribute; // the last one wins, like in a map
+                }
+            }
+            return found;
+        }
+        AccessorTable table = METHOD_CACHE.computeIfAbsent(node.getClass(), AttributeAxisIterator::getWrappersForClass);
+        MethodWrapper m = table.accessorsByName.get(name);
+        return m == null ? null : new Attribute(node, m.name, m.methodHandle, m.method);
     }
 
-    private List<MethodWrapper> getWrappersForClass(Class<?> nodeClass) {
-        return Arrays.stream(nodeClass.getMethods())
-                     .filter(m -> isAttributeAccessor(nodeClass, m))
-                     .map(m -> {
-                         try {
-                             return new MethodWrapper(m);
-                         } catch (IllegalAccessException e) {
-                             throw AssertionUtil.shouldNotReachHere("Method should be accessible " + e);
-                         }
-                     })
-                     .collect(Collectors.toList());
+    private static boolean usesDefaultIterator(Class<?> nodeClass) {
+        try {
+            return nodeClass.getMethod("getXPathAttributesIterator").getDeclaringClass().equals(Node.class);
+        } catch (NoSuchMethodException e) {
+            throw AssertionUtil.shouldNotReachHere("Node method should exist " + e);
+        }
     }
 
     /**
@@ -93,8 +137,16 @@ public class AttributeAxisIterator implements Iterator<Attribute> {
      * the iterator.
      *
      * @param method The method to test
+     *
+     * @deprecated The accessors are computed once per node class and
+     *     shared by all iterators, overriding this method has no effect.
      */
+    @Deprecated
     protected boolean isAttributeAccessor(Class<?> nodeClass, Method method) {
+        return isAccessor(nodeClass, method);
+    }
+
+    private static boolean isAccessor(Class<?> nodeClass, Method method) {
         String methodName = method.getName();
 
         return !methodName.startsWith("jjt")
@@ -107,12 +159,12 @@ public class AttributeAxisIterator implements Iterator<Attribute> {
             && !isIgnored(nodeClass, method);
     }
 
-    private boolean isConsideredReturnType(Method method) {
+    private static boolean isConsideredReturnType(Method method) {
         Class<?> klass = method.getReturnType();
         return CONSIDERED_RETURN_TYPES.contains(klass) || klass.isEnum();
     }
 
-    private boolean isIgnored(Class<?> nodeClass, Method method) {
+    private static boolean isIgnored(Class<?> nodeClass, Method method) {
         Class<?> declaration = method.getDeclaringClass();
         if (method.isAnnotationPresent(NoAttribute.class)) {
             return true;
@@ -179,7 +231,7 @@ public class AttributeAxisIterator implements Iterator<Attribute> {
         MethodWrapper(Method m) throws IllegalAccessException {
             this.method = m;
             this.methodHandle = LOOKUP.unreflect(m).asType(GETTER_TYPE);
-            this.name = truncateMethodName(m.getName());
+            this.name = truncateMethodName(m.getName()).intern();
         }
 
 
@@ -211,4 +263,21 @@ public class AttributeAxisIterator implements Iterator<Attribute> {
             return n;
         }
     }
+
+
+    /**
+     * The attribute accessors of a node class, in iteration order
+     * and indexed by attribute name.
+     */
+    private static final class AccessorTable {
+        private final List<MethodWrapper> accessors;
+        private final Map<String, MethodWrapper> accessorsByName = new HashMap<>();
+
+        AccessorTable(List<MethodWrapper> accessors) {
+            this.accessors = accessors;
+            for (MethodWrapper accessor : accessors) {
+                accessorsByName.put(accessor.name, accessor);
+            }
+        }
+    }
 }
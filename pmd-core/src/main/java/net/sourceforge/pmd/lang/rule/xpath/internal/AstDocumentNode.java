@@ -8,8 +8,6 @@ import java.util.Collections;
 import java.util.List;
 import java.util.function.Predicate;
 
-import org.apache.commons.lang3.mutable.MutableInt;
-
 import net.sourceforge.pmd.lang.ast.Node;
 import net.sourceforge.pmd.lang.ast.RootNode;
 
@@ -29,11 +27,10 @@ class AstDocumentNode extends BaseNodeInfo implements AstNodeOwner {
     private final List<AstElementNode> children;
 
     AstDocumentNode(AstTreeInfo document,
-                    MutableInt idGenerator,
                     RootNode wrappedNode,
                     Configuration configuration) {
         super(Type.DOCUMENT, configuration.getNamePool(), "", null);
-        this.rootElement = new AstElementNode(document, idGenerator, this, wrappedNode, configuration);
+        this.rootElement = new AstElementNode(document, 1, this, wrappedNode, configuration);
         this.children = Collections.singletonList(rootElement);
     }
 
@@ -12,12 +12,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.function.Predicate;
 
-import org.apache.commons.lang3.mutable.MutableInt;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
 import net.sourceforge.pmd.lang.ast.Node;
 import net.sourceforge.pmd.lang.ast.RootNode;
 import net.sourceforge.pmd.lang.rule.xpath.Attribute;
+import net.sourceforge.pmd.lang.rule.xpath.impl.AttributeAxisIterator;
 import net.sourceforge.pmd.util.CollectionUtil;
 
 import net.sf.saxon.Configuration;
@@ -36,6 +36,7 @@ import net.sf.saxon.type.Type;
 /**
  * A wrapper for Saxon around a Node. Note: the {@link RootNode} of a tree
  * corresponds to both a document node and an element node that is its child.
+ * The children of the node are only wrapped when they are first accessed.
  */
 public final class AstElementNode extends BaseNodeInfo implements SiblingCountingNode, AstNodeOwner {
 
@@ -43,13 +44,15 @@ public final class AstElementNode extends BaseNodeInfo implements SiblingCountin
     /** The index of the node in the tree according to document order */
     private final int id;
 
-    private final List<AstElementNode> children;
+    private @Nullable List<AstElementNode> children;
     private @Nullable Map<String, AstAttributeNode> attributes;
+    private boolean allAttributes;
+    private boolean allLightAttributes;
     private @Nullable Map<String, Attribute> lightAttributes;
 
 
     AstElementNode(AstTreeInfo document,
-                   MutableInt idGenerator,
+                   int id,
                    BaseNodeInfo parent,
                    Node wrappedNode,
                    Configuration configuration) {
@@ -57,13 +60,7 @@ public final class AstElementNode extends BaseNodeInfo implements SiblingCountin
 
         this.treeInfo = document;
         this.wrappedNode = wrappedNode;
-        this.id = idGenerator.getAndIncrement();
-
-        this.children = new ArrayList<>(wrappedNode.getNumChildren());
-
-        for (int i = 0; i < wrappedNode.getNumChildren(); i++) {
-            children.add(new AstElementNode(document, idGenerator, this, wrappedNode.getChild(i), configuration));
-        }
+        this.id = id;
     }
 
     private static int determineType(Node node) {
@@ -92,29 +89,99 @@ public final class AstElementNode extends BaseNodeInfo implements SiblingCountin
         return atts;
     }
 
+    /**
+     * Returns all the attribute nodes of this element. Attributes that
+     * were already looked up by name are reused.
+     */
     public Map<String, AstAttributeNode> getAttributes() {
-        if (attributes == null) {
-            attributes = makeAttributes(getUnderlyingNode());
+        if (!allAttributes) {
+            if (attributes == null) {
+                attributes = makeAttributes(getUnderlyingNode());
+            } else {
+                // keep the nodes that were looked up, the positions of the
+                // new nodes follow theirs
+                final int lookedUp = attributes.size();
+                int attrIdx = lookedUp;
+                Iterator<Attribute> it = getUnderlyingNode().getXPathAttributesIterator();
+                while (it.hasNext()) {
+                    Attribute next = it.next();
+                    AstAttributeNode existing = attributes.get(next.getName());
+                    if (existing == null || existing.getSiblingPosition() >= lookedUp) {
+                        attributes.put(next.getName(), new AstAttributeNode(this, next, attrIdx++));
+                    }
+                }
+            }
+            allAttributes = true;
         }
         return attributes;
     }
 
+    /**
+     * Returns the attribute node with the given name, or null. Unless all
+     * the attributes were already created, this only creates this one.
+     */
+    private @Nullable AstAttributeNode getAttribute(String name) {
+        if (attributes == null) {
+            attributes = new HashMap<>();
+        }
+        AstAttributeNode node = attributes.get(name);
+        if (node == null && !allAttributes) {
+            Attribute attribute = getLightAttribute(name);
+            if (attribute != null) {
+                node = new AstAttributeNode(this, attribute, attributes.size());
+                attributes.put(name, node);
+            }
+        }
+        return node;
+    }
+
     public Map<String, Attribute> getLightAttributes() {
-        if (lightAttributes == null) {
-            lightAttributes = new HashMap<>();
+        if (!allLightAttributes) {
+            if (lightAttributes == null) {
+                lightAttributes = new HashMap<>();
+            }
             getUnderlyingNode().getXPathAttributesIterator()
                                .forEachRemaining(it -> lightAttributes.put(it.getName(), it));
+            allLightAttributes = true;
         }
         return lightAttributes;
     }
 
+    /**
+     * Returns the attribute with the given name, or null. This only looks up
+     * this attribute, see {@link AttributeAxisIterator#getAttribute(Node, String)}.
+     */
+    private @Nullable Attribute getLightAttribute(String name) {
+        if (lightAttributes == null) {
+            lightAttributes = new HashMap<>();
+        }
+        Attribute attribute = lightAttributes.get(name);
+        if (attribute == null) {
+            attribute = AttributeAxisIterator.getAttribute(getUnderlyingNode(), name);
+            if (attribute != null) {
+                lightAttributes.put(name, attribute);
+            }
+        }
+        return attribute;
+    }
+
     @Override
     public boolean hasChildNodes() {
-        return !children.isEmpty();
+        return wrappedNode.getNumChildren() > 0;
     }
 
     @Override
     List<AstElementNode> getChildren() {
+        if (children == null) {
+            final AstTreeInfo document = getTreeInfo();
+            final List<AstElementNode> wrapped = new ArrayList<>(wrappedNode.getNumChildren());
+            int childId = id + 1;
+            for (int i = 0; i < wrappedNode.getNumChildren(); i++) {
+                wrapped.add(new AstElementNode(document, childId, this, wrappedNode.getChild(i), document.getConfiguration()));
+                childId = document.getSubtreeEnd(childId);
+            }
+            children = wrapped;
+        }
         return children;
     }
 
@@ -149,7 +216,7 @@ public final class AstElementNode extends BaseNodeInfo implements SiblingCountin
     protected AxisIterator iterateAttributes(Predicate<? super NodeInfo> predicate) {
         if (predicate instanceof NameTest) {
             String local = ((NameTest) predicate).getLocalPart();
-            return SingleNodeIterator.makeIterator(getAttributes().get(local));
+            return SingleNodeIterator.makeIterator(getAttribute(local));
         }
 
         return filter(predicate, new IteratorAdapter(getAttributes().values().iterator()));
@@ -157,7 +224,7 @@ public final class AstElementNode extends BaseNodeInfo implements SiblingCountin
 
     @Override
     protected AxisIterator iterateChildren(Predicate<? super NodeInfo> nodeTest) {
-        return filter(nodeTest, iterateList(children));
+        return filter(nodeTest, iterateList(getChildren()));
     }
 
     @Override // this excludes self
@@ -175,7 +242,7 @@ public final class AstElementNode extends BaseNodeInfo implements SiblingCountin
 
     @Override
     public String getAttributeValue(String uri, String local) {
-        Attribute attribute = getLightAttributes().get(local);
+        Attribute attribute = getLightAttribute(local);
         if (attribute != null) {
             getTreeInfo().getLogger().recordUsageOf(attribute);
             return attribute.getStringValue();
@@ -5,13 +5,12 @@
 package net.sourceforge.pmd.lang.rule.xpath.internal;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
-import org.apache.commons.lang3.mutable.MutableInt;
-
 import net.sourceforge.pmd.lang.ast.Node;
 import net.sourceforge.pmd.lang.ast.RootNode;
 
@@ -21,10 +20,17 @@ import net.sf.saxon.om.GenericTreeInfo;
 
 /**
  * A wrapper around the root node of an AST, implementing {@link net.sf.saxon.om.TreeInfo}.
+ * The nodes are wrapped lazily, when the children of their parent are
+ * first accessed.
  */
 public final class AstTreeInfo extends GenericTreeInfo {
 
     private DeprecatedAttrLogger logger;
+    /**
+     * Indexed by the document order id of a node, the id that follows its
+     * subtree. Id 0 is taken by the document node.
+     */
+    private int[] subtreeEnds = new int[64];
     private final Map<Node, AstElementNode> wrapperCache = new LinkedHashMap<Node, AstElementNode>() {
         @Override
         protected boolean removeEldestEntry(Entry eldest) {
@@ -49,8 +55,35 @@ public final class AstTreeInfo extends GenericTreeInfo {
      */
     public AstTreeInfo(RootNode node, Configuration configuration) {
         super(configuration);
-        MutableInt idGenerator = new MutableInt(1); // 0 is taken by the document node
-        setRootNode(new AstDocumentNode(this, idGenerator, node, configuration));
+        int end = indexSubtree(node, 1);
+        subtreeEnds[0] = end;
+        subtreeEnds = Arrays.copyOf(subtreeEnds, end);
+        setRootNode(new AstDocumentNode(this, node, configuration));
+    }
+
+    /**
+     * Records the end of the subtree of the given node, whose id is given,
+     * and of all its descendants. Returns the end.
+     */
+    private int indexSubtree(Node node, int id) {
+        int next = id + 1;
+        for (int i = 0; i < node.getNumChildren(); i++) {
+            next = indexSubtree(node.getChild(i), next);
+        }
+        if (id >= subtreeEnds.length) {
+            subtreeEnds = Arrays.copyOf(subtreeEnds, Math.max(id + 1, subtreeEnds.length * 2));
+        }
+        subtreeEnds[id] = next;
+        return next;
+    }
+
+    /**
+     * Returns the id of the node that follows the subtree of the node with
+     * the given id in document order, which is the id of its next sibling
+     * if it has one.
+     */
+    int getSubtreeEnd(int id) {
+        return subtreeEnds[id];
     }
 
     public AstElementNode findWrapperFor(Node node) {
@@ -5,11 +5,14 @@
 package net.sourceforge.pmd.lang.rule.xpath.internal;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang3.exception.ContextedRuntimeException;
 import org.slf4j.Logger;
@@ -58,8 +61,19 @@ public class SaxonXPathRuleQuery {
 
     private static final NamePool NAME_POOL = new NamePool();
 
-    /** Cache key for the wrapped tree for saxon. */
-    private static final SimpleDataKey<AstTreeInfo> SAXON_TREE_CACHE_KEY = DataMap.simpleDataKey("saxon.tree");
+    /**
+     * The configuration shared by all queries of an XPath handler, so that the
+     * extension functions are registered once, and the tree wrapper of an AST is
+     * shared by all rules of its language.
+     */
+    private static final Map<XPathHandler, Configuration> CONFIGURATIONS = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * Cache key for the wrapped trees for saxon, by thread. The wrappers
+     * are built lazily and are not thread-safe, so the rules that are
+     * applied concurrently each use the tree of their thread.
+     */
+    private static final SimpleDataKey<Map<Thread, AstTreeInfo>> SAXON_TREE_CACHE_KEY = DataMap.simpleDataKey("saxon.tree");
 
     private final String xpathExpr;
     @SuppressWarnings("PMD") // may be useful later, idk
@@ -105,6 +119,22 @@ public class SaxonXPathRuleQuery {
     }
 
 
+    /**
+     * Returns true if this query was compiled from the given parameters,
+     * in which case it doesn't need to be compiled again.
+     */
+    @SuppressWarnings("PMD.CompareObjectsWithEquals") // handlers have no equals
+    public boolean isCompiledFor(String xpathExpr,
+                                 XPathVersion version,
+                                 Map<PropertyDescriptor<?>, Object> properties,
+                                 XPathHandler xPathHandler) {
+        return this.xpathExpr.equals(xpathExpr)
+            && this.version == version
+            && this.xPathHandler == xPathHandler
+            && this.properties.equals(properties);
+    }
+
+
     public List<String> getRuleChainVisits() {
         return rulechainQueries;
     }
@@ -167,15 +197,23 @@ public class SaxonXPathRuleQuery {
     /**
      * Gets the DocumentNode representation for the whole AST in which the node is, that is, if the node is not the root
      * of the AST, then the AST is traversed all the way up until the root node is found. If the DocumentNode was
-     * cached because this method was previously called, then a new DocumentNode will not be instanced.
+     * cached because this method was previously called on the same thread, then a new DocumentNode will not be instanced.
      *
      * @param node the node from which the root node will be looked for.
      *
      * @return the DocumentNode representing the whole AST
      */
-    private AstTreeInfo getDocumentNodeForRootNode(final Node node) {
+    @SuppressWarnings("PMD.CompareObjectsWithEquals") // configurations have no equals
+    AstTreeInfo getDocumentNodeForRootNode(final Node node) {
         final RootNode root = node.getRoot();
-        return root.getUserMap().computeIfAbsent(SAXON_TREE_CACHE_KEY, () -> new AstTreeInfo(root, configuration));
+        Map<Thread, AstTreeInfo> trees = root.getUserMap().computeIfAbsent(SAXON_TREE_CACHE_KEY, ConcurrentHashMap::new);
+        AstTreeInfo treeInfo = trees.get(Thread.currentThread());
+        if (treeInfo == null || treeInfo.getConfiguration() != configuration) {
+            // only rebuilt when rules of different XPath handlers query the same tree
+            treeInfo = new AstTreeInfo(root, configuration);
+            trees.put(Thread.currentThread(), treeInfo);
+        }
+        return treeInfo;
     }
 
 
@@ -185,8 +223,7 @@ public class SaxonXPathRuleQuery {
 
     private void initialize() throws XPathException {
 
-        this.configuration = Configuration.newConfiguration();
-        this.configuration.setNamePool(getNamePool());
+        this.configuration = getConfiguration(xPathHandler);
 
         StaticContextWithProperties staticCtx = new StaticContextWithProperties(this.configuration);
         staticCtx.setXPathLanguageLevel(version == XPathVersion.XPATH_3_1 ? 31 : 20);
@@ -202,7 +239,6 @@ public class SaxonXPathRuleQuery {
         for (ExtensionFunctionDefinition fun : xPathHandler.getRegisteredExtensionFunctions()) {
             StructuredQName qname = fun.getFunctionQName();
             staticCtx.declareNamespace(qname.getPrefix(), qname.getURI());
-            this.configuration.registerExtensionFunction(fun);
         }
 
         final XPathEvaluator xpathEvaluator = new XPathEvaluator(configuration);
@@ -255,6 +291,21 @@ public class SaxonXPathRuleQuery {
         return NAME_POOL;
     }
 
+    /**
+     * Returns the configuration shared by the queries of the given handler,
+     * in which its extension functions are registered.
+     */
+    static Configuration getConfiguration(XPathHandler xPathHandler) {
+        return CONFIGURATIONS.computeIfAbsent(xPathHandler, handler -> {
+            Configuration config = Configuration.newConfiguration();
+            config.setNamePool(getNamePool());
+            for (ExtensionFunctionDefinition fun : handler.getRegisteredExtensionFunctions()) {
+                config.registerExtensionFunction(fun);
+            }
+            return config;
+        });
+    }
+
 
     final class StaticContextWithProperties extends IndependentContext {
 
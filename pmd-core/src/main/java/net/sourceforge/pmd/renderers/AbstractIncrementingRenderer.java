@@ -55,6 +55,19 @@ public abstract class AbstractIncrementingRenderer extends AbstractRenderer {
         // does nothing - override if necessary
     }
 
+    /**
+     * Returns true, as incrementing renderers only consume file reports,
+     * unless the class of this renderer overrides {@link #newListener()}.
+     */
+    @Override
+    public boolean rendersFileReports() {
+        try {
+            return getClass().getMethod("newListener").getDeclaringClass() == Renderer.class;
+        } catch (NoSuchMethodException e) {
+            throw new AssertionError(e);
+        }
+    }
+
     @Override
     public void renderFileReport(Report report) throws IOException {
         Iterator<RuleViolation> violations = report.getViolations().iterator();
@@ -6,25 +6,16 @@ package net.sourceforge.pmd.renderers;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.util.Collections;
 
 import net.sourceforge.pmd.Report;
-import net.sourceforge.pmd.Report.ConfigurationError;
-import net.sourceforge.pmd.Report.GlobalReportBuilderListener;
-import net.sourceforge.pmd.Report.ProcessingError;
-import net.sourceforge.pmd.Report.ReportBuilderListener;
-import net.sourceforge.pmd.Report.SuppressedViolation;
-import net.sourceforge.pmd.RuleViolation;
 import net.sourceforge.pmd.annotation.Experimental;
-import net.sourceforge.pmd.benchmark.TimeTracker;
-import net.sourceforge.pmd.benchmark.TimedOperation;
-import net.sourceforge.pmd.benchmark.TimedOperationCategory;
 import net.sourceforge.pmd.lang.document.TextFile;
 import net.sourceforge.pmd.properties.PropertyDescriptor;
 import net.sourceforge.pmd.properties.PropertySource;
-import net.sourceforge.pmd.reporting.FileAnalysisListener;
+import net.sourceforge.pmd.renderers.internal.StreamingRendererListener;
 import net.sourceforge.pmd.reporting.FileNameRenderer;
 import net.sourceforge.pmd.reporting.GlobalAnalysisListener;
-import net.sourceforge.pmd.reporting.ListenerInitializer;
 
 /**
  * This is an interface for rendering a Report. When a Renderer is being
@@ -155,7 +146,8 @@ public interface Renderer extends PropertySource {
      * which need to be rendered if produced by different threads. It is called
      * after {@link Renderer#start()} and
      * {@link Renderer#startFileAnalysis(TextFile)}, but before
-     * {@link Renderer#end()}.
+     * {@link Renderer#end()}. The {@linkplain #newListener() default listener}
+     * calls it from a single writer thread.
      *
      * @param report
      *            A file Report.
@@ -188,91 +180,29 @@ public interface Renderer extends PropertySource {
 
 
 
+    /**
+     * Returns true if this renderer only consumes the reports passed to
+     * {@link #renderFileReport(Report)}, ie its {@link #newListener()} is
+     * the default one. The file reports of such renderers may then be
+     * built once and rendered by a writer thread that is shared with the
+     * other renderers of the analysis, instead of using {@link #newListener()}.
+     */
+    @Experimental
+    default boolean rendersFileReports() {
+        return false;
+    }
+
     /**
      * Returns a new analysis listener, that handles violations by rendering
      * them in an implementation-defined way.
+     *
+     * <p>The default implementation batches violations by file. The report
+     * of each file is forwarded to {@link #renderFileReport(Report)} on a
+     * dedicated writer thread when the file is done, so that the analysis
+     * threads don't wait for the renderer. The writer thread is started
+     * when the first file is analysed, and stops when the listener is closed.
      */
-    // TODO the default implementation matches the current behavior,
-    //  ie violations are batched by file and forwarded to the renderer
-    //  when the file is done. Many renderers could directly handle
-    //  violations as they come though.
     default GlobalAnalysisListener newListener() throws IOException {
-        try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.REPORTING)) {
-            this.start();
-        }
-
-        return new GlobalAnalysisListener() {
-
-            // guard for the close routine
-            final Object reportMergeLock = new Object();
-
-            final GlobalReportBuilderListener configErrorReport = new GlobalReportBuilderListener();
-
-            @Override
-            public void onConfigError(ConfigurationError error) {
-                configErrorReport.onConfigError(error);
-            }
-
-            @Override
-            public ListenerInitializer initializer() {
-                return new ListenerInitializer() {
-                    @Override
-                    public void setFileNameRenderer(FileNameRenderer fileNameRenderer) {
-                        Renderer.this.setFileNameRenderer(fileNameRenderer);
-                    }
-                };
-            }
-
-            @Override
-            public FileAnalysisListener startFileAnalysis(TextFile file) {
-                Renderer renderer = Renderer.this;
-
-                renderer.startFileAnalysis(file); // this routine is thread-safe by contract
-                return new FileAnalysisListener() {
-                    final ReportBuilderListener reportBuilder = new ReportBuilderListener();
-
-                    @Override
-                    public void onRuleViolation(RuleViolation violation) {
-                        reportBuilder.onRuleViolation(violation);
-                    }
-
-                    @Override
-                    public void onSuppressedRuleViolation(SuppressedViolation violation) {
-                        reportBuilder.onSuppressedRuleViolation(violation);
-                    }
-
-                    @Override
-                    public void onError(ProcessingError error) {
-                        reportBuilder.onError(error);
-                    }
-
-                    @Override
-                    public void close() throws Exception {
-                        reportBuilder.close();
-                        synchronized (reportMergeLock) {
-                            // TODO renderFileReport should be thread-safe instead
-                            try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.REPORTING)) {
-                                renderer.renderFileReport(reportBuilder.getResult());
-                            }
-                        }
-                    }
-
-                    @Override
-                    public String toString() {
-                        return "FileRendererListener[" + Renderer.this + "]";
-                    }
-                };
-            }
-
-            @Override
-            public void close() throws Exception {
-                configErrorReport.close();
-                Renderer.this.renderFileReport(configErrorReport.getResult());
-                try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.REPORTING)) {
-                    end();
-                    flush();
-                }
-            }
-        };
+        return StreamingRendererListener.start(Collections.singletonList(this), StreamingRendererListener.DEFAULT_CAPACITY);
     }
 }
@@ -12,11 +12,20 @@ import net.sourceforge.pmd.Report;
 import net.sourceforge.pmd.RuleViolation;
 import net.sourceforge.pmd.internal.util.IOUtil;
 import net.sourceforge.pmd.renderers.internal.sarif.SarifLog;
+import net.sourceforge.pmd.renderers.internal.sarif.SarifLog.Invocation;
+import net.sourceforge.pmd.renderers.internal.sarif.SarifLog.Result;
+import net.sourceforge.pmd.renderers.internal.sarif.SarifLog.Tool;
 import net.sourceforge.pmd.renderers.internal.sarif.SarifLogBuilder;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonWriter;
 
+/**
+ * Renders the violations in the SARIF format. The results are written as
+ * the file reports come, so the memory used does not depend on the number
+ * of violations. The rules of the tool are written after the results.
+ */
 public class SarifRenderer extends AbstractIncrementingRenderer {
     public static final String NAME = "sarif";
     private static final String DEFAULT_DESCRIPTION = "Static Analysis Results Interchange Format (SARIF)";
@@ -28,6 +37,7 @@ public class SarifRenderer extends AbstractIncrementingRenderer {
             .create();
 
     private SarifLogBuilder sarifLogBuilder;
+    private JsonWriter jsonWriter;
 
     public SarifRenderer() {
         super(NAME, DEFAULT_DESCRIPTION);
@@ -41,20 +51,30 @@ public class SarifRenderer extends AbstractIncrementingRenderer {
     @Override
     public void start() throws IOException {
         sarifLogBuilder = SarifLogBuilder.sarifLogBuilder();
+
+        // the results are written as they come, the tool and its rules at the end
+        final SarifLog header = SarifLog.builder().build();
+        jsonWriter = gson.newJsonWriter(writer);
+        jsonWriter.beginObject();
+        jsonWriter.name("$schema").value(header.getSchema());
+        jsonWriter.name("version").value(header.getVersion());
+        jsonWriter.name("runs").beginArray();
+        jsonWriter.beginObject();
+        jsonWriter.name("results").beginArray();
     }
 
     @Override
     public void renderFileViolations(Iterator<RuleViolation> violations) throws IOException {
         while (violations.hasNext()) {
             final RuleViolation violation = violations.next();
-            sarifLogBuilder.add(violation);
+            gson.toJson(sarifLogBuilder.resultFor(violation), Result.class, jsonWriter);
         }
     }
 
     @Override
     public void end() throws IOException {
         addErrors();
-        writeLog();
+        writeEnd();
     }
 
     private void addErrors() {
@@ -67,10 +87,17 @@ public class SarifRenderer extends AbstractIncrementingRenderer {
         }
     }
 
-    private void writeLog() throws IOException {
-        final SarifLog sarifLog = sarifLogBuilder.build();
-        final String json = gson.toJson(sarifLog);
-        writer.write(json);
+    private void writeEnd() throws IOException {
+        jsonWriter.endArray(); // results
+        jsonWriter.name("tool");
+        gson.toJson(sarifLogBuilder.buildTool(), Tool.class, jsonWriter);
+        jsonWriter.name("invocations").beginArray();
+        gson.toJson(sarifLogBuilder.buildInvocation(), Invocation.class, jsonWriter);
+        jsonWriter.endArray();
+        jsonWriter.endObject(); // run
+        jsonWriter.endArray(); // runs
+        jsonWriter.endObject();
+        jsonWriter.flush();
         writer.println();
     }
 
@@ -0,0 +1,251 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.renderers.internal;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import net.sourceforge.pmd.Report;
+import net.sourceforge.pmd.Report.ConfigurationError;
+import net.sourceforge.pmd.Report.GlobalReportBuilderListener;
+import net.sourceforge.pmd.Report.ProcessingError;
+import net.sourceforge.pmd.Report.ReportBuilderListener;
+import net.sourceforge.pmd.Report.SuppressedViolation;
+import net.sourceforge.pmd.RuleViolation;
+import net.sourceforge.pmd.benchmark.TimeTracker;
+import net.sourceforge.pmd.benchmark.TimedOperation;
+import net.sourceforge.pmd.benchmark.TimedOperationCategory;
+import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.renderers.Renderer;
+import net.sourceforge.pmd.reporting.FileAnalysisListener;
+import net.sourceforge.pmd.reporting.FileNameRenderer;
+import net.sourceforge.pmd.reporting.GlobalAnalysisListener;
+import net.sourceforge.pmd.reporting.ListenerInitializer;
+import net.sourceforge.pmd.util.AssertionUtil;
+
+/**
+ * A listener that renders the report of each file with several renderers,
+ * on a dedicated writer thread. The analysis threads only build the report
+ * of their file, which is shared by all renderers, and hand it over to the
+ * writer thread through a bounded queue. They never wait for the renderers
+ * to do I/O, but they wait if the queue is full, which bounds the number of
+ * reports held in memory.
+ *
+ * <p>Since only the writer thread calls {@link Renderer#renderFileReport(Report)},
+ * the renderers don't need to be thread-safe. The writer thread is started
+ * when the first file is analysed, so that a listener that is never used
+ * doesn't hold a thread. A renderer that fails is not given the reports of
+ * the next files.
+ */
+public final class StreamingRendererListener implements GlobalAnalysisListener {
+
+    /** Default number of file reports that may wait for the writer thread. */
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+
+    /** Marks the end of the queue. */
+    private static final Report END = new Report();
+
+    private final List<Renderer> renderers;
+    private final BlockingQueue<Report> queue;
+    private final Thread writer;
+    private volatile boolean writerStarted;
+    private final GlobalReportBuilderListener configErrorReport = new GlobalReportBuilderListener();
+
+    // only written by the writer thread, read after it was joined
+    private Exception failure;
+    /** Whether each renderer failed, by index in {@link #renderers}. */
+    private final boolean[] failed;
+    private boolean closed;
+
+    private StreamingRendererListener(List<Renderer> renderers, int capacity) {
+        this.renderers = renderers;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.writer = new Thread(this::drainQueue, "PmdReportWriter");
+        this.writer.setDaemon(true);
+        this.failed = new boolean[renderers.size()];
+    }
+
+    /**
+     * Starts the given renderers, and returns a listener that renders
+     * the file reports with all of them. The renderers are ended and
+     * flushed when the listener is closed.
+     *
+     * @param renderers Renderers that only consume the reports passed
+     *                  to {@link Renderer#renderFileReport(Report)}
+     * @param capacity  Maximum number of file reports waiting to be rendered
+     *
+     * @throws IOException If a renderer could not be started
+     */
+    public static StreamingRendererListener start(List<? extends Renderer> renderers, int capacity) throws IOException {
+        AssertionUtil.requireParamNotNull("renderers", renderers);
+        AssertionUtil.requireContainsNoNullValue("renderers", renderers);
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive, got " + capacity);
+        }
+        try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.REPORTING)) {
+            for (Renderer renderer : renderers) {
+                renderer.start();
+            }
+        }
+        return new StreamingRendererListener(new ArrayList<>(renderers), capacity);
+    }
+
+    private void ensureWriterStarted() {
+        if (!writerStarted) {
+            synchronized (this) {
+                if (!writerStarted) {
+                    writer.start();
+                    writerStarted = true;
+                }
+            }
+        }
+    }
+
+    /** Whether the writer thread was started, for tests. */
+    boolean isWriterStarted() {
+        return writerStarted;
+    }
+
+    @Override
+    public ListenerInitializer initializer() {
+        return new ListenerInitializer() {
+            @Override
+            public void setFileNameRenderer(FileNameRenderer fileNameRenderer) {
+                for (Renderer renderer : renderers) {
+                    renderer.setFileNameRenderer(fileNameRenderer);
+                }
+            }
+        };
+    }
+
+    @Override
+    public void onConfigError(ConfigurationError error) {
+        configErrorReport.onConfigError(error);
+    }
+
+    @Override
+    public FileAnalysisListener startFileAnalysis(TextFile file) {
+        ensureWriterStarted();
+        for (Renderer renderer : renderers) {
+            renderer.startFileAnalysis(file); // this routine is thread-safe by contract
+        }
+        return new FileAnalysisListener() {
+            final ReportBuilderListener reportBuilder = new ReportBuilderListener();
+
+            @Override
+            public void onRuleViolation(RuleViolation violation) {
+                reportBuilder.onRuleViolation(violation);
+            }
+
+            @Override
+            public void onSuppressedRuleViolation(SuppressedViolation violation) {
+                reportBuilder.onSuppressedRuleViolation(violation);
+            }
+
+            @Override
+            public void onError(ProcessingError error) {
+                reportBuilder.onError(error);
+            }
+
+            @Override
+            public void close() throws Exception {
+                reportBuilder.close();
+                enqueue(reportBuilder.getResult());
+            }
+
+            @Override
+            public String toString() {
+                return "FileRendererListener[" + renderers + "]";
+            }
+        };
+    }
+
+    private void enqueue(Report report) throws InterruptedException {
+        while (!queue.offer(report, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+            if (!writer.isAlive()) {
+                throw new IllegalStateException("The report writer thread has stopped");
+            }
+        }
+    }
+
+    @SuppressWarnings("PMD.CompareObjectsWithEquals")
+    private void drainQueue() {
+        TimeTracker.initThread();
+        try {
+            for (Report report = queue.take(); report != END; report = queue.take()) {
+                try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.REPORTING)) {
+                    for (int i = 0; i < renderers.size(); i++) {
+                        if (!failed[i]) {
+                            renderFileReport(i, report);
+                        }
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            recordFailure(e);
+        } finally {
+            TimeTracker.finishThread();
+        }
+    }
+
+    private void renderFileReport(int rendererIndex, Report report) {
+        try {
+            renderers.get(rendererIndex).renderFileReport(report);
+        } catch (Exception e) {
+            // its output is likely broken, and it would fail again for each file
+            failed[rendererIndex] = true;
+            recordFailure(e);
+        }
+    }
+
+    private void recordFailure(Exception e) {
+        if (failure == null) {
+            failure = e;
+        } else {
+            failure.addSuppressed(e);
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        // renders the config errors, if no file was analysed
+        ensureWriterStarted();
+        configErrorReport.close();
+        enqueue(configErrorReport.getResult());
+        enqueue(END);
+        writer.join();
+
+        try (TimedOperation ignored = TimeTracker.startOperation(TimedOperationCategory.REPORTING)) {
+            for (Renderer renderer : renderers) {
+                try {
+                    renderer.end();
+                    renderer.flush();
+                } catch (Exception e) {
+                    recordFailure(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "StreamingRendererListener[" + renderers + "]";
+    }
+}
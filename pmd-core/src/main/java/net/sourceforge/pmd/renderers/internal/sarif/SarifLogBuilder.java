@@ -4,15 +4,23 @@
 
 package net.sourceforge.pmd.renderers.internal.sarif;
 
+import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
 
 import net.sourceforge.pmd.PMDVersion;
 import net.sourceforge.pmd.Report;
+import net.sourceforge.pmd.Rule;
 import net.sourceforge.pmd.RuleViolation;
+import net.sourceforge.pmd.properties.PropertyDescriptor;
 import net.sourceforge.pmd.renderers.internal.sarif.SarifLog.ArtifactLocation;
 import net.sourceforge.pmd.renderers.internal.sarif.SarifLog.AssociatedRule;
 import net.sourceforge.pmd.renderers.internal.sarif.SarifLog.Component;
@@ -26,14 +34,21 @@ import net.sourceforge.pmd.renderers.internal.sarif.SarifLog.PropertyBag;
 import net.sourceforge.pmd.renderers.internal.sarif.SarifLog.Region;
 import net.sourceforge.pmd.renderers.internal.sarif.SarifLog.ReportingDescriptor;
 import net.sourceforge.pmd.renderers.internal.sarif.SarifLog.Result;
-import net.sourceforge.pmd.renderers.internal.sarif.SarifLog.Run;
 import net.sourceforge.pmd.renderers.internal.sarif.SarifLog.Tool;
 import net.sourceforge.pmd.renderers.internal.sarif.SarifLog.ToolConfigurationNotification;
 import net.sourceforge.pmd.renderers.internal.sarif.SarifLog.ToolExecutionNotification;
 
+/**
+ * Builds the parts of a {@link SarifLog}. The results are not kept, so
+ * that they can be written as the violations are reported. Only the
+ * rules that have violations and the errors are accumulated, to be
+ * written at the end.
+ */
 public class SarifLogBuilder {
+    private static final String PLACEHOLDER = "...";
+
+    private final Map<String, Integer> ruleIndices = new HashMap<>();
     private final List<ReportingDescriptor> rules = new ArrayList<>();
-    private final List<Result> results = new ArrayList<>();
     private final List<ToolConfigurationNotification> toolConfigurationNotifications = new ArrayList<>();
     private final List<ToolExecutionNotification> toolExecutionNotifications = new ArrayList<>();
 
@@ -41,19 +56,21 @@ public class SarifLogBuilder {
         return new SarifLogBuilder();
     }
 
-    public SarifLogBuilder add(RuleViolation violation) {
-        final ReportingDescriptor ruleDescriptor = getReportingDescriptor(violation);
-        int ruleIndex = rules.indexOf(ruleDescriptor);
-        if (ruleIndex == -1) {
-            rules.add(ruleDescriptor);
-            ruleIndex = rules.size() - 1;
+    /**
+     * Returns the result for the given violation, and adds its rule
+     * to the rules of the tool if it is not there yet.
+     */
+    public Result resultFor(RuleViolation violation) {
+        final String ruleId = violation.getRule().getName();
+        Integer ruleIndex = ruleIndices.get(ruleId);
+        if (ruleIndex == null) {
+            ruleIndex = rules.size();
+            rules.add(getReportingDescriptor(violation));
+            ruleIndices.put(ruleId, ruleIndex);
         }
 
         final Location location = getRuleViolationLocation(violation);
-        final Result result = resultFrom(ruleDescriptor, ruleIndex, location);
-        results.add(result);
-
-        return this;
+        return resultFrom(ruleId, ruleIndex, violation.getDescription(), location);
     }
 
     public SarifLogBuilder addRunTimeError(Report.ProcessingError error) {
@@ -106,37 +123,31 @@ public class SarifLogBuilder {
         return this;
     }
 
-    public SarifLog build() {
+    public Tool buildTool() {
         final Component driver = getDriverComponent().toBuilder().rules(rules).build();
-        final Tool tool = Tool.builder().driver(driver).build();
-        final Invocation invocation = Invocation.builder()
+        return Tool.builder().driver(driver).build();
+    }
+
+    public Invocation buildInvocation() {
+        return Invocation.builder()
                 .toolExecutionNotifications(toolExecutionNotifications)
                 .toolConfigurationNotifications(toolConfigurationNotifications)
                 .executionSuccessful(isExecutionSuccessful())
                 .build();
-        final Run run = Run.builder()
-                .tool(tool)
-                .results(results)
-                .invocations(Collections.singletonList(invocation))
-                .build();
-
-        List<Run> runs = Collections.singletonList(run);
-
-        return SarifLog.builder().runs(runs).build();
     }
 
     private boolean isExecutionSuccessful() {
         return toolExecutionNotifications.isEmpty() && toolConfigurationNotifications.isEmpty();
     }
 
-    private Result resultFrom(ReportingDescriptor rule, Integer ruleIndex, Location location) {
+    private Result resultFrom(String ruleId, Integer ruleIndex, String description, Location location) {
         final Result result = Result.builder()
-                .ruleId(rule.getId())
+                .ruleId(ruleId)
                 .ruleIndex(ruleIndex)
                 .build();
 
         final Message message = Message.builder()
-                .text(rule.getShortDescription().getText())
+                .text(description)
                 .build();
 
         result.setMessage(message);
@@ -167,10 +178,14 @@ public class SarifLogBuilder {
             .build();
     }
 
+    /**
+     * The descriptor of a rule is shared by all its results, so it only
+     * describes the rule, not the first violation.
+     */
     private ReportingDescriptor getReportingDescriptor(RuleViolation rv) {
         return ReportingDescriptor.builder()
             .id(rv.getRule().getName())
-            .shortDescription(new MultiformatMessage(rv.getDescription()))
+            .shortDescription(new MultiformatMessage(getRuleShortDescription(rv.getRule())))
             .fullDescription(new MultiformatMessage(rv.getRule().getDescription()))
             .helpUri(rv.getRule().getExternalInfoUrl())
             .help(new MultiformatMessage(rv.getRule().getDescription()))
@@ -178,6 +193,45 @@ public class SarifLogBuilder {
             .build();
     }
 
+    /**
+     * Returns the message of the rule, with the placeholders that depend
+     * on the violation replaced by an ellipsis. The message is a
+     * {@link MessageFormat} pattern, whose quotes are unescaped. Variables
+     * that name a property of the rule are replaced by its value, like in
+     * the messages of the violations.
+     */
+    static String getRuleShortDescription(Rule rule) {
+        String message = rule.getMessage();
+        if (message == null) {
+            return null;
+        }
+        String formatted;
+        try {
+            // like RuleContext, escape the { of ${variable}
+            MessageFormat format = new MessageFormat(StringUtils.replace(message, "${", "$'{'"), Locale.ROOT);
+            Object[] args = new Object[format.getFormatsByArgumentIndex().length];
+            Arrays.fill(args, PLACEHOLDER);
+            formatted = format.format(args);
+        } catch (IllegalArgumentException e) {
+            // not a valid pattern, the violations can't have been formatted either
+            return message;
+        }
+
+        StringBuilder buf = new StringBuilder(formatted);
+        int startIndex = 0;
+        while ((startIndex = buf.indexOf("${", startIndex)) >= 0) {
+            int endIndex = buf.indexOf("}", startIndex);
+            if (endIndex < 0) {
+                break;
+            }
+            PropertyDescriptor<?> property = rule.getPropertyDescriptor(buf.substring(startIndex + 2, endIndex));
+            String value = property == null ? PLACEHOLDER : String.valueOf(rule.getProperty(property));
+            buf.replace(startIndex, endIndex + 1, value);
+            startIndex += value.length();
+        }
+        return buf.toString();
+    }
+
     private PropertyBag getRuleProperties(RuleViolation rv) {
         return PropertyBag.builder()
                 .ruleset(rv.getRule().getRuleSetName())
@@ -4,6 +4,7 @@
 
 package net.sourceforge.pmd.util;
 
+import java.util.Collections;
 import java.util.IdentityHashMap;
 import java.util.Map;
 import java.util.function.Function;
@@ -11,12 +12,18 @@ import java.util.function.Supplier;
 
 import org.checkerframework.checker.nullness.qual.Nullable;
 
+import net.sourceforge.pmd.annotation.InternalApi;
+
 /**
  * An opaque, strongly typed heterogeneous data container. Data maps can
  * be set to accept only a certain type of key, with the type parameter.
  * The key can itself constrain the type of values, using its own type
  * parameter {@code T}.
  *
+ * <p>Data maps are not thread-safe, unless {@link #makeThreadSafe()}
+ * was called, so that several rules may compute lazily cached data on
+ * the same nodes concurrently.
+ *
  * @param <K> Type of keys in this map.
  */
 public final class DataMap<K> {
@@ -60,7 +67,10 @@ public final class DataMap<K> {
     }
 
     /**
-     * Retrieve the value, or compute it if it is missing.
+     * Retrieve the value, or compute it if it is missing. If the map is
+     * thread-safe, the supplier is called without holding the lock of this
+     * map, so that it may access other data maps. If several threads compute
+     * the value concurrently, the first value that is set wins.
      *
      * @param key      Key
      * @param supplier Supplier for a value
@@ -70,7 +80,16 @@ public final class DataMap<K> {
      */
     @SuppressWarnings("unchecked")
     public <T> T computeIfAbsent(DataKey<? extends K, T> key, Supplier<? extends T> supplier) {
-        return (T) getMap().computeIfAbsent(key, k -> supplier.get());
+        T current = get(key);
+        if (current != null) {
+            return current;
+        }
+        T value = supplier.get();
+        if (value == null) {
+            return null;
+        }
+        Object previous = getMap().putIfAbsent(key, value);
+        return previous != null ? (T) previous : value;
     }
 
     /**
@@ -112,6 +131,19 @@ public final class DataMap<K> {
         return map != null && map.containsKey(key);
     }
 
+    /**
+     * Makes this map thread-safe. This is only done for the nodes of trees
+     * that rules access concurrently, as it makes every access pay for a lock.
+     * This must be called once, before the map is shared with other threads.
+     */
+    @InternalApi
+    public void makeThreadSafe() {
+        if (map == null) {
+            map = new IdentityHashMap<>(1);
+        }
+        map = Collections.synchronizedMap(map);
+    }
+
     public static <K> DataMap<K> newDataMap() {
         return new DataMap<>();
     }
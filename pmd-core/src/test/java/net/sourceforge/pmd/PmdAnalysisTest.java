@@ -23,6 +23,8 @@ import org.mockito.ArgumentMatchers;
 import org.mockito.Mockito;
 
 import net.sourceforge.pmd.RuleSetTest.MockRule;
+import net.sourceforge.pmd.benchmark.AnalysisProfile;
+import net.sourceforge.pmd.benchmark.AnalysisProfiler;
 import net.sourceforge.pmd.lang.Dummy2LanguageModule;
 import net.sourceforge.pmd.lang.DummyLanguageModule;
 import net.sourceforge.pmd.lang.Language;
@@ -167,8 +169,57 @@ class PmdAnalysisTest {
         }
     }
 
+    @Test
+    void testProfilerRecordsFilesAndRules() {
+        final Language language = Dummy2LanguageModule.getInstance();
+        PMDConfiguration config = new PMDConfiguration();
+        config.setIgnoreIncrementalAnalysis(true);
+        AnalysisProfiler profiler = new AnalysisProfiler();
+
+        try (PmdAnalysis pmd = PmdAnalysis.create(config)) {
+            pmd.setProfiler(profiler);
+            pmd.addRuleSet(RuleSet.forSingleRule(new TestRule()));
+            for (int i = 0; i < 3; i++) {
+                pmd.files().addFile(new SimpleTestTextFile("test content foo", FileId.fromPathLikeString("foo" + i + ".txt"), language.getDefaultVersion()));
+            }
+            pmd.performAnalysis();
+        }
+
+        AnalysisProfile profile = profiler.getProfile();
+        assertEquals(3, profile.getFiles().size());
+        assertEquals(3, profile.getFileStats().getCount());
+        assertThat(profile.getRules(), hasSize(1));
+        assertEquals("TestRule", profile.getRules().get(0).getName());
+        assertEquals(3, profile.getRules().get(0).getStats().getCount());
+    }
+
+    @Test
+    void testProfilerSeparatesRulesWithTheSameName() {
+        final Language language = Dummy2LanguageModule.getInstance();
+        PMDConfiguration config = new PMDConfiguration();
+        config.setIgnoreIncrementalAnalysis(true);
+        AnalysisProfiler profiler = new AnalysisProfiler();
+
+        try (PmdAnalysis pmd = PmdAnalysis.create(config)) {
+            pmd.setProfiler(profiler);
+            for (String ruleSetName : new String[] {"first", "second"}) {
+                TestRule rule = new TestRule();
+                rule.setRuleSetName(ruleSetName);
+                pmd.addRuleSet(RuleSet.forSingleRule(rule));
+            }
+            pmd.files().addFile(new SimpleTestTextFile("test content foo", FileId.fromPathLikeString("foo.txt"), language.getDefaultVersion()));
+            pmd.performAnalysis();
+        }
+
+        AnalysisProfile profile = profiler.getProfile();
+        assertThat(profile.getRules(), hasSize(2));
+        assertEquals(1, profile.getRules().get(0).getStats().getCount());
+        assertEquals(1, profile.getRules().get(1).getStats().getCount());
+    }
+
     private static class TestRule extends AbstractRule {
         TestRule() {
+            setName("TestRule");
             setLanguage(Dummy2LanguageModule.getInstance());
             setMessage("dummy 2 test rule");
         }
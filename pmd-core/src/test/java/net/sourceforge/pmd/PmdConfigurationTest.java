@@ -30,6 +30,7 @@ import java.util.Properties;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
+import net.sourceforge.pmd.cache.DirectoryAnalysisCache;
 import net.sourceforge.pmd.cache.FileAnalysisCache;
 import net.sourceforge.pmd.cache.NoopAnalysisCache;
 import net.sourceforge.pmd.internal.util.ClasspathClassLoader;
@@ -245,6 +246,15 @@ class PmdConfigurationTest {
                 "File cache location doesn't produce a file cache");
     }
 
+    @Test
+    void testAnalysisCacheDirectoryLocation(@TempDir Path folder) {
+        final PMDConfiguration configuration = new PMDConfiguration();
+
+        configuration.setAnalysisCacheLocation(folder.toString());
+        assertTrue(configuration.getAnalysisCache() instanceof DirectoryAnalysisCache,
+                "Directory cache location doesn't produce a directory cache");
+    }
+
 
     @Test
     void testIgnoreIncrementalAnalysis(@TempDir Path folder) throws IOException {
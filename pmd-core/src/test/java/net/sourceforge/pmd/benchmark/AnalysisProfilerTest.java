@@ -0,0 +1,178 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.benchmark;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.benchmark.AnalysisProfile.RuleProfile;
+import net.sourceforge.pmd.benchmark.AnalysisProfile.TimeStats;
+import net.sourceforge.pmd.benchmark.AnalysisProfiler.FileRecorder;
+import net.sourceforge.pmd.lang.DummyLanguageModule;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.rule.MockRule;
+
+class AnalysisProfilerTest {
+
+    @Test
+    void testPercentilesAreApproximatedWithinABucket() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        TimeStats stats = new TimeStats(histogram);
+
+        assertEquals(100, stats.getCount());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(5050), stats.getTotalNanos());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), stats.getMaxNanos());
+        assertApproximately(TimeUnit.MILLISECONDS.toNanos(50), stats.getP50Nanos());
+        assertApproximately(TimeUnit.MILLISECONDS.toNanos(95), stats.getP95Nanos());
+    }
+
+    @Test
+    void testBucketsAreContiguous() {
+        for (int i = 0; i < 400; i++) {
+            long lowerBound = Histogram.bucketLowerBound(i);
+            assertEquals(i, Histogram.bucketIndex(lowerBound));
+            assertEquals(i, Histogram.bucketIndex(Histogram.bucketLowerBound(i + 1) - 1));
+        }
+    }
+
+    @Test
+    void testRuleTimesAreSummedPerFile() {
+        AnalysisProfiler profiler = new AnalysisProfiler();
+        int slowId = profiler.ruleId(rule("Slow", "rules"));
+        int fastId = profiler.ruleId(rule("Fast", "rules"));
+
+        FileRecorder recorder = profiler.startFile(FileId.fromPathLikeString("a.java"));
+        assertSame(recorder, AnalysisProfiler.currentFile());
+        recorder.recordRule(slowId, 1000);
+        recorder.recordRule(fastId, 10);
+        recorder.recordRule(slowId, 1000);
+        recorder.endFile();
+        assertNull(AnalysisProfiler.currentFile());
+
+        recorder = profiler.startFile(FileId.fromPathLikeString("b.java"));
+        recorder.recordRule(slowId, 500);
+        recorder.endFile();
+
+        AnalysisProfile profile = profiler.getProfile();
+        assertEquals(2, profile.getFiles().size());
+        assertEquals(2, profile.getRules().size());
+
+        RuleProfile slow = profile.getRules().get(0);
+        assertEquals("Slow", slow.getName());
+        assertEquals(2, slow.getStats().getCount());
+        assertEquals(2500, slow.getStats().getTotalNanos());
+        assertEquals(2000, slow.getStats().getMaxNanos());
+
+        RuleProfile fast = profile.getRules().get(1);
+        assertEquals("Fast", fast.getName());
+        assertEquals(1, fast.getStats().getCount());
+    }
+
+    @Test
+    void testRecordersOfSeveralThreadsAreMerged() throws Exception {
+        AnalysisProfiler profiler = new AnalysisProfiler();
+        Rule rule = rule("Rule", "rules");
+        Thread thread = new Thread(() -> {
+            FileRecorder recorder = profiler.startFile(FileId.fromPathLikeString("a.java"));
+            recorder.recordRule(profiler.ruleId(rule.deepCopy()), 100);
+            recorder.endFile();
+        });
+        thread.start();
+        thread.join();
+
+        FileRecorder recorder = profiler.startFile(FileId.fromPathLikeString("b.java"));
+        recorder.recordRule(profiler.ruleId(rule), 100);
+        recorder.endFile();
+
+        AnalysisProfile profile = profiler.getProfile();
+        assertEquals(2, profile.getFileStats().getCount());
+        assertEquals(1, profile.getRules().size());
+        assertEquals(2, profile.getRules().get(0).getStats().getCount());
+    }
+
+    @Test
+    void testRenderer() {
+        AnalysisProfiler profiler = new AnalysisProfiler();
+        int ruleId = profiler.ruleId(rule("SomeRule", "rules"));
+        for (int i = 0; i < 3; i++) {
+            FileRecorder recorder = profiler.startFile(FileId.fromPathLikeString("File" + i + ".java"));
+            recorder.recordRule(ruleId, 100);
+            recorder.endFile();
+        }
+
+        StringWriter writer = new StringWriter();
+        new TextProfileRenderer(2).render(profiler.getProfile(), writer);
+        String output = writer.toString();
+
+        assertTrue(output.contains("SomeRule"), output);
+        assertTrue(output.contains("<<< Slowest files"), output);
+        assertEquals(2, output.split("File\\d\\.java", -1).length - 1, "Only the slowest files are rendered");
+    }
+
+    @Test
+    void testRulesWithTheSameNameInOtherRulesetsAreNotMerged() {
+        AnalysisProfiler profiler = new AnalysisProfiler();
+        int firstId = profiler.ruleId(rule("Rule", "first"));
+        int secondId = profiler.ruleId(rule("Rule", "second"));
+        assertNotEquals(firstId, secondId);
+        assertEquals(firstId, profiler.ruleId(rule("Rule", "first")));
+
+        FileRecorder recorder = profiler.startFile(FileId.fromPathLikeString("a.java"));
+        recorder.recordRule(firstId, 200);
+        recorder.recordRule(secondId, 100);
+        recorder.endFile();
+
+        AnalysisProfile profile = profiler.getProfile();
+        assertEquals(2, profile.getRules().size());
+        assertEquals("Rule", profile.getRules().get(0).getName());
+        assertEquals("Rule (second, dummy)", profile.getRules().get(1).getName());
+    }
+
+    @Test
+    void testCountersOfSeveralSourcesAreSummed() {
+        AnalysisProfiler profiler = new AnalysisProfiler();
+        Map<String, Long> first = new LinkedHashMap<>();
+        first.put("hits", 3L);
+        first.put("misses", 1L);
+        profiler.addCounters(() -> first);
+        profiler.addCounters(() -> Collections.singletonMap("hits", 2L));
+
+        first.put("misses", 4L);
+        AnalysisProfile profile = profiler.getProfile();
+        assertEquals(5L, profile.getCounters().get("hits"));
+        assertEquals(4L, profile.getCounters().get("misses"));
+
+        StringWriter writer = new StringWriter();
+        new TextProfileRenderer().render(profile, writer);
+        String output = writer.toString();
+        assertTrue(output.contains("<<< Counters"), output);
+        assertTrue(output.contains("misses"), output);
+    }
+
+    private static Rule rule(String name, String ruleSetName) {
+        Rule rule = new MockRule(name, "description", "message", ruleSetName);
+        rule.setLanguage(DummyLanguageModule.getInstance());
+        return rule;
+    }
+
+    private static void assertApproximately(long expected, long actual) {
+        assertTrue(Math.abs(expected - actual) <= expected / 8, "Expected about " + expected + ", got " + actual);
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import net.sourceforge.pmd.FooRule;
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RuleSet;
+import net.sourceforge.pmd.RuleSets;
+
+class CachedRuleMapperTest {
+
+    @Test
+    void testInitializingTwiceGivesTheSameChecksums() {
+        Rule rule = new FooRule();
+        RuleSets ruleSets = new RuleSets(RuleSet.forSingleRule(rule));
+
+        CachedRuleMapper mapper = new CachedRuleMapper();
+        mapper.initialize(ruleSets);
+        Map<String, Long> first = new HashMap<>(mapper.getRuleChecksums());
+        mapper.initialize(ruleSets);
+
+        assertEquals(first, mapper.getRuleChecksums());
+    }
+
+    @Test
+    void testInitializingAgainForgetsRemovedRules() {
+        Rule foo = new FooRule();
+        Rule bar = new FooRule();
+        bar.setName("Bar");
+
+        CachedRuleMapper mapper = new CachedRuleMapper();
+        mapper.initialize(new RuleSets(Arrays.asList(RuleSet.forSingleRule(foo), RuleSet.forSingleRule(bar))));
+        mapper.initialize(new RuleSets(RuleSet.forSingleRule(foo)));
+
+        assertEquals(1, mapper.getRuleChecksums().size());
+        assertSame(foo, mapper.getRuleForClass(foo.getRuleClass(), "Foo", foo.getLanguage().getTerseName()));
+        assertNull(mapper.getRuleForClass(bar.getRuleClass(), "Bar", bar.getLanguage().getTerseName()));
+    }
+}
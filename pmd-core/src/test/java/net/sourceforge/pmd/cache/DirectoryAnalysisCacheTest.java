@@ -0,0 +1,226 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cache;
+
+import static net.sourceforge.pmd.util.CollectionUtil.listOf;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import net.sourceforge.pmd.PmdCoreTestUtils;
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RuleSet;
+import net.sourceforge.pmd.RuleSets;
+import net.sourceforge.pmd.RuleViolation;
+import net.sourceforge.pmd.cache.internal.FileDependencyRecorder;
+import net.sourceforge.pmd.lang.Language;
+import net.sourceforge.pmd.lang.document.FileLocation;
+import net.sourceforge.pmd.lang.document.TextDocument;
+import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.lang.document.TextRange2d;
+import net.sourceforge.pmd.lang.rule.ParametricRuleViolation;
+import net.sourceforge.pmd.reporting.FileAnalysisListener;
+
+class DirectoryAnalysisCacheTest {
+
+    @TempDir
+    private Path tempFolder;
+
+    private File cacheDir;
+    private Rule rule;
+    private final RuleSets ruleSets = mock(RuleSets.class);
+    private final ClassLoader classLoader = mock(ClassLoader.class);
+
+    @BeforeEach
+    void setUp() throws Exception {
+        cacheDir = Files.createDirectory(tempFolder.resolve("cache")).toFile();
+        rule = mock(Rule.class, Mockito.RETURNS_SMART_NULLS);
+        when(rule.getLanguage()).thenReturn(mock(Language.class));
+        when(ruleSets.getAllRuleSets()).thenReturn(new RuleSet[] { ruleSet(Collections.emptyList()) });
+    }
+
+    @Test
+    void testEntriesAreSharedAcrossLocations() throws Exception {
+        Path checkout1 = sourceFile("checkout1/Foo.java", "class Foo {}");
+        Path checkout2 = sourceFile("checkout2/Foo.java", "class Foo {}");
+
+        analyze(new DirectoryAnalysisCache(cacheDir), checkout1);
+
+        DirectoryAnalysisCache cache = load(new DirectoryAnalysisCache(cacheDir), checkout2);
+        try (TextDocument doc = document(checkout2)) {
+            assertTrue(cache.isUpToDate(doc), "Same contents at another location should be a hit");
+            List<RuleViolation> violations = cache.getCachedViolations(doc);
+            assertEquals(1, violations.size());
+            assertEquals(doc.getFileId(), violations.get(0).getFileId());
+            assertEquals(2, violations.get(0).getBeginColumn());
+        }
+    }
+
+    @Test
+    void testEntriesAreSharded() throws Exception {
+        Path file = sourceFile("Foo.java", "class Foo {}");
+        analyze(new DirectoryAnalysisCache(cacheDir), file);
+
+        List<Path> entries = entries();
+        assertEquals(1, entries.size());
+        Path entry = entries.get(0);
+        assertEquals(cacheDir.toPath(), entry.getParent().getParent());
+        assertTrue(entry.getFileName().toString().startsWith(entry.getParent().getFileName().toString()));
+    }
+
+    @Test
+    void testChangedContentsMiss() throws Exception {
+        Path file = sourceFile("Foo.java", "class Foo {}");
+        analyze(new DirectoryAnalysisCache(cacheDir), file);
+        Files.write(file, listOf("class Foo { }"));
+
+        DirectoryAnalysisCache cache = load(new DirectoryAnalysisCache(cacheDir), file);
+        try (TextDocument doc = document(file)) {
+            assertFalse(cache.isUpToDate(doc));
+        }
+    }
+
+    @Test
+    void testRulesetChangeMisses() throws Exception {
+        Path file = sourceFile("Foo.java", "class Foo {}");
+        analyze(new DirectoryAnalysisCache(cacheDir), file);
+
+        when(ruleSets.getChecksum()).thenReturn(1L);
+        DirectoryAnalysisCache cache = load(new DirectoryAnalysisCache(cacheDir), file);
+        try (TextDocument doc = document(file)) {
+            assertFalse(cache.isUpToDate(doc));
+        }
+    }
+
+    @Test
+    void testExcludedLocationMisses() throws Exception {
+        Path included = sourceFile("included/Foo.java", "class Foo {}");
+        Path excluded = sourceFile("excluded/Foo.java", "class Foo {}");
+        when(ruleSets.getAllRuleSets()).thenReturn(new RuleSet[] {
+            ruleSet(listOf(Pattern.compile(".*[/\\\\]excluded[/\\\\].*"))),
+        });
+
+        analyze(new DirectoryAnalysisCache(cacheDir), included);
+
+        DirectoryAnalysisCache cache = load(new DirectoryAnalysisCache(cacheDir), excluded);
+        try (TextDocument doc = document(excluded)) {
+            assertFalse(cache.isUpToDate(doc), "The rulesets that apply to the file differ");
+        }
+    }
+
+    @Test
+    void testChangedDirectoryDependencyMisses() throws Exception {
+        Path file = sourceFile("Foo.java", "class Foo {}");
+        Path classes = Files.createDirectories(tempFolder.resolve("classes/pmdtest")).getParent();
+        Files.write(classes.resolve("pmdtest/Dependency.class"), listOf("branch a"));
+
+        try (URLClassLoader cl = new URLClassLoader(new URL[] {classes.toUri().toURL()}, null)) {
+            DirectoryAnalysisCache cache = new DirectoryAnalysisCache(cacheDir);
+            cache.checkValidity(ruleSets, cl, listOf(textFile(file)));
+            try (TextDocument doc = document(file);
+                 FileAnalysisListener ignored = cache.startFileAnalysis(doc)) {
+                assertFalse(cache.isUpToDate(doc));
+                FileDependencyRecorder.recordClasspathResource("pmdtest/Dependency.class");
+            }
+            cache.persist();
+        }
+
+        // the directory isn't part of the classpath checksum, the key is the same
+        Files.write(classes.resolve("pmdtest/Dependency.class"), listOf("branch b"));
+        try (URLClassLoader cl = new URLClassLoader(new URL[] {classes.toUri().toURL()}, null);
+             TextDocument doc = document(file)) {
+            DirectoryAnalysisCache cache = new DirectoryAnalysisCache(cacheDir);
+            cache.checkValidity(ruleSets, cl, listOf(textFile(file)));
+            assertFalse(cache.isUpToDate(doc), "A dependency of the file changed");
+        }
+    }
+
+    @Test
+    void testLeastRecentlyUsedEntriesAreEvicted() throws Exception {
+        Path a = sourceFile("A.java", "class A {}");
+        Path b = sourceFile("B.java", "class B {}");
+        analyze(new DirectoryAnalysisCache(cacheDir), a);
+        long entrySize = Files.size(entries().get(0));
+        // make sure the entry of A is older
+        Files.setLastModifiedTime(entries().get(0), FileTime.fromMillis(0));
+
+        analyze(new DirectoryAnalysisCache(cacheDir, entrySize), b);
+
+        assertEquals(1, entries().size());
+        DirectoryAnalysisCache cache = load(new DirectoryAnalysisCache(cacheDir), a, b);
+        try (TextDocument docA = document(a); TextDocument docB = document(b)) {
+            assertFalse(cache.isUpToDate(docA), "Oldest entry should have been evicted");
+            assertTrue(cache.isUpToDate(docB));
+        }
+    }
+
+    private RuleSet ruleSet(List<Pattern> excludes) {
+        return RuleSet.create("ruleset", "description", "ruleset.xml", excludes, Collections.emptyList(), listOf(rule));
+    }
+
+    private List<Path> entries() throws Exception {
+        try (Stream<Path> files = Files.walk(cacheDir.toPath())) {
+            return files.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+    }
+
+    private DirectoryAnalysisCache load(DirectoryAnalysisCache cache, Path... files) {
+        cache.checkValidity(ruleSets, classLoader, Stream.of(files).map(this::textFile).collect(Collectors.toList()));
+        return cache;
+    }
+
+    /**
+     * Runs a fake analysis, which reports one violation on each analysed file.
+     */
+    private void analyze(DirectoryAnalysisCache cache, Path... files) throws Exception {
+        load(cache, files);
+        for (Path file : files) {
+            try (TextDocument doc = document(file);
+                 FileAnalysisListener listener = cache.startFileAnalysis(doc)) {
+                if (!cache.isUpToDate(doc)) {
+                    FileLocation location = FileLocation.range(doc.getFileId(), TextRange2d.range2d(1, 2, 1, 4));
+                    listener.onRuleViolation(new ParametricRuleViolation(rule, location, "message"));
+                }
+            }
+        }
+        cache.persist();
+    }
+
+    private Path sourceFile(String name, String contents) throws Exception {
+        Path path = tempFolder.resolve(name);
+        Files.createDirectories(path.getParent());
+        Files.write(path, listOf(contents));
+        return path;
+    }
+
+    // closing a document closes its text file, so each document gets a new one
+    private TextDocument document(Path path) throws Exception {
+        return TextDocument.create(textFile(path));
+    }
+
+    private TextFile textFile(Path path) {
+        return TextFile.forPath(path, StandardCharsets.UTF_8, PmdCoreTestUtils.dummyVersion());
+    }
+}
@@ -13,7 +13,11 @@ import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.clearInvocations;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.File;
@@ -21,12 +25,17 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.function.Predicate;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -35,9 +44,12 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mockito;
 
+import net.sourceforge.pmd.PMDVersion;
 import net.sourceforge.pmd.PmdCoreTestUtils;
+import net.sourceforge.pmd.RuleSet;
 import net.sourceforge.pmd.RuleSets;
 import net.sourceforge.pmd.RuleViolation;
+import net.sourceforge.pmd.cache.internal.FileDependencyRecorder;
 import net.sourceforge.pmd.lang.Language;
 import net.sourceforge.pmd.lang.LanguageVersion;
 import net.sourceforge.pmd.lang.document.FileId;
@@ -145,6 +157,23 @@ class FileAnalysisCacheTest {
         assertEquals(textLocation.getEndColumn(), cachedViolation.getEndColumn());
     }
 
+    @Test
+    void testStorePersistsAnalysisTime() throws Exception {
+        final FileAnalysisCache cache = new FileAnalysisCache(newCacheFile);
+        cache.checkValidity(mock(RuleSets.class), mock(ClassLoader.class), setOf(sourceFileBackend));
+        assertTrue(cache.getPreviousAnalysisTimeNanos(sourceFile.getFileId()) < 0, "Unknown file should have no timing");
+
+        try (FileAnalysisListener ignored = cache.startFileAnalysis(sourceFile)) {
+            cache.isUpToDate(sourceFile);
+        }
+        cache.persist();
+
+        final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+        reloadedCache.checkValidity(mock(RuleSets.class), mock(ClassLoader.class), setOf(sourceFileBackend));
+        assertTrue(reloadedCache.getPreviousAnalysisTimeNanos(sourceFile.getFileId()) >= 0,
+                   "Analysis time was not persisted");
+    }
+
 
     @Test
     void testDisplayNameIsRespected() throws Exception {
@@ -436,6 +465,45 @@ class FileAnalysisCacheTest {
                 "Cache believes a known, unchanged file is not up to date");
     }
 
+    @Test
+    void testTruncatedCacheIsDiscarded() throws IOException {
+        final Path otherPath = tempFolder.resolve("Other.java");
+        Files.write(otherPath, listOf("other text"));
+        final TextFile otherFileBackend = TextFile.forPath(otherPath, Charset.defaultCharset(), dummyVersion);
+        final TextDocument otherFile = TextDocument.create(otherFileBackend);
+
+        final FileAnalysisCache cache = new FileAnalysisCache(newCacheFile);
+        cache.checkValidity(mock(RuleSets.class), mock(ClassLoader.class), setOf(sourceFileBackend, otherFileBackend));
+        cache.isUpToDate(sourceFile);
+        cache.isUpToDate(otherFile);
+        cache.persist();
+
+        // the last entry is cut, the first one is complete
+        final byte[] bytes = Files.readAllBytes(newCacheFile.toPath());
+        Files.write(newCacheFile.toPath(), Arrays.copyOf(bytes, bytes.length - 1));
+
+        final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+        reloadedCache.checkValidity(mock(RuleSets.class), mock(ClassLoader.class), setOf(sourceFileBackend, otherFileBackend));
+        assertFalse(reloadedCache.isUpToDate(sourceFile));
+        assertFalse(reloadedCache.isUpToDate(otherFile));
+    }
+
+    @Test
+    void testNegativeCountIsDiscarded() throws IOException {
+        setupCacheWithFiles(newCacheFile, mock(RuleSets.class), mock(ClassLoader.class));
+
+        // the count of rule checksums follows the versions and three checksums
+        final byte[] bytes = Files.readAllBytes(newCacheFile.toPath());
+        final int countOffset = 2 + PMDVersion.VERSION.length() + 4 + 3 * 8;
+        assertEquals(0, ByteBuffer.wrap(bytes).getInt(countOffset), "no rules");
+        ByteBuffer.wrap(bytes).putInt(countOffset, -1);
+        Files.write(newCacheFile.toPath(), bytes);
+
+        final FileAnalysisCache cache = new FileAnalysisCache(newCacheFile);
+        cache.checkValidity(mock(RuleSets.class), mock(ClassLoader.class), setOf(sourceFileBackend));
+        assertFalse(cache.isUpToDate(sourceFile));
+    }
+
     @Test
     void testFileIsNotUpToDateWhenEdited() throws IOException {
         setupCacheWithFiles(newCacheFile, mock(RuleSets.class), mock(ClassLoader.class));
@@ -451,6 +519,221 @@ class FileAnalysisCacheTest {
                 "Cache believes a known, changed file is up to date");
     }
 
+    @Test
+    void testRuleChangeOnlyInvalidatesThatRule() throws IOException {
+        final net.sourceforge.pmd.Rule unchanged = mockRule("Unchanged", "message");
+        final net.sourceforge.pmd.Rule changed = mockRule("Changed", "message");
+        final RuleSets rs = mockRuleSets(1L, unchanged, changed);
+        final ClassLoader cl = mock(ClassLoader.class);
+
+        setupCacheWithViolations(rs, cl, unchanged, changed);
+
+        when(changed.getMessage()).thenReturn("another message");
+        final RuleSets newRs = mockRuleSets(2L, unchanged, changed);
+        final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+        reloadedCache.checkValidity(newRs, cl, setOf(sourceFileBackend));
+
+        assertFalse(reloadedCache.isUpToDate(sourceFile), "The changed rule should be run");
+        final Predicate<net.sourceforge.pmd.Rule> rulesToRun = reloadedCache.getRulesToRun(sourceFile);
+        assertNotNull(rulesToRun, "Only the changed rule should be run");
+        assertTrue(rulesToRun.test(changed));
+        assertFalse(rulesToRun.test(unchanged));
+
+        final List<RuleViolation> cachedViolations = reloadedCache.getCachedViolations(sourceFile);
+        assertEquals(1, cachedViolations.size(), "Violations of the unchanged rule should be kept");
+        assertSame(unchanged, cachedViolations.get(0).getRule());
+    }
+
+    @Test
+    void testRuleRemovalKeepsOtherRules() throws IOException {
+        final net.sourceforge.pmd.Rule kept = mockRule("Kept", "message");
+        final net.sourceforge.pmd.Rule removed = mockRule("Removed", "message");
+        final ClassLoader cl = mock(ClassLoader.class);
+
+        setupCacheWithViolations(mockRuleSets(1L, kept, removed), cl, kept, removed);
+
+        final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+        reloadedCache.checkValidity(mockRuleSets(2L, kept), cl, setOf(sourceFileBackend));
+
+        assertTrue(reloadedCache.isUpToDate(sourceFile), "No rule needs to be run");
+        final List<RuleViolation> cachedViolations = reloadedCache.getCachedViolations(sourceFile);
+        assertEquals(1, cachedViolations.size(), "Violations of the removed rule should be dropped");
+        assertSame(kept, cachedViolations.get(0).getRule());
+    }
+
+    @Test
+    void testAuxClasspathChangeKeepsFilesWithUnchangedDependencies() throws Exception {
+        final Path classes = setupCacheWithDependency();
+
+        // another entry is added to the auxclasspath, the dependency is unchanged
+        final Path otherClasses = Files.createDirectory(tempFolder.resolve("other-classes"));
+        try (URLClassLoader cl = new URLClassLoader(new URL[] {classes.toUri().toURL(), otherClasses.toUri().toURL()}, null)) {
+            final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+            reloadedCache.checkValidity(mock(RuleSets.class), cl, setOf(sourceFileBackend));
+            assertTrue(reloadedCache.isUpToDate(sourceFile),
+                       "Cache believes file is not up to date although its dependencies did not change");
+        }
+    }
+
+    @Test
+    void testDependencyChangeInvalidatesFile() throws Exception {
+        final Path classes = setupCacheWithDependency();
+
+        Files.write(classes.resolve("pmdtest/Dependency.class"), "changed".getBytes(StandardCharsets.UTF_8));
+        try (URLClassLoader cl = new URLClassLoader(new URL[] {classes.toUri().toURL()}, null)) {
+            final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+            reloadedCache.checkValidity(mock(RuleSets.class), cl, setOf(sourceFileBackend));
+            assertFalse(reloadedCache.isUpToDate(sourceFile),
+                        "Cache believes file is up to date although one of its dependencies changed");
+        }
+    }
+
+    @Test
+    void testUnchangedMetadataSkipsContentCheck() throws IOException {
+        setSourceFileModificationTime(-60_000);
+        final RuleSets ruleSets = mockRuleSets(1L, mockRule("Rule", "message"));
+        final ClassLoader cl = mock(ClassLoader.class);
+        setupCacheWithMetadata(ruleSets, cl);
+
+        final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+        reloadedCache.checkValidity(ruleSets, cl, setOf(sourceFileBackend));
+        assertTrue(reloadedCache.isUpToDateByMetadata(sourceFileBackend),
+                   "Cache believes a file whose metadata did not change is not up to date");
+        assertEquals(1, reloadedCache.getCachedViolations(sourceFileBackend.getFileId()).size());
+    }
+
+    @Test
+    void testTouchedFileIsCheckedByContent() throws IOException {
+        setSourceFileModificationTime(-60_000);
+        final RuleSets ruleSets = mockRuleSets(1L, mockRule("Rule", "message"));
+        final ClassLoader cl = mock(ClassLoader.class);
+        setupCacheWithMetadata(ruleSets, cl);
+        setSourceFileModificationTime(-30_000);
+
+        final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+        reloadedCache.checkValidity(ruleSets, cl, setOf(sourceFileBackend));
+        assertFalse(reloadedCache.isUpToDateByMetadata(sourceFileBackend),
+                    "Cache believes a file whose modification time changed is up to date");
+        assertTrue(reloadedCache.isUpToDate(sourceFile), "The contents of the file did not change");
+        reloadedCache.persist();
+
+        // the new metadata was recorded
+        final FileAnalysisCache cache = new FileAnalysisCache(newCacheFile);
+        cache.checkValidity(ruleSets, cl, setOf(sourceFileBackend));
+        assertTrue(cache.isUpToDateByMetadata(sourceFileBackend));
+        assertEquals(1, cache.getCachedViolations(sourceFileBackend.getFileId()).size());
+    }
+
+    @Test
+    void testRecentlyModifiedFileIsNotStamped() throws IOException {
+        setSourceFileModificationTime(0);
+        final RuleSets ruleSets = mockRuleSets(1L, mockRule("Rule", "message"));
+        final ClassLoader cl = mock(ClassLoader.class);
+        setupCacheWithMetadata(ruleSets, cl);
+
+        final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+        reloadedCache.checkValidity(ruleSets, cl, setOf(sourceFileBackend));
+        assertFalse(reloadedCache.isUpToDateByMetadata(sourceFileBackend),
+                    "The file could have changed without its metadata changing");
+        assertTrue(reloadedCache.isUpToDate(sourceFile));
+    }
+
+    private void setSourceFileModificationTime(long offsetMillis) throws IOException {
+        final Path path = tempFolder.resolve("Source.java");
+        Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis() + offsetMillis));
+    }
+
+    /**
+     * Sets up a cache with one violation in the source file, whose
+     * metadata is recorded like during an analysis.
+     */
+    private void setupCacheWithMetadata(RuleSets ruleSets, ClassLoader cl) throws IOException {
+        final FileAnalysisCache cache = new FileAnalysisCache(newCacheFile);
+        cache.checkValidity(ruleSets, cl, setOf(sourceFileBackend));
+        assertFalse(cache.isUpToDateByMetadata(sourceFileBackend));
+        assertFalse(cache.isUpToDate(sourceFile));
+        final FileAnalysisListener listener = cache.startFileAnalysis(sourceFile);
+        FileLocation location = FileLocation.range(sourceFile.getFileId(), TextRange2d.range2d(1, 2, 3, 4));
+        listener.onRuleViolation(new ParametricRuleViolation(ruleSets.getAllRules().iterator().next(), location, "message"));
+        cache.persist();
+    }
+
+    @Test
+    void testUnchangedAuxClasspathSkipsDependencyChecks() throws Exception {
+        final Path classFile = Files.write(tempFolder.resolve("Lib.class"), "some class".getBytes(StandardCharsets.UTF_8));
+        final URL[] auxClasspath = {classFile.toUri().toURL()};
+        final URLClassLoader cl = mock(URLClassLoader.class);
+        when(cl.getURLs()).thenReturn(auxClasspath);
+
+        final FileAnalysisCache cache = new FileAnalysisCache(newCacheFile);
+        cache.checkValidity(mock(RuleSets.class), cl, setOf(sourceFileBackend));
+        try (FileAnalysisListener listener = cache.startFileAnalysis(sourceFile)) {
+            cache.isUpToDate(sourceFile);
+            FileDependencyRecorder.recordClasspathResource("pmdtest/Dependency.class");
+        }
+        cache.persist();
+
+        // the classpath checksum is the same, the recorded dependency is not looked up
+        clearInvocations(cl);
+        final FileAnalysisCache reloadedCache = new FileAnalysisCache(newCacheFile);
+        reloadedCache.checkValidity(mock(RuleSets.class), cl, setOf(sourceFileBackend));
+        assertTrue(reloadedCache.isUpToDate(sourceFile));
+        verify(cl, never()).getResource(anyString());
+    }
+
+    /**
+     * Sets up a cache in which the source file depends on a class of the auxclasspath,
+     * and returns the directory of that class.
+     */
+    private Path setupCacheWithDependency() throws Exception {
+        final Path classes = Files.createDirectories(tempFolder.resolve("classes/pmdtest")).getParent();
+        Files.write(classes.resolve("pmdtest/Dependency.class"), "original".getBytes(StandardCharsets.UTF_8));
+
+        try (URLClassLoader cl = new URLClassLoader(new URL[] {classes.toUri().toURL()}, null)) {
+            final FileAnalysisCache cache = new FileAnalysisCache(newCacheFile);
+            cache.checkValidity(mock(RuleSets.class), cl, setOf(sourceFileBackend));
+            try (FileAnalysisListener listener = cache.startFileAnalysis(sourceFile)) {
+                assertFalse(cache.isUpToDate(sourceFile));
+                FileDependencyRecorder.recordClasspathResource("pmdtest/Dependency.class");
+            }
+            cache.persist();
+        }
+        return classes;
+    }
+
+    private void setupCacheWithViolations(RuleSets ruleSets, ClassLoader cl, net.sourceforge.pmd.Rule... rules) throws IOException {
+        final FileAnalysisCache cache = new FileAnalysisCache(newCacheFile);
+        cache.checkValidity(ruleSets, cl, setOf(sourceFileBackend));
+        cache.isUpToDate(sourceFile);
+        final FileAnalysisListener listener = cache.startFileAnalysis(sourceFile);
+        for (net.sourceforge.pmd.Rule rule : rules) {
+            FileLocation location = FileLocation.range(sourceFile.getFileId(), TextRange2d.range2d(1, 2, 3, 4));
+            listener.onRuleViolation(new ParametricRuleViolation(rule, location, "message"));
+        }
+        cache.persist();
+    }
+
+    private net.sourceforge.pmd.Rule mockRule(String name, String message) {
+        final Language language = mock(Language.class);
+        when(language.getTerseName()).thenReturn("dummy");
+        final net.sourceforge.pmd.Rule rule = mock(net.sourceforge.pmd.Rule.class);
+        when(rule.getLanguage()).thenReturn(language);
+        when(rule.getRuleClass()).thenReturn("com.example." + name);
+        when(rule.getName()).thenReturn(name);
+        when(rule.getMessage()).thenReturn(message);
+        return rule;
+    }
+
+    private RuleSets mockRuleSets(long checksum, net.sourceforge.pmd.Rule... rules) {
+        final RuleSet ruleSet = mock(RuleSet.class);
+        when(ruleSet.getRules()).thenReturn(Arrays.asList(rules));
+        final RuleSets ruleSets = mock(RuleSets.class);
+        when(ruleSets.getChecksum()).thenReturn(checksum);
+        when(ruleSets.getAllRules()).thenReturn(new HashSet<>(Arrays.asList(rules)));
+        when(ruleSets.getAllRuleSets()).thenReturn(new RuleSet[] {ruleSet});
+        return ruleSets;
+    }
+
     private void setupCacheWithFiles(final File cacheFile,
                                      final RuleSets ruleSets,
                                      final ClassLoader classLoader) throws IOException {
@@ -0,0 +1,245 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cache;
+
+import static net.sourceforge.pmd.util.CollectionUtil.listOf;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import net.sourceforge.pmd.PmdCoreTestUtils;
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RuleSets;
+import net.sourceforge.pmd.RuleViolation;
+import net.sourceforge.pmd.lang.Language;
+import net.sourceforge.pmd.lang.document.FileLocation;
+import net.sourceforge.pmd.lang.document.TextDocument;
+import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.lang.document.TextRange2d;
+import net.sourceforge.pmd.lang.rule.ParametricRuleViolation;
+import net.sourceforge.pmd.reporting.FileAnalysisListener;
+import net.sourceforge.pmd.util.CollectionUtil;
+
+class IndexedFileAnalysisCacheTest {
+
+    @TempDir
+    private Path tempFolder;
+
+    private File cacheFile;
+    private Rule rule;
+    private final RuleSets ruleSets = mock(RuleSets.class);
+    private final ClassLoader classLoader = mock(ClassLoader.class);
+
+    @BeforeEach
+    void setUp() {
+        cacheFile = tempFolder.resolve("pmd-analysis.cache").toFile();
+        rule = mock(Rule.class, Mockito.RETURNS_SMART_NULLS);
+        when(rule.getLanguage()).thenReturn(mock(Language.class));
+    }
+
+    @Test
+    void testStoreAndReloadViolations() throws Exception {
+        List<String> files = listOf(sourceFile("A.java", "a"), sourceFile("B.java", "b"));
+        analyze(files, 2);
+
+        IndexedFileAnalysisCache reloaded = load(files);
+        for (String file : files) {
+            try (TextDocument doc = document(file)) {
+                assertTrue(reloaded.isUpToDate(doc), "Unmodified file should be up to date");
+                List<RuleViolation> violations = reloaded.getCachedViolations(doc);
+                assertEquals(2, violations.size());
+                assertEquals(doc.getFileId(), violations.get(0).getFileId());
+                assertEquals(3, violations.get(1).getEndLine());
+            }
+        }
+    }
+
+    @Test
+    void testOnlyChangedFilesAreAppended() throws Exception {
+        List<String> files = listOf(sourceFile("A.java", "a"), sourceFile("B.java", "b"),
+                                      sourceFile("C.java", "c"), sourceFile("D.java", "d"));
+        analyze(files, 1);
+        final byte[] before = Files.readAllBytes(cacheFile.toPath());
+
+        Files.write(tempFolder.resolve("A.java"), listOf("changed"));
+        analyze(files, 1);
+        final byte[] after = Files.readAllBytes(cacheFile.toPath());
+
+        assertTrue(after.length > before.length, "The changed entry should have been appended");
+        assertEquals(new String(before, StandardCharsets.ISO_8859_1),
+                     new String(after, 0, before.length, StandardCharsets.ISO_8859_1),
+                     "Existing entries should not have been rewritten");
+
+        IndexedFileAnalysisCache reloaded = load(files);
+        for (String file : files) {
+            try (TextDocument doc = document(file)) {
+                assertTrue(reloaded.isUpToDate(doc));
+                assertEquals(1, reloaded.getCachedViolations(doc).size());
+            }
+        }
+    }
+
+    @Test
+    void testCacheIsCompactedWhenMostlyStale() throws Exception {
+        List<String> files = listOf(sourceFile("A.java", "a"), sourceFile("B.java", "b"));
+        analyze(files, 3);
+        final long initialLength = cacheFile.length();
+
+        for (int i = 0; i < 3; i++) {
+            Files.write(tempFolder.resolve("A.java"), listOf("changed " + i));
+            Files.write(tempFolder.resolve("B.java"), listOf("changed " + i));
+            analyze(files, 3);
+        }
+
+        assertTrue(cacheFile.length() < 2 * initialLength,
+                   "Superseded entries should have been dropped");
+        IndexedFileAnalysisCache reloaded = load(files);
+        try (TextDocument doc = document(files.get(0))) {
+            assertTrue(reloaded.isUpToDate(doc));
+            assertEquals(3, reloaded.getCachedViolations(doc).size());
+        }
+    }
+
+    @Test
+    void testLoadedViolationsAreReadableAfterCompaction() throws Exception {
+        List<String> files = listOf(sourceFile("A.java", "a"), sourceFile("B.java", "b"), sourceFile("C.java", "c"));
+        analyze(files, 2);
+        Files.write(tempFolder.resolve("B.java"), listOf("changed"));
+        Files.write(tempFolder.resolve("C.java"), listOf("changed"));
+
+        IndexedFileAnalysisCache cache = load(files);
+        for (String file : files.subList(1, 3)) {
+            try (TextDocument doc = document(file);
+                 FileAnalysisListener ignored = cache.startFileAnalysis(doc)) {
+                assertFalse(cache.isUpToDate(doc));
+            }
+        }
+        final long lengthBefore = cacheFile.length();
+        cache.persist(); // most of the file is stale, so it is compacted
+
+        assertTrue(cacheFile.length() < lengthBefore, "The file should have been compacted");
+        try (TextDocument doc = document(files.get(0))) {
+            assertTrue(cache.isUpToDate(doc));
+            assertEquals(2, cache.getCachedViolations(doc).size());
+        }
+    }
+
+    @Test
+    void testTruncatedRecordIsIgnored() throws Exception {
+        List<String> files = listOf(sourceFile("A.java", "a"));
+        analyze(files, 1);
+        final long length = cacheFile.length();
+        try (RandomAccessFile raf = new RandomAccessFile(cacheFile, "rw")) {
+            raf.seek(length);
+            raf.writeInt(1000); // a record that was only partially written
+            raf.writeInt(12);
+        }
+
+        IndexedFileAnalysisCache reloaded = load(files);
+        try (TextDocument doc = document(files.get(0))) {
+            assertTrue(reloaded.isUpToDate(doc));
+        }
+        reloaded.persist();
+        assertEquals(length, cacheFile.length(), "The truncated record should have been dropped");
+    }
+
+    @Test
+    void testFileMetadataIsStoredAndReloaded() throws Exception {
+        List<String> files = listOf(sourceFile("A.java", "a"));
+        Files.setLastModifiedTime(tempFolder.resolve("A.java"), FileTime.fromMillis(System.currentTimeMillis() - 60_000));
+
+        IndexedFileAnalysisCache cache = load(files);
+        assertFalse(cache.isUpToDateByMetadata(textFile(files.get(0))));
+        try (TextDocument doc = document(files.get(0));
+             FileAnalysisListener listener = cache.startFileAnalysis(doc)) {
+            assertFalse(cache.isUpToDate(doc));
+            listener.onRuleViolation(new ParametricRuleViolation(rule, FileLocation.caret(doc.getFileId(), 1, 1), "message"));
+        }
+        cache.persist();
+
+        IndexedFileAnalysisCache reloaded = load(files);
+        TextFile file = textFile(files.get(0));
+        assertTrue(reloaded.isUpToDateByMetadata(file), "Unmodified file should be up to date");
+        assertEquals(1, reloaded.getCachedViolations(file.getFileId()).size());
+    }
+
+    @Test
+    void testRulesetChangeInvalidatesCache() throws Exception {
+        List<String> files = listOf(sourceFile("A.java", "a"));
+        analyze(files, 1);
+
+        IndexedFileAnalysisCache reloaded = new IndexedFileAnalysisCache(cacheFile);
+        when(ruleSets.getChecksum()).thenReturn(1L);
+        reloaded.checkValidity(ruleSets, classLoader, CollectionUtil.map(files, this::textFile));
+        try (TextDocument doc = document(files.get(0))) {
+            assertFalse(reloaded.isUpToDate(doc));
+        }
+    }
+
+    @Test
+    void testMalformedFileIsIgnored() throws Exception {
+        Files.write(cacheFile.toPath(), "not a cache".getBytes(StandardCharsets.UTF_8));
+        List<String> files = listOf(sourceFile("A.java", "a"));
+
+        IndexedFileAnalysisCache cache = load(files);
+        try (TextDocument doc = document(files.get(0))) {
+            assertFalse(cache.isUpToDate(doc));
+        }
+    }
+
+    private IndexedFileAnalysisCache load(List<String> files) {
+        IndexedFileAnalysisCache cache = new IndexedFileAnalysisCache(cacheFile);
+        cache.checkValidity(ruleSets, classLoader, CollectionUtil.map(files, this::textFile));
+        return cache;
+    }
+
+    /**
+     * Runs a fake analysis, which reports the given number of violations on each modified file.
+     */
+    private void analyze(List<String> files, int violationsPerFile) throws Exception {
+        IndexedFileAnalysisCache cache = load(files);
+        for (String file : files) {
+            try (TextDocument doc = document(file);
+                 FileAnalysisListener listener = cache.startFileAnalysis(doc)) {
+                if (!cache.isUpToDate(doc)) {
+                    for (int i = 0; i < violationsPerFile; i++) {
+                        FileLocation location = FileLocation.range(doc.getFileId(), TextRange2d.range2d(1, 2, 3, 4));
+                        listener.onRuleViolation(new ParametricRuleViolation(rule, location, "message " + i));
+                    }
+                }
+            }
+        }
+        cache.persist();
+    }
+
+    private String sourceFile(String name, String contents) throws Exception {
+        Files.write(tempFolder.resolve(name), listOf(contents));
+        return name;
+    }
+
+    // closing a document closes its text file, so each document gets a new one
+    private TextDocument document(String name) throws Exception {
+        return TextDocument.create(textFile(name));
+    }
+
+    private TextFile textFile(String name) {
+        return TextFile.forPath(tempFolder.resolve(name), StandardCharsets.UTF_8, PmdCoreTestUtils.dummyVersion());
+    }
+}
@@ -5,16 +5,25 @@
 package net.sourceforge.pmd.cpd;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
 
 import org.apache.commons.lang3.SystemUtils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 /**
  * Unit test for {@link CPD}
@@ -133,6 +142,102 @@ class CPDTest {
         }
     }
 
+    @Test
+    void testParallelTokenizationFindsSameMatches() throws Exception {
+        assertEquals(describeMatches(1, null), describeMatches(4, null));
+    }
+
+    @Test
+    void testTokenCacheFindsSameMatches(@TempDir Path tempDir) throws Exception {
+        String cacheLocation = tempDir.resolve("cpd.cache").toString();
+        List<String> expected = describeMatches(1, null);
+        assertEquals(expected, describeMatches(1, cacheLocation));
+        assertTrue(new File(cacheLocation).isFile());
+        // the second run reads the tokens from the cache
+        assertEquals(expected, describeMatches(1, cacheLocation));
+        assertEquals(expected, describeMatches(4, cacheLocation));
+    }
+
+    @Test
+    void testTokenizerIOExceptionIsThrownByAdd() throws Exception {
+        CPD cpd = new CPD(failingConfiguration(1));
+        IOException e = assertThrows(IOException.class, () -> cpd.add(failingSource()));
+        assertEquals("cannot read File.java", e.getMessage());
+    }
+
+    @Test
+    void testTokenizerIOExceptionOfParallelTokenization() throws Exception {
+        CPD cpd = new CPD(failingConfiguration(4));
+        cpd.add(failingSource()); // only queued
+        IOException e = assertThrows(IOException.class, cpd::tokenizePendingSources);
+        assertEquals("cannot read File.java", e.getMessage());
+    }
+
+    @Test
+    void testTokenizerIOExceptionIsRethrownByGo() throws Exception {
+        CPD cpd = new CPD(failingConfiguration(4));
+        cpd.add(failingSource());
+        UncheckedIOException e = assertThrows(UncheckedIOException.class, cpd::go);
+        assertSame(IOException.class, e.getCause().getClass());
+    }
+
+    private static CPDConfiguration failingConfiguration(int threads) {
+        Tokenizer failing = new Tokenizer() {
+            @Override
+            public void tokenize(SourceCode sourceCode, Tokens tokenEntries) throws IOException {
+                throw new IOException("cannot read " + sourceCode.getFileName());
+            }
+
+            @Override
+            public boolean isThreadSafe() {
+                return true;
+            }
+        };
+        CPDConfiguration configuration = new CPDConfiguration();
+        configuration.setLanguage(new AbstractLanguage("Failing", "failing", failing, "java") { });
+        configuration.setMinimumTileSize(10);
+        configuration.setThreads(threads);
+        configuration.postContruct();
+        return configuration;
+    }
+
+    private static SourceCode failingSource() {
+        return new SourceCode(new SourceCode.StringCodeLoader("int a = b;", "File.java"));
+    }
+
+    private List<String> describeMatches(int threads, String tokenCacheLocation) throws Exception {
+        CPDConfiguration configuration = new CPDConfiguration();
+        configuration.setLanguage(new AnyLanguage("any"));
+        configuration.setMinimumTileSize(10);
+        configuration.setThreads(threads);
+        configuration.setTokenCacheLocation(tokenCacheLocation);
+        configuration.postContruct();
+        CPD cpd = new CPD(configuration);
+
+        Random random = new Random(3);
+        String[] snippets = {"int a = b + c;", "foo(a, b);", "if (x) { return y; }", "x = y;", "while (z) { }"};
+        for (int f = 0; f < 30; f++) {
+            StringBuilder code = new StringBuilder();
+            for (int line = 0; line < 30; line++) {
+                code.append(snippets[random.nextInt(snippets.length)]).append('\n');
+            }
+            cpd.add(new SourceCode(new SourceCode.StringCodeLoader(code.toString(), "File" + f + ".java")));
+        }
+        cpd.go();
+
+        CPDReport report = cpd.toReport();
+        List<String> result = new ArrayList<>();
+        result.add(report.getNumberOfTokensPerFile().toString());
+        for (Match match : report.getMatches()) {
+            StringBuilder sb = new StringBuilder().append(match.getTokenCount()).append(':');
+            for (Mark mark : match) {
+                sb.append(' ').append(mark.getFilename()).append('@').append(mark.getBeginTokenIndex());
+            }
+            result.add(sb.toString());
+        }
+        return result;
+    }
+
     /**
      * Simple listener that fails, if too many files were added and not skipped.
      */
@@ -0,0 +1,114 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cpd;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CPDTokenCacheTest {
+
+    @TempDir
+    private File tempDir;
+
+    private File cacheFile;
+    private CPDConfiguration configuration;
+    private CountingTokenizer tokenizer;
+
+    @BeforeEach
+    void setup() {
+        cacheFile = new File(tempDir, "cpd.cache");
+        configuration = new CPDConfiguration();
+        configuration.setLanguage(new AnyLanguage("any"));
+        tokenizer = new CountingTokenizer();
+    }
+
+    @Test
+    void testUnchangedFileIsNotTokenizedAgain() throws IOException {
+        List<String> expected = tokenizeWithCache("int a = b;\nfoo(a);\n");
+        assertEquals(1, tokenizer.count);
+
+        List<String> actual = tokenizeWithCache("int a = b;\nfoo(a);\n");
+        assertEquals(1, tokenizer.count);
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    void testChangedFileIsTokenizedAgain() throws IOException {
+        tokenizeWithCache("int a = b;\n");
+        List<String> actual = tokenizeWithCache("int a = c;\n");
+        assertEquals(2, tokenizer.count);
+        assertEquals(describe("int a = c;\n"), actual);
+    }
+
+    @Test
+    void testChangedOptionsInvalidateCache() throws IOException {
+        tokenizeWithCache("int a = b;\n");
+        configuration.setIgnoreLiterals(true);
+        tokenizeWithCache("int a = b;\n");
+        assertEquals(2, tokenizer.count);
+    }
+
+    @Test
+    void testCacheIsReplacedWithoutLeavingTemporaryFiles() throws IOException {
+        tokenizeWithCache("int a = b;\n");
+        tokenizeWithCache("int a = c;\n");
+        assertArrayEquals(new String[] {cacheFile.getName()}, tempDir.list());
+    }
+
+    private List<String> tokenizeWithCache(String code) throws IOException {
+        CPDTokenCache cache = CPDTokenCache.load(cacheFile, configuration);
+        TokenizedFile tokenizedFile = cache.tokenize(tokenizer, sourceCode(code));
+        cache.persist();
+        return describe(tokenizedFile);
+    }
+
+    private List<String> describe(String code) {
+        TokenEntry.clearImages();
+        Tokens tokens = new Tokens();
+        new AnyTokenizer().tokenize(sourceCode(code), tokens);
+        return describe(TokenSequence.of(tokens));
+    }
+
+    private static List<String> describe(TokenizedFile tokenizedFile) {
+        TokenEntry.clearImages();
+        TokenSequence tokens = new TokenSequence();
+        tokenizedFile.appendTo(tokens);
+        return describe(tokens);
+    }
+
+    private static List<String> describe(TokenSequence tokens) {
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < tokens.size(); i++) {
+            TokenEntry token = tokens.tokenEntry(i);
+            result.add(token + "@" + token.getIndex() + ":" + token.getTokenSrcID() + ":" + token.getBeginLine()
+                           + ":" + token.getBeginColumn() + "-" + token.getEndColumn());
+        }
+        return result;
+    }
+
+    private static SourceCode sourceCode(String code) {
+        return new SourceCode(new SourceCode.StringCodeLoader(code, "Foo.java"));
+    }
+
+    private static final class CountingTokenizer extends AnyTokenizer {
+
+        private int count;
+
+        @Override
+        public void tokenize(SourceCode sourceCode, Tokens tokenEntries) {
+            count++;
+            super.tokenize(sourceCode, tokenEntries);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cpd;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+class SuffixArrayMatcherTest {
+
+    @Test
+    void testSuffixArrayIsSorted() {
+        Random random = new Random(42);
+        for (int round = 0; round < 50; round++) {
+            int[] s = random.ints(random.nextInt(200) + 1, 1, 2 + random.nextInt(5)).toArray();
+            int[] sa = new int[s.length];
+            SuffixArrayMatcher.buildSuffixArray(s, 7, sa, new int[s.length], new int[s.length]);
+
+            int[] expected = IntStream.range(0, s.length).boxed()
+                                      .sorted(suffixComparator(s))
+                                      .mapToInt(Integer::intValue)
+                                      .toArray();
+            assertArrayEquals(expected, sa);
+        }
+    }
+
+    @Test
+    void testLcpArray() {
+        int[] s = {1, 2, 1, 2, 1, 3};
+        int[] sa = new int[s.length];
+        SuffixArrayMatcher.buildSuffixArray(s, 4, sa, new int[s.length], new int[s.length]);
+        int[] lcp = new int[s.length];
+        SuffixArrayMatcher.buildLcpArray(s, sa, new int[s.length], lcp);
+
+        // suffixes in order: 121213, 1213, 13, 21213, 213, 3
+        assertArrayEquals(new int[] {0, 2, 4, 1, 3, 5}, sa);
+        assertArrayEquals(new int[] {0, 3, 1, 0, 2, 0}, lcp);
+    }
+
+    @Test
+    void testSameMatchesAsKarpRabin() throws Exception {
+        Random random = new Random(1);
+        String[] snippets = {
+            "int a = b + c;", "foo(a, b);", "if (x) { return y; }", "while (true) { i++; }",
+            "return a + b;", "List<String> l = new ArrayList<>();", "x = y;", "{ }",
+        };
+        Map<String, SourceCode> sources = new HashMap<>();
+        List<SourceCode> files = new ArrayList<>();
+        for (int f = 0; f < 20; f++) {
+            StringBuilder code = new StringBuilder();
+            for (int line = 0; line < 40; line++) {
+                code.append(snippets[random.nextInt(random.nextBoolean() ? 3 : snippets.length)]).append('\n');
+            }
+            SourceCode sourceCode = new SourceCode(new SourceCode.StringCodeLoader(code.toString(), "File" + f + ".java"));
+            sources.put(sourceCode.getFileName(), sourceCode);
+            files.add(sourceCode);
+        }
+
+        for (int min : new int[] {3, 10, 25}) {
+            List<String> karpRabin = describeMatches(sources, files, min, MatchEngine.KARP_RABIN);
+            List<String> suffixArray = describeMatches(sources, files, min, MatchEngine.SUFFIX_ARRAY);
+            assertFalse(karpRabin.isEmpty());
+            assertEquals(karpRabin, suffixArray, "min = " + min);
+        }
+    }
+
+    private static List<String> describeMatches(Map<String, SourceCode> sources, List<SourceCode> files,
+                                                int min, MatchEngine engine) {
+        TokenEntry.clearImages();
+        Tokens tokens = new Tokens();
+        AnyTokenizer tokenizer = new AnyTokenizer();
+        for (SourceCode file : files) {
+            tokenizer.tokenize(file, tokens);
+        }
+        MatchAlgorithm matchAlgorithm = new MatchAlgorithm(sources, tokens, min, new CPDNullListener(), engine);
+        matchAlgorithm.findMatches();
+
+        List<String> result = new ArrayList<>();
+        for (Match match : matchAlgorithm.getMatches()) {
+            StringBuilder sb = new StringBuilder().append(match.getTokenCount()).append(':');
+            for (Mark mark : match) {
+                sb.append(' ').append(mark.getFilename())
+                  .append('@').append(mark.getBeginTokenIndex())
+                  .append('-').append(mark.getEndTokenIndex())
+                  .append('/').append(mark.getLineCount());
+            }
+            result.add(sb.toString());
+        }
+        return result;
+    }
+
+    private static Comparator<Integer> suffixComparator(int[] s) {
+        return (a, b) -> {
+            int i = a;
+            int j = b;
+            while (i < s.length && j < s.length) {
+                if (s[i] != s[j]) {
+                    return Integer.compare(s[i], s[j]);
+                }
+                i++;
+                j++;
+            }
+            // the shorter suffix comes first
+            return Integer.compare(s.length - i, s.length - j);
+        };
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.cpd;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class TokenSequenceTest {
+
+    @Test
+    void testTokenEntriesAreCreatedFromTheColumns() {
+        TokenEntry.clearImages();
+        Tokens tokens = new Tokens();
+        tokens.add(new TokenEntry("int", "Foo.java", 1, 1, 3));
+        tokens.add(new TokenEntry("a", "Foo.java", 1, 5, 5));
+        tokens.add(TokenEntry.getEOF());
+        tokens.add(new TokenEntry("int", "Bar.java", 2, 3, 5));
+        tokens.add(TokenEntry.getEOF());
+
+        TokenSequence sequence = TokenSequence.of(tokens);
+        assertEquals(5, sequence.size());
+        assertEquals(2, sequence.getFileCount());
+        assertEquals(sequence.getImageId(0), sequence.getImageId(3));
+        assertTrue(sequence.isEof(2));
+        assertNull(sequence.getFileName(2));
+
+        TokenEntry token = sequence.tokenEntry(3);
+        assertEquals("int", token.toString());
+        assertEquals("Bar.java", token.getTokenSrcID());
+        assertEquals(3, token.getIndex());
+        assertEquals(2, token.getBeginLine());
+        assertEquals(3, token.getBeginColumn());
+        assertEquals(5, token.getEndColumn());
+        assertSame(TokenEntry.EOF, sequence.tokenEntry(4));
+    }
+
+    @Test
+    void testLineCountSkipsTheEof() {
+        TokenSequence sequence = new TokenSequence(1);
+        int file = sequence.fileId("Foo.java");
+        sequence.add(1, file, 1, 1, 1);
+        sequence.add(2, file, 3, 1, 1);
+        sequence.addEof();
+
+        assertEquals(3, sequence.getLineCount(0, 2));
+        assertEquals(3, sequence.getLineCount(0, 3));
+        assertEquals(1, sequence.getLineCount(1, 1));
+    }
+}
@@ -4,6 +4,7 @@
 
 package net.sourceforge.pmd.lang.document;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -17,6 +18,7 @@ import java.nio.charset.StandardCharsets;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.EnumSource;
+import org.junit.jupiter.params.provider.ValueSource;
 
 class TextFileContentTest {
 
@@ -132,6 +134,19 @@ class TextFileContentTest {
         assertEquals("\r", content.getLineTerminator());
     }
 
+    @ParameterizedTest
+    @ValueSource(strings = {"", "abc", "a\nb\n", "a\r\nb\r\n", "a\rb\r", "a\r\nb\nc", "\ufeffabc\n", "été\r\nà\n", "a\n\u00e9\r"})
+    void testBytesAreReadLikeInputStream(String text) throws IOException {
+        TextFileContent expected = TextContentOrigin.INPUT_STREAM.normalize(text);
+        TextFileContent actual = TextContentOrigin.BYTES.normalize(text);
+
+        assertEquals(expected.getNormalizedText(), actual.getNormalizedText());
+        assertEquals(expected.getLineTerminator(), actual.getLineTerminator());
+        assertEquals(expected.getCheckSum(), actual.getCheckSum());
+        assertArrayEquals(expected.getPositioner().getLineOffsets(), actual.getPositioner().getLineOffsets());
+        assertEquals(expected.getPositioner().getLastLineColumn(), actual.getPositioner().getLastLineColumn());
+    }
+
     enum TextContentOrigin {
         INPUT_STREAM {
             @Override
@@ -145,6 +160,12 @@ class TextFileContentTest {
                 return content;
             }
         },
+        BYTES {
+            @Override
+            TextFileContent normalize(String text) throws IOException {
+                return TextFileContent.fromBytes(text.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8, LINESEP_SENTINEL);
+            }
+        },
         READER {
             @Override
             TextFileContent normalize(String input) throws IOException {
@@ -4,7 +4,12 @@
 
 package net.sourceforge.pmd.lang.impl;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.ForkJoinPool;
 
 import org.junit.jupiter.api.Test;
 
@@ -20,8 +25,39 @@ class AbstractPMDProcessorTest {
         assertSame(MultiThreadProcessor.class, processor.getClass());
     }
 
+    @Test
+    void shouldUseWorkStealingProcessorForLargestFirst() {
+        AbstractPMDProcessor processor = AbstractPMDProcessor.newFileProcessor(createTask(0, FileSchedulingMode.LARGEST_FIRST));
+        assertSame(MonoThreadProcessor.class, processor.getClass());
+
+        processor = AbstractPMDProcessor.newFileProcessor(createTask(2, FileSchedulingMode.LARGEST_FIRST));
+        assertSame(WorkStealingProcessor.class, processor.getClass());
+        processor.close();
+    }
+
+    @Test
+    void shouldApplyRulesConcurrentlyOnOwnPool() {
+        AbstractPMDProcessor processor = AbstractPMDProcessor.newFileProcessor(createTask(3).withConcurrentRulesThreshold(1000));
+        ForkJoinPool pool = processor.task.getConcurrentRulesPool();
+        assertEquals(3, pool.getParallelism());
+        processor.close();
+        assertTrue(pool.isShutdown());
+    }
+
+    @Test
+    void shouldNotApplyRulesConcurrentlyWithOneThread() {
+        for (int threads = 0; threads <= 1; threads++) {
+            try (AbstractPMDProcessor processor = AbstractPMDProcessor.newFileProcessor(createTask(threads).withConcurrentRulesThreshold(1000))) {
+                assertNull(processor.task.getConcurrentRulesPool());
+            }
+        }
+    }
+
     private LanguageProcessor.AnalysisTask createTask(int threads) {
-        LanguageProcessor.AnalysisTask task = new LanguageProcessor.AnalysisTask(null, null, null, threads, null, null, null);
-        return task;
+        return LanguageProcessor.AnalysisTask.create(null, null, null, threads, null, null, null);
+    }
+
+    private LanguageProcessor.AnalysisTask createTask(int threads, FileSchedulingMode mode) {
+        return createTask(threads).withFileSchedulingMode(mode);
     }
 }
@@ -7,6 +7,8 @@ package net.sourceforge.pmd.lang.impl;
 import static net.sourceforge.pmd.util.CollectionUtil.listOf;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.jupiter.api.Test;
@@ -14,6 +16,7 @@ import org.junit.jupiter.api.Test;
 import net.sourceforge.pmd.PMDConfiguration;
 import net.sourceforge.pmd.PmdAnalysis;
 import net.sourceforge.pmd.Report.GlobalReportBuilderListener;
+import net.sourceforge.pmd.Rule;
 import net.sourceforge.pmd.RuleContext;
 import net.sourceforge.pmd.RuleViolation;
 import net.sourceforge.pmd.lang.DummyLanguageModule;
@@ -83,6 +86,38 @@ class MultiThreadProcessorTest {
         assertEquals(1, reportListener.violations.get(), "Missing violation");
     }
 
+    @Test
+    void testThreadSafeRulesAreShared() throws Exception {
+        try (PmdAnalysis pmd = setupForTest("rulesets/MultiThreadProcessorTest/threadsafe.xml")) {
+            pmd.performAnalysis();
+        }
+
+        assertEquals(2, ThreadSafeRule.THREADS.size(), "Rule should have been applied on two threads");
+        assertEquals(1, ThreadSafeRule.INSTANCES.size(), "Rule should have been shared between the threads");
+        assertEquals(1, reportListener.violations.get(), "Missing violation");
+    }
+
+    public static class ThreadSafeRule extends AbstractRule {
+        static final Set<Thread> THREADS = ConcurrentHashMap.newKeySet();
+        static final Set<Rule> INSTANCES = ConcurrentHashMap.newKeySet();
+
+        @Override
+        public boolean isThreadSafe() {
+            return true;
+        }
+
+        @Override
+        public void apply(Node target, RuleContext ctx) {
+            THREADS.add(Thread.currentThread());
+            INSTANCES.add(this);
+            // make sure the other thread picks up the other file
+            letTheOtherThreadRun(100);
+            if (target.getTextDocument().getFileId().getOriginalPath().contains("violation")) {
+                addViolation(ctx, target);
+            }
+        }
+    }
+
     public static class NotThreadSafeRule extends AbstractRule {
         public static AtomicInteger count = new AtomicInteger(0);
         private boolean hasViolation; // this variable will be overridden
@@ -105,13 +140,14 @@ class MultiThreadProcessorTest {
             }
         }
 
-        private void letTheOtherThreadRun(int millis) {
-            try {
-                Thread.yield();
-                Thread.sleep(millis);
-            } catch (InterruptedException e) {
-                // ignored
-            }
+    }
+
+    static void letTheOtherThreadRun(int millis) {
+        try {
+            Thread.yield();
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            // ignored
         }
     }
 
@@ -0,0 +1,115 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.impl;
+
+import static net.sourceforge.pmd.util.CollectionUtil.listOf;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import net.sourceforge.pmd.PMDConfiguration;
+import net.sourceforge.pmd.PmdAnalysis;
+import net.sourceforge.pmd.Report;
+import net.sourceforge.pmd.benchmark.TimeTracker;
+import net.sourceforge.pmd.benchmark.TimedOperationCategory;
+import net.sourceforge.pmd.benchmark.TimingReport;
+import net.sourceforge.pmd.cache.AnalysisCache;
+import net.sourceforge.pmd.lang.DummyLanguageModule;
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.document.TextFile;
+
+class WorkStealingProcessorTest {
+
+    private final LanguageVersion lv = DummyLanguageModule.getInstance().getDefaultVersion();
+
+    @Test
+    void testLargestFilesComeFirst() {
+        List<TextFile> files = listOf(file("a", "x"),
+                                      file("b", "xxxxx"),
+                                      file("c", "xxx"));
+
+        assertEquals(listOf("b", "c", "a"), names(WorkStealingProcessor.sortByDecreasingCost(files, null)));
+    }
+
+    @Test
+    void testPreviousTimingsTakePrecedenceOverSize() {
+        TextFile slow = file("slow", "x");
+        TextFile big = file("big", "xxxxx");
+        TextFile unknown = file("unknown", "xxx");
+
+        AnalysisCache cache = mock(AnalysisCache.class);
+        when(cache.getPreviousAnalysisTimeNanos(any())).thenReturn(-1L);
+        // 1000ns per char on this one
+        when(cache.getPreviousAnalysisTimeNanos(slow.getFileId())).thenReturn(1000L);
+        when(cache.getPreviousAnalysisTimeNanos(big.getFileId())).thenReturn(200L);
+
+        List<TextFile> sorted = WorkStealingProcessor.sortByDecreasingCost(listOf(big, unknown, slow), cache);
+        // the unknown file is estimated from the average throughput of the others
+        assertEquals(listOf("slow", "unknown", "big"), names(sorted));
+    }
+
+    @Test
+    void testAnalysisWithLargestFirstScheduling() {
+        PMDConfiguration configuration = new PMDConfiguration();
+        configuration.setThreads(2);
+        configuration.setFileSchedulingMode(FileSchedulingMode.LARGEST_FIRST);
+        configuration.setIgnoreIncrementalAnalysis(true);
+
+        Report report;
+        try (PmdAnalysis pmd = PmdAnalysis.create(configuration)) {
+            pmd.files().addFile(TextFile.forCharSeq("abc", FileId.fromPathLikeString("file1-violation.dummy"), lv));
+            pmd.files().addFile(TextFile.forCharSeq("DEF", FileId.fromPathLikeString("file2-foo.dummy"), lv));
+            pmd.files().addFile(TextFile.forCharSeq("GHIJ", FileId.fromPathLikeString("file3-violation.dummy"), lv));
+            pmd.addRuleSet(pmd.newRuleSetLoader().loadFromResource("rulesets/MultiThreadProcessorTest/basic.xml"));
+            report = pmd.performAnalysisAndCollectReport();
+        }
+
+        assertEquals(2, report.getViolations().size());
+    }
+
+    @Test
+    void testWorkerThreadsAreTimed() {
+        PMDConfiguration configuration = new PMDConfiguration();
+        configuration.setThreads(2);
+        configuration.setFileSchedulingMode(FileSchedulingMode.LARGEST_FIRST);
+        configuration.setIgnoreIncrementalAnalysis(true);
+
+        TimeTracker.startGlobalTracking();
+        TimingReport timing;
+        try {
+            try (PmdAnalysis pmd = PmdAnalysis.create(configuration)) {
+                for (int i = 0; i < 10; i++) {
+                    pmd.files().addFile(TextFile.forCharSeq("abc", FileId.fromPathLikeString("file" + i + ".dummy"), lv));
+                }
+                pmd.addRuleSet(pmd.newRuleSetLoader().loadFromResource("rulesets/MultiThreadProcessorTest/basic.xml"));
+                pmd.performAnalysis();
+            }
+        } finally {
+            timing = TimeTracker.stopGlobalTracking();
+        }
+
+        Set<String> workers = timing.getLabeledMeasurements(TimedOperationCategory.WORKER_THREAD).keySet();
+        assertFalse(workers.isEmpty());
+        assertTrue(workers.stream().allMatch(it -> it.startsWith("PmdThread ")), workers::toString);
+    }
+
+    private TextFile file(String name, String contents) {
+        return TextFile.forCharSeq(contents, FileId.fromPathLikeString(name), lv);
+    }
+
+    private static List<String> names(List<TextFile> files) {
+        return files.stream().map(it -> it.getFileId().getOriginalPath()).collect(Collectors.toList());
+    }
+}
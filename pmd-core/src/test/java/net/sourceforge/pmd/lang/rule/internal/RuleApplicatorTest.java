@@ -0,0 +1,271 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.rule.internal;
+
+import static net.sourceforge.pmd.lang.ast.impl.DummyTreeUtil.node;
+import static net.sourceforge.pmd.lang.ast.impl.DummyTreeUtil.nodeB;
+import static net.sourceforge.pmd.lang.ast.impl.DummyTreeUtil.root;
+import static net.sourceforge.pmd.lang.ast.impl.DummyTreeUtil.tree;
+import static net.sourceforge.pmd.util.CollectionUtil.listOf;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.junit.jupiter.api.Test;
+
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RuleContext;
+import net.sourceforge.pmd.benchmark.AnalysisProfile.RuleProfile;
+import net.sourceforge.pmd.benchmark.AnalysisProfiler;
+import net.sourceforge.pmd.benchmark.AnalysisProfiler.FileRecorder;
+import net.sourceforge.pmd.cache.internal.FileDependencyRecorder;
+import net.sourceforge.pmd.internal.FileDeadline;
+import net.sourceforge.pmd.lang.DummyLanguageModule;
+import net.sourceforge.pmd.lang.ast.DummyNode;
+import net.sourceforge.pmd.lang.ast.DummyNode.DummyNodeTypeB;
+import net.sourceforge.pmd.lang.ast.DummyNode.DummyRootNode;
+import net.sourceforge.pmd.lang.ast.FileTimeoutException;
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.rule.AbstractRule;
+import net.sourceforge.pmd.lang.rule.RuleTargetSelector;
+import net.sourceforge.pmd.reporting.FileAnalysisListener;
+
+class RuleApplicatorTest {
+
+    private final DummyRootNode root = tree(
+        () -> root(
+            node(
+                nodeB(),
+                node(
+                    nodeB()
+                )
+            ),
+            nodeB(
+                node()
+            )
+        )
+    );
+
+    @Test
+    void testRulesAreAppliedOneAfterTheOther() {
+        List<String> visits = new ArrayList<>();
+
+        apply(listOf(new VisitRecordingRule(visits, "a", DummyNodeTypeB.class),
+                     new VisitRecordingRule(visits, "b", DummyNodeTypeB.class)));
+
+        // each rule goes through the nodes of the index on its own
+        assertEquals(sorted(listOf("start a", "a 00", "a 010", "a 1", "end a")),
+                     sorted(visits.subList(0, 5)));
+        assertEquals(sorted(listOf("start b", "b 00", "b 010", "b 1", "end b")),
+                     sorted(visits.subList(5, visits.size())));
+    }
+
+    @Test
+    void testViolationsAreReportedInRuleOrder() {
+        List<Rule> rules = listOf(new VisitRecordingRule(new ArrayList<>(), "a", DummyNodeTypeB.class),
+                                  new VisitRecordingRule(new ArrayList<>(), "b", DummyNodeTypeB.class),
+                                  new VisitRecordingRule(new ArrayList<>(), "c", DummyNodeTypeB.class),
+                                  new VisitRecordingRule(new ArrayList<>(), "d", DummyNodeTypeB.class));
+
+        StringBuilder reportingRules = new StringBuilder();
+        RuleApplicator applicator = RuleApplicator.build(rules);
+        applicator.index(root);
+        applicator.apply(rules, violation -> reportingRules.append(violation.getRule().getName()));
+
+        assertEquals("aaabbbcccddd", reportingRules.toString());
+    }
+
+    @Test
+    void testConcurrentApplicationReportsInSameOrder() {
+        List<ReportingRule> rules = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            rules.add(new ReportingRule("r" + i, i % 2 == 0 ? DummyNode.class : DummyNodeTypeB.class));
+        }
+
+        List<String> sequential = new ArrayList<>();
+        RuleApplicator applicator = RuleApplicator.build(rules);
+        applicator.index(root);
+        applicator.apply(rules, violation -> sequential.add(violation.getDescription()));
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int round = 0; round < 10; round++) {
+                List<String> concurrent = new ArrayList<>();
+                applicator.index(root);
+                applicator.applyConcurrently(rules, null, violation -> concurrent.add(violation.getDescription()), pool);
+                assertEquals(sequential, concurrent);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testConcurrentRulesRecordDependenciesOfTheFile() {
+        List<ReportingRule> rules = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            rules.add(new ReportingRule("r" + i, DummyNode.class));
+        }
+        RuleApplicator applicator = RuleApplicator.build(rules);
+        applicator.index(root);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        FileDependencyRecorder.startRecording();
+        try {
+            applicator.applyConcurrently(rules, null, FileAnalysisListener.noop(), pool);
+        } finally {
+            pool.shutdown();
+        }
+        Set<String> dependencies = FileDependencyRecorder.stopRecording();
+        for (ReportingRule rule : rules) {
+            assertTrue(dependencies.contains(rule.getName() + ".class"), "Missing dependency of " + rule.getName());
+        }
+    }
+
+    @Test
+    void testConcurrentRulesAreProfiled() {
+        List<ReportingRule> rules = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            rules.add(new ReportingRule("r" + i, DummyNode.class));
+        }
+        RuleApplicator applicator = RuleApplicator.build(rules);
+        applicator.index(root);
+
+        AnalysisProfiler profiler = new AnalysisProfiler();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        FileRecorder file = profiler.startFile(FileId.UNKNOWN);
+        try {
+            applicator.applyConcurrently(rules, null, FileAnalysisListener.noop(), pool);
+        } finally {
+            file.endFile();
+            pool.shutdown();
+        }
+        Set<String> profiledRules = new HashSet<>();
+        for (RuleProfile rule : profiler.getProfile().getRules()) {
+            profiledRules.add(rule.getName());
+        }
+        for (ReportingRule rule : rules) {
+            assertTrue(profiledRules.contains(rule.getName()), "Missing profile of " + rule.getName());
+        }
+    }
+
+    @Test
+    void testPassedDeadlineAbortsRules() throws InterruptedException {
+        List<String> visits = new ArrayList<>();
+        List<VisitRecordingRule> rules = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            rules.add(new VisitRecordingRule(visits, "r" + i, DummyNode.class));
+        }
+
+        FileDeadline deadline = FileDeadline.start(1);
+        try {
+            Thread.sleep(5);
+            FileTimeoutException e = assertThrows(FileTimeoutException.class, () -> apply(rules));
+            assertEquals(1, e.getTimeoutMillis());
+        } finally {
+            deadline.end();
+        }
+        // the clock is read after 64 of the 160 visits, the rules are still ended
+        assertTrue(visits.contains("end r0"));
+        assertFalse(visits.contains("r19 10"));
+    }
+
+    @Test
+    void testDeadlineNotPassedDoesNotAbortRules() {
+        List<String> visits = new ArrayList<>();
+        List<VisitRecordingRule> rules = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            rules.add(new VisitRecordingRule(visits, "r" + i, DummyNode.class));
+        }
+
+        FileDeadline deadline = FileDeadline.start(60_000);
+        try {
+            apply(rules);
+        } finally {
+            deadline.end();
+        }
+        assertTrue(visits.contains("r19 10"));
+        assertNull(FileDeadline.current());
+    }
+
+    private void apply(List<? extends Rule> rules) {
+        RuleApplicator applicator = RuleApplicator.build(rules);
+        applicator.index(root);
+        applicator.apply(rules, FileAnalysisListener.noop());
+    }
+
+    private static List<String> sorted(List<String> visits) {
+        List<String> copy = new ArrayList<>(visits);
+        copy.sort(null);
+        return copy;
+    }
+
+    private static final class ReportingRule extends AbstractRule {
+
+        private final RuleTargetSelector selector;
+
+        ReportingRule(String name, Class<? extends Node> visited) {
+            this.selector = RuleTargetSelector.forTypes(visited);
+            setName(name);
+            setLanguage(DummyLanguageModule.getInstance());
+        }
+
+        @Override
+        protected @NonNull RuleTargetSelector buildTargetSelector() {
+            return selector;
+        }
+
+        @Override
+        public void apply(Node node, RuleContext ctx) {
+            FileDependencyRecorder.recordClasspathResource(getName() + ".class");
+            ctx.addViolationWithMessage(node, getName() + " " + node.getImage());
+        }
+    }
+
+    /** Records the nodes it visits and reports a violation on each. */
+    private static final class VisitRecordingRule extends AbstractRule {
+
+        private final List<String> visits;
+        private final Class<? extends Node> visited;
+
+        VisitRecordingRule(List<String> visits, String name, Class<? extends Node> visited) {
+            this.visits = visits;
+            this.visited = visited;
+            setName(name);
+            setLanguage(DummyLanguageModule.getInstance());
+        }
+
+        @Override
+        protected @NonNull RuleTargetSelector buildTargetSelector() {
+            return RuleTargetSelector.forTypes(visited);
+        }
+
+        @Override
+        public void start(RuleContext ctx) {
+            visits.add("start " + getName());
+        }
+
+        @Override
+        public void apply(Node node, RuleContext ctx) {
+            visits.add(getName() + " " + node.getImage());
+            ctx.addViolationWithMessage(node, getName() + " " + node.getImage());
+        }
+
+        @Override
+        public void end(RuleContext ctx) {
+            visits.add("end " + getName());
+        }
+    }
+}
@@ -7,10 +7,13 @@ package net.sourceforge.pmd.lang.rule.xpath.impl;
 
 import static net.sourceforge.pmd.util.CollectionUtil.setOf;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -63,7 +66,28 @@ class AttributeAxisIteratorTest {
         assertEquals(DEFAULT_ATTRS, toMap(it).keySet());
     }
 
-    private Map<String, Attribute> toMap(AttributeAxisIterator it) {
+    @Test
+    void testGetAttributeByName() {
+        DummyNodeWithEnum dummyNode = new DummyNodeWithEnum();
+        dummyNode.setImage("foo");
+
+        Attribute image = AttributeAxisIterator.getAttribute(dummyNode, "Image");
+        assertEquals("foo", image.getValue());
+        assertSame(dummyNode, image.getParent());
+        assertEquals(DummyNodeWithEnum.MyEnum.FOO, AttributeAxisIterator.getAttribute(dummyNode, "Enum").getValue());
+        assertNull(AttributeAxisIterator.getAttribute(dummyNode, "NotAnAttribute"));
+        assertNull(AttributeAxisIterator.getAttribute(new DummyNodeWithList(), "List"));
+    }
+
+    @Test
+    void testGetAttributeByNameUsesOverriddenIterator() {
+        DummyNode dummyNode = new DummyNodeWithOwnAttributes();
+
+        assertEquals("bar", AttributeAxisIterator.getAttribute(dummyNode, "Foo").getValue());
+        assertNull(AttributeAxisIterator.getAttribute(dummyNode, "Image"));
+    }
+
+    private Map<String, Attribute> toMap(Iterator<Attribute> it) {
         Map<String, Attribute> atts = new HashMap<>();
         while (it.hasNext()) {
             Attribute attribute = it.next();
@@ -93,4 +117,12 @@ class AttributeAxisIteratorTest {
             return Collections.emptyList();
         }
     }
+
+    public static class DummyNodeWithOwnAttributes extends DummyNode {
+
+        @Override
+        public Iterator<Attribute> getXPathAttributesIterator() {
+            return Collections.singletonList(new Attribute(this, "Foo", "bar")).iterator();
+        }
+    }
 }
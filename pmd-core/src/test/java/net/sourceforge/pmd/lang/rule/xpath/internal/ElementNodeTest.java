@@ -10,14 +10,19 @@ import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
 
 import net.sourceforge.pmd.DummyParsingHelper;
 import net.sourceforge.pmd.lang.ast.DummyNode;
 import net.sourceforge.pmd.lang.ast.DummyNode.DummyRootNode;
+import net.sourceforge.pmd.lang.ast.Node;
 
 import net.sf.saxon.Configuration;
+import net.sf.saxon.tree.util.FastStringBuffer;
 import net.sf.saxon.type.Type;
 
 class ElementNodeTest {
@@ -107,4 +112,24 @@ class ElementNodeTest {
         assertSame(elementComment, treeInfo.findWrapperFor(c1));
     }
 
+    @Test
+    void testLazyWrappersHaveDocumentOrderIds() {
+        DummyRootNode root = helper.parse("(a(b)(c(d)(e)))(f(g))(h)");
+        List<Node> nodes = new ArrayList<>();
+        root.descendantsOrSelf().forEach(nodes::add);
+
+        AstTreeInfo treeInfo = new AstTreeInfo(root, Configuration.newConfiguration());
+        // wrap the nodes in reverse order, so that later subtrees are wrapped first
+        for (int i = nodes.size() - 1; i >= 0; i--) {
+            AstElementNode wrapper = treeInfo.findWrapperFor(nodes.get(i));
+            assertSame(nodes.get(i), wrapper.getUnderlyingNode());
+
+            FastStringBuffer id = new FastStringBuffer(4);
+            wrapper.generateId(id);
+            assertEquals(Integer.toString(i + 1), id.toString());
+        }
+        for (int i = 1; i < nodes.size(); i++) {
+            assertTrue(treeInfo.findWrapperFor(nodes.get(i - 1)).compareOrder(treeInfo.findWrapperFor(nodes.get(i))) < 0);
+        }
+    }
 }
@@ -11,12 +11,16 @@ import static net.sourceforge.pmd.lang.ast.impl.DummyTreeUtil.root;
 import static net.sourceforge.pmd.lang.ast.impl.DummyTreeUtil.tree;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.hamcrest.CoreMatchers;
@@ -111,6 +115,40 @@ class SaxonXPathRuleQueryTest {
         assertThat(exception.getMessage(), CoreMatchers.containsString("Int64Value"));
     }
 
+    @Test
+    void testQueriesOfSameHandlerShareConfigurationAndTree() {
+        DummyRootNode tree = helper.parse("(oha)");
+        XPathHandler handler = XPathHandler.getHandlerForFunctionDefs(imageIsFunction());
+        SaxonXPathRuleQuery query1 = createQuery("//dummyRootNode", handler);
+        SaxonXPathRuleQuery query2 = createQuery("//dummyNode[pmd-dummy:imageIs('oha')]", handler);
+
+        assertSame(query1.getDocumentNodeForRootNode(tree).getConfiguration(),
+                   query2.getDocumentNodeForRootNode(tree).getConfiguration());
+        assertSame(query1.getDocumentNodeForRootNode(tree), query2.getDocumentNodeForRootNode(tree));
+        assertEquals(1, query1.evaluate(tree).size());
+
+        // a query of another handler wraps the tree again
+        SaxonXPathRuleQuery query3 = createQuery("//dummyRootNode");
+        assertNotSame(query1.getDocumentNodeForRootNode(tree), query3.getDocumentNodeForRootNode(tree));
+        assertEquals(1, query3.evaluate(tree).size());
+    }
+
+    @Test
+    void testTreeIsWrappedOnEachThread() throws Exception {
+        DummyRootNode tree = helper.parse("(oha)");
+        SaxonXPathRuleQuery query = createQuery("//dummyRootNode");
+        AstTreeInfo wrapped = query.getDocumentNodeForRootNode(tree);
+
+        AtomicReference<AstTreeInfo> wrappedOnOtherThread = new AtomicReference<>();
+        Thread thread = new Thread(() -> wrappedOnOtherThread.set(query.getDocumentNodeForRootNode(tree)));
+        thread.start();
+        thread.join();
+
+        assertNotNull(wrappedOnOtherThread.get());
+        assertNotSame(wrapped, wrappedOnOtherThread.get());
+        assertSame(wrapped, query.getDocumentNodeForRootNode(tree));
+    }
+
     @Test
     void testRootExpression() {
         DummyRootNode dummy = helper.parse("(oha)");
@@ -404,6 +442,10 @@ class SaxonXPathRuleQueryTest {
     }
 
     private static SaxonXPathRuleQuery createQuery(String xpath, PropertyDescriptor<?>... descriptors) {
+        return createQuery(xpath, XPathHandler.getHandlerForFunctionDefs(imageIsFunction()), descriptors);
+    }
+
+    private static SaxonXPathRuleQuery createQuery(String xpath, XPathHandler xPathHandler, PropertyDescriptor<?>... descriptors) {
         Map<PropertyDescriptor<?>, Object> props = new HashMap<>();
         if (descriptors != null) {
             for (PropertyDescriptor<?> prop : descriptors) {
@@ -415,7 +457,7 @@ class SaxonXPathRuleQueryTest {
             xpath,
             XPathVersion.DEFAULT,
             props,
-            XPathHandler.getHandlerForFunctionDefs(imageIsFunction()),
+            xPathHandler,
             DeprecatedAttrLogger.noop()
         );
     }
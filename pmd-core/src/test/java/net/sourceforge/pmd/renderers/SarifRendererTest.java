@@ -11,8 +11,11 @@ import java.util.function.Consumer;
 
 import org.junit.jupiter.api.Test;
 
+import net.sourceforge.pmd.FooRule;
 import net.sourceforge.pmd.Report;
 import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.lang.rule.ParametricRuleViolation;
+import net.sourceforge.pmd.properties.PropertyFactory;
 import net.sourceforge.pmd.reporting.FileAnalysisListener;
 
 import com.github.stefanbirkner.systemlambda.SystemLambda;
@@ -98,6 +101,41 @@ class SarifRendererTest extends AbstractRendererTest {
         assertEquals(filter(readFile("expected-multiple-locations.sarif.json")), filter(actual));
     }
 
+    @Test
+    void testRuleIsListedOnceForDifferentMessages() throws Exception {
+        Rule fooRule = createFooRule();
+        String actual = renderReport(getRenderer(), reportBuilder -> {
+            reportBuilder.onRuleViolation(new ParametricRuleViolation(fooRule, createLocation(1, 1, 1, 10), "first"));
+            reportBuilder.onRuleViolation(new ParametricRuleViolation(fooRule, createLocation(2, 1, 2, 10), "second"));
+        });
+
+        JsonObject run = new Gson().fromJson(actual, JsonObject.class).getAsJsonArray("runs").get(0).getAsJsonObject();
+        JsonArray rules = run.getAsJsonObject("tool").getAsJsonObject("driver").getAsJsonArray("rules");
+        assertEquals(1, rules.size());
+        // the rule is described by its message, not by the message of the first violation
+        assertEquals("blah", rules.get(0).getAsJsonObject().getAsJsonObject("shortDescription").get("text").getAsString());
+        JsonArray results = run.getAsJsonArray("results");
+        assertEquals(2, results.size());
+        assertEquals("second", results.get(1).getAsJsonObject().getAsJsonObject("message").get("text").getAsString());
+        assertEquals(0, results.get(1).getAsJsonObject().get("ruleIndex").getAsInt());
+    }
+
+    @Test
+    void testRuleShortDescriptionIsFormattedMessage() throws Exception {
+        Rule rule = new FooRule() {
+            {
+                definePropertyDescriptor(PropertyFactory.intProperty("maxLength").desc("max").defaultValue(10).build());
+            }
+
+            @Override
+            public String getMessage() {
+                return "Avoid ''{0}'' longer than ${maxLength} characters in ${className}";
+            }
+        };
+        String actual = renderReport(getRenderer(), it -> it.onRuleViolation(newRuleViolation(1, 1, 1, 1, rule)));
+        assertEquals(filter(readFile("expected-parameterized-message.sarif.json")), filter(actual));
+    }
+
     private Consumer<FileAnalysisListener> reportThreeViolationsTwoRules() {
         Rule fooRule = createFooRule();
         Rule booRule = createBooRule();
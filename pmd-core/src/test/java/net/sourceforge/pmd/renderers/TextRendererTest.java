@@ -4,8 +4,14 @@
 
 package net.sourceforge.pmd.renderers;
 
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
 import net.sourceforge.pmd.Report.ConfigurationError;
 import net.sourceforge.pmd.Report.ProcessingError;
+import net.sourceforge.pmd.reporting.GlobalAnalysisListener;
 
 class TextRendererTest extends AbstractRendererTest {
 
@@ -44,4 +50,20 @@ class TextRendererTest extends AbstractRendererTest {
     String getExpectedError(ConfigurationError error) {
         return "Foo\t-\ta configuration error" + EOL;
     }
+
+    @Test
+    void testRendersFileReports() {
+        assertTrue(new TextRenderer().rendersFileReports());
+    }
+
+    @Test
+    void testDoesNotRenderFileReportsWithOwnListener() {
+        Renderer renderer = new TextRenderer() {
+            @Override
+            public GlobalAnalysisListener newListener() {
+                return GlobalAnalysisListener.noop();
+            }
+        };
+        assertFalse(renderer.rendersFileReports());
+    }
 }
@@ -0,0 +1,180 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.renderers.internal;
+
+import static net.sourceforge.pmd.util.CollectionUtil.listOf;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import net.sourceforge.pmd.FooRule;
+import net.sourceforge.pmd.Report;
+import net.sourceforge.pmd.lang.DummyLanguageModule;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.document.FileLocation;
+import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.lang.rule.ParametricRuleViolation;
+import net.sourceforge.pmd.renderers.AbstractRenderer;
+import net.sourceforge.pmd.reporting.FileAnalysisListener;
+import net.sourceforge.pmd.reporting.GlobalAnalysisListener;
+
+class StreamingRendererListenerTest {
+
+    @Test
+    void testRenderersShareTheFileReports() throws Exception {
+        RecordingRenderer first = new RecordingRenderer();
+        RecordingRenderer second = new RecordingRenderer();
+
+        try (GlobalAnalysisListener listener = StreamingRendererListener.start(listOf(first, second), 2)) {
+            for (int i = 0; i < 10; i++) {
+                analyzeFile(listener, "file" + i);
+            }
+        }
+
+        assertEquals(11, first.reports.size()); // 10 files and the config errors
+        assertEquals(first.reports, second.reports);
+        for (int i = 0; i < first.reports.size(); i++) {
+            assertSame(first.reports.get(i), second.reports.get(i));
+        }
+        assertTrue(first.ended);
+        assertTrue(second.ended);
+    }
+
+    @Test
+    void testReportsAreRenderedByOneWriterThread() throws Exception {
+        RecordingRenderer renderer = new RecordingRenderer();
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+
+        try (GlobalAnalysisListener listener = StreamingRendererListener.start(listOf(renderer), 1)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                String name = "file" + i;
+                futures.add(pool.submit(() -> {
+                    analyzeFile(listener, name);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals(101, renderer.reports.size());
+        assertEquals(1, renderer.renderingThreads.size());
+        assertNotSame(Thread.currentThread(), renderer.renderingThreads.iterator().next());
+        assertEquals(100, renderer.reports.stream().mapToInt(r -> r.getViolations().size()).sum());
+    }
+
+    @Test
+    void testWriterThreadStartsWithTheFirstFile() throws Exception {
+        RecordingRenderer renderer = new RecordingRenderer();
+
+        try (StreamingRendererListener listener = StreamingRendererListener.start(listOf(renderer), 2)) {
+            assertFalse(listener.isWriterStarted());
+            analyzeFile(listener, "file1");
+            assertTrue(listener.isWriterStarted());
+        }
+
+        assertEquals(2, renderer.reports.size());
+    }
+
+    @Test
+    void testConfigErrorsAreRenderedWithoutFiles() throws Exception {
+        RecordingRenderer renderer = new RecordingRenderer();
+
+        StreamingRendererListener listener = StreamingRendererListener.start(listOf(renderer), 2);
+        listener.close();
+
+        assertEquals(1, renderer.reports.size());
+        assertTrue(renderer.ended);
+    }
+
+    @Test
+    void testRenderingFailureIsThrownOnClose() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        RecordingRenderer failing = new RecordingRenderer() {
+            @Override
+            public void renderFileReport(Report report) throws IOException {
+                calls.incrementAndGet();
+                throw new IOException("disk full");
+            }
+        };
+        RecordingRenderer other = new RecordingRenderer();
+
+        GlobalAnalysisListener listener = StreamingRendererListener.start(listOf(failing, other), 4);
+        analyzeFile(listener, "file1");
+        analyzeFile(listener, "file2");
+
+        IOException e = assertThrows(IOException.class, listener::close);
+        assertEquals("disk full", e.getMessage());
+        assertEquals(0, e.getSuppressed().length);
+        assertEquals(1, calls.get()); // not called again after the first failure
+        assertEquals(3, other.reports.size());
+        assertTrue(failing.ended);
+    }
+
+    private static void analyzeFile(GlobalAnalysisListener listener, String name) throws Exception {
+        FileId fileId = FileId.fromPathLikeString(name);
+        TextFile file = TextFile.forCharSeq("text", fileId, DummyLanguageModule.getInstance().getDefaultVersion());
+        try (FileAnalysisListener fileListener = listener.startFileAnalysis(file)) {
+            fileListener.onRuleViolation(new ParametricRuleViolation(new FooRule(), FileLocation.caret(fileId, 1, 1), "violation"));
+        }
+    }
+
+    private static class RecordingRenderer extends AbstractRenderer {
+
+        final List<Report> reports = Collections.synchronizedList(new ArrayList<>());
+        final Set<Thread> renderingThreads = Collections.synchronizedSet(new HashSet<>());
+        boolean ended;
+
+        RecordingRenderer() {
+            super("recording", "Records the file reports");
+        }
+
+        @Override
+        public String defaultFileExtension() {
+            return "txt";
+        }
+
+        @Override
+        public void start() {
+            // nothing to do
+        }
+
+        @Override
+        public void startFileAnalysis(TextFile dataSource) {
+            // nothing to do
+        }
+
+        @Override
+        public void renderFileReport(Report report) throws IOException {
+            renderingThreads.add(Thread.currentThread());
+            reports.add(report);
+        }
+
+        @Override
+        public void end() {
+            ended = true;
+        }
+    }
+}
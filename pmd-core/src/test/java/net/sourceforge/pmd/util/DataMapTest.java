@@ -0,0 +1,71 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.util;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+import net.sourceforge.pmd.util.DataMap.SimpleDataKey;
+
+class DataMapTest {
+
+    private static final SimpleDataKey<Object> KEY = DataMap.simpleDataKey("key");
+
+    @Test
+    void testComputeIfAbsent() {
+        DataMap<SimpleDataKey<?>> map = DataMap.newDataMap();
+        Object value = map.computeIfAbsent(KEY, Object::new);
+        assertSame(value, map.computeIfAbsent(KEY, Object::new));
+        assertSame(value, map.get(KEY));
+    }
+
+    @Test
+    void testComputeIfAbsentWithNullValue() {
+        DataMap<SimpleDataKey<?>> map = DataMap.newDataMap();
+        assertNull(map.computeIfAbsent(KEY, () -> null));
+        assertFalse(map.isSet(KEY));
+    }
+
+    @Test
+    void testConcurrentComputeIfAbsentReturnsSameValue() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int round = 0; round < 100; round++) {
+                DataMap<SimpleDataKey<?>> map = DataMap.newDataMap();
+                map.makeThreadSafe();
+                List<Future<Object>> futures = new ArrayList<>();
+                for (int i = 0; i < 4; i++) {
+                    futures.add(executor.submit(() -> map.computeIfAbsent(KEY, Object::new)));
+                }
+                for (Future<Object> future : futures) {
+                    Object value = future.get();
+                    assertSame(map.get(KEY), value);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testMakeThreadSafeKeepsTheValues() {
+        DataMap<SimpleDataKey<?>> map = DataMap.newDataMap();
+        Object value = new Object();
+        map.set(KEY, value);
+        map.makeThreadSafe();
+        assertSame(value, map.get(KEY));
+        assertTrue(map.isSet(KEY));
+    }
+}
@@ -28,7 +28,8 @@ public class JavaTokenizer extends JavaCCTokenizer {
     private boolean ignoreLiterals;
     private boolean ignoreIdentifiers;
 
-    private ConstructorDetector constructorDetector;
+    /** Per-file state, thread-local so that files can be tokenized concurrently. */
+    private final ThreadLocal<ConstructorDetector> constructorDetector = new ThreadLocal<>();
 
     public void setProperties(Properties properties) {
         ignoreAnnotations = Boolean.parseBoolean(properties.getProperty(IGNORE_ANNOTATIONS, "false"));
@@ -38,8 +39,12 @@ public class JavaTokenizer extends JavaCCTokenizer {
 
     @Override
     public void tokenize(SourceCode sourceCode, Tokens tokenEntries) throws IOException {
-        constructorDetector = new ConstructorDetector(ignoreIdentifiers);
-        super.tokenize(sourceCode, tokenEntries);
+        constructorDetector.set(new ConstructorDetector(ignoreIdentifiers));
+        try {
+            super.tokenize(sourceCode, tokenEntries);
+        } finally {
+            constructorDetector.remove();
+        }
     }
 
     @Override
@@ -60,8 +65,9 @@ public class JavaTokenizer extends JavaCCTokenizer {
     @Override
     protected TokenEntry processToken(Tokens tokenEntries, JavaccToken javaToken) {
         String image = javaToken.getImage();
+        ConstructorDetector detector = constructorDetector.get();
 
-        constructorDetector.restoreConstructorToken(tokenEntries, javaToken);
+        detector.restoreConstructorToken(tokenEntries, javaToken);
 
         if (ignoreLiterals && (javaToken.kind == JavaTokenKinds.STRING_LITERAL
                 || javaToken.kind == JavaTokenKinds.CHARACTER_LITERAL
@@ -73,7 +79,7 @@ public class JavaTokenizer extends JavaCCTokenizer {
             image = String.valueOf(javaToken.kind);
         }
 
-        constructorDetector.processToken(javaToken);
+        detector.processToken(javaToken);
 
         return new TokenEntry(image, javaToken.getReportLocation());
     }
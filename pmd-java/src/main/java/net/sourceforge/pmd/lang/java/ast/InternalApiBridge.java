@@ -8,6 +8,7 @@ import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
 import net.sourceforge.pmd.annotation.InternalApi;
+import net.sourceforge.pmd.internal.FileDeadline;
 import net.sourceforge.pmd.lang.ast.NodeStream;
 import net.sourceforge.pmd.lang.ast.impl.javacc.JavaccTokenDocument;
 import net.sourceforge.pmd.lang.java.ast.ASTAssignableExpr.ASTNamedReferenceExpr;
@@ -87,9 +88,14 @@ public final class InternalApiBridge {
      * the
      */
     public static void forceTypeResolutionPhase(JavaAstProcessor processor, ASTCompilationUnit root) {
+        FileDeadline deadline = FileDeadline.current();
         root.descendants(TypeNode.class)
             .crossFindBoundaries()
             .forEach(it -> {
+                if (deadline != null) {
+                    // outside of the try, the timeout aborts the file
+                    deadline.check();
+                }
                 try {
                     it.getTypeMirror();
                 } catch (Exception e) {
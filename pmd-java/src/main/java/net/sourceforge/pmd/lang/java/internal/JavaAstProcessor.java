@@ -10,6 +10,8 @@ import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
 import net.sourceforge.pmd.benchmark.TimeTracker;
+import net.sourceforge.pmd.internal.FileDeadline;
+import net.sourceforge.pmd.lang.ast.FileTimeoutException;
 import net.sourceforge.pmd.lang.ast.NodeStream;
 import net.sourceforge.pmd.lang.ast.SemanticErrorReporter;
 import net.sourceforge.pmd.lang.java.ast.ASTCompilationUnit;
@@ -23,6 +25,7 @@ import net.sourceforge.pmd.lang.java.symbols.internal.ast.SymbolResolutionPass;
 import net.sourceforge.pmd.lang.java.symbols.table.internal.ReferenceCtx;
 import net.sourceforge.pmd.lang.java.symbols.table.internal.SymbolTableResolver;
 import net.sourceforge.pmd.lang.java.types.TypeSystem;
+import net.sourceforge.pmd.lang.java.types.internal.infer.InferenceBudget;
 import net.sourceforge.pmd.lang.java.types.internal.infer.TypeInferenceLogger;
 
 /**
@@ -111,14 +114,24 @@ public final class JavaAstProcessor {
         return logger;
     }
 
+    /**
+     * Returns a new budget for the type inference of this file.
+     */
+    public InferenceBudget newInferenceBudget() {
+        return globalProc.newInferenceBudget();
+    }
+
     public int getJdkVersion() {
         return JavaLanguageProperties.getInternalJdkVersion(acu.getLanguageVersion());
     }
 
     /**
      * Performs semantic analysis on the given source file.
+     *
+     * @throws FileTimeoutException If the deadline of the file is passed between two passes
      */
     public void process() {
+        FileDeadline deadline = FileDeadline.current();
 
         SymbolResolver knownSyms = TimeTracker.bench("Symbol resolution", () -> SymbolResolutionPass.traverse(this, acu));
 
@@ -131,12 +144,23 @@ public final class JavaAstProcessor {
 
         TimeTracker.bench("Symbol table resolution", () -> SymbolTableResolver.traverse(this, acu));
         TimeTracker.bench("AST disambiguation", () -> InternalApiBridge.disambigWithCtx(NodeStream.of(acu), ReferenceCtx.root(this, acu)));
+        // the passes above are linear in the size of the file, the next ones run type inference
+        checkDeadline(deadline);
+        // inference is stopped by the deadline, this pass checks it too between nodes
         TimeTracker.bench("Force type resolution", () -> InternalApiBridge.forceTypeResolutionPhase(this, acu));
+        checkDeadline(deadline);
         TimeTracker.bench("Comment assignment", () -> InternalApiBridge.assignComments(acu));
         TimeTracker.bench("Usage resolution", () -> InternalApiBridge.usageResolution(this, acu));
+        checkDeadline(deadline);
         TimeTracker.bench("Override resolution", () -> InternalApiBridge.overrideResolution(this, acu));
     }
 
+    private static void checkDeadline(@Nullable FileDeadline deadline) {
+        if (deadline != null) {
+            deadline.checkNow();
+        }
+    }
+
     public TypeSystem getTypeSystem() {
         return globalProc.getTypeSystem();
     }
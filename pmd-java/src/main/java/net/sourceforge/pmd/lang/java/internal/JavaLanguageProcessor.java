@@ -4,29 +4,42 @@
 
 package net.sourceforge.pmd.lang.java.internal;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.List;
 import java.util.Objects;
 
+import org.apache.commons.lang3.StringUtils;
 import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 import net.sourceforge.pmd.ViolationSuppressor;
+import net.sourceforge.pmd.benchmark.AnalysisProfiler;
+import net.sourceforge.pmd.internal.FileDeadline;
 import net.sourceforge.pmd.lang.LanguageVersionHandler;
 import net.sourceforge.pmd.lang.ast.Parser;
+import net.sourceforge.pmd.lang.ast.RootNode;
 import net.sourceforge.pmd.lang.impl.BatchLanguageProcessor;
+import net.sourceforge.pmd.lang.java.ast.ASTCompilationUnit;
 import net.sourceforge.pmd.lang.java.ast.JavaParser;
+import net.sourceforge.pmd.lang.java.ast.TypeNode;
 import net.sourceforge.pmd.lang.java.internal.JavaLanguageProperties.InferenceLoggingVerbosity;
+import net.sourceforge.pmd.lang.java.rule.internal.DataflowPass;
 import net.sourceforge.pmd.lang.java.rule.xpath.internal.BaseContextNodeTestFun;
 import net.sourceforge.pmd.lang.java.rule.xpath.internal.GetCommentOnFunction;
 import net.sourceforge.pmd.lang.java.rule.xpath.internal.GetModifiersFun;
 import net.sourceforge.pmd.lang.java.rule.xpath.internal.MatchesSignatureFunction;
 import net.sourceforge.pmd.lang.java.rule.xpath.internal.MetricFunction;
 import net.sourceforge.pmd.lang.java.rule.xpath.internal.NodeIsFunction;
+import net.sourceforge.pmd.lang.java.symbols.internal.asm.IndexedClasspath;
 import net.sourceforge.pmd.lang.java.types.TypeSystem;
+import net.sourceforge.pmd.lang.java.types.internal.infer.InferenceBudget;
 import net.sourceforge.pmd.lang.java.types.internal.infer.TypeInferenceLogger;
 import net.sourceforge.pmd.lang.java.types.internal.infer.TypeInferenceLogger.SimpleLogger;
 import net.sourceforge.pmd.lang.java.types.internal.infer.TypeInferenceLogger.VerboseLogger;
 import net.sourceforge.pmd.lang.metrics.LanguageMetricsProvider;
 import net.sourceforge.pmd.lang.rule.xpath.impl.XPathHandler;
+import net.sourceforge.pmd.properties.PropertyDescriptor;
 import net.sourceforge.pmd.reporting.ViolationDecorator;
 import net.sourceforge.pmd.util.designerbindings.DesignerBindings;
 
@@ -40,6 +53,7 @@ public class JavaLanguageProcessor extends BatchLanguageProcessor<JavaLanguagePr
     private final JavaParser parser;
     private final JavaParser parserWithoutProcessing;
     private TypeSystem typeSystem;
+    private @Nullable IndexedClasspath indexedClasspath;
 
     public JavaLanguageProcessor(JavaLanguageProperties properties, TypeSystem typeSystem) {
         super(properties);
@@ -51,7 +65,25 @@ public class JavaLanguageProcessor extends BatchLanguageProcessor<JavaLanguagePr
     }
 
     public JavaLanguageProcessor(JavaLanguageProperties properties) {
-        this(properties, TypeSystem.usingClassLoaderClasspath(properties.getAnalysisClassLoader()));
+        this(properties, indexClasspath(properties));
+    }
+
+    private JavaLanguageProcessor(JavaLanguageProperties properties, @Nullable IndexedClasspath indexedClasspath) {
+        this(properties, indexedClasspath != null
+                         ? TypeSystem.usingClasspath(indexedClasspath)
+                         : TypeSystem.usingClassLoaderClasspath(properties.getAnalysisClassLoader()));
+        this.indexedClasspath = indexedClasspath;
+    }
+
+    private static @Nullable IndexedClasspath indexClasspath(JavaLanguageProperties properties) {
+        return IndexedClasspath.forClassLoader(properties.getAnalysisClassLoader(),
+                                               pathProperty(properties, JavaLanguageProperties.AUX_CLASSPATH_INDEX),
+                                               pathProperty(properties, JavaLanguageProperties.AUX_CLASSPATH_STUB_CACHE));
+    }
+
+    private static @Nullable Path pathProperty(JavaLanguageProperties properties, PropertyDescriptor<String> descriptor) {
+        String path = properties.getProperty(descriptor);
+        return StringUtils.isBlank(path) ? null : Paths.get(path);
     }
 
     @Override
@@ -83,6 +115,13 @@ public class JavaLanguageProcessor extends BatchLanguageProcessor<JavaLanguagePr
         }
     }
 
+    InferenceBudget newInferenceBudget() {
+        // the budget is created on the thread that analyses the file
+        return InferenceBudget.of(getProperties().getProperty(JavaLanguageProperties.TYPE_INFERENCE_MAX_STEPS),
+                                  getProperties().getProperty(JavaLanguageProperties.TYPE_INFERENCE_TIMEOUT),
+                                  FileDeadline.current());
+    }
+
     @Override
     public DesignerBindings getDesignerBindings() {
         return JavaDesignerBindings.INSTANCE;
@@ -108,6 +147,19 @@ public class JavaLanguageProcessor extends BatchLanguageProcessor<JavaLanguagePr
         return myMetricsProvider;
     }
 
+    /**
+     * Type resolution and the dataflow pass are computed lazily,
+     * and are not thread-safe. They are done upfront here. XPath
+     * rules wrap the tree separately on each thread.
+     */
+    @Override
+    public boolean prepareForConcurrentRules(RootNode root) {
+        ASTCompilationUnit acu = (ASTCompilationUnit) root;
+        acu.descendants(TypeNode.class).crossFindBoundaries().forEach(TypeNode::getTypeMirror);
+        DataflowPass.getDataflowResult(acu);
+        return true;
+    }
+
     private static final XPathHandler XPATH_HANDLER =
         XPathHandler.getHandlerForFunctionDefs(
             BaseContextNodeTestFun.TYPE_IS_EXACTLY,
@@ -121,7 +173,24 @@ public class JavaLanguageProcessor extends BatchLanguageProcessor<JavaLanguagePr
             GetCommentOnFunction.INSTANCE
         );
 
+    @Override
+    public @NonNull AutoCloseable launchAnalysis(@NonNull AnalysisTask task) {
+        AnalysisProfiler profiler = task.getProfiler();
+        if (profiler != null) {
+            profiler.addCounters(typeSystem::getCacheCounters);
+        }
+        return super.launchAnalysis(task);
+    }
+
     public void setTypeSystem(TypeSystem ts) {
         this.typeSystem = Objects.requireNonNull(ts);
     }
+
+    @Override
+    public void close() throws Exception {
+        if (indexedClasspath != null) {
+            indexedClasspath.close();
+        }
+        super.close();
+    }
 }
@@ -4,6 +4,8 @@
 
 package net.sourceforge.pmd.lang.java.internal;
 
+import static net.sourceforge.pmd.properties.constraints.NumericConstraints.inRange;
+
 import org.apache.commons.lang3.EnumUtils;
 
 import net.sourceforge.pmd.lang.JvmLanguagePropertyBundle;
@@ -24,9 +26,47 @@ public class JavaLanguageProperties extends JvmLanguagePropertyBundle {
                        .defaultValue(InferenceLoggingVerbosity.DISABLED)
                        .build();
 
+    public static final PropertyDescriptor<String> AUX_CLASSPATH_INDEX =
+        PropertyFactory.stringProperty("auxClasspathIndex")
+                       .desc("A file in which the index of the jars of the auxclasspath is stored between runs. "
+                                 + "The index is rebuilt when the jars change. If empty, the index is only kept in memory.")
+                       .defaultValue("")
+                       .build();
+
+    public static final PropertyDescriptor<String> AUX_CLASSPATH_STUB_CACHE =
+        PropertyFactory.stringProperty("auxClasspathStubCache")
+                       .desc("A directory in which the class files of the jars of the auxclasspath, and the classes of the "
+                                 + "Java runtime that are used, are cached between runs, stripped of what type resolution "
+                                 + "doesn't use. The directory can be shared between projects. "
+                                 + "If empty, the class files are read from the jars.")
+                       .defaultValue("")
+                       .build();
+
+    public static final PropertyDescriptor<Integer> TYPE_INFERENCE_TIMEOUT =
+        PropertyFactory.intProperty("typeInferenceTimeout")
+                       .desc("Maximum time in milliseconds spent inferring the types of a single method call or lambda. "
+                                 + "When it is exceeded, the expression is given an unresolved type and a warning is reported. "
+                                 + "0 means no limit.")
+                       .require(inRange(0, Integer.MAX_VALUE))
+                       .defaultValue(0)
+                       .build();
+
+    public static final PropertyDescriptor<Integer> TYPE_INFERENCE_MAX_STEPS =
+        PropertyFactory.intProperty("typeInferenceMaxSteps")
+                       .desc("Maximum number of steps (candidate methods and incorporated bounds) of the type inference "
+                                 + "of a single method call or lambda. When it is exceeded, the expression is given an "
+                                 + "unresolved type and a warning is reported. 0 means no limit.")
+                       .require(inRange(0, Integer.MAX_VALUE))
+                       .defaultValue(0)
+                       .build();
+
     public JavaLanguageProperties() {
         super(JavaLanguageModule.getInstance());
         definePropertyDescriptor(INTERNAL_INFERENCE_LOGGING_VERBOSITY);
+        definePropertyDescriptor(AUX_CLASSPATH_INDEX);
+        definePropertyDescriptor(AUX_CLASSPATH_STUB_CACHE);
+        definePropertyDescriptor(TYPE_INFERENCE_TIMEOUT);
+        definePropertyDescriptor(TYPE_INFERENCE_MAX_STEPS);
     }
 
     public static boolean isPreviewEnabled(LanguageVersion version) {
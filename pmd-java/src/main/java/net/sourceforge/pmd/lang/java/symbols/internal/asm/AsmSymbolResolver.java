@@ -13,6 +13,7 @@ import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.objectweb.asm.Opcodes;
 
+import net.sourceforge.pmd.cache.internal.FileDependencyRecorder;
 import net.sourceforge.pmd.lang.java.symbols.JClassSymbol;
 import net.sourceforge.pmd.lang.java.symbols.SymbolResolver;
 import net.sourceforge.pmd.lang.java.symbols.internal.asm.Loader.FailedLoader;
@@ -51,6 +52,7 @@ public class AsmSymbolResolver implements SymbolResolver {
         AssertionUtil.requireParamNotNull("binaryName", binaryName);
 
         String internalName = getInternalName(binaryName);
+        recordDependency(internalName);
 
         ClassStub found = knownStubs.computeIfAbsent(internalName, iname -> {
             @Nullable URL url = getUrlOfInternalName(iname);
@@ -101,7 +103,7 @@ public class AsmSymbolResolver implements SymbolResolver {
 
     @SuppressWarnings("PMD.CompareObjectsWithEquals") // ClassStub
     @NonNull ClassStub resolveFromInternalNameCannotFail(@NonNull String internalName, int observedArity) {
-        return knownStubs.compute(internalName, (iname, prev) -> {
+        ClassStub stub = knownStubs.compute(internalName, (iname, prev) -> {
             if (prev != failed && prev != null) {
                 return prev;
             }
@@ -109,5 +111,20 @@ public class AsmSymbolResolver implements SymbolResolver {
             Loader loader = url == null ? FailedLoader.INSTANCE : new UrlLoader(url);
             return new ClassStub(this, iname, loader, observedArity);
         });
+        stub.recordDependency();
+        return stub;
+    }
+
+    /**
+     * Records that the file being analysed depends on the given class,
+     * even if it's not found, so that the analysis cache can invalidate
+     * its results when the class changes. This is called on lookups by
+     * binary name, stubs record themselves with {@link ClassStub#recordDependency()}.
+     */
+    static void recordDependency(String internalName) {
+        FileDependencyRecorder.Recording recording = FileDependencyRecorder.currentRecording();
+        if (recording != null) {
+            recording.record(internalName + ".class");
+        }
     }
 }
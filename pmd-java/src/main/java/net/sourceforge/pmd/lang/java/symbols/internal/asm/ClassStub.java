@@ -4,12 +4,14 @@
 
 package net.sourceforge.pmd.lang.java.symbols.internal.asm;
 
-import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Pattern;
 
 import org.checkerframework.checker.nullness.qual.NonNull;
@@ -18,7 +20,10 @@ import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.Opcodes;
 import org.pcollections.HashTreePSet;
 import org.pcollections.PSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import net.sourceforge.pmd.cache.internal.FileDependencyRecorder;
 import net.sourceforge.pmd.lang.java.symbols.JClassSymbol;
 import net.sourceforge.pmd.lang.java.symbols.JConstructorSymbol;
 import net.sourceforge.pmd.lang.java.symbols.JElementSymbol;
@@ -41,33 +46,44 @@ import net.sourceforge.pmd.lang.java.types.TypeSystem;
 import net.sourceforge.pmd.util.CollectionUtil;
 
 
-final class ClassStub implements JClassSymbol, AsmStub, AnnotationOwner {
+@SuppressWarnings({"PMD.AvoidUsingVolatile", "PMD.AvoidCatchingThrowable"})
+final class ClassStub implements JClassSymbol, AsmStub {
 
-    static final int UNKNOWN_ARITY = 0;
+    private static final Logger LOG = LoggerFactory.getLogger(ClassStub.class);
 
-    private final AsmSymbolResolver resolver;
+    static final int UNKNOWN_ARITY = 0;
 
-    private final Names names;
+    /** Options with which class files are parsed, see also {@link StubPack#strip(byte[])}. */
+    static final int PARSING_OPTIONS = ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES;
 
-    // all the following are lazy and depend on the parse lock
+    /** The stubs being parsed by the current thread, to detect reentrant parses. */
+    private static final ThreadLocal<Set<ClassStub>> BEING_PARSED = ThreadLocal.withInitial(HashSet::new);
 
-    private int accessFlags;
+    private final AsmSymbolResolver resolver;
+    private final Loader loader;
+    private final int observedArity;
 
-    private EnclosingInfo enclosingInfo;
-    private LazyClassSignature signature;
-    private LexicalScope scope;
+    private final Names names;
 
-    private List<JFieldSymbol> fields = new ArrayList<>();
-    private List<JClassSymbol> memberClasses = new ArrayList<>();
-    private List<JMethodSymbol> methods = new ArrayList<>();
-    private List<JConstructorSymbol> ctors = new ArrayList<>();
-    private List<JFieldSymbol> enumConstants = null;
+    /**
+     * The parsed class file. The class is parsed without holding a lock,
+     * and the result is published with a CAS. Threads that parse the
+     * class concurrently use the body that was published first, so
+     * reading a parsed class never waits.
+     */
+    private final AtomicReference<Body> body = new AtomicReference<>();
 
-    private PSet<SymAnnot> annotations = HashTreePSet.empty();
+    /**
+     * Id of the last {@linkplain FileDependencyRecorder.Recording recording}
+     * this stub was recorded in. Racy, at worst the stub is recorded twice.
+     */
+    private int lastRecordingId;
 
-    private PSet<String> annotAttributes;
+    // These are set by the parse of the enclosing class, which may happen before or after ours.
+    private volatile int innerClassAccessFlags;
+    private volatile @Nullable ClassStub outerClassHint;
 
-    private final ParseLock parseLock;
+    private LexicalScope scope;
 
     /** Note that '.' is forbidden because in internal names they're replaced by slashes '/'. */
     private static final Pattern INTERNAL_NAME_FORBIDDEN_CHARS = Pattern.compile("[;<>\\[.]");
@@ -80,80 +96,107 @@ final class ClassStub implements JClassSymbol, AsmStub, AnnotationOwner {
         assert isValidInternalName(internalName) : internalName;
 
         this.resolver = resolver;
+        this.loader = loader;
+        this.observedArity = observedArity;
         this.names = new Names(internalName);
+    }
 
-        this.parseLock = new ParseLock() {
-            // note to devs: to debug the parsing logic you might have
-            // to replace the implementation of toString temporarily,
-            // otherwise an IDE could call toString just to show the item
-            // in the debugger view (which could cause parsing of the class file).
-
-            @Override
-            protected boolean doParse() throws IOException {
-                try (InputStream instream = loader.getInputStream()) {
-                    if (instream != null) {
-                        ClassReader classReader = new ClassReader(instream);
-                        ClassStubBuilder builder = new ClassStubBuilder(ClassStub.this, resolver);
-                        classReader.accept(builder, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
-                        return true;
-                    } else {
-                        return false;
-                    }
-                }
-            }
+    @Override
+    public AsmSymbolResolver getResolver() {
+        return resolver;
+    }
 
-            @Override
-            protected void finishParse(boolean failed) {
-                if (enclosingInfo == null) {
-                    // this may be normal
-                    enclosingInfo = EnclosingInfo.NO_ENCLOSING;
-                }
-                if (signature == null) {
-                    assert failed : "No signature, but the parse hasn't failed? investigate";
-                    signature = LazyClassSignature.defaultWhenUnresolved(ClassStub.this, observedArity);
-                }
-                methods = Collections.unmodifiableList(methods);
-                ctors = Collections.unmodifiableList(ctors);
-                fields = Collections.unmodifiableList(fields);
-                memberClasses = Collections.unmodifiableList(memberClasses);
-                enumConstants = CollectionUtil.makeUnmodifiableAndNonNull(enumConstants);
-
-                if (EnclosingInfo.NO_ENCLOSING.equals(enclosingInfo)) {
-                    if (names.canonicalName == null || names.simpleName == null) {
-                        // This happens if the simple name contains dollars,
-                        // in which case we might have an enclosing class, and
-                        // we can only tell now (no enclosingInfo) that that's
-                        // not the case.
-                        names.finishOuterClass();
-                    }
-                }
-                annotAttributes = (accessFlags & Opcodes.ACC_ANNOTATION) != 0
-                                  ? getDeclaredMethods().stream().filter(JMethodSymbol::isAnnotationAttribute)
-                                                        .map(JElementSymbol::getSimpleName)
-                                                        .collect(CollectionUtil.toPersistentSet())
-                                  : HashTreePSet.empty();
-            }
+    // <editor-fold  defaultstate="collapsed" desc="Parsing">
 
-            @Override
-            protected boolean postCondition() {
-                return signature != null && enclosingInfo != null;
+    // note to devs: to debug the parsing logic you might have
+    // to replace the implementation of toString temporarily,
+    // otherwise an IDE could call toString just to show the item
+    // in the debugger view (which could cause parsing of the class file).
+
+    private Body body() {
+        recordDependency();
+        Body parsed = body.get();
+        if (parsed == null) {
+            parsed = parse();
+            if (!body.compareAndSet(null, parsed)) {
+                // another thread published its body first
+                parsed = body.get();
             }
-        };
+        }
+        return parsed;
     }
 
-    @Override
-    public AsmSymbolResolver getResolver() {
-        return resolver;
+    /**
+     * The stub is shared by all files, each of them depends on it.
+     * This is called on hot paths, so the stub is recorded only once
+     * per file, unless several files use it concurrently.
+     */
+    void recordDependency() {
+        FileDependencyRecorder.Recording recording = FileDependencyRecorder.currentRecording();
+        if (recording != null && recording.getId() != lastRecordingId) {
+            lastRecordingId = recording.getId();
+            recording.record(names.resourceName);
+        }
     }
 
-    // <editor-fold  defaultstate="collapsed" desc="Setters used during loading">
+    private Body parse() {
+        Set<ClassStub> beingParsed = BEING_PARSED.get();
+        if (!beingParsed.add(this)) {
+            throw new IllegalStateException("Thread is reentering the parse of " + this);
+        }
+        Body parsed = new Body();
+        try (InputStream instream = loader.getInputStream()) {
+            if (instream != null) {
+                ClassReader classReader = new ClassReader(instream);
+                ClassStubBuilder builder = new ClassStubBuilder(this, parsed, resolver);
+                classReader.accept(builder, PARSING_OPTIONS);
+            } else {
+                parsed.failed = true;
+            }
+        } catch (Throwable t) {
+            parsed.failed = true;
+            LOG.error(t.toString(), t);
+        }
+        try {
+            finishParse(parsed);
+        } finally {
+            beingParsed.remove(this);
+        }
+        assert parsed.signature != null && parsed.enclosingInfo != null : "Post condition not satisfied after parsing " + this;
+        return parsed;
+    }
 
-    void setHeader(@Nullable String signature,
-                   @Nullable String superName,
-                   String[] interfaces) {
-        this.signature = new LazyClassSignature(this, signature, superName, interfaces);
+    private void finishParse(Body parsed) {
+        if (parsed.enclosingInfo == null) {
+            // this may be normal
+            ClassStub outer = outerClassHint;
+            parsed.enclosingInfo = outer == null ? EnclosingInfo.NO_ENCLOSING : new EnclosingInfo(outer, null, null);
+        }
+        if (parsed.signature == null) {
+            assert parsed.failed : "No signature, but the parse hasn't failed? investigate";
+            parsed.signature = LazyClassSignature.defaultWhenUnresolved(this, observedArity);
+        }
+        parsed.methods = Collections.unmodifiableList(parsed.methods);
+        parsed.ctors = Collections.unmodifiableList(parsed.ctors);
+        parsed.fields = Collections.unmodifiableList(parsed.fields);
+        parsed.memberClasses = Collections.unmodifiableList(parsed.memberClasses);
+        parsed.enumConstants = CollectionUtil.makeUnmodifiableAndNonNull(parsed.enumConstants);
+
+        if (EnclosingInfo.NO_ENCLOSING.equals(parsed.enclosingInfo)) {
+            if (names.canonicalName == null || names.simpleName == null) {
+                // This happens if the simple name contains dollars,
+                // in which case we might have an enclosing class, and
+                // we can only tell now (no enclosingInfo) that that's
+                // not the case.
+                names.finishOuterClass();
+            }
+        }
     }
 
+    // </editor-fold>
+
+    // <editor-fold  defaultstate="collapsed" desc="Setters used by the parse of the enclosing class">
+
     /**
      * Called if this is an inner class (their simple name cannot be
      * derived from splitting the internal/binary name on dollars, as
@@ -163,7 +206,27 @@ final class ClassStub implements JClassSymbol, AsmStub, AnnotationOwner {
         this.names.simpleName = simpleName;
     }
 
-    void setModifiers(int accessFlags, boolean fromClassInfo) {
+    /**
+     * Called with the modifiers of this class found in the InnerClasses
+     * attribute of its enclosing class.
+     */
+    void setInnerClassModifiers(int accessFlags) {
+        this.innerClassAccessFlags = accessFlags;
+    }
+
+    /**
+     * Called with the enclosing class of this member class, if it was
+     * parsed before this class.
+     */
+    void setOuterClassHint(ClassStub outer) {
+        this.outerClassHint = outer;
+    }
+
+    /**
+     * Merges the modifiers found in the ClassInfo structure and those
+     * found in the InnerClasses structure.
+     */
+    static int mergeModifiers(int accessFlags, int newFlags, boolean fromClassInfo) {
         /*
             A different set of modifiers is contained in the ClassInfo
             structure and the InnerClasses structure. See
@@ -198,101 +261,52 @@ final class ClassStub implements JClassSymbol, AsmStub, AnnotationOwner {
             sets of flags.
          */
 
-        int myAccess = this.accessFlags;
+        int myAccess = accessFlags;
         if (fromClassInfo) {
             // we don't care about ACC_SUPER and it conflicts
             // with ACC_SYNCHRONIZED
-            accessFlags = accessFlags & ~Opcodes.ACC_SUPER;
+            newFlags = newFlags & ~Opcodes.ACC_SUPER;
         } else if ((myAccess & Opcodes.ACC_PUBLIC) != 0
-            && (accessFlags & Opcodes.ACC_PROTECTED) != 0) {
+            && (newFlags & Opcodes.ACC_PROTECTED) != 0) {
             // ClassInfo mentions ACC_PUBLIC even if the real
             // visibility is protected
             // We remove the public to avoid a "public protected" combination
             myAccess = myAccess & ~Opcodes.ACC_PUBLIC;
         }
-        this.accessFlags = myAccess | accessFlags;
-
-        if ((accessFlags & Opcodes.ACC_ENUM) != 0) {
-            this.enumConstants = new ArrayList<>();
-        }
-    }
-
-    void setOuterClass(ClassStub outer, @Nullable String methodName, @Nullable String methodDescriptor) {
-        if (enclosingInfo == null) {
-            if (outer == null) {
-                assert methodName == null && methodDescriptor == null
-                    : "Enclosing method requires enclosing class";
-                this.enclosingInfo = EnclosingInfo.NO_ENCLOSING;
-            } else {
-                this.enclosingInfo = new EnclosingInfo(outer, methodName, methodDescriptor);
-            }
-        }
-    }
-
-    void addField(FieldStub fieldStub) {
-        fields.add(fieldStub);
-
-        if (fieldStub.isEnumConstant() && enumConstants != null) {
-            enumConstants.add(fieldStub);
-        }
-    }
-
-    void addMemberClass(ClassStub classStub) {
-        classStub.setOuterClass(this, null, null);
-        memberClasses.add(classStub);
+        return myAccess | newFlags;
     }
 
-    void addMethod(MethodStub methodStub) {
-        methods.add(methodStub);
-    }
-
-    void addCtor(CtorStub methodStub) {
-        ctors.add(methodStub);
-    }
-
-    @Override
-    public void addAnnotation(SymAnnot annot) {
-        annotations = annotations.plus(annot);
-    }
-
-
     // </editor-fold>
 
 
     @Override
     public @Nullable JClassSymbol getSuperclass() {
-        parseLock.ensureParsed();
-        return signature.getRawSuper();
+        return body().signature.getRawSuper();
     }
 
     @Override
     public List<JClassSymbol> getSuperInterfaces() {
-        parseLock.ensureParsed();
-        return signature.getRawItfs();
+        return body().signature.getRawItfs();
     }
 
     @Override
     public @Nullable JClassType getSuperclassType(Substitution substitution) {
-        parseLock.ensureParsed();
-        return signature.getSuperType(substitution);
+        return body().signature.getSuperType(substitution);
     }
 
     @Override
     public List<JClassType> getSuperInterfaceTypes(Substitution substitution) {
-        parseLock.ensureParsed();
-        return signature.getSuperItfs(substitution);
+        return body().signature.getSuperItfs(substitution);
     }
 
     @Override
     public List<JTypeVar> getTypeParameters() {
-        parseLock.ensureParsed();
-        return signature.getTypeParams();
+        return body().signature.getTypeParams();
     }
 
     @Override
     public boolean isGeneric() {
-        parseLock.ensureParsed();
-        return signature.isGeneric();
+        return body().signature.isGeneric();
     }
 
     @Override
@@ -305,44 +319,49 @@ final class ClassStub implements JClassSymbol, AsmStub, AnnotationOwner {
 
     @Override
     public List<JFieldSymbol> getDeclaredFields() {
-        parseLock.ensureParsed();
-        return fields;
+        return body().fields;
     }
 
     @Override
     public List<JMethodSymbol> getDeclaredMethods() {
-        parseLock.ensureParsed();
-        return methods;
+        return body().methods;
     }
 
     @Override
     public List<JConstructorSymbol> getConstructors() {
-        parseLock.ensureParsed();
-        return ctors;
+        return body().ctors;
     }
 
     @Override
     public List<JClassSymbol> getDeclaredClasses() {
-        parseLock.ensureParsed();
-        return memberClasses;
+        return body().memberClasses;
     }
 
     @Override
     public PSet<SymAnnot> getDeclaredAnnotations() {
-        parseLock.ensureParsed();
-        return annotations;
+        return body().annotations;
     }
 
     @Override
     public PSet<String> getAnnotationAttributeNames() {
-        parseLock.ensureParsed();
+        Body parsed = body();
+        PSet<String> annotAttributes = parsed.annotAttributes;
+        if (annotAttributes == null) {
+            // computed after the body is published, because
+            // isAnnotationAttribute queries this class again
+            annotAttributes = (parsed.accessFlags & Opcodes.ACC_ANNOTATION) != 0
+                              ? parsed.methods.stream().filter(JMethodSymbol::isAnnotationAttribute)
+                                              .map(JElementSymbol::getSimpleName)
+                                              .collect(CollectionUtil.toPersistentSet())
+                              : HashTreePSet.empty();
+            parsed.annotAttributes = annotAttributes;
+        }
         return annotAttributes;
     }
 
     @Override
     public @Nullable SymbolicValue getDefaultAnnotationAttributeValue(String attrName) {
-        parseLock.ensureParsed();
-        if (!annotAttributes.contains(attrName)) {
+        if (!getAnnotationAttributeNames().contains(attrName)) {
             // this is a shortcut, because the default impl checks each method
             return null;
         }
@@ -351,26 +370,22 @@ final class ClassStub implements JClassSymbol, AsmStub, AnnotationOwner {
 
     @Override
     public @Nullable JClassSymbol getEnclosingClass() {
-        parseLock.ensureParsed();
-        return enclosingInfo.getEnclosingClass();
+        return body().enclosingInfo.getEnclosingClass();
     }
 
     @Override
     public @Nullable JExecutableSymbol getEnclosingMethod() {
-        parseLock.ensureParsed();
-        return enclosingInfo.getEnclosingMethod();
+        return body().enclosingInfo.getEnclosingMethod();
     }
 
     @Override
     public @NonNull List<JFieldSymbol> getEnumConstants() {
-        parseLock.ensureParsed();
-        return enumConstants;
+        return body().enumConstants;
     }
 
     @Override
     public JTypeParameterOwnerSymbol getEnclosingTypeParameterOwner() {
-        parseLock.ensureParsed();
-        return enclosingInfo.getEnclosing();
+        return body().enclosingInfo.getEnclosing();
     }
 
     @Override
@@ -412,7 +427,7 @@ final class ClassStub implements JClassSymbol, AsmStub, AnnotationOwner {
         if (names.canonicalName != null) {
             return true;
         }
-        parseLock.ensureParsed();
+        body();
         if (isAnonymousClass() || isLocalClass()) {
             return false;
         }
@@ -433,7 +448,7 @@ final class ClassStub implements JClassSymbol, AsmStub, AnnotationOwner {
     }
 
     private @Nullable String computeCanonicalName() {
-        parseLock.ensureParsed();
+        body();
         if (names.canonicalName != null) {
             return names.canonicalName;
         }
@@ -457,7 +472,7 @@ final class ClassStub implements JClassSymbol, AsmStub, AnnotationOwner {
     public @NonNull String getSimpleName() {
         String mySimpleName = names.simpleName;
         if (mySimpleName == null) {
-            parseLock.ensureParsed();
+            body();
             return Objects.requireNonNull(names.simpleName, "Null simple name after parsing");
         }
         return mySimpleName;
@@ -475,7 +490,7 @@ final class ClassStub implements JClassSymbol, AsmStub, AnnotationOwner {
 
     @Override
     public boolean isUnresolved() {
-        return parseLock.isFailed();
+        return body().failed;
     }
 
     @Override
@@ -495,8 +510,7 @@ final class ClassStub implements JClassSymbol, AsmStub, AnnotationOwner {
 
     @Override
     public int getModifiers() {
-        parseLock.ensureParsed();
-        return accessFlags;
+        return mergeModifiers(body().accessFlags, innerClassAccessFlags, false);
     }
 
     @Override
@@ -532,7 +546,7 @@ final class ClassStub implements JClassSymbol, AsmStub, AnnotationOwner {
 
     @Override
     public boolean isLocalClass() {
-        return enclosingInfo.isLocal();
+        return body().enclosingInfo.isLocal();
     }
 
     @Override
@@ -544,10 +558,88 @@ final class ClassStub implements JClassSymbol, AsmStub, AnnotationOwner {
     // </editor-fold>
 
 
+    /**
+     * The information read from the class file. It's filled in by
+     * a {@link ClassStubBuilder} on the thread that parses the class,
+     * and is not modified after it is published.
+     */
+    static final class Body implements AnnotationOwner {
+
+        private int accessFlags;
+        private boolean failed;
+
+        private @Nullable EnclosingInfo enclosingInfo;
+        private LazyClassSignature signature;
+
+        private List<JFieldSymbol> fields = new ArrayList<>();
+        private List<JClassSymbol> memberClasses = new ArrayList<>();
+        private List<JMethodSymbol> methods = new ArrayList<>();
+        private List<JConstructorSymbol> ctors = new ArrayList<>();
+        private List<JFieldSymbol> enumConstants = null;
+
+        private PSet<SymAnnot> annotations = HashTreePSet.empty();
+
+        private volatile PSet<String> annotAttributes;
+
+        void setHeader(ClassStub stub,
+                       @Nullable String signature,
+                       @Nullable String superName,
+                       String[] interfaces) {
+            this.signature = new LazyClassSignature(stub, signature, superName, interfaces);
+        }
+
+        void setModifiers(int accessFlags, boolean fromClassInfo) {
+            this.accessFlags = mergeModifiers(this.accessFlags, accessFlags, fromClassInfo);
+
+            if ((accessFlags & Opcodes.ACC_ENUM) != 0 && enumConstants == null) {
+                this.enumConstants = new ArrayList<>();
+            }
+        }
+
+        void setOuterClass(ClassStub outer, @Nullable String methodName, @Nullable String methodDescriptor) {
+            if (enclosingInfo == null) {
+                if (outer == null) {
+                    assert methodName == null && methodDescriptor == null
+                        : "Enclosing method requires enclosing class";
+                    this.enclosingInfo = EnclosingInfo.NO_ENCLOSING;
+                } else {
+                    this.enclosingInfo = new EnclosingInfo(outer, methodName, methodDescriptor);
+                }
+            }
+        }
+
+        void addField(FieldStub fieldStub) {
+            fields.add(fieldStub);
+
+            if (fieldStub.isEnumConstant() && enumConstants != null) {
+                enumConstants.add(fieldStub);
+            }
+        }
+
+        void addMemberClass(ClassStub classStub) {
+            memberClasses.add(classStub);
+        }
+
+        void addMethod(MethodStub methodStub) {
+            methods.add(methodStub);
+        }
+
+        void addCtor(CtorStub methodStub) {
+            ctors.add(methodStub);
+        }
+
+        @Override
+        public void addAnnotation(SymAnnot annot) {
+            annotations = annotations.plus(annot);
+        }
+    }
+
     static class Names {
 
         final String binaryName;
         final String internalName;
+        /** Name of the class file, as in {@link ClassLoader#getResource(String)}. */
+        final String resourceName;
         final String packageName;
         /** If null, the class requires parsing to find out the actual canonical name. */
         @Nullable String canonicalName;
@@ -559,6 +651,7 @@ final class ClassStub implements JClassSymbol, AsmStub, AnnotationOwner {
             int packageEnd = internalName.lastIndexOf('/');
 
             this.internalName = internalName;
+            this.resourceName = internalName + ".class";
             this.binaryName = internalName.replace('/', '.');
             if (packageEnd == -1) {
                 this.packageName = "";
@@ -616,8 +709,7 @@ final class ClassStub implements JClassSymbol, AsmStub, AnnotationOwner {
         public @Nullable MethodStub getEnclosingMethod() {
             if (stub instanceof ClassStub && methodName != null) {
                 ClassStub stub1 = (ClassStub) stub;
-                stub1.parseLock.ensureParsed();
-                for (JMethodSymbol m : stub1.methods) {
+                for (JMethodSymbol m : stub1.getDeclaredMethods()) {
                     MethodStub ms = (MethodStub) m;
                     if (ms.matches(methodName, methodDescriptor)) {
                         return ms;
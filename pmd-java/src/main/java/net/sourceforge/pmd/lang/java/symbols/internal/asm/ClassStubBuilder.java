@@ -18,34 +18,38 @@ import net.sourceforge.pmd.lang.java.symbols.internal.asm.ExecutableStub.CtorStu
 import net.sourceforge.pmd.lang.java.symbols.internal.asm.ExecutableStub.MethodStub;
 
 /**
- * Populates a {@link ClassStub} by reading a class file. Some info is
- * known by the ClassStub without parsing (like its internal name), so
- * we defer parsing until later. The class should be parsed only once.
+ * Populates the {@link ClassStub.Body} of a {@link ClassStub} by reading a class file.
+ * Some info is known by the ClassStub without parsing (like its internal name), so
+ * we defer parsing until later. Several threads may parse the same class,
+ * each into its own body, so this must not modify the stub itself, except
+ * with facts that every parse finds in the same way.
  */
 class ClassStubBuilder extends ClassVisitor {
 
     private final ClassStub myStub;
+    private final ClassStub.Body myBody;
     private final String myInternalName;
     private final AsmSymbolResolver resolver;
 
     private boolean isInnerNonStaticClass = false;
 
-    ClassStubBuilder(ClassStub stub, AsmSymbolResolver resolver) {
+    ClassStubBuilder(ClassStub stub, ClassStub.Body body, AsmSymbolResolver resolver) {
         super(AsmSymbolResolver.ASM_API_V);
         this.myStub = stub;
+        this.myBody = body;
         this.myInternalName = stub.getInternalName();
         this.resolver = resolver;
     }
 
     @Override
     public void visit(int version, int access, String internalName, @Nullable String signature, String superName, String[] interfaces) {
-        myStub.setModifiers(access, true);
-        myStub.setHeader(signature, superName, interfaces);
+        myBody.setModifiers(access, true);
+        myBody.setHeader(myStub, signature, superName, interfaces);
     }
 
     @Override
     public AnnotationBuilderVisitor visitAnnotation(String descriptor, boolean visible) {
-        return new AnnotationBuilderVisitor(myStub, resolver, visible, descriptor);
+        return new AnnotationBuilderVisitor(myBody, resolver, visible, descriptor);
     }
 
     @Override
@@ -53,13 +57,13 @@ class ClassStubBuilder extends ClassVisitor {
         isInnerNonStaticClass = true;
         // only for enclosing method
         ClassStub outer = resolver.resolveFromInternalNameCannotFail(ownerInternalName);
-        myStub.setOuterClass(outer, methodName, methodDescriptor);
+        myBody.setOuterClass(outer, methodName, methodDescriptor);
     }
 
     @Override
     public FieldVisitor visitField(int access, String name, String descriptor, @Nullable String signature, @Nullable Object value) {
         FieldStub field = new FieldStub(myStub, name, access, descriptor, signature, value);
-        myStub.addField(field);
+        myBody.addField(field);
         return new FieldVisitor(AsmSymbolResolver.ASM_API_V) {
             @Override
             public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
@@ -93,15 +97,16 @@ class ClassStubBuilder extends ClassVisitor {
         if (myInternalName.equals(outerName) && innerSimpleName != null) { // not anonymous
             ClassStub member = resolver.resolveFromInternalNameCannotFail(innerInternalName, ClassStub.UNKNOWN_ARITY);
             member.setSimpleName(innerSimpleName);
-            member.setModifiers(access, false);
-            myStub.addMemberClass(member);
+            member.setInnerClassModifiers(access);
+            member.setOuterClassHint(myStub);
+            myBody.addMemberClass(member);
         } else if (myInternalName.equals(innerInternalName) && outerName != null) {
             // then it's specifying the enclosing class
             // (myStub is the inner class)
             ClassStub outer = resolver.resolveFromInternalNameCannotFail(outerName);
             myStub.setSimpleName(innerSimpleName);
-            myStub.setModifiers(access, false);
-            myStub.setOuterClass(outer, null, null);
+            myBody.setModifiers(access, false);
+            myBody.setOuterClass(outer, null, null);
             isInnerNonStaticClass = (Opcodes.ACC_STATIC & access) == 0;
         }
     }
@@ -121,11 +126,11 @@ class ClassStubBuilder extends ClassVisitor {
         ExecutableStub execStub;
         if ("<init>".equals(name)) {
             CtorStub ctor = new CtorStub(myStub, access, descriptor, signature, exceptions, isInnerNonStaticClass);
-            myStub.addCtor(ctor);
+            myBody.addCtor(ctor);
             execStub = ctor;
         } else {
             MethodStub method = new MethodStub(myStub, name, access, descriptor, signature, exceptions);
-            myStub.addMethod(method);
+            myBody.addMethod(method);
             execStub = method;
         }
         return new MethodInfoVisitor(execStub);
@@ -0,0 +1,801 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.java.symbols.internal.asm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.lang3.StringUtils;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.pmd.cache.internal.FileStamp;
+import net.sourceforge.pmd.internal.util.ClasspathClassLoader;
+import net.sourceforge.pmd.internal.util.IOUtil;
+
+/**
+ * A classpath that indexes the entries of its jars by package once,
+ * instead of probing every jar for each lookup like a {@link java.net.URLClassLoader}.
+ * A lookup only opens the jars that contain the package of the resource,
+ * and reads the class file from the already opened {@link ZipFile}.
+ * Directories are not indexed, as their content changes between
+ * runs, and are probed for each lookup. Jars that have a manifest
+ * {@code Class-Path} or are multi-release jars are not indexed either,
+ * they are read with a {@link URLClassLoader}, which follows the
+ * {@code Class-Path} and picks the versioned class files, and are probed
+ * for each lookup. Resources that are not found are remembered, so that
+ * a miss is usually only looked up once.
+ *
+ * <p>The index can be stored in a file, in which case it is reused
+ * by the next runs as long as the paths of the jars and their
+ * {@link FileStamp}s (size and modification time) don't change. The
+ * jars are then only opened when a resource is looked up in them.
+ *
+ * <p>The class files of the jars can also be cached in a directory,
+ * as {@link StubPack}s keyed by the path and stamp of the jar, the
+ * same as the index. The stub pack of a jar is written when the classpath
+ * is closed, if a class was found in the jar and the jar had no pack yet.
+ * It is not written in the background, as the CLI exits as soon as the
+ * analysis is closed. The next runs, and other analyses that use the same
+ * jar, then read the classes from the pack.
+ *
+ * <p>The classes of the Java runtime image found in the parent classpath
+ * are cached in the same directory, in a pack keyed by the {@code java.home}
+ * and version of the running JVM, and the stamp of its image file. That
+ * pack only holds the runtime classes that analyses read, as the image
+ * has tens of thousands of classes. It is rewritten when the classpath
+ * is closed, if runtime classes that are not in it were read.
+ *
+ * <p>This class is thread-safe. It must be closed to close the jars.
+ */
+public final class IndexedClasspath implements Classpath, Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IndexedClasspath.class);
+
+    private static final int MAGIC = 0x504d4443; // "PMDC"
+    private static final int FORMAT_VERSION = 3;
+    /** Number of misses over which the remembered misses are forgotten. */
+    private static final int MAX_MISSES = 10_000;
+
+    private static final int[] NO_ENTRIES = new int[0];
+
+    /**
+     * Age over which the temporary files of the stub cache are deleted.
+     * They are left there if an analysis is killed while it writes a pack.
+     */
+    private static final long STALE_TEMP_FILE_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    /** Pack files that are being written, to not write them twice. */
+    private static final Set<Path> PENDING_PACKS = ConcurrentHashMap.newKeySet();
+
+    private final ClasspathEntry[] entries;
+    /** Indices of the entries that are not indexed (directories, and jars read by a class loader), in order. */
+    private final int[] unindexed;
+    /** Indices of the archives that contain a package, in order. */
+    private final Map<String, int[]> packages;
+    private final @Nullable Classpath parent;
+    private final Set<String> misses = ConcurrentHashMap.newKeySet();
+
+    private IndexedClasspath(ClasspathEntry[] entries, Map<String, int[]> packages, @Nullable Classpath parent) {
+        this.entries = entries;
+        this.packages = packages;
+        this.parent = parent;
+        List<Integer> notIndexed = new ArrayList<>();
+        for (int i = 0; i < entries.length; i++) {
+            if (!(entries[i] instanceof ArchiveEntry)) {
+                notIndexed.add(i);
+            }
+        }
+        this.unindexed = toIntArray(notIndexed);
+    }
+
+    /**
+     * Creates a classpath that looks up resources in the given jars
+     * and directories, in order, then in the parent classpath.
+     *
+     * @param paths     Paths of the jars and directories. Paths that don't exist are ignored.
+     * @param parent    Classpath in which resources are looked up if they
+     *                  are not found in the given paths, may be null
+     * @param indexFile File in which the index of the jars is stored, may be null
+     */
+    public static IndexedClasspath create(List<Path> paths, @Nullable Classpath parent, @Nullable Path indexFile) {
+        return create(paths, parent, indexFile, null);
+    }
+
+    /**
+     * Creates a classpath that looks up resources in the given jars
+     * and directories, in order, then in the parent classpath.
+     *
+     * @param paths        Paths of the jars and directories. Paths that don't exist are ignored.
+     * @param parent       Classpath in which resources are looked up if they
+     *                     are not found in the given paths, may be null
+     * @param indexFile    File in which the index of the jars is stored, may be null
+     * @param stubCacheDir Directory in which the stub packs of the jars and of the runtime are stored, may be null
+     */
+    public static IndexedClasspath create(List<Path> paths, @Nullable Classpath parent, @Nullable Path indexFile, @Nullable Path stubCacheDir) {
+        Classpath parentClasspath = parent;
+        if (stubCacheDir != null) {
+            deleteStaleTempFiles(stubCacheDir);
+            if (parent != null) {
+                RuntimeImageStubs runtimeStubs = RuntimeImageStubs.create(parent, stubCacheDir);
+                if (runtimeStubs != null) {
+                    parentClasspath = runtimeStubs;
+                }
+            }
+        }
+        List<ClasspathEntry> entries = new ArrayList<>();
+        for (Path path : paths) {
+            if (Files.isDirectory(path)) {
+                entries.add(new DirectoryEntry(path));
+            } else if (Files.isRegularFile(path)) {
+                ArchiveEntry archive = new ArchiveEntry(path);
+                if (stubCacheDir != null) {
+                    archive.useStubCache(stubCacheDir);
+                }
+                entries.add(archive);
+            } else {
+                LOG.debug("Classpath entry {} doesn't exist, ignoring it", path);
+            }
+        }
+        ClasspathEntry[] entryArray = entries.toArray(new ClasspathEntry[0]);
+
+        if (indexFile == null) {
+            return new IndexedClasspath(entryArray, indexArchives(entryArray), parentClasspath);
+        }
+
+        Map<String, int[]> packages = new HashMap<>();
+        if (!readIndex(indexFile, entryArray, packages)) {
+            packages = indexArchives(entryArray);
+            writeIndex(indexFile, entryArray, packages);
+        }
+        return new IndexedClasspath(entryArray, packages, parentClasspath);
+    }
+
+    /**
+     * Creates a classpath that finds the same resources as the given
+     * classloader, if it is a {@link ClasspathClassLoader}. Otherwise
+     * returns null.
+     *
+     * @param classLoader  A classloader
+     * @param indexFile    File in which the index of the jars is stored, may be null
+     * @param stubCacheDir Directory in which the stub packs of the jars and of the runtime are stored, may be null
+     */
+    public static @Nullable IndexedClasspath forClassLoader(ClassLoader classLoader, @Nullable Path indexFile, @Nullable Path stubCacheDir) {
+        if (!(classLoader instanceof ClasspathClassLoader) || classLoader.getParent() == null) {
+            return null;
+        }
+        List<Path> paths = new ArrayList<>();
+        for (URL url : ((ClasspathClassLoader) classLoader).getURLs()) {
+            if (!"file".equals(url.getProtocol())) {
+                return null;
+            }
+            try {
+                paths.add(Paths.get(url.toURI()));
+            } catch (URISyntaxException | IllegalArgumentException e) {
+                return null;
+            }
+        }
+        // The ClasspathClassLoader is child-first
+        return create(paths, Classpath.forClassLoader(classLoader.getParent()), indexFile, stubCacheDir);
+    }
+
+    @Override
+    public @Nullable URL findResource(String resourcePath) {
+        if (misses.contains(resourcePath)) {
+            return null;
+        }
+        URL url = findInEntries(resourcePath);
+        if (url == null && parent != null) {
+            url = parent.findResource(resourcePath);
+        }
+        if (url == null) {
+            if (misses.size() >= MAX_MISSES) {
+                // keeps the memory bounded, the misses are looked up again
+                misses.clear();
+            }
+            misses.add(resourcePath);
+        }
+        return url;
+    }
+
+    private @Nullable URL findInEntries(String resourcePath) {
+        int[] archives = packages.getOrDefault(packageOf(resourcePath), NO_ENTRIES);
+        int a = 0;
+        int u = 0;
+        // merge the archives that contain the package with the entries
+        // that are not indexed, to look into them in classpath order
+        while (a < archives.length || u < unindexed.length) {
+            int next;
+            if (u == unindexed.length || a < archives.length && archives[a] < unindexed[u]) {
+                next = archives[a++];
+            } else {
+                next = unindexed[u++];
+            }
+            URL url = entries[next].findResource(resourcePath);
+            if (url != null) {
+                return url;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (parent instanceof RuntimeImageStubs) {
+            ((RuntimeImageStubs) parent).close();
+        }
+        IOException exception = null;
+        for (ClasspathEntry entry : entries) {
+            try {
+                entry.close();
+            } catch (IOException e) {
+                if (exception == null) {
+                    exception = e;
+                } else {
+                    exception.addSuppressed(e);
+                }
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    /**
+     * Deletes the temporary files of the given stub cache that are old
+     * enough to not be written anymore.
+     */
+    private static void deleteStaleTempFiles(Path stubCacheDir) {
+        if (!Files.isDirectory(stubCacheDir)) {
+            return;
+        }
+        long staleBefore = System.currentTimeMillis() - STALE_TEMP_FILE_MILLIS;
+        try (DirectoryStream<Path> tempFiles = Files.newDirectoryStream(stubCacheDir, "*.tmp")) {
+            for (Path tempFile : tempFiles) {
+                if (Files.getLastModifiedTime(tempFile).toMillis() < staleBefore) {
+                    Files.deleteIfExists(tempFile);
+                }
+            }
+        } catch (IOException e) {
+            LOG.debug("Cannot delete the temporary files of the stub cache {}", stubCacheDir, e);
+        }
+    }
+
+    /** Returns the stamp of the given file, or null if it cannot be stamped reliably. */
+    private static @Nullable FileStamp stamp(Path path) {
+        try {
+            return FileStamp.of(Files.readAttributes(path, BasicFileAttributes.class), System.currentTimeMillis());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns a URL that reads the resource with the given stream
+     * opener, instead of going through the URL handler of the protocol.
+     */
+    private static URL newUrl(String protocol, String file, StreamOpener opener) throws MalformedURLException {
+        return new URL(protocol, "", -1, file, new StreamHandler(opener));
+    }
+
+    private static String packageOf(String resourcePath) {
+        int lastSlash = resourcePath.lastIndexOf('/');
+        return lastSlash < 0 ? "" : resourcePath.substring(0, lastSlash);
+    }
+
+    private static int[] toIntArray(List<Integer> list) {
+        int[] result = new int[list.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = list.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Indexes the packages of the archives. The archives that need a class
+     * loader are replaced in the array by a {@link ClassLoaderEntry}.
+     */
+    private static Map<String, int[]> indexArchives(ClasspathEntry[] entries) {
+        Map<String, List<Integer>> index = new HashMap<>();
+        for (int i = 0; i < entries.length; i++) {
+            if (!(entries[i] instanceof ArchiveEntry)) {
+                continue;
+            }
+            ArchiveEntry archive = (ArchiveEntry) entries[i];
+            try {
+                if (archive.needsClassLoader()) {
+                    LOG.debug("Classpath entry {} needs a class loader, it is not indexed", archive.path);
+                    archive.close();
+                    entries[i] = new ClassLoaderEntry(archive.path);
+                    continue;
+                }
+                Enumeration<? extends ZipEntry> zipEntries = archive.open().entries();
+                while (zipEntries.hasMoreElements()) {
+                    ZipEntry zipEntry = zipEntries.nextElement();
+                    if (zipEntry.isDirectory()) {
+                        continue;
+                    }
+                    List<Integer> archives = index.computeIfAbsent(packageOf(zipEntry.getName()), k -> new ArrayList<>());
+                    if (archives.isEmpty() || archives.get(archives.size() - 1) != i) {
+                        archives.add(i);
+                    }
+                }
+            } catch (IOException e) {
+                LOG.warn("Cannot read classpath entry {}, ignoring it", archive.path, e);
+            }
+        }
+
+        Map<String, int[]> packages = new HashMap<>();
+        index.forEach((pack, archives) -> packages.put(pack, toIntArray(archives)));
+        return packages;
+    }
+
+    /**
+     * Reads the index stored in the given file into the given map, if
+     * it was built for the same entries, and the jars have not changed
+     * since. The archives that need a class loader are then replaced in
+     * the array by a {@link ClassLoaderEntry}. Returns false otherwise.
+     */
+    private static boolean readIndex(Path indexFile, ClasspathEntry[] entries, Map<String, int[]> packages) {
+        if (!Files.isRegularFile(indexFile)) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || in.readInt() != entries.length) {
+                return false;
+            }
+            boolean[] needClassLoader = new boolean[entries.length];
+            for (int i = 0; i < entries.length; i++) {
+                ClasspathEntry entry = entries[i];
+                if (!entry.path.toString().equals(in.readUTF())) {
+                    return false;
+                }
+                FileStamp stamp = FileStamp.read(in);
+                if (entry instanceof ArchiveEntry && !isUnchanged((ArchiveEntry) entry, stamp)) {
+                    return false;
+                }
+                needClassLoader[i] = in.readBoolean();
+            }
+            int numPackages = in.readInt();
+            for (int i = 0; i < numPackages; i++) {
+                String pack = in.readUTF();
+                int[] archives = new int[in.readInt()];
+                for (int j = 0; j < archives.length; j++) {
+                    archives[j] = in.readInt();
+                }
+                packages.put(pack, archives);
+            }
+            for (int i = 0; i < entries.length; i++) {
+                if (needClassLoader[i] && entries[i] instanceof ArchiveEntry) {
+                    entries[i].close();
+                    entries[i] = new ClassLoaderEntry(entries[i].path);
+                }
+            }
+            LOG.debug("Loaded the classpath index from {}", indexFile);
+            return true;
+        } catch (IOException e) {
+            LOG.warn("Cannot read the classpath index {}, it will be rebuilt", indexFile, e);
+            packages.clear();
+            return false;
+        }
+    }
+
+    private static boolean isUnchanged(ArchiveEntry archive, @Nullable FileStamp indexedStamp) {
+        // a jar without a stamp was modified too recently to tell whether it changed
+        return archive.stamp != null && archive.stamp.equals(indexedStamp);
+    }
+
+    /**
+     * Writes the index into the given file. The file is written atomically,
+     * so that several analyses can share it.
+     */
+    private static void writeIndex(Path indexFile, ClasspathEntry[] entries, Map<String, int[]> packages) {
+        try {
+            Path parentDir = indexFile.toAbsolutePath().getParent();
+            Files.createDirectories(parentDir);
+            Path tmp = Files.createTempFile(parentDir, indexFile.getFileName().toString(), ".tmp");
+            try {
+                try (OutputStream file = Files.newOutputStream(tmp);
+                     DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+                    out.writeInt(MAGIC);
+                    out.writeInt(FORMAT_VERSION);
+                    out.writeInt(entries.length);
+                    for (ClasspathEntry entry : entries) {
+                        out.writeUTF(entry.path.toString());
+                        FileStamp.write(out, entry instanceof ArchiveEntry ? ((ArchiveEntry) entry).stamp : null);
+                        out.writeBoolean(entry instanceof ClassLoaderEntry);
+                    }
+                    out.writeInt(packages.size());
+                    for (Map.Entry<String, int[]> pack : packages.entrySet()) {
+                        out.writeUTF(pack.getKey());
+                        out.writeInt(pack.getValue().length);
+                        for (int archive : pack.getValue()) {
+                            out.writeInt(archive);
+                        }
+                    }
+                }
+                try {
+                    Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        } catch (IOException e) {
+            LOG.warn("Cannot write the classpath index {}", indexFile, e);
+        }
+    }
+
+    private abstract static class ClasspathEntry {
+
+        protected final Path path;
+
+        ClasspathEntry(Path path) {
+            this.path = path;
+        }
+
+        abstract @Nullable URL findResource(String resourcePath);
+
+        void close() throws IOException {
+            // nothing by default
+        }
+    }
+
+    private static final class DirectoryEntry extends ClasspathEntry {
+
+        DirectoryEntry(Path path) {
+            super(path);
+        }
+
+        @Override
+        @Nullable URL findResource(String resourcePath) {
+            Path file = path.resolve(resourcePath);
+            if (!Files.isRegularFile(file)) {
+                return null;
+            }
+            try {
+                return file.toUri().toURL();
+            } catch (MalformedURLException e) {
+                return null;
+            }
+        }
+    }
+
+    private static final class ArchiveEntry extends ClasspathEntry {
+
+        /** Stamp of the jar when the classpath was created, null if it cannot be stamped reliably. */
+        private final @Nullable FileStamp stamp;
+        // guarded by this
+        private ZipFile zipFile;
+        private boolean closed;
+        /** Whether a class file was found in the jar itself. */
+        private boolean classFound;
+
+        /** Where the stub pack of this jar is stored, null if the stub cache is not used. */
+        private @Nullable Path packFile;
+        private @Nullable StubPack pack;
+
+        ArchiveEntry(Path path) {
+            super(path);
+            this.stamp = stamp(path);
+        }
+
+        void useStubCache(Path stubCacheDir) {
+            if (stamp == null) {
+                // the jar may still change, its pack could not be told apart
+                return;
+            }
+            try {
+                String key = Integer.toHexString(absolutePath().hashCode()) + "-" + Integer.toHexString(stamp.hashCode());
+                packFile = stubCacheDir.resolve(key + ".stubs");
+                // the header is checked, as the hashes of the key may collide
+                pack = StubPack.open(packFile, absolutePath(), stamp);
+            } catch (IOException e) {
+                LOG.warn("Cannot read the stub pack of {}", path, e);
+            }
+        }
+
+        private String absolutePath() {
+            return path.toAbsolutePath().toString();
+        }
+
+        /**
+         * Whether the jar has a manifest {@code Class-Path}, or is a
+         * multi-release jar. The index doesn't support those.
+         */
+        boolean needsClassLoader() throws IOException {
+            ZipFile zip = open();
+            ZipEntry manifestEntry = zip.getEntry(JarFile.MANIFEST_NAME);
+            if (manifestEntry == null) {
+                return false;
+            }
+            Attributes attributes;
+            try (InputStream in = zip.getInputStream(manifestEntry)) {
+                attributes = new Manifest(in).getMainAttributes();
+            }
+            return StringUtils.isNotBlank(attributes.getValue(Attributes.Name.CLASS_PATH))
+                || Boolean.parseBoolean(attributes.getValue("Multi-Release"));
+        }
+
+        /** Opens the archive the first time it is used. */
+        synchronized ZipFile open() throws IOException {
+            if (closed) {
+                throw new IOException("Classpath is closed");
+            }
+            if (zipFile == null) {
+                zipFile = new ZipFile(path.toFile());
+            }
+            return zipFile;
+        }
+
+        @Override
+        @Nullable URL findResource(String resourcePath) {
+            try {
+                if (pack != null && pack.contains(resourcePath)) {
+                    StubPack stubs = pack;
+                    return newUrl(resourcePath, () -> stubs.getInputStream(resourcePath));
+                }
+                ZipEntry entry = open().getEntry(resourcePath);
+                if (entry == null) {
+                    return null;
+                }
+                if (resourcePath.endsWith(".class")) {
+                    markClassFound();
+                }
+                return newUrl(resourcePath, () -> open().getInputStream(entry));
+            } catch (IOException e) {
+                LOG.debug("Cannot read classpath entry {}", path, e);
+                return null;
+            }
+        }
+
+        private synchronized void markClassFound() {
+            classFound = true;
+        }
+
+        private URL newUrl(String resourcePath, StreamOpener opener) throws MalformedURLException {
+            return IndexedClasspath.newUrl("jar", path.toUri() + "!/" + resourcePath, opener);
+        }
+
+        @Override
+        synchronized void close() throws IOException {
+            closed = true;
+            if (zipFile == null) {
+                return;
+            }
+            try (ZipFile zip = zipFile) {
+                if (pack == null && packFile != null && classFound && PENDING_PACKS.add(packFile)) {
+                    // a class was read from this jar, write its pack for the next runs
+                    writePack(zip, packFile);
+                }
+            }
+        }
+
+        private void writePack(ZipFile zip, Path file) {
+            try {
+                if (stamp == null || Files.isRegularFile(file) || !stamp.equals(stamp(path))) {
+                    // written by another analysis, or the jar changed since it was read
+                    return;
+                }
+                StubPack.write(zip, file, absolutePath(), stamp);
+            } catch (IOException e) {
+                LOG.warn("Cannot write the stub pack of {}", path, e);
+            } finally {
+                PENDING_PACKS.remove(file);
+            }
+        }
+    }
+
+    /**
+     * A jar that has a manifest {@code Class-Path} or is a multi-release
+     * jar. It is read with a {@link URLClassLoader}, like the auxclasspath
+     * without the index, so that the jars of the {@code Class-Path} and
+     * the versioned class files are found.
+     */
+    private static final class ClassLoaderEntry extends ClasspathEntry {
+
+        private final URLClassLoader loader;
+
+        ClassLoaderEntry(Path path) throws MalformedURLException {
+            super(path);
+            // no parent, the parent classpath is looked up after all entries
+            this.loader = new URLClassLoader(new URL[] {path.toUri().toURL()}, null);
+        }
+
+        @Override
+        @Nullable URL findResource(String resourcePath) {
+            return loader.findResource(resourcePath);
+        }
+
+        @Override
+        void close() throws IOException {
+            loader.close();
+        }
+    }
+
+    /**
+     * The parent classpath, whose classes from the Java runtime image
+     * are read from a stub pack if it has them. The runtime classes that
+     * are not in the pack are added to it when the classpath is closed.
+     * Other resources of the parent are not cached, they may be on the
+     * classpath of PMD itself, which can change without the key of the
+     * pack changing.
+     */
+    private static final class RuntimeImageStubs implements Classpath {
+
+        private final Classpath parent;
+        /** The {@code java.home} and version of the runtime, stored in the header of the pack. */
+        private final String runtimePath;
+        private final FileStamp stamp;
+        /** Prefix of the URLs of the resources of the runtime image in the parent. */
+        private final String urlPrefix;
+        private final Path packFile;
+        private final @Nullable StubPack pack;
+        /** Classes of the runtime image that were read from the parent. */
+        private final Set<String> classesNotInPack = ConcurrentHashMap.newKeySet();
+
+        private RuntimeImageStubs(Classpath parent, String runtimePath, FileStamp stamp, String urlPrefix,
+                                  Path packFile, @Nullable StubPack pack) {
+            this.parent = parent;
+            this.runtimePath = runtimePath;
+            this.stamp = stamp;
+            this.urlPrefix = urlPrefix;
+            this.packFile = packFile;
+            this.pack = pack;
+        }
+
+        /**
+         * Returns the parent classpath backed by the stub pack of the
+         * running JVM, or null if its runtime image cannot be stamped.
+         */
+        static @Nullable RuntimeImageStubs create(Classpath parent, Path stubCacheDir) {
+            Path javaHome = Paths.get(System.getProperty("java.home")).toAbsolutePath();
+            Path image = javaHome.resolve("lib/modules");
+            String urlPrefix = "jrt:/";
+            if (!Files.isRegularFile(image)) {
+                // java 8
+                image = javaHome.resolve("lib/rt.jar");
+                try {
+                    urlPrefix = "jar:" + image.toUri().toURL() + "!/";
+                } catch (MalformedURLException e) {
+                    return null;
+                }
+            }
+            FileStamp stamp = stamp(image);
+            if (stamp == null) {
+                return null;
+            }
+            String runtimePath = javaHome + "!" + System.getProperty("java.version");
+            String key = Integer.toHexString(runtimePath.hashCode()) + "-" + Integer.toHexString(stamp.hashCode());
+            Path packFile = stubCacheDir.resolve("jdk-" + key + ".stubs");
+            StubPack pack = null;
+            try {
+                // the header is checked, as the hashes of the key may collide
+                pack = StubPack.open(packFile, runtimePath, stamp);
+            } catch (IOException e) {
+                LOG.warn("Cannot read the stub pack of the Java runtime {}", javaHome, e);
+            }
+            return new RuntimeImageStubs(parent, runtimePath, stamp, urlPrefix, packFile, pack);
+        }
+
+        @Override
+        public @Nullable URL findResource(String resourcePath) {
+            StubPack stubs = pack;
+            if (stubs != null && stubs.contains(resourcePath)) {
+                try {
+                    return newUrl("jrt", "/" + resourcePath, () -> stubs.getInputStream(resourcePath));
+                } catch (MalformedURLException e) {
+                    LOG.debug("Cannot read {} from the stub pack of the Java runtime", resourcePath, e);
+                }
+            }
+            URL url = parent.findResource(resourcePath);
+            if (url != null && resourcePath.endsWith(".class") && url.toString().startsWith(urlPrefix)) {
+                classesNotInPack.add(resourcePath);
+            }
+            return url;
+        }
+
+        /**
+         * Writes the pack again with the runtime classes that were read
+         * from the parent. If another analysis rewrote the pack since it
+         * was opened, the classes it added are lost, and are added again
+         * by the next analyses that read them.
+         */
+        void close() {
+            if (classesNotInPack.isEmpty() || !PENDING_PACKS.add(packFile)) {
+                return;
+            }
+            try {
+                Map<String, byte[]> stubs = new HashMap<>();
+                if (pack != null) {
+                    for (String resourcePath : pack.getResourcePaths()) {
+                        stubs.put(resourcePath, pack.getStub(resourcePath));
+                    }
+                }
+                for (String resourcePath : classesNotInPack) {
+                    URL url = parent.findResource(resourcePath);
+                    if (url == null) {
+                        continue;
+                    }
+                    try (InputStream in = url.openStream()) {
+                        stubs.put(resourcePath, StubPack.strip(IOUtil.toByteArray(in)));
+                    } catch (RuntimeException ignored) {
+                        // ASM couldn't read it, it will be read (and fail) from the runtime image
+                    }
+                }
+                StubPack.write(stubs, packFile, runtimePath, stamp);
+            } catch (IOException e) {
+                // on Windows, a pack that is still mapped cannot be replaced
+                LOG.debug("Cannot write the stub pack of the Java runtime", e);
+            } finally {
+                PENDING_PACKS.remove(packFile);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface StreamOpener {
+
+        InputStream open() throws IOException;
+    }
+
+    private static final class StreamHandler extends URLStreamHandler {
+
+        private final StreamOpener opener;
+
+        StreamHandler(StreamOpener opener) {
+            this.opener = opener;
+        }
+
+        @Override
+        protected URLConnection openConnection(URL url) {
+            return new URLConnection(url) {
+                @Override
+                public void connect() {
+                    connected = true;
+                }
+
+                @Override
+                public InputStream getInputStream() throws IOException {
+                    return opener.open();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.java.symbols.internal.asm;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+
+import net.sourceforge.pmd.cache.internal.FileStamp;
+import net.sourceforge.pmd.internal.util.IOUtil;
+
+/**
+ * A memory-mapped file that holds the class files of a jar, stripped
+ * of everything {@link ClassStub} doesn't read: method bodies, debug
+ * information and stack map frames. What remains are the names, access
+ * flags, supertypes, signatures and annotations of the classes and their
+ * members, in class file format. They are parsed by the same
+ * {@link ClassStubBuilder} as the original class files, but are much
+ * smaller, and reading them requires neither opening the jar nor
+ * inflating its entries.
+ *
+ * <p>A pack can also hold some classes of the Java runtime image, in which
+ * case the path of the jar is replaced by the {@code java.home} and version
+ * of the runtime, and the stamp is the one of the image file.
+ *
+ * <p>The file starts with a header (magic number, format version, path and
+ * {@link FileStamp} of the jar, length of the table of contents), followed
+ * by the table of contents, which lists the name, offset and length of each
+ * class file, and the class files themselves. The name of the file is only
+ * derived from hashes of the path and stamp, so they are checked against
+ * the header when the file is opened.
+ */
+final class StubPack {
+
+    private static final int MAGIC = 0x504d4453; // "PMDS"
+    private static final int FORMAT_VERSION = 2;
+
+    private final ByteBuffer buffer;
+    private final Map<String, Long> toc;
+
+    private StubPack(ByteBuffer buffer, Map<String, Long> toc) {
+        this.buffer = buffer;
+        this.toc = toc;
+    }
+
+    /**
+     * Maps the given pack file. Returns null if it doesn't exist, is not
+     * a valid pack file, or was written for another jar.
+     *
+     * @param file    The pack file
+     * @param jarPath The absolute path of the jar
+     * @param stamp   The current stamp of the jar
+     */
+    static @Nullable StubPack open(Path file, String jarPath, FileStamp stamp) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        ByteBuffer buffer;
+        int headerLength;
+        int tocLength;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                return null;
+            }
+            // not buffered, so that the position of the channel is the end of the header
+            DataInputStream header = new DataInputStream(Channels.newInputStream(channel));
+            if (header.readInt() != MAGIC || header.readInt() != FORMAT_VERSION
+                || !jarPath.equals(header.readUTF()) || !stamp.equals(FileStamp.read(header))) {
+                return null;
+            }
+            tocLength = header.readInt();
+            headerLength = (int) channel.position();
+            if (tocLength < 0 || tocLength > channel.size() - headerLength) {
+                return null;
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (EOFException e) {
+            // truncated
+            return null;
+        }
+        byte[] tocBytes = new byte[tocLength];
+        ByteBuffer tocBuffer = buffer.duplicate();
+        tocBuffer.position(headerLength);
+        tocBuffer.get(tocBytes);
+
+        int dataStart = headerLength + tocLength;
+        Map<String, Long> toc = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(tocBytes))) {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                int offset = dataStart + in.readInt();
+                int length = in.readInt();
+                if (length < 0 || (long) offset + length > buffer.capacity()) {
+                    return null;
+                }
+                toc.put(name, (long) offset << 32 | length);
+            }
+        }
+        return new StubPack(buffer, toc);
+    }
+
+    boolean contains(String resourcePath) {
+        return toc.containsKey(resourcePath);
+    }
+
+    /** Returns the paths of the class files of this pack. */
+    Set<String> getResourcePaths() {
+        return Collections.unmodifiableSet(toc.keySet());
+    }
+
+    /**
+     * Returns a stream to read the stripped class file at the given path,
+     * or null if it's not in this pack.
+     */
+    @Nullable InputStream getInputStream(String resourcePath) {
+        byte[] stub = getStub(resourcePath);
+        return stub == null ? null : new ByteArrayInputStream(stub);
+    }
+
+    /**
+     * Returns the stripped class file at the given path, or null if
+     * it's not in this pack.
+     */
+    byte @Nullable [] getStub(String resourcePath) {
+        Long position = toc.get(resourcePath);
+        if (position == null) {
+            return null;
+        }
+        int offset = (int) (position >>> 32);
+        int length = (int) (long) position;
+        byte[] bytes = new byte[length];
+        ByteBuffer data = buffer.duplicate();
+        data.position(offset);
+        data.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Strips the class files of the given jar and writes them into
+     * the given pack file. The file is written atomically, so that
+     * several analyses can share the directory of pack files. Class files
+     * that cannot be read are left out, they are then read from the jar.
+     *
+     * @param zip     The jar
+     * @param file    The pack file
+     * @param jarPath The absolute path of the jar, checked by {@link #open(Path, String, FileStamp)}
+     * @param stamp   The stamp of the jar, checked by {@link #open(Path, String, FileStamp)}
+     */
+    static void write(ZipFile zip, Path file, String jarPath, FileStamp stamp) throws IOException {
+        List<String> names = new ArrayList<>();
+        List<byte[]> stubs = new ArrayList<>();
+        Enumeration<? extends ZipEntry> entries = zip.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            if (entry.isDirectory() || !entry.getName().endsWith(".class") || entry.getName().startsWith("META-INF/")) {
+                continue;
+            }
+            byte[] classFile;
+            try (InputStream in = zip.getInputStream(entry)) {
+                classFile = IOUtil.toByteArray(in);
+            }
+            try {
+                stubs.add(strip(classFile));
+                names.add(entry.getName());
+            } catch (RuntimeException ignored) {
+                // ASM couldn't read it, it will be read (and fail) from the jar
+            }
+        }
+        writeFile(names, stubs, file, jarPath, stamp, false);
+    }
+
+    /**
+     * Writes the given class files, which are already stripped, into the
+     * given pack file. The file is replaced atomically if it exists. This
+     * is used for the classes of the runtime image, whose pack grows as
+     * analyses read more of them.
+     *
+     * @param stubs       The stripped class files, by path
+     * @param file        The pack file
+     * @param runtimePath The {@code java.home} and version of the runtime, see {@link #open(Path, String, FileStamp)}
+     * @param stamp       The stamp of the runtime image, checked by {@link #open(Path, String, FileStamp)}
+     */
+    static void write(Map<String, byte[]> stubs, Path file, String runtimePath, FileStamp stamp) throws IOException {
+        writeFile(new ArrayList<>(stubs.keySet()), new ArrayList<>(stubs.values()), file, runtimePath, stamp, true);
+    }
+
+    private static void writeFile(List<String> names, List<byte[]> stubs, Path file, String jarPath, FileStamp stamp,
+                                  boolean replace) throws IOException {
+        ByteArrayOutputStream tocBytes = new ByteArrayOutputStream();
+        try (DataOutputStream toc = new DataOutputStream(tocBytes)) {
+            toc.writeInt(names.size());
+            int offset = 0;
+            for (int i = 0; i < names.size(); i++) {
+                toc.writeUTF(names.get(i));
+                toc.writeInt(offset);
+                toc.writeInt(stubs.get(i).length);
+                offset += stubs.get(i).length;
+            }
+        }
+
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path tmp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(jarPath);
+                FileStamp.write(out, stamp);
+                out.writeInt(tocBytes.size());
+                tocBytes.writeTo(out);
+                for (byte[] stub : stubs) {
+                    out.write(stub);
+                }
+            }
+            try {
+                if (replace) {
+                    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } else {
+                    Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+                }
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            } catch (FileAlreadyExistsException ignored) {
+                // another analysis wrote it, both have the same content
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Removes the parts of a class file that are skipped when
+     * it's parsed into a {@link ClassStub}.
+     */
+    static byte[] strip(byte[] classFile) {
+        ClassWriter writer = new ClassWriter(0);
+        new ClassReader(classFile).accept(writer, ClassStub.PARSING_OPTIONS);
+        return writer.toByteArray();
+    }
+}
@@ -46,6 +46,10 @@ class ClassTypeImpl implements JClassType {
     // type arguments. This was confirmed through profiling
     private int hash = 0;
 
+    // Whether the results of subtyping checks on this type may be cached,
+    // computed once as it walks the type arguments. 0 if not computed yet
+    private byte cacheable = 0;
+
     /**
      * @param symbol   Erased type
      * @param typeArgs Type arguments of this parameterization. If empty
@@ -399,6 +403,16 @@ class ClassTypeImpl implements JClassType {
         return TypeOps.isSameType(this, that);
     }
 
+    /**
+     * Returns true if this type is {@linkplain SubtypingCache#isCacheable(JTypeMirror) cacheable}.
+     */
+    final boolean isCacheable() {
+        if (cacheable == 0) { // computing it twice is harmless
+            cacheable = SubtypingCache.computeCacheable(this) ? (byte) 1 : (byte) -1;
+        }
+        return cacheable > 0;
+    }
+
     @Override
     public int hashCode() {
         if (hash == 0) { // hash collision is harmless
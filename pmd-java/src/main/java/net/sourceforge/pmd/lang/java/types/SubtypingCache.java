@@ -0,0 +1,289 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.java.types;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import net.sourceforge.pmd.cache.internal.FileDependencyRecorder;
+import net.sourceforge.pmd.cache.internal.FileDependencyRecorder.Recording;
+import net.sourceforge.pmd.lang.java.symbols.JClassSymbol;
+import net.sourceforge.pmd.lang.java.types.TypeOps.Convertibility;
+
+/**
+ * Caches the results of subtyping checks and the supertype sets of
+ * types, for a whole {@link TypeSystem}. The caches are shared by all
+ * the files and threads of an analysis.
+ *
+ * <p>Only types that are built from classpath symbols are cached,
+ * for instance {@code List<String>} is cached but {@code List<T>} is
+ * not. Types that mention type variables, inference variables,
+ * symbols declared in the analysed files, unresolved symbols, or type
+ * annotations are always recomputed, because the result may depend on
+ * the state of an inference or of the file, and because caching them
+ * would keep the trees of the analysed files alive.
+ *
+ * <p>When the analysis cache records the classpath dependencies of
+ * the files, each entry remembers the dependencies recorded while it
+ * was computed, and records them again for the files that hit it.
+ * Otherwise a file would not depend on the intermediate supertypes
+ * visited by the computation, and would not be invalidated when they
+ * change. Callers compute the entries between {@link #startComputing()}
+ * and {@link #stopComputing(Recording)}.
+ *
+ * <p>The caches are bounded. When one is full, an arbitrary quarter of
+ * its entries is evicted.
+ */
+final class SubtypingCache {
+
+    static final int MAX_SUBTYPE_CHECKS = 20_000;
+    static final int MAX_SUPERTYPE_SETS = 5_000;
+
+    private final BoundedCache<SubtypeCheck, Entry<Convertibility>> subtypeChecks =
+        new BoundedCache<>(MAX_SUBTYPE_CHECKS);
+    private final BoundedCache<JTypeMirror, Entry<Set<JTypeMirror>>> superTypeSets =
+        new BoundedCache<>(MAX_SUPERTYPE_SETS);
+
+    /**
+     * Returns true if the results of operations on the given type
+     * may be cached.
+     */
+    static boolean isCacheable(JTypeMirror t) {
+        if (t instanceof ClassTypeImpl) {
+            // remembered by the type, so that a cache hit doesn't walk the type arguments
+            return ((ClassTypeImpl) t).isCacheable();
+        }
+        return t.acceptVisitor(CacheableVisitor.INSTANCE, null);
+    }
+
+    /**
+     * Computes whether the given class type is cacheable. Its enclosing
+     * type and type arguments are checked with {@link #isCacheable(JTypeMirror)},
+     * so only the first check of a class type walks the whole type.
+     */
+    static boolean computeCacheable(JClassType t) {
+        JClassSymbol symbol = t.getSymbol();
+        if (!t.getTypeAnnotations().isEmpty() || symbol.isUnresolved() || symbol.tryGetNode() != null) {
+            return false;
+        }
+        JClassType enclosing = t.getEnclosingType();
+        if (enclosing != null && !isCacheable(enclosing)) {
+            return false;
+        }
+        for (JTypeMirror arg : t.getTypeArgs()) {
+            if (!isCacheable(arg)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the cached result of {@code isConvertible(t, s, capture)},
+     * or null if it is not cached. Both types must be {@linkplain #isCacheable(JTypeMirror) cacheable}.
+     */
+    @Nullable Convertibility getSubtypeCheck(JTypeMirror t, JTypeMirror s, boolean capture) {
+        return replay(subtypeChecks.get(new SubtypeCheck(t, s, capture)));
+    }
+
+    void putSubtypeCheck(JTypeMirror t, JTypeMirror s, boolean capture, Convertibility result,
+                         @Nullable Set<String> dependencies) {
+        subtypeChecks.put(new SubtypeCheck(t, s, capture), new Entry<>(result, dependencies));
+    }
+
+    /**
+     * Returns the cached supertype set of the type, or null if it is
+     * not cached. The type must be {@linkplain #isCacheable(JTypeMirror) cacheable}.
+     */
+    @Nullable Set<JTypeMirror> getSuperTypeSet(JTypeMirror t) {
+        return replay(superTypeSets.get(t));
+    }
+
+    void putSuperTypeSet(JTypeMirror t, Set<JTypeMirror> superTypes, @Nullable Set<String> dependencies) {
+        superTypeSets.put(t, new Entry<>(superTypes, dependencies));
+    }
+
+    /**
+     * Starts recording the dependencies of an entry that is about to
+     * be computed. Returns the recording of the file, to pass to
+     * {@link #stopComputing(Recording)}, or null if no dependencies
+     * are being recorded.
+     */
+    static @Nullable Recording startComputing() {
+        return FileDependencyRecorder.startNestedRecording();
+    }
+
+    /**
+     * Stops recording the dependencies of an entry and returns them,
+     * to pass to the put method. They are also recorded for the file.
+     * Returns null if the recording was null.
+     */
+    static @Nullable Set<String> stopComputing(@Nullable Recording recording) {
+        return recording == null ? null : FileDependencyRecorder.stopNestedRecording(recording);
+    }
+
+    /**
+     * Returns the value of the entry, after recording its dependencies
+     * for the current file. Returns null if the entry is null, or if it
+     * was computed while no dependencies were recorded and dependencies
+     * are recorded now. In that case it is computed again.
+     */
+    private static <V> @Nullable V replay(@Nullable Entry<V> entry) {
+        if (entry == null) {
+            return null;
+        }
+        Recording recording = FileDependencyRecorder.currentRecording();
+        if (recording != null) {
+            if (entry.dependencies == null) {
+                return null;
+            }
+            for (String dependency : entry.dependencies) {
+                recording.record(dependency);
+            }
+        }
+        return entry.value;
+    }
+
+    /**
+     * Returns the hits, misses and evictions of the caches, by name.
+     */
+    Map<String, Long> getCounters() {
+        Map<String, Long> counters = new LinkedHashMap<>();
+        subtypeChecks.addCounters("Type system: subtype checks", counters);
+        superTypeSets.addCounters("Type system: supertype sets", counters);
+        return counters;
+    }
+
+    private static final class SubtypeCheck {
+
+        private final JTypeMirror t;
+        private final JTypeMirror s;
+        private final boolean capture;
+
+        SubtypeCheck(JTypeMirror t, JTypeMirror s, boolean capture) {
+            this.t = t;
+            this.s = s;
+            this.capture = capture;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof SubtypeCheck)) {
+                return false;
+            }
+            SubtypeCheck that = (SubtypeCheck) o;
+            return capture == that.capture && t.equals(that.t) && s.equals(that.s);
+        }
+
+        @Override
+        public int hashCode() {
+            return (t.hashCode() * 31 + s.hashCode()) * 2 + (capture ? 1 : 0);
+        }
+    }
+
+    private static final class Entry<V> {
+
+        private static final String[] NO_DEPENDENCIES = new String[0];
+
+        private final V value;
+        /** Null if dependencies were not recorded when computing the value. */
+        private final String @Nullable [] dependencies;
+
+        Entry(V value, @Nullable Set<String> dependencies) {
+            this.value = value;
+            if (dependencies == null) {
+                this.dependencies = null;
+            } else if (dependencies.isEmpty()) {
+                this.dependencies = NO_DEPENDENCIES;
+            } else {
+                this.dependencies = dependencies.toArray(NO_DEPENDENCIES);
+            }
+        }
+    }
+
+    static final class BoundedCache<K, V> {
+
+        private final Map<K, V> map = new ConcurrentHashMap<>();
+        private final int maxSize;
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder evictions = new LongAdder();
+
+        BoundedCache(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        @Nullable V get(K key) {
+            V value = map.get(key);
+            if (value == null) {
+                misses.increment();
+            } else {
+                hits.increment();
+            }
+            return value;
+        }
+
+        void put(K key, V value) {
+            if (map.size() >= maxSize) {
+                evict();
+            }
+            map.put(key, value);
+        }
+
+        private void evict() {
+            // threads that evict concurrently may remove more than a quarter,
+            // which is harmless
+            Iterator<K> iterator = map.keySet().iterator();
+            for (int i = 0; i < maxSize / 4 && iterator.hasNext(); i++) {
+                iterator.next();
+                iterator.remove();
+                evictions.increment();
+            }
+        }
+
+        void addCounters(String name, Map<String, Long> counters) {
+            counters.put(name + " (hits)", hits.sum());
+            counters.put(name + " (misses)", misses.sum());
+            counters.put(name + " (evictions)", evictions.sum());
+        }
+    }
+
+    private static final class CacheableVisitor implements JTypeVisitor<Boolean, Void> {
+
+        static final CacheableVisitor INSTANCE = new CacheableVisitor();
+
+        @Override
+        public Boolean visit(JTypeMirror t, Void v) {
+            // type variables, inference variables, intersections, sentinels, the null type
+            return false;
+        }
+
+        @Override
+        public Boolean visitClass(JClassType t, Void v) {
+            return t instanceof ClassTypeImpl ? ((ClassTypeImpl) t).isCacheable() : computeCacheable(t);
+        }
+
+        @Override
+        public Boolean visitWildcard(JWildcardType t, Void v) {
+            return t.getTypeAnnotations().isEmpty() && isCacheable(t.getBound());
+        }
+
+        @Override
+        public Boolean visitArray(JArrayType t, Void v) {
+            return t.getTypeAnnotations().isEmpty() && isCacheable(t.getComponentType());
+        }
+
+        @Override
+        public Boolean visitPrimitive(JPrimitiveType t, Void v) {
+            return t.getTypeAnnotations().isEmpty();
+        }
+    }
+}
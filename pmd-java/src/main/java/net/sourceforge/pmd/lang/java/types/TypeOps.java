@@ -29,6 +29,7 @@ import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
 import net.sourceforge.pmd.annotation.InternalApi;
+import net.sourceforge.pmd.cache.internal.FileDependencyRecorder.Recording;
 import net.sourceforge.pmd.lang.java.symbols.JClassSymbol;
 import net.sourceforge.pmd.lang.java.symbols.JConstructorSymbol;
 import net.sourceforge.pmd.lang.java.symbols.JExecutableSymbol;
@@ -288,14 +289,36 @@ public final class TypeOps {
 
 
     /**
-     * Returns the set of all supertypes of the given type.
+     * Returns the set of all supertypes of the given type. The set is
+     * unmodifiable if it was cached by the type system.
      *
      * @see JTypeMirror#getSuperTypeSet()
      */
     public static Set<JTypeMirror> getSuperTypeSet(@NonNull JTypeMirror t) {
+        SubtypingCache cache = t.getTypeSystem().subtypingCache;
+        boolean cacheable = SubtypingCache.isCacheable(t);
+        if (cacheable) {
+            Set<JTypeMirror> cached = cache.getSuperTypeSet(t);
+            if (cached != null) {
+                return cached;
+            }
+        }
         Set<JTypeMirror> result = new LinkedHashSet<>();
-        t.acceptVisitor(SuperTypesVisitor.INSTANCE, result);
+        if (!cacheable) {
+            t.acceptVisitor(SuperTypesVisitor.INSTANCE, result);
+            assert !result.isEmpty() : "Empty supertype set for " + t;
+            return result;
+        }
+        Recording recording = SubtypingCache.startComputing();
+        Set<String> dependencies;
+        try {
+            t.acceptVisitor(SuperTypesVisitor.INSTANCE, result);
+        } finally {
+            dependencies = SubtypingCache.stopComputing(recording);
+        }
         assert !result.isEmpty() : "Empty supertype set for " + t;
+        result = Collections.unmodifiableSet(result);
+        cache.putSuperTypeSet(t, result, dependencies);
         return result;
     }
 
@@ -458,10 +481,27 @@ public final class TypeOps {
             return Convertibility.subtypesAll(t, asList(s));
         }
 
-        if (capture) {
-            t = capture(t);
+        SubtypingCache cache = t.getTypeSystem().subtypingCache;
+        boolean cacheable = SubtypingCache.isCacheable(t) && SubtypingCache.isCacheable(s);
+        if (cacheable) {
+            Convertibility cached = cache.getSubtypeCheck(t, s, capture);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        if (!cacheable) {
+            return (capture ? capture(t) : t).acceptVisitor(SubtypeVisitor.INSTANCE, s);
         }
-        return t.acceptVisitor(SubtypeVisitor.INSTANCE, s);
+        Recording recording = SubtypingCache.startComputing();
+        Convertibility result;
+        Set<String> dependencies;
+        try {
+            result = (capture ? capture(t) : t).acceptVisitor(SubtypeVisitor.INSTANCE, s);
+        } finally {
+            dependencies = SubtypingCache.stopComputing(recording);
+        }
+        cache.putSubtypeCheck(t, s, capture, result, dependencies);
+        return result;
     }
 
     // does not perform side effects on inference vars
@@ -23,6 +23,7 @@ import org.checkerframework.checker.nullness.qual.Nullable;
 import org.pcollections.HashTreePSet;
 import org.pcollections.PSet;
 
+import net.sourceforge.pmd.annotation.InternalApi;
 import net.sourceforge.pmd.lang.java.ast.JavaNode;
 import net.sourceforge.pmd.lang.java.symbols.JClassSymbol;
 import net.sourceforge.pmd.lang.java.symbols.JExecutableSymbol;
@@ -174,6 +175,8 @@ public final class TypeSystem {
     private final Map<JTypeDeclSymbol, JTypeMirror> sharedTypes;
     // test only
     final SymbolResolver resolver;
+    /** Shared by all the files of the analysis, see {@link TypeOps#isConvertible(JTypeMirror, JTypeMirror, boolean)}. */
+    final SubtypingCache subtypingCache = new SubtypingCache();
 
     /**
      * Builds a new type system. Its public fields will be initialized
@@ -300,6 +303,16 @@ public final class TypeSystem {
         return resolver;
     }
 
+    /**
+     * Returns the hits, misses and evictions of the caches of subtyping
+     * checks and supertype sets of this type system, by name. They are
+     * reported in the profile of the analysis.
+     */
+    @InternalApi
+    public Map<String, Long> getCacheCounters() {
+        return subtypingCache.getCounters();
+    }
+
     // helpers for the constructor, cannot use typeOf, only for trusted types
 
     private JClassType addSpecial(Class<?> klass, Map<JClassSymbol, JTypeMirror> shared) {
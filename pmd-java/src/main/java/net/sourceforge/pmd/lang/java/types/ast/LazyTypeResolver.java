@@ -105,11 +105,11 @@ public final class LazyTypeResolver extends JavaVisitorBase<TypingContext, @NonN
     public LazyTypeResolver(JavaAstProcessor processor,
                             TypeInferenceLogger logger) {
         this.ts = processor.getTypeSystem();
-        this.infer = new Infer(ts, processor.getJdkVersion(), logger);
-        this.polyResolution = new PolyResolution(infer);
+        this.infer = new Infer(ts, processor.getJdkVersion(), logger, processor.newInferenceBudget());
+        this.err = processor.getLogger();
+        this.polyResolution = new PolyResolution(infer, err);
         this.stringType = (JClassType) TypesFromReflection.fromReflect(String.class, ts);
         this.processor = processor;
-        this.err = processor.getLogger();
     }
 
     public ExprContext getConversionContextForExternalUse(ASTExpression e) {
@@ -18,6 +18,7 @@ import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
 import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.ast.SemanticErrorReporter;
 import net.sourceforge.pmd.lang.java.ast.ASTAnyTypeDeclaration;
 import net.sourceforge.pmd.lang.java.ast.ASTArgumentList;
 import net.sourceforge.pmd.lang.java.ast.ASTArrayAccess;
@@ -67,6 +68,7 @@ import net.sourceforge.pmd.lang.java.types.internal.infer.ExprMirror.BranchingMi
 import net.sourceforge.pmd.lang.java.types.internal.infer.ExprMirror.FunctionalExprMirror;
 import net.sourceforge.pmd.lang.java.types.internal.infer.ExprMirror.InvocationMirror;
 import net.sourceforge.pmd.lang.java.types.internal.infer.Infer;
+import net.sourceforge.pmd.lang.java.types.internal.infer.InferenceBudgetExceededException;
 import net.sourceforge.pmd.lang.java.types.internal.infer.MethodCallSite;
 import net.sourceforge.pmd.lang.java.types.internal.infer.PolySite;
 import net.sourceforge.pmd.lang.java.types.internal.infer.ast.JavaExprMirrors;
@@ -79,14 +81,16 @@ final class PolyResolution {
 
     private final Infer infer;
     private final TypeSystem ts;
+    private final SemanticErrorReporter err;
     private final JavaExprMirrors exprMirrors;
     private final ExprContext booleanCtx;
     private final ExprContext stringCtx;
     private final ExprContext intCtx;
 
-    PolyResolution(Infer infer) {
+    PolyResolution(Infer infer, SemanticErrorReporter err) {
         this.infer = infer;
         this.ts = infer.getTypeSystem();
+        this.err = err;
         this.exprMirrors = JavaExprMirrors.forTypeResolution(infer);
 
         this.stringCtx = newStringCtx(ts);
@@ -191,7 +195,12 @@ final class PolyResolution {
     private JTypeMirror inferLambdaOrMref(ASTExpression e, @Nullable JTypeMirror targetType) {
         FunctionalExprMirror mirror = exprMirrors.getTopLevelFunctionalMirror(e);
         PolySite<FunctionalExprMirror> site = infer.newFunctionalSite(mirror, targetType);
-        infer.inferFunctionalExprInUnambiguousContext(site);
+        try {
+            infer.inferFunctionalExprInUnambiguousContext(site);
+        } catch (InferenceBudgetExceededException ex) {
+            // the expression was given a fallback type
+            reportBudgetExceeded(e, ex);
+        }
         JTypeMirror result = InternalApiBridge.getTypeMirrorInternal(e);
         assert result != null : "Should be unknown";
         return result;
@@ -248,12 +257,21 @@ final class PolyResolution {
     private JTypeMirror inferInvocation(InvocationNode ctxNode, TypeNode actualResultTarget, @Nullable JTypeMirror targetType) {
         InvocationMirror mirror = exprMirrors.getTopLevelInvocationMirror(ctxNode);
         MethodCallSite site = infer.newCallSite(mirror, targetType);
-        infer.inferInvocationRecursively(site);
+        try {
+            infer.inferInvocationRecursively(site);
+        } catch (InferenceBudgetExceededException ex) {
+            // the invocation was given a fallback type
+            reportBudgetExceeded(ctxNode, ex);
+        }
         // errors are on the call site if any
 
         return fetchCascaded(actualResultTarget);
     }
 
+    private void reportBudgetExceeded(JavaNode node, InferenceBudgetExceededException ex) {
+        err.warning(node, "{0}, the expression is left unresolved", ex.getMessage());
+    }
+
     /**
      * Fetch the resolved value when it was inferred as part of overload
      * resolution of an enclosing invocation context.
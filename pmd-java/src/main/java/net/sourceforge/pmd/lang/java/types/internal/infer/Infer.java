@@ -60,9 +60,10 @@ public final class Infer {
     final MethodCtDecl FAILED_INVOCATION; // SUPPRESS CHECKSTYLE same
 
     private final SupertypeCheckCache supertypeCheckCache = new SupertypeCheckCache();
+    private final InferenceBudget budget;
 
     /**
-     * Creates a new instance.
+     * Creates a new instance, whose inference is not bounded.
      *
      * @param ts         Type system
      * @param jdkVersion JDK version to use. Type inference was changed
@@ -70,9 +71,23 @@ public final class Infer {
      * @param logger     Strategy to log failures
      */
     public Infer(TypeSystem ts, int jdkVersion, TypeInferenceLogger logger) {
+        this(ts, jdkVersion, logger, InferenceBudget.unlimited());
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param ts         Type system
+     * @param jdkVersion JDK version to use. Type inference was changed
+     *                   in Java 8 to propagate the context type.
+     * @param logger     Strategy to log failures
+     * @param budget     Budget of each top-level call site
+     */
+    public Infer(TypeSystem ts, int jdkVersion, TypeInferenceLogger logger, InferenceBudget budget) {
         this.ts = ts;
         this.isPreJava8 = jdkVersion < 8;
         this.LOG = logger;
+        this.budget = budget;
 
         this.NO_CTDECL = MethodCtDecl.unresolved(ts);
         this.FAILED_INVOCATION = MethodCtDecl.unresolved(ts);
@@ -120,16 +135,20 @@ public final class Infer {
     }
 
     InferenceContext newContextFor(List<JTypeVar> tvars) {
-        return new InferenceContext(ts, supertypeCheckCache, tvars, LOG);
+        return new InferenceContext(ts, supertypeCheckCache, budget, tvars, LOG);
     }
 
     /**
      * Infer lambdas and method references that have a target type: cast contexts,
      * and some assignment contexts (not inferred, not return from lambda).
+     *
+     * @throws InferenceBudgetExceededException If the budget is exceeded,
+     *                                          after the expression was given a fallback type
      */
     public void inferFunctionalExprInUnambiguousContext(PolySite<FunctionalExprMirror> site) {
         FunctionalExprMirror expr = site.getExpr();
         JTypeMirror expected = site.getExpectedType();
+        budget.start();
         try {
             if (expected == null) {
                 throw ResolutionFailedException.missingTargetTypeForFunctionalExpr(LOG, expr);
@@ -138,16 +157,25 @@ public final class Infer {
         } catch (ResolutionFailedException rfe) {
             rfe.getFailure().addContext(null, site, null);
             LOG.logResolutionFail(rfe.getFailure());
-            // here we set expected if not null, the lambda will have the target type
-            expr.setInferredType(expected == null ? ts.UNKNOWN : expected);
-            if (expr instanceof MethodRefMirror) {
-                MethodRefMirror mref = (MethodRefMirror) expr;
-                mref.setFunctionalMethod(ts.UNRESOLVED_METHOD);
-                mref.setCompileTimeDecl(ts.UNRESOLVED_METHOD);
-            } else {
-                LambdaExprMirror lambda = (LambdaExprMirror) expr;
-                lambda.setFunctionalMethod(ts.UNRESOLVED_METHOD);
-            }
+            setFunctionalFallback(expr, expected);
+        } catch (InferenceBudgetExceededException e) {
+            setFunctionalFallback(expr, expected);
+            throw e;
+        } finally {
+            budget.end();
+        }
+    }
+
+    private void setFunctionalFallback(FunctionalExprMirror expr, @Nullable JTypeMirror expected) {
+        // here we set expected if not null, the lambda will have the target type
+        expr.setInferredType(expected == null ? ts.UNKNOWN : expected);
+        if (expr instanceof MethodRefMirror) {
+            MethodRefMirror mref = (MethodRefMirror) expr;
+            mref.setFunctionalMethod(ts.UNRESOLVED_METHOD);
+            mref.setCompileTimeDecl(ts.UNRESOLVED_METHOD);
+        } else {
+            LambdaExprMirror lambda = (LambdaExprMirror) expr;
+            lambda.setFunctionalMethod(ts.UNRESOLVED_METHOD);
         }
     }
 
@@ -166,10 +194,23 @@ public final class Infer {
      * <p>The given call site should mention information like the expected
      * return type, to help inference. This should be non-null if we're
      * in an invocation or assignment context, otherwise can be left blank.
+     *
+     * @throws InferenceBudgetExceededException If the budget is exceeded,
+     *                                          after the invocation was given a fallback type
      */
     public void inferInvocationRecursively(MethodCallSite site) {
-        MethodCtDecl ctdecl = goToInvocationWithFallback(site);
         InvocationMirror expr = site.getExpr();
+        MethodCtDecl ctdecl;
+        budget.start();
+        try {
+            ctdecl = goToInvocationWithFallback(site);
+        } catch (InferenceBudgetExceededException e) {
+            expr.setCtDecl(NO_CTDECL);
+            expr.setInferredType(fallbackType(expr));
+            throw e;
+        } finally {
+            budget.end();
+        }
         expr.setCtDecl(ctdecl);
         if (ctdecl == NO_CTDECL) {
             expr.setInferredType(fallbackType(expr));
@@ -343,6 +384,7 @@ public final class Infer {
 
 
     private @NonNull MethodCtDecl logInference(MethodCallSite site, MethodResolutionPhase phase, JMethodSig m) {
+        budget.step();
         LOG.startInference(m, site, phase);
         @Nullable JMethodSig candidate = instantiateMethodOrCtor(site, phase, m);
         LOG.endInference(candidate);
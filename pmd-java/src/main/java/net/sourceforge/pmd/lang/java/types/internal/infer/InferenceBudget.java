@@ -0,0 +1,136 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.java.types.internal.infer;
+
+import java.util.concurrent.TimeUnit;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import net.sourceforge.pmd.internal.FileDeadline;
+
+/**
+ * Bounds the work done by type inference for a single top-level call
+ * site, so that pathological expressions, like deeply nested generic
+ * lambdas, don't stall the analysis. The work is counted in steps,
+ * which are the resolution of a candidate method and the incorporation
+ * of a bound. When the budget is exceeded, an {@link InferenceBudgetExceededException}
+ * is thrown, and the call site is given an unresolved type. The same happens
+ * when the {@link FileDeadline} of the analysed file is passed, so that the
+ * file timeout also interrupts an inference. The analysis of the file is
+ * then aborted by the next check of the deadline.
+ *
+ * <p>Call sites whose inference is started while inferring another one,
+ * e.g. to get the type of a variable, share the budget of the outermost
+ * one. A budget is used by a single thread.
+ */
+public final class InferenceBudget {
+
+    private static final InferenceBudget UNLIMITED = new InferenceBudget(0, 0, null);
+    /** Number of steps between two reads of the clock. */
+    private static final int CLOCK_INTERVAL = 256;
+
+    private final long maxSteps;
+    private final long maxNanos;
+    private final @Nullable FileDeadline fileDeadline;
+
+    private int depth;
+    private long steps;
+    private long deadline;
+
+    private InferenceBudget(long maxSteps, long maxMillis, @Nullable FileDeadline fileDeadline) {
+        this.maxSteps = maxSteps;
+        this.maxNanos = TimeUnit.MILLISECONDS.toNanos(maxMillis);
+        this.fileDeadline = fileDeadline;
+    }
+
+    /**
+     * Returns a budget that is never exceeded.
+     */
+    public static InferenceBudget unlimited() {
+        return UNLIMITED;
+    }
+
+    /**
+     * Returns a new budget. Zero means no limit.
+     *
+     * @param maxSteps  Maximum number of steps per call site
+     * @param maxMillis Maximum time per call site, in milliseconds
+     */
+    public static InferenceBudget of(long maxSteps, long maxMillis) {
+        return of(maxSteps, maxMillis, null);
+    }
+
+    /**
+     * Returns a new budget, that is also exceeded when the given deadline
+     * is passed. Zero means no limit.
+     *
+     * @param maxSteps     Maximum number of steps per call site
+     * @param maxMillis    Maximum time per call site, in milliseconds
+     * @param fileDeadline Deadline of the analysed file, may be null
+     */
+    public static InferenceBudget of(long maxSteps, long maxMillis, @Nullable FileDeadline fileDeadline) {
+        if (maxSteps < 0 || maxMillis < 0) {
+            throw new IllegalArgumentException("Negative budget: " + maxSteps + " steps, " + maxMillis + " ms");
+        }
+        if (maxSteps == 0 && maxMillis == 0 && fileDeadline == null) {
+            return UNLIMITED;
+        }
+        return new InferenceBudget(maxSteps, maxMillis, fileDeadline);
+    }
+
+    boolean isUnlimited() {
+        return maxSteps == 0 && maxNanos == 0 && fileDeadline == null;
+    }
+
+    /** Starts the inference of a call site. Must be paired with {@link #end()}. */
+    void start() {
+        if (isUnlimited()) {
+            return;
+        }
+        if (depth == 0) {
+            steps = 0;
+            deadline = System.nanoTime() + maxNanos;
+        }
+        depth++;
+    }
+
+    void end() {
+        if (isUnlimited()) {
+            return;
+        }
+        depth--;
+    }
+
+    /**
+     * Counts a step of the current inference.
+     *
+     * @throws InferenceBudgetExceededException If the budget is exceeded
+     */
+    void step() {
+        if (depth == 0) {
+            // unlimited, or not in a top-level inference
+            return;
+        }
+        steps++;
+        if (maxSteps > 0 && steps > maxSteps) {
+            throw new InferenceBudgetExceededException("Type inference exceeded its budget of " + maxSteps + " steps");
+        }
+        // the first step of a call site reads the clock too, so that once the
+        // file deadline is passed, the next call sites stop right away
+        if (steps % CLOCK_INTERVAL == 1) {
+            checkClock();
+        }
+    }
+
+    private void checkClock() {
+        if (maxNanos > 0 && System.nanoTime() - deadline > 0) {
+            throw new InferenceBudgetExceededException("Type inference exceeded its budget of "
+                                                           + TimeUnit.NANOSECONDS.toMillis(maxNanos) + " ms");
+        }
+        if (fileDeadline != null && fileDeadline.isPassed()) {
+            throw new InferenceBudgetExceededException("Type inference was stopped by the file timeout");
+        }
+    }
+}
@@ -0,0 +1,18 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.java.types.internal.infer;
+
+/**
+ * Thrown when the {@link InferenceBudget} of a call site is exceeded.
+ * Unlike a {@link ResolutionFailedException}, this is not a compile-time
+ * error, and it aborts the inference of the whole top-level call site
+ * instead of discarding a single candidate.
+ */
+public final class InferenceBudgetExceededException extends RuntimeException {
+
+    InferenceBudgetExceededException(String message) {
+        super(message);
+    }
+}
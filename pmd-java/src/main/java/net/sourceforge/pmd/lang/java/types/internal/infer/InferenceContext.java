@@ -57,6 +57,7 @@ final class InferenceContext {
     private final Deque<IncorporationAction> incorporationActions = new ArrayDeque<>();
     final TypeSystem ts;
     private final SupertypeCheckCache supertypeCheckCache;
+    private final InferenceBudget budget;
     final TypeInferenceLogger logger;
 
     private Substitution mapping = Substitution.EMPTY;
@@ -76,14 +77,17 @@ final class InferenceContext {
      * @param supertypeCheckCache Super type check cache, shared by all
      *                            inference runs in the same compilation unit
      *                            (stored in {@link Infer}).
+     * @param budget              Budget of the current inference, shared
+     *                            like the cache
      * @param tvars               Initial tvars which will be turned
      *                            into ivars
      * @param logger              Logger for events related to ivar bounds
      */
     @SuppressWarnings("PMD.AssignmentToNonFinalStatic") // ctxId
-    InferenceContext(TypeSystem ts, SupertypeCheckCache supertypeCheckCache, List<JTypeVar> tvars, TypeInferenceLogger logger) {
+    InferenceContext(TypeSystem ts, SupertypeCheckCache supertypeCheckCache, InferenceBudget budget, List<JTypeVar> tvars, TypeInferenceLogger logger) {
         this.ts = ts;
         this.supertypeCheckCache = supertypeCheckCache;
+        this.budget = budget;
         this.logger = logger;
         this.id = ctxId++;
 
@@ -294,6 +298,9 @@ final class InferenceContext {
                     // for more inference to happen
 
                     // TODO investigate
+                } catch (InferenceBudgetExceededException e) {
+                    // abort the whole inference
+                    throw e;
                 } catch (Exception e) {
                     e.printStackTrace();
                 } finally {
@@ -357,6 +364,7 @@ final class InferenceContext {
      * Runs the incorporation hooks registered for the free vars.
      *
      * @throws ResolutionFailedException If some propagated bounds are incompatible
+     * @throws InferenceBudgetExceededException If the budget is exceeded
      */
     void incorporate() {
         if (incorporationActions.isEmpty()) {
@@ -367,6 +375,7 @@ final class InferenceContext {
         while (hook != null) {
 
             if (hook.doApplyToInstVar || hook.ivar.getInst() == null) {
+                budget.step();
                 hook.apply(this);
             }
 
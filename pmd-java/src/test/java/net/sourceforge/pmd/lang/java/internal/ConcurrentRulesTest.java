@@ -0,0 +1,138 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.java.internal;
+
+import static java.util.Collections.emptyList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import net.sourceforge.pmd.PMDConfiguration;
+import net.sourceforge.pmd.PmdAnalysis;
+import net.sourceforge.pmd.Report;
+import net.sourceforge.pmd.Report.ProcessingError;
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RuleSet;
+import net.sourceforge.pmd.RuleSets;
+import net.sourceforge.pmd.RuleViolation;
+import net.sourceforge.pmd.internal.util.IOUtil;
+import net.sourceforge.pmd.lang.LanguageProcessor;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.lang.java.JavaLanguageModule;
+import net.sourceforge.pmd.lang.java.JavaParsingHelper;
+import net.sourceforge.pmd.lang.java.ast.ASTCompilationUnit;
+import net.sourceforge.pmd.lang.rule.XPathRule;
+import net.sourceforge.pmd.lang.rule.xpath.XPathVersion;
+import net.sourceforge.pmd.reporting.FileAnalysisListener;
+
+class ConcurrentRulesTest {
+
+    @Test
+    void testConcurrentRulesFindSameViolations() throws IOException {
+        String source = readSource();
+
+        List<String> sequential = describeViolations(source, 0);
+        List<String> concurrent = describeViolations(source, 1);
+
+        assertFalse(sequential.isEmpty());
+        assertEquals(sequential, concurrent);
+    }
+
+    @Test
+    void testXPathRulesInSeparateGroupsFindSameViolations() throws Exception {
+        ASTCompilationUnit acu = JavaParsingHelper.DEFAULT.parse(readSource());
+        assertTrue(acu.getAstInfo().getLanguageProcessor().services().prepareForConcurrentRules(acu));
+
+        // the rules of each group query the same tree from their own thread
+        List<Rule> rules = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            rules.add(xpathRule("calls" + i, "//MethodCall[@MethodName = 'hasNext']"));
+            rules.add(xpathRule("variables" + i, "//ClassDeclaration//VariableId[@Name = 'it' or @Static = true()]"));
+        }
+        RuleSets ruleSets = new RuleSets(RuleSet.create("xpath", "", "", emptyList(), emptyList(), rules));
+        try (LanguageProcessor processor = JavaParsingHelper.DEFAULT.newProcessor()) {
+            for (Rule rule : rules) {
+                rule.initialize(processor);
+            }
+        }
+
+        List<String> sequential = new ArrayList<>();
+        ruleSets.apply(acu, violation -> sequential.add(describe(violation)));
+        assertFalse(sequential.isEmpty());
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int round = 0; round < 10; round++) {
+                List<String> concurrent = new ArrayList<>();
+                List<ProcessingError> errors = new ArrayList<>();
+                ruleSets.applyConcurrently(acu, new FileAnalysisListener() {
+                    @Override
+                    public void onRuleViolation(RuleViolation violation) {
+                        concurrent.add(describe(violation));
+                    }
+
+                    @Override
+                    public void onError(ProcessingError error) {
+                        errors.add(error);
+                    }
+                }, null, pool);
+                assertEquals(emptyList(), errors);
+                assertEquals(sequential, concurrent);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static XPathRule xpathRule(String name, String xpath) {
+        XPathRule rule = new XPathRule(XPathVersion.DEFAULT, xpath);
+        rule.setName(name);
+        rule.setMessage(name);
+        rule.setLanguage(JavaLanguageModule.getInstance());
+        return rule;
+    }
+
+    private static String describe(RuleViolation violation) {
+        return violation.getRule().getName() + ':' + violation.getBeginLine() + ':' + violation.getBeginColumn();
+    }
+
+    private String readSource() throws IOException {
+        try (InputStream stream = getClass().getResourceAsStream("/net/sourceforge/pmd/lang/java/types/IteratorUtilCopy.java")) {
+            return IOUtil.readToString(stream, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static List<String> describeViolations(String source, int concurrentRulesThreshold) {
+        PMDConfiguration configuration = new PMDConfiguration();
+        configuration.setThreads(0);
+        configuration.setIgnoreIncrementalAnalysis(true);
+        configuration.setConcurrentRulesThreshold(concurrentRulesThreshold);
+
+        Report report;
+        try (PmdAnalysis pmd = PmdAnalysis.create(configuration)) {
+            pmd.files().addFile(TextFile.forCharSeq(source, FileId.fromPathLikeString("IteratorUtilCopy.java"),
+                                                    JavaLanguageModule.getInstance().getDefaultVersion()));
+            pmd.addRuleSet(pmd.newRuleSetLoader().loadFromResource("rulesets/java/quickstart.xml"));
+            report = pmd.performAnalysisAndCollectReport();
+        }
+
+        assertEquals(0, report.getProcessingErrors().size());
+        return report.getViolations().stream()
+                     .map(v -> v.getRule().getName() + ':' + v.getBeginLine() + ':' + v.getDescription())
+                     .sorted()
+                     .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.java.symbols.internal.asm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+import net.sourceforge.pmd.lang.java.symbols.JClassSymbol;
+import net.sourceforge.pmd.lang.java.symbols.JMethodSymbol;
+import net.sourceforge.pmd.lang.java.types.TypeSystem;
+
+class ClassStubConcurrencyTest {
+
+    private static final int THREADS = 8;
+    private static final String[] CLASSES = {
+        "java.util.ArrayList", "java.util.HashMap", "java.util.Map$Entry", "java.lang.String",
+        "java.util.concurrent.ConcurrentHashMap", "java.util.stream.Collectors",
+    };
+
+    @Test
+    void testConcurrentParsesPublishOneBody() throws Exception {
+        TypeSystem ts = TypeSystem.usingClassLoaderClasspath(getClass().getClassLoader());
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<List<Object>>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    List<Object> seen = new ArrayList<>();
+                    for (String name : CLASSES) {
+                        JClassSymbol symbol = ts.getClassSymbol(name);
+                        seen.add(symbol);
+                        seen.add(symbol.getSuperclass());
+                        seen.add(symbol.getDeclaredMethods());
+                        seen.add(symbol.getModifiers());
+                        seen.add(symbol.getEnclosingClass());
+                    }
+                    return seen;
+                }));
+            }
+            start.countDown();
+
+            List<Object> first = futures.get(0).get();
+            for (Future<List<Object>> future : futures) {
+                List<Object> seen = future.get();
+                assertEquals(first.size(), seen.size());
+                for (int i = 0; i < first.size(); i++) {
+                    if (first.get(i) instanceof Integer) {
+                        assertEquals(first.get(i), seen.get(i));
+                    } else {
+                        assertSame(first.get(i), seen.get(i));
+                    }
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        JClassSymbol entry = ts.getClassSymbol("java.util.Map$Entry");
+        assertSame(ts.getClassSymbol("java.util.Map"), entry.getEnclosingClass());
+        assertEquals("Entry", entry.getSimpleName());
+        assertFalse(entry.isUnresolved());
+        List<JMethodSymbol> methods = ts.getClassSymbol("java.util.ArrayList").getDeclaredMethods();
+        assertFalse(methods.isEmpty());
+    }
+}
@@ -0,0 +1,324 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.java.symbols.internal.asm;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import net.sourceforge.pmd.cache.internal.FileStamp;
+import net.sourceforge.pmd.internal.util.IOUtil;
+import net.sourceforge.pmd.lang.java.symbols.JMethodSymbol;
+import net.sourceforge.pmd.lang.java.types.TypeSystem;
+
+class IndexedClasspathTest {
+
+    private static final String VOID_CLASS = "java/lang/Void.class";
+
+    @TempDir
+    Path tempDir;
+
+    private final Path jar = Paths.get("src/test/resources/net/sourceforge/pmd/lang/java/symbols/custom_java_lang.jar")
+                                  .toAbsolutePath();
+
+    @Test
+    void testFindsClassInJar() throws IOException {
+        try (IndexedClasspath cp = IndexedClasspath.create(Collections.singletonList(jar), null, null);
+             ZipFile zip = new ZipFile(jar.toFile())) {
+
+            URL url = cp.findResource(VOID_CLASS);
+            assertNotNull(url);
+            assertArrayEquals(readEntry(zip, VOID_CLASS), read(url));
+
+            assertNull(cp.findResource("java/lang/Object.class"));
+            assertNull(cp.findResource("org/example/Foo.class"));
+        }
+    }
+
+    @Test
+    void testClasspathOrderIsRespected() throws IOException {
+        Path dir = tempDir.resolve("classes");
+        Files.createDirectories(dir.resolve("java/lang"));
+        Files.write(dir.resolve(VOID_CLASS), new byte[] {1, 2, 3});
+
+        try (IndexedClasspath dirFirst = IndexedClasspath.create(Arrays.asList(dir, jar), null, null);
+             IndexedClasspath jarFirst = IndexedClasspath.create(Arrays.asList(jar, dir), null, null)) {
+            assertArrayEquals(new byte[] {1, 2, 3}, read(dirFirst.findResource(VOID_CLASS)));
+            assertEquals(617, read(jarFirst.findResource(VOID_CLASS)).length);
+        }
+    }
+
+    @Test
+    void testMissesAreCached() throws IOException {
+        List<String> parentLookups = new ArrayList<>();
+        Classpath parent = path -> {
+            parentLookups.add(path);
+            return null;
+        };
+        try (IndexedClasspath cp = IndexedClasspath.create(Collections.singletonList(jar), parent, null)) {
+            assertNull(cp.findResource("org/example/Foo.class"));
+            assertNull(cp.findResource("org/example/Foo.class"));
+            assertEquals(Collections.singletonList("org/example/Foo.class"), parentLookups);
+        }
+    }
+
+    @Test
+    void testIndexIsStoredAndReused() throws IOException {
+        Path indexFile = tempDir.resolve("index/classpath.idx");
+        try (IndexedClasspath cp = IndexedClasspath.create(Collections.singletonList(jar), null, indexFile)) {
+            assertNotNull(cp.findResource(VOID_CLASS));
+        }
+        assertTrue(Files.isRegularFile(indexFile));
+        byte[] index = Files.readAllBytes(indexFile);
+
+        try (IndexedClasspath cp = IndexedClasspath.create(Collections.singletonList(jar), null, indexFile)) {
+            assertNotNull(cp.findResource(VOID_CLASS));
+            assertNull(cp.findResource("java/lang/Object.class"));
+        }
+        assertArrayEquals(index, Files.readAllBytes(indexFile));
+    }
+
+    @Test
+    void testIndexIsRebuiltWhenJarChanges() throws IOException {
+        Path indexFile = tempDir.resolve("classpath.idx");
+        Path copy = tempDir.resolve("lib.jar");
+        Files.copy(jar, copy);
+        Files.setLastModifiedTime(copy, FileTime.fromMillis(1_000_000_000_000L));
+        try (IndexedClasspath cp = IndexedClasspath.create(Collections.singletonList(copy), null, indexFile)) {
+            assertNotNull(cp.findResource(VOID_CLASS));
+        }
+
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(copy))) {
+            zip.putNextEntry(new ZipEntry("org/example/Foo.class"));
+            zip.write(new byte[] {1, 2, 3});
+        }
+        Files.setLastModifiedTime(copy, FileTime.fromMillis(1_000_000_001_000L));
+        try (IndexedClasspath cp = IndexedClasspath.create(Collections.singletonList(copy), null, indexFile)) {
+            assertNotNull(cp.findResource("org/example/Foo.class"));
+            assertNull(cp.findResource(VOID_CLASS));
+        }
+    }
+
+    @Test
+    void testIndexOfOtherClasspathIsNotUsed() throws IOException {
+        Path indexFile = tempDir.resolve("classpath.idx");
+        try (IndexedClasspath ignored = IndexedClasspath.create(Collections.emptyList(), null, indexFile)) {
+            assertTrue(Files.isRegularFile(indexFile));
+        }
+
+        try (IndexedClasspath cp = IndexedClasspath.create(Collections.singletonList(jar), null, indexFile)) {
+            assertNotNull(cp.findResource(VOID_CLASS));
+        }
+    }
+
+    @Test
+    void testManifestClassPathIsFollowed() throws IOException {
+        Path lib = tempDir.resolve("lib/custom.jar");
+        Files.createDirectories(lib.getParent());
+        Files.copy(jar, lib);
+        // a pathing jar, that only has a manifest
+        Path pathingJar = tempDir.resolve("pathing.jar");
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.CLASS_PATH, "lib/custom.jar");
+        try (JarOutputStream ignored = new JarOutputStream(Files.newOutputStream(pathingJar), manifest)) {
+            // only the manifest
+        }
+
+        Path indexFile = tempDir.resolve("classpath.idx");
+        for (int i = 0; i < 2; i++) {
+            // the second time with the stored index
+            try (IndexedClasspath cp = IndexedClasspath.create(Collections.singletonList(pathingJar), null, indexFile)) {
+                assertEquals(617, read(cp.findResource(VOID_CLASS)).length);
+                assertNull(cp.findResource("java/lang/Object.class"));
+            }
+        }
+    }
+
+    @Test
+    void testStubPackIsWrittenAndRead() throws Exception {
+        Path stubCache = tempDir.resolve("stubs");
+        try (IndexedClasspath cp = IndexedClasspath.create(Collections.singletonList(jar), null, null, stubCache)) {
+            assertEquals(617, read(cp.findResource(VOID_CLASS)).length);
+        }
+        List<Path> packs = listFiles(stubCache);
+        assertEquals(1, packs.size());
+
+        byte[] stripped;
+        try (ZipFile zip = new ZipFile(jar.toFile())) {
+            stripped = StubPack.strip(readEntry(zip, VOID_CLASS));
+        }
+        try (IndexedClasspath cp = IndexedClasspath.create(Collections.singletonList(jar), null, null, stubCache)) {
+            assertArrayEquals(stripped, read(cp.findResource(VOID_CLASS)));
+            // resources that are not class files are still found in the jar
+            assertNotNull(cp.findResource("META-INF/MANIFEST.MF"));
+            assertNull(cp.findResource("java/lang/Object.class"));
+        }
+        assertEquals(packs, listFiles(stubCache));
+    }
+
+    @Test
+    void testUnusedJarHasNoStubPack() throws Exception {
+        Path stubCache = tempDir.resolve("stubs");
+        try (IndexedClasspath cp = IndexedClasspath.create(Collections.singletonList(jar), null, null, stubCache)) {
+            assertNull(cp.findResource("org/example/Foo.class"));
+        }
+        assertFalse(Files.exists(stubCache));
+    }
+
+    @Test
+    void testStubPackOfChangedJarIsNotUsed() throws Exception {
+        Path stubCache = tempDir.resolve("stubs");
+        Path copy = tempDir.resolve("lib.jar");
+        Files.copy(jar, copy);
+        Files.setLastModifiedTime(copy, FileTime.fromMillis(1_000_000_000_000L));
+        try (IndexedClasspath cp = IndexedClasspath.create(Collections.singletonList(copy), null, null, stubCache)) {
+            assertNotNull(cp.findResource(VOID_CLASS));
+        }
+        assertEquals(1, listFiles(stubCache).size());
+
+        Files.setLastModifiedTime(copy, FileTime.fromMillis(1_000_000_001_000L));
+        try (IndexedClasspath cp = IndexedClasspath.create(Collections.singletonList(copy), null, null, stubCache)) {
+            // read from the jar, not the pack
+            assertEquals(617, read(cp.findResource(VOID_CLASS)).length);
+        }
+        assertEquals(2, listFiles(stubCache).size());
+    }
+
+    @Test
+    void testStubPackOfOtherJarIsNotRead() throws IOException {
+        Path packFile = tempDir.resolve("lib.stubs");
+        FileStamp stamp = new FileStamp(617, 1_000_000_000_000L, 42);
+        try (ZipFile zip = new ZipFile(jar.toFile())) {
+            StubPack.write(zip, packFile, "/lib/a.jar", stamp);
+        }
+
+        assertNotNull(StubPack.open(packFile, "/lib/a.jar", stamp));
+        // eg another jar whose path and stamp have the same hashes
+        assertNull(StubPack.open(packFile, "/lib/b.jar", stamp));
+        assertNull(StubPack.open(packFile, "/lib/a.jar", new FileStamp(617, 1_000_000_000_000L, 43)));
+    }
+
+    @Test
+    void testStaleTempFilesAreDeleted() throws IOException {
+        Path stubCache = tempDir.resolve("stubs");
+        Files.createDirectories(stubCache);
+        Path stale = Files.createFile(stubCache.resolve("abc.stubs123.tmp"));
+        Files.setLastModifiedTime(stale, FileTime.fromMillis(System.currentTimeMillis() - 2 * 3600_000L));
+        // may be written by another analysis
+        Path recent = Files.createFile(stubCache.resolve("def.stubs456.tmp"));
+
+        try (IndexedClasspath ignored = IndexedClasspath.create(Collections.singletonList(jar), null, null, stubCache)) {
+            assertFalse(Files.exists(stale));
+            assertTrue(Files.exists(recent));
+        }
+    }
+
+    @Test
+    void testTypeSystemReadsStubPack() throws Exception {
+        Path stubCache = tempDir.resolve("stubs");
+        Classpath parent = Classpath.forClassLoader(getClass().getClassLoader());
+        for (int i = 0; i < 2; i++) {
+            try (IndexedClasspath cp = IndexedClasspath.create(Collections.singletonList(jar), parent, null, stubCache)) {
+                TypeSystem ts = TypeSystem.usingClasspath(cp);
+
+                List<JMethodSymbol> methods = ts.BOXED_VOID.getSymbol().getDeclaredMethods();
+                assertEquals(1, methods.size());
+                assertEquals("customMethodOnJavaLangVoid", methods.get(0).getSimpleName());
+            }
+        }
+    }
+
+    @Test
+    void testRuntimeClassesAreCached() throws Exception {
+        Path stubCache = tempDir.resolve("stubs");
+        Classpath parent = Classpath.forClassLoader(getClass().getClassLoader());
+        String objectClass = "java/lang/Object.class";
+        String stringClass = "java/lang/String.class";
+        // on the classpath of the tests, not in the runtime image
+        String testClass = IndexedClasspathTest.class.getName().replace('.', '/') + ".class";
+
+        try (IndexedClasspath cp = IndexedClasspath.create(Collections.emptyList(), parent, null, stubCache)) {
+            assertArrayEquals(read(parent.findResource(objectClass)), read(cp.findResource(objectClass)));
+            assertNotNull(cp.findResource(testClass));
+        }
+        List<Path> packs = listFiles(stubCache);
+        assertEquals(1, packs.size());
+        assertTrue(packs.get(0).getFileName().toString().startsWith("jdk-"));
+
+        try (IndexedClasspath cp = IndexedClasspath.create(Collections.emptyList(), parent, null, stubCache)) {
+            assertArrayEquals(StubPack.strip(read(parent.findResource(objectClass))), read(cp.findResource(objectClass)));
+            // not in the pack yet, it's added when the classpath is closed
+            assertArrayEquals(read(parent.findResource(stringClass)), read(cp.findResource(stringClass)));
+            assertArrayEquals(read(parent.findResource(testClass)), read(cp.findResource(testClass)));
+        }
+
+        try (IndexedClasspath cp = IndexedClasspath.create(Collections.emptyList(), parent, null, stubCache)) {
+            assertArrayEquals(StubPack.strip(read(parent.findResource(objectClass))), read(cp.findResource(objectClass)));
+            assertArrayEquals(StubPack.strip(read(parent.findResource(stringClass))), read(cp.findResource(stringClass)));
+            assertArrayEquals(read(parent.findResource(testClass)), read(cp.findResource(testClass)));
+        }
+        assertEquals(packs, listFiles(stubCache));
+    }
+
+    @Test
+    void testTypeSystemPrefersIndexedClasses() throws IOException {
+        Classpath parent = Classpath.forClassLoader(getClass().getClassLoader());
+        try (IndexedClasspath cp = IndexedClasspath.create(Collections.singletonList(jar), parent, null)) {
+            TypeSystem ts = TypeSystem.usingClasspath(cp);
+
+            List<JMethodSymbol> methods = ts.BOXED_VOID.getSymbol().getDeclaredMethods();
+            assertEquals(1, methods.size());
+            assertEquals("customMethodOnJavaLangVoid", methods.get(0).getSimpleName());
+            // other classes are found in the parent
+            assertNotNull(ts.getClassSymbol("java.lang.String"));
+        }
+    }
+
+    private static List<Path> listFiles(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.collect(Collectors.toList());
+        }
+    }
+
+    private static byte[] read(URL url) throws IOException {
+        try (InputStream in = url.openStream()) {
+            return IOUtil.toByteArray(in);
+        }
+    }
+
+    private static byte[] readEntry(ZipFile zip, String name) throws IOException {
+        ZipEntry entry = zip.getEntry(name);
+        try (InputStream in = zip.getInputStream(entry)) {
+            return IOUtil.toByteArray(in);
+        }
+    }
+}
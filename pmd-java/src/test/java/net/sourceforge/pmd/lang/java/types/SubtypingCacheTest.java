@@ -0,0 +1,201 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.java.types;
+
+import static java.util.Collections.singletonList;
+import static net.sourceforge.pmd.util.CollectionUtil.setOf;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+import net.sourceforge.pmd.RuleSets;
+import net.sourceforge.pmd.cache.FileAnalysisCache;
+import net.sourceforge.pmd.cache.internal.FileDependencyRecorder;
+import net.sourceforge.pmd.lang.document.TextDocument;
+import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.lang.java.JavaLanguageModule;
+import net.sourceforge.pmd.lang.java.symbols.JClassSymbol;
+import net.sourceforge.pmd.reporting.FileAnalysisListener;
+
+class SubtypingCacheTest {
+
+    private static final String SUBTYPE_HITS = "Type system: subtype checks (hits)";
+    private static final String SUBTYPE_MISSES = "Type system: subtype checks (misses)";
+    private static final String SUPERTYPE_HITS = "Type system: supertype sets (hits)";
+
+    private final TypeSystem ts = TypeSystem.usingClassLoaderClasspath(getClass().getClassLoader());
+
+    @TempDir
+    private Path tempFolder;
+
+    @Test
+    void testSubtypeChecksAreCached() {
+        JTypeMirror listOfString = ts.parameterise(ts.getClassSymbol(List.class), singletonList(ts.rawType(ts.getClassSymbol(String.class))));
+        JTypeMirror collectionOfString = ts.parameterise(ts.getClassSymbol(Collection.class), singletonList(ts.rawType(ts.getClassSymbol(String.class))));
+
+        assertTrue(listOfString.isSubtypeOf(collectionOfString));
+        long hits = ts.getCacheCounters().get(SUBTYPE_HITS);
+        assertTrue(listOfString.isSubtypeOf(collectionOfString));
+        assertFalse(collectionOfString.isSubtypeOf(listOfString));
+        assertFalse(collectionOfString.isSubtypeOf(listOfString));
+
+        assertEquals(hits + 2, ts.getCacheCounters().get(SUBTYPE_HITS));
+    }
+
+    @Test
+    void testTypesWithTypeVariablesAreNotCached() {
+        JTypeMirror genericList = ts.declaration(ts.getClassSymbol(List.class));
+        JTypeMirror rawCollection = ts.rawType(ts.getClassSymbol(Collection.class));
+        assertFalse(SubtypingCache.isCacheable(genericList));
+
+        Map<String, Long> before = ts.getCacheCounters();
+        assertTrue(genericList.isSubtypeOf(rawCollection));
+        assertTrue(genericList.isSubtypeOf(rawCollection));
+        assertEquals(before.get(SUBTYPE_HITS), ts.getCacheCounters().get(SUBTYPE_HITS));
+        assertEquals(before.get(SUBTYPE_MISSES), ts.getCacheCounters().get(SUBTYPE_MISSES));
+    }
+
+    @Test
+    void testCacheabilityOfNestedTypeArguments() {
+        JTypeMirror string = ts.rawType(ts.getClassSymbol(String.class));
+        JClassSymbol list = ts.getClassSymbol(List.class);
+        JClassSymbol map = ts.getClassSymbol(Map.class);
+        JTypeMirror typeVar = list.getTypeParameters().get(0);
+
+        JTypeMirror nested = ts.parameterise(map, Arrays.asList(string, ts.parameterise(list, singletonList(string))));
+        JTypeMirror nestedTypeVar = ts.parameterise(map, Arrays.asList(string, ts.parameterise(list, singletonList(typeVar))));
+        for (int i = 0; i < 2; i++) {
+            // the second time, the result remembered by the type is used
+            assertTrue(SubtypingCache.isCacheable(nested));
+            assertTrue(SubtypingCache.isCacheable(ts.arrayType(nested)));
+            assertFalse(SubtypingCache.isCacheable(nestedTypeVar));
+            assertFalse(SubtypingCache.isCacheable(ts.arrayType(nestedTypeVar)));
+        }
+    }
+
+    @Test
+    void testSuperTypeSetsAreCached() {
+        JTypeMirror hashMap = ts.rawType(ts.getClassSymbol(HashMap.class));
+        Set<JTypeMirror> superTypes = hashMap.getSuperTypeSet();
+
+        assertTrue(superTypes.contains(ts.rawType(ts.getClassSymbol(Map.class))));
+        assertSame(superTypes, hashMap.getSuperTypeSet());
+        assertEquals(1L, ts.getCacheCounters().get(SUPERTYPE_HITS));
+        assertThrows(UnsupportedOperationException.class, () -> superTypes.add(ts.OBJECT));
+    }
+
+    @Test
+    void testCacheHitsRecordTheDependenciesOfTheEntry() {
+        JTypeMirror arrayList = ts.rawType(ts.getClassSymbol(ArrayList.class));
+        JTypeMirror collection = ts.rawType(ts.getClassSymbol(Collection.class));
+        String intermediate = AbstractList.class.getName().replace('.', '/') + ".class";
+
+        FileDependencyRecorder.startRecording();
+        assertTrue(arrayList.isSubtypeOf(collection));
+        arrayList.getSuperTypeSet();
+        assertTrue(FileDependencyRecorder.stopRecording().contains(intermediate));
+
+        // another file hits both entries
+        long subtypeHits = ts.getCacheCounters().get(SUBTYPE_HITS);
+        long supertypeHits = ts.getCacheCounters().get(SUPERTYPE_HITS);
+        FileDependencyRecorder.startRecording();
+        assertTrue(arrayList.isSubtypeOf(collection));
+        assertTrue(FileDependencyRecorder.stopRecording().contains(intermediate));
+        FileDependencyRecorder.startRecording();
+        arrayList.getSuperTypeSet();
+        assertTrue(FileDependencyRecorder.stopRecording().contains(intermediate));
+
+        assertEquals(subtypeHits + 1, ts.getCacheCounters().get(SUBTYPE_HITS));
+        assertEquals(supertypeHits + 1, ts.getCacheCounters().get(SUPERTYPE_HITS));
+    }
+
+    @Test
+    void testChangedIntermediateSupertypeInvalidatesFilesThatHitTheCache() throws Exception {
+        Path classes = Files.createDirectories(tempFolder.resolve("classes/pmdtest")).getParent();
+        Files.write(classes.resolve("pmdtest/Top.class"), classFile("pmdtest/Top", "java/lang/Object"));
+        Files.write(classes.resolve("pmdtest/Middle.class"), classFile("pmdtest/Middle", "pmdtest/Top"));
+        Files.write(classes.resolve("pmdtest/Bottom.class"), classFile("pmdtest/Bottom", "pmdtest/Middle"));
+        TextFile first = sourceFile("First.java");
+        TextFile second = sourceFile("Second.java");
+        TextDocument firstDoc = TextDocument.create(first);
+        TextDocument secondDoc = TextDocument.create(second);
+        Path cacheFile = tempFolder.resolve("pmd-analysis.cache");
+
+        try (URLClassLoader cl = new URLClassLoader(new URL[] {classes.toUri().toURL()}, getClass().getClassLoader())) {
+            TypeSystem classpathTs = TypeSystem.usingClassLoaderClasspath(cl);
+            FileAnalysisCache cache = new FileAnalysisCache(cacheFile.toFile());
+            cache.checkValidity(mock(RuleSets.class), cl, setOf(first, second));
+            for (TextDocument doc : Arrays.asList(firstDoc, secondDoc)) {
+                assertFalse(cache.isUpToDate(doc));
+                try (FileAnalysisListener ignored = cache.startFileAnalysis(doc)) {
+                    // the second file hits the cache, it never visits Middle by itself
+                    JTypeMirror bottom = classpathTs.rawType(classpathTs.getClassSymbol("pmdtest.Bottom"));
+                    JTypeMirror top = classpathTs.rawType(classpathTs.getClassSymbol("pmdtest.Top"));
+                    assertTrue(bottom.isSubtypeOf(top));
+                }
+            }
+            assertTrue(classpathTs.getCacheCounters().get(SUBTYPE_HITS) > 0);
+            cache.persist();
+        }
+
+        Files.write(classes.resolve("pmdtest/Middle.class"),
+                    classFile("pmdtest/Middle", "pmdtest/Top", "java/io/Serializable"));
+        try (URLClassLoader cl = new URLClassLoader(new URL[] {classes.toUri().toURL()}, getClass().getClassLoader())) {
+            FileAnalysisCache reloadedCache = new FileAnalysisCache(cacheFile.toFile());
+            reloadedCache.checkValidity(mock(RuleSets.class), cl, setOf(first, second));
+            assertFalse(reloadedCache.isUpToDate(firstDoc));
+            assertFalse(reloadedCache.isUpToDate(secondDoc), "Middle is a dependency of the cache hit");
+        }
+    }
+
+    private TextFile sourceFile(String name) throws IOException {
+        Path path = Files.write(tempFolder.resolve(name), "class Foo {}".getBytes(StandardCharsets.UTF_8));
+        return TextFile.forPath(path, StandardCharsets.UTF_8, JavaLanguageModule.getInstance().getDefaultVersion());
+    }
+
+    private static byte[] classFile(String internalName, String superName, String... interfaces) {
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, internalName, null, superName, interfaces);
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    @Test
+    void testBoundedCacheEvictsWhenFull() {
+        SubtypingCache.BoundedCache<Integer, String> cache = new SubtypingCache.BoundedCache<>(8);
+        for (int i = 0; i < 20; i++) {
+            cache.put(i, String.valueOf(i));
+        }
+        assertEquals("19", cache.get(19));
+
+        Map<String, Long> counters = new HashMap<>();
+        cache.addCounters("cache", counters);
+        assertEquals(1L, counters.get("cache (hits)"));
+        assertTrue(counters.get("cache (evictions)") >= 12, counters.toString());
+    }
+}
@@ -50,7 +50,7 @@ class BaseTypeInferenceUnitTest {
     }
 
     protected InferenceContext emptyCtx(TypeInferenceLogger log) {
-        return new InferenceContext(ts, new SupertypeCheckCache(), Collections.emptyList(), log);
+        return new InferenceContext(ts, new SupertypeCheckCache(), InferenceBudget.unlimited(), Collections.emptyList(), log);
     }
 
 
@@ -0,0 +1,160 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.lang.java.types.internal.infer;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import net.sourceforge.pmd.internal.FileDeadline;
+import net.sourceforge.pmd.lang.ast.FileTimeoutException;
+import net.sourceforge.pmd.lang.java.JavaParsingHelper;
+import net.sourceforge.pmd.lang.java.JavaParsingHelper.TestCheckLogger;
+import net.sourceforge.pmd.lang.java.ast.ASTCompilationUnit;
+import net.sourceforge.pmd.lang.java.ast.ASTMethodCall;
+import net.sourceforge.pmd.lang.java.internal.JavaAstProcessor;
+import net.sourceforge.pmd.lang.java.internal.JavaLanguageProcessor;
+import net.sourceforge.pmd.lang.java.internal.JavaLanguageProperties;
+import net.sourceforge.pmd.lang.java.types.JTypeMirror;
+import net.sourceforge.pmd.lang.java.types.TypeOps;
+
+class InferenceBudgetTest {
+
+    private static final String BUDGET_WARNING = "{0}, the expression is left unresolved";
+    private static final String SOURCE =
+        "import java.util.List;\n"
+            + "import java.util.stream.Collectors;\n"
+            + "class Foo {\n"
+            + "    List<String> foo(List<Integer> list) {\n"
+            + "        return list.stream().map(i -> String.valueOf(i)).collect(Collectors.toList());\n"
+            + "    }\n"
+            + "}";
+
+    @Test
+    void testStepsAreCountedUntilTheOutermostSiteEnds() {
+        InferenceBudget budget = InferenceBudget.of(3, 0);
+        budget.start();
+        budget.step();
+        budget.start(); // nested site
+        budget.step();
+        budget.end();
+        budget.step();
+        assertThrows(InferenceBudgetExceededException.class, budget::step);
+        // still exceeded until the outermost site ends
+        assertThrows(InferenceBudgetExceededException.class, budget::step);
+        budget.end();
+
+        budget.start();
+        assertDoesNotThrow(budget::step);
+        budget.end();
+    }
+
+    @Test
+    void testStepsOutsideOfASiteAreNotCounted() {
+        InferenceBudget budget = InferenceBudget.of(1, 0);
+        for (int i = 0; i < 10; i++) {
+            budget.step();
+        }
+    }
+
+    @Test
+    void testZeroIsUnlimited() {
+        assertSame(InferenceBudget.unlimited(), InferenceBudget.of(0, 0));
+        assertTrue(InferenceBudget.unlimited().isUnlimited());
+        assertFalse(InferenceBudget.of(0, 1000).isUnlimited());
+    }
+
+    @Test
+    void testFileDeadlineStopsInference() throws InterruptedException {
+        FileDeadline deadline = FileDeadline.start(1);
+        try {
+            Thread.sleep(10);
+            // no limit on the steps or the time of a call site
+            InferenceBudget budget = InferenceBudget.of(0, 0, deadline);
+            assertFalse(budget.isUnlimited());
+            budget.start();
+            InferenceBudgetExceededException e = assertThrows(InferenceBudgetExceededException.class, budget::step);
+            assertTrue(e.getMessage().contains("file timeout"), e.getMessage());
+            budget.end();
+        } finally {
+            deadline.end();
+        }
+    }
+
+    @Test
+    void testFileDeadlineNotPassedDoesNotStopInference() {
+        FileDeadline deadline = FileDeadline.start(60_000);
+        try {
+            InferenceBudget budget = InferenceBudget.of(0, 0, deadline);
+            budget.start();
+            for (int i = 0; i < 10_000; i++) {
+                budget.step();
+            }
+            budget.end();
+        } finally {
+            deadline.end();
+        }
+    }
+
+    @Test
+    void testFileTimeoutLeavesCallUnresolved() throws Exception {
+        TestCheckLogger logger = new TestCheckLogger(false);
+        ASTCompilationUnit acu = JavaParsingHelper.DEFAULT.withProcessing(false).parse(SOURCE);
+        JavaLanguageProperties properties = new JavaLanguageProperties();
+        try (JavaLanguageProcessor processor = new JavaLanguageProcessor(properties, JavaParsingHelper.TEST_TYPE_SYSTEM)) {
+            FileDeadline deadline = FileDeadline.start(1);
+            try {
+                Thread.sleep(10);
+                // the type resolver of the file is set up with the deadline, then the processing is aborted
+                assertThrows(FileTimeoutException.class, () -> JavaAstProcessor.process(processor, logger, acu));
+            } finally {
+                deadline.end();
+            }
+        }
+
+        // the default budget has no limit, the inference is stopped by the deadline of the file
+        JTypeMirror type = collectCall(acu).getTypeMirror();
+        assertTrue(TypeOps.isUnresolved(type), "Expected an unresolved type, got " + type);
+        assertTrue(logger.warnings.containsKey(BUDGET_WARNING));
+    }
+
+    @Test
+    void testExceededBudgetLeavesCallUnresolved() throws Exception {
+        TestCheckLogger logger = new TestCheckLogger(false);
+        ASTCompilationUnit acu = parseWithMaxSteps(1, logger);
+
+        JTypeMirror type = collectCall(acu).getTypeMirror();
+        assertTrue(TypeOps.isUnresolved(type), "Expected an unresolved type, got " + type);
+        assertTrue(logger.warnings.containsKey(BUDGET_WARNING));
+    }
+
+    @Test
+    void testDefaultBudgetResolvesCall() throws Exception {
+        TestCheckLogger logger = new TestCheckLogger(false);
+        ASTCompilationUnit acu = parseWithMaxSteps(0, logger);
+
+        assertEquals("java.util.List<java.lang.String>", collectCall(acu).getTypeMirror().toString());
+        assertFalse(logger.warnings.containsKey(BUDGET_WARNING));
+    }
+
+    private static ASTMethodCall collectCall(ASTCompilationUnit acu) {
+        return acu.descendants(ASTMethodCall.class).first(it -> "collect".equals(it.getMethodName()));
+    }
+
+    private static ASTCompilationUnit parseWithMaxSteps(int maxSteps, TestCheckLogger logger) throws Exception {
+        JavaLanguageProperties properties = new JavaLanguageProperties();
+        properties.setProperty(JavaLanguageProperties.TYPE_INFERENCE_MAX_STEPS, maxSteps);
+        ASTCompilationUnit acu = JavaParsingHelper.DEFAULT.withProcessing(false).parse(SOURCE);
+        try (JavaLanguageProcessor processor = new JavaLanguageProcessor(properties, JavaParsingHelper.TEST_TYPE_SYSTEM)) {
+            JavaAstProcessor.process(processor, logger, acu);
+        }
+        return acu;
+    }
+}